@@ -35,6 +35,7 @@ import org.asteroidos.sync.fragments.PositionPickerFragment;
 import org.asteroidos.sync.services.SynchronizationService;
 import org.asteroidos.sync.utils.AppInfo;
 import org.asteroidos.sync.utils.AppInfoHelper;
+import org.asteroidos.sync.utils.BatteryHistory;
 
 import java.util.ArrayList;
 
@@ -293,6 +294,10 @@ public class MainActivity extends AppCompatActivity implements DeviceListFragmen
                     Message batteryMsg = Message.obtain(null, SynchronizationService.MSG_REQUEST_BATTERY_LIFE);
                     batteryMsg.replyTo = mDeviceDetailMessenger;
                     mSyncServiceMessenger.send(batteryMsg);
+
+                    Message historyMsg = Message.obtain(null, SynchronizationService.MSG_REQUEST_BATTERY_HISTORY);
+                    historyMsg.replyTo = mDeviceDetailMessenger;
+                    mSyncServiceMessenger.send(historyMsg);
                 } catch (RemoteException ignored) {}
             }
             mStatus = status;
@@ -304,6 +309,16 @@ public class MainActivity extends AppCompatActivity implements DeviceListFragmen
             mDetailFragment.setBatteryPercentage(percentage);
     }
 
+    private void handleBatteryHistory(BatteryHistory.Bucket[] buckets) {
+        if(mDetailFragment != null)
+            mDetailFragment.setBatteryHistory(buckets, SynchronizationService.BATTERY_HISTORY_DURATION);
+    }
+
+    private void handleBatteryHistoryUpdate(BatteryHistory.Bucket current) {
+        if(mDetailFragment != null)
+            mDetailFragment.updateBatteryHistory(current);
+    }
+
     static private class SynchronizationHandler extends Handler {
         private MainActivity mActivity;
 
@@ -323,6 +338,12 @@ public class MainActivity extends AppCompatActivity implements DeviceListFragmen
                 case SynchronizationService.MSG_SET_BATTERY_PERCENTAGE:
                     mActivity.handleBatteryPercentage(msg.arg1);
                     break;
+                case SynchronizationService.MSG_SET_BATTERY_HISTORY:
+                    mActivity.handleBatteryHistory(BatteryHistory.fromBundle(msg.getData()));
+                    break;
+                case SynchronizationService.MSG_UPDATE_BATTERY_HISTORY:
+                    mActivity.handleBatteryHistoryUpdate((BatteryHistory.Bucket)msg.obj);
+                    break;
                 default:
                     super.handleMessage(msg);
             }
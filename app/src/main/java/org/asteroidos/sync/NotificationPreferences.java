@@ -9,8 +9,12 @@ import com.google.gson.reflect.TypeToken;
 import java.lang.reflect.Type;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
 
 public class NotificationPreferences {
     public enum NotificationOption {
@@ -46,53 +50,96 @@ public class NotificationPreferences {
     private static final String PREFS_NOTIFICATIONS = "notifications";
     private static final String PREFS_SEEN_PACKAGES = "seenPackages";
 
+    // Parsed once and kept in sync with the preferences, the notification hot path only does lookups
+    private static Map<String, NotificationOption> sOptionMap;
+    private static Set<String> sSeenPackages;
+    private static String sWrittenOptions;
+    private static String sWrittenSeenPackages;
+
+    // SharedPreferences only keeps a weak reference to its listeners
+    private static final SharedPreferences.OnSharedPreferenceChangeListener sChangeListener =
+            new SharedPreferences.OnSharedPreferenceChangeListener() {
+        @Override
+        public void onSharedPreferenceChanged(SharedPreferences prefs, String key) {
+            synchronized (NotificationPreferences.class) {
+                // Our own write-through changes come back here too, they don't need a reload
+                if (PREFS_NOTIFICATIONS.equals(key)
+                        && !Objects.equals(prefs.getString(key, null), sWrittenOptions))
+                    sOptionMap = null;
+                else if (PREFS_SEEN_PACKAGES.equals(key)
+                        && !Objects.equals(prefs.getString(key, null), sWrittenSeenPackages))
+                    sSeenPackages = null;
+            }
+        }
+    };
+    private static boolean sListenerRegistered = false;
+
     private static Map<String, NotificationOption> getOptionMap(Context context) {
-        SharedPreferences prefs = getPrefs(context);
-        String notificationPrefsAsString = prefs.getString(PREFS_NOTIFICATIONS, "{}");
-        Gson gson = new Gson();
-        Type notificationPrefs = new TypeToken<Map<String, NotificationOption>>(){}.getType();
-        return gson.fromJson(notificationPrefsAsString, notificationPrefs);
+        if (sOptionMap == null) {
+            SharedPreferences prefs = getPrefs(context);
+            String notificationPrefsAsString = prefs.getString(PREFS_NOTIFICATIONS, "{}");
+            Gson gson = new Gson();
+            Type notificationPrefs = new TypeToken<Map<String, NotificationOption>>(){}.getType();
+            Map<String, NotificationOption> map = gson.fromJson(notificationPrefsAsString, notificationPrefs);
+            sOptionMap = map == null ? new HashMap<String, NotificationOption>() : new HashMap<>(map);
+        }
+        return sOptionMap;
+    }
+
+    private static Set<String> getSeenPackages(Context context) {
+        if (sSeenPackages == null) {
+            String asString = getPrefs(context).getString(PREFS_SEEN_PACKAGES, "[]");
+            String[] asArray = new Gson().fromJson(asString, String[].class);
+            sSeenPackages = new LinkedHashSet<>();
+            if (asArray != null)
+                sSeenPackages.addAll(Arrays.asList(asArray));
+        }
+        return sSeenPackages;
     }
 
     private static SharedPreferences getPrefs(Context context) {
-        return context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        SharedPreferences prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        if (!sListenerRegistered) {
+            prefs.registerOnSharedPreferenceChangeListener(sChangeListener);
+            sListenerRegistered = true;
+        }
+        return prefs;
     }
 
-    public static NotificationOption getNotificationPreferenceForApp(Context context, String packageName) {
+    public static synchronized NotificationOption getNotificationPreferenceForApp(Context context, String packageName) {
         NotificationOption value = getOptionMap(context).get(packageName);
         return value == null ? NotificationOption.DEFAULT : value;
     }
 
-    public static void saveNotificationPreferenceForApp(Context context, String packageName, int value) {
+    public static synchronized void saveNotificationPreferenceForApp(Context context, String packageName, int value) {
         Map<String,NotificationOption> map = getOptionMap(context);
         NotificationOption option = NotificationOption.fromInt(value);
 
         // this function gets fired a lot on scroll, don't save defaults if there's nothing set
         if (map.get(packageName) == null && option == NotificationOption.DEFAULT)
             return;
+        if (map.get(packageName) == option)
+            return;
 
         map.put(packageName, option);
         SharedPreferences.Editor editor = getPrefs(context).edit();
-        String jsonString = new Gson().toJson(map);
-        editor.putString(PREFS_NOTIFICATIONS, jsonString);
+        sWrittenOptions = new Gson().toJson(map);
+        editor.putString(PREFS_NOTIFICATIONS, sWrittenOptions);
         editor.apply();
     }
 
-    public static List<String> seenPackageNames(Context context) {
-        String asString = getPrefs(context).getString(PREFS_SEEN_PACKAGES, "[]");
-        String[] asArray = new Gson().fromJson(asString, String[].class);
-        return Arrays.asList(asArray);
+    public static synchronized List<String> seenPackageNames(Context context) {
+        return new ArrayList<>(getSeenPackages(context));
     }
 
-    public static void putPackageToSeen(Context context, String packageName) {
-        List<String> list = seenPackageNames(context);
-        if (list.contains(packageName))
+    public static synchronized void putPackageToSeen(Context context, String packageName) {
+        Set<String> seen = getSeenPackages(context);
+        if (!seen.add(packageName))
             return;
-        ArrayList<String> array = new ArrayList<>(list);
-        array.add(packageName);
 
         SharedPreferences.Editor editor = getPrefs(context).edit();
-        editor.putString(PREFS_SEEN_PACKAGES, new Gson().toJson(array));
+        sWrittenSeenPackages = new Gson().toJson(seen);
+        editor.putString(PREFS_SEEN_PACKAGES, sWrittenSeenPackages);
         editor.apply();
     }
 }
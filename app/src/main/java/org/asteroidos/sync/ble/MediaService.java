@@ -58,6 +58,7 @@ public class MediaService implements BleDevice.ReadWriteListener,  MediaSessionM
 
     private Context mCtx;
     private BleDevice mDevice;
+    private WriteScheduler mWriteScheduler;
     private SharedPreferences mSettings;
 
     private MediaController mMediaController = null;
@@ -65,9 +66,10 @@ public class MediaService implements BleDevice.ReadWriteListener,  MediaSessionM
 
     private int mVolume;
 
-    public MediaService(Context ctx, BleDevice device)
+    public MediaService(Context ctx, BleDevice device, WriteScheduler writeScheduler)
     {
         mDevice = device;
+        mWriteScheduler = writeScheduler;
         mCtx = ctx;
 
         mSettings = mCtx.getSharedPreferences(PREFS_NAME, 0);
@@ -117,7 +119,7 @@ public class MediaService implements BleDevice.ReadWriteListener,  MediaSessionM
 
                     byte[] data = new byte[1];
                     data[0] = (byte) mVolume;
-                    mDevice.write(AsteroidUUIDS.MEDIA_VOLUME_CHAR, data, MediaService.this);
+                    mWriteScheduler.writeLatest(AsteroidUUIDS.MEDIA_VOLUME_CHAR, data, WriteScheduler.Priority.INTERACTIVE, MediaService.this);
                 }
             }
         }
@@ -244,17 +246,17 @@ public class MediaService implements BleDevice.ReadWriteListener,  MediaSessionM
             super.onMetadataChanged(metadata);
 
             if (metadata != null) {
-                mDevice.write(AsteroidUUIDS.MEDIA_ARTIST_CHAR,
+                mWriteScheduler.writeLatest(AsteroidUUIDS.MEDIA_ARTIST_CHAR,
                         getTextAsBytes(metadata, MediaMetadata.METADATA_KEY_ARTIST),
-                        MediaService.this);
+                        WriteScheduler.Priority.NORMAL, MediaService.this);
 
-                mDevice.write(AsteroidUUIDS.MEDIA_ALBUM_CHAR,
+                mWriteScheduler.writeLatest(AsteroidUUIDS.MEDIA_ALBUM_CHAR,
                         getTextAsBytes(metadata, MediaMetadata.METADATA_KEY_ALBUM),
-                        MediaService.this);
+                        WriteScheduler.Priority.NORMAL, MediaService.this);
 
-                mDevice.write(AsteroidUUIDS.MEDIA_TITLE_CHAR,
+                mWriteScheduler.writeLatest(AsteroidUUIDS.MEDIA_TITLE_CHAR,
                         getTextAsBytes(metadata, MediaMetadata.METADATA_KEY_TITLE),
-                        MediaService.this);
+                        WriteScheduler.Priority.NORMAL, MediaService.this);
             }
         }
 
@@ -263,7 +265,7 @@ public class MediaService implements BleDevice.ReadWriteListener,  MediaSessionM
             super.onPlaybackStateChanged(state);
             byte[] data = new byte[1];
             data[0] = (byte)(state.getState() == PlaybackState.STATE_PLAYING ?  1 : 0);
-            mDevice.write(AsteroidUUIDS.MEDIA_PLAYING_CHAR, data, MediaService.this);
+            mWriteScheduler.writeLatest(AsteroidUUIDS.MEDIA_PLAYING_CHAR, data, WriteScheduler.Priority.INTERACTIVE, MediaService.this);
         }
 
         @Override
@@ -300,9 +302,9 @@ public class MediaService implements BleDevice.ReadWriteListener,  MediaSessionM
             }
         } else {
             byte[] data = new byte[]{0};
-            mDevice.write(AsteroidUUIDS.MEDIA_ARTIST_CHAR, data, MediaService.this);
-            mDevice.write(AsteroidUUIDS.MEDIA_ALBUM_CHAR, data, MediaService.this);
-            mDevice.write(AsteroidUUIDS.MEDIA_TITLE_CHAR, data, MediaService.this);
+            mWriteScheduler.writeLatest(AsteroidUUIDS.MEDIA_ARTIST_CHAR, data, WriteScheduler.Priority.NORMAL, MediaService.this);
+            mWriteScheduler.writeLatest(AsteroidUUIDS.MEDIA_ALBUM_CHAR, data, WriteScheduler.Priority.NORMAL, MediaService.this);
+            mWriteScheduler.writeLatest(AsteroidUUIDS.MEDIA_TITLE_CHAR, data, WriteScheduler.Priority.NORMAL, MediaService.this);
         }
     }
 }
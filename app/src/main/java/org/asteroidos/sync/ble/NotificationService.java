@@ -28,21 +28,45 @@ import com.idevicesinc.sweetblue.BleDevice;
 import org.asteroidos.sync.NotificationPreferences;
 import org.asteroidos.sync.dataobjects.Notification;
 import org.asteroidos.sync.utils.AsteroidUUIDS;
+import org.asteroidos.sync.utils.NotificationStateCache;
 
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 import java.util.Objects;
+import java.util.UUID;
 
 @SuppressWarnings( "deprecation" ) // Before upgrading to SweetBlue 3.0, we don't have an alternative to the deprecated ReadWriteListener
 public class NotificationService implements BleDevice.ReadWriteListener {
+    // Bits of the first byte of NOTIFICATION_CAPABILITIES_CHAR
+    private static final int CAPABILITY_BINARY_FORMAT = 0x01;
+    // Optionally followed by a little endian 32 bit id which changes whenever the watch restarts
+    private static final int CAPABILITIES_BOOT_ID_LENGTH = 5;
+    private static final int INITIAL_BUFFER_SIZE = 1024;
 
     private Context mCtx;
     private BleDevice mDevice;
+    private WriteScheduler mWriteScheduler;
 
     private NotificationReceiver mNReceiver;
 
-    public NotificationService(Context ctx, BleDevice device)
+    private boolean mBinaryFormat = false;
+    private ByteBuffer mBuffer = ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
+    private CharsetEncoder mEncoder = StandardCharsets.UTF_8.newEncoder();
+
+    // Owned by the caller and kept across reconnections to the same watch, so that the refresh
+    // only sends what changed and removes what went away in the meantime
+    private NotificationStateCache mCache;
+    private boolean mSynced = false;
+
+    public NotificationService(Context ctx, BleDevice device, WriteScheduler writeScheduler, NotificationStateCache cache)
     {
         mDevice = device;
+        mWriteScheduler = writeScheduler;
         mCtx = ctx;
+        mCache = cache;
     }
 
     public void sync() {
@@ -52,25 +76,97 @@ public class NotificationService implements BleDevice.ReadWriteListener {
         IntentFilter filter = new IntentFilter();
         filter.addAction("org.asteroidos.sync.NOTIFICATION_LISTENER");
         mCtx.registerReceiver(mNReceiver, filter);
+        mSynced = true;
+
+        // Watches without the capabilities characteristic only understand the XML format
+        mBinaryFormat = false;
+        mDevice.read(AsteroidUUIDS.NOTIFICATION_CAPABILITIES_CHAR, new BleDevice.ReadWriteListener() {
+            @Override
+            public void onEvent(ReadWriteEvent e) {
+                if (!mSynced)
+                    return;
+
+                long bootId = NotificationStateCache.UNKNOWN_BOOT_ID;
+                if (e.wasSuccess() && e.data().length > 0) {
+                    mBinaryFormat = (e.data()[0] & CAPABILITY_BINARY_FORMAT) != 0;
+                    if (e.data().length >= CAPABILITIES_BOOT_ID_LENGTH)
+                        bootId = ByteBuffer.wrap(e.data(), 1, 4).order(ByteOrder.LITTLE_ENDIAN).getInt() & 0xFFFFFFFFL;
+                }
+
+                // Only a watch which restarted, or can't tell, gets everything active sent again
+                mCache.onConnected(bootId);
+                refresh();
+            }
+        });
+    }
 
+    private void refresh() {
+        mCache.beginRefresh();
         Intent i = new Intent("org.asteroidos.sync.NOTIFICATION_LISTENER_SERVICE");
         i.putExtra("command", "refresh");
         mCtx.sendBroadcast(i);
     }
 
     public void unsync() {
+        mSynced = false;
         mDevice.disableNotify(AsteroidUUIDS.NOTIFICATION_FEEDBACK_CHAR);
         try {
             mCtx.unregisterReceiver(mNReceiver);
         } catch (IllegalArgumentException ignored) {}
     }
 
+    private byte[] encode(Notification notification) {
+        if (!mBinaryFormat)
+            return notification.toBytes();
+
+        while (true) {
+            mBuffer.clear();
+            if (notification.toBinary(mBuffer, mEncoder))
+                return Arrays.copyOf(mBuffer.array(), mBuffer.position());
+            // Can't happen, the largest notification there is fits
+            if (mBuffer.capacity() >= Notification.MAX_BINARY_LENGTH)
+                return notification.toBytes();
+            mBuffer = ByteBuffer.allocate(Math.min(mBuffer.capacity() * 2, Notification.MAX_BINARY_LENGTH));
+        }
+    }
+
     @Override
     public void onEvent(ReadWriteEvent e) {
         if(!e.wasSuccess())
             Log.e("NotificationService", e.status().toString());
     }
 
+    /**
+     * Reports the outcome of a posted notification write to the cache, so that its content only
+     * counts as delivered once the watch acknowledged it.
+     */
+    private class PostedWriteListener implements BleDevice.ReadWriteListener, WriteScheduler.DropListener {
+        private final String mPackageName;
+        private final int mId;
+        private final long mHash;
+
+        PostedWriteListener(String packageName, int id, long hash) {
+            mPackageName = packageName;
+            mId = id;
+            mHash = hash;
+        }
+
+        @Override
+        public void onEvent(ReadWriteEvent e) {
+            if (e.wasSuccess()) {
+                mCache.onDelivered(mPackageName, mId, mHash);
+            } else {
+                Log.e("NotificationService", e.status().toString());
+                mCache.onFailed(mPackageName, mId, mHash);
+            }
+        }
+
+        @Override
+        public void onDropped(UUID charUuid) {
+            mCache.onFailed(mPackageName, mId, mHash);
+        }
+    }
+
     class NotificationReceiver extends BroadcastReceiver {
         @Override
         public void onReceive(Context context, Intent intent) {
@@ -105,6 +201,10 @@ public class NotificationService implements BleDevice.ReadWriteListener {
                 if(intent.hasExtra("vibration"))
                     vibration = intent.getStringExtra("vibration");
 
+                long hash = NotificationStateCache.hash(packageName, appName, appIcon, summary, body, vibration);
+                if (!mCache.onPosted(packageName, id, hash))
+                    return;
+
                 Notification notification = new Notification(
                         Notification.MsgType.POSTED,
                         packageName,
@@ -115,11 +215,21 @@ public class NotificationService implements BleDevice.ReadWriteListener {
                         body,
                         vibration);
 
-                mDevice.write(AsteroidUUIDS.NOTIFICATION_UPDATE_CHAR, notification.toBytes(), NotificationService.this);
+                // Incoming calls ring with the ringtone vibration and must not wait behind bulk traffic
+                WriteScheduler.Priority priority = Objects.equals(vibration, "ringtone")
+                        ? WriteScheduler.Priority.INTERACTIVE : WriteScheduler.Priority.NORMAL;
+                mWriteScheduler.write(AsteroidUUIDS.NOTIFICATION_UPDATE_CHAR, encode(notification), priority,
+                        new PostedWriteListener(packageName, id, hash));
             } else if (Objects.equals(event, "removed")) {
                 int id = intent.getIntExtra("id", 0);
-
-                mDevice.write(AsteroidUUIDS.NOTIFICATION_UPDATE_CHAR, new Notification(Notification.MsgType.REMOVED, id).toBytes(), NotificationService.this);
+                mCache.onRemoved(intent.getStringExtra("packageName"), id);
+
+                mWriteScheduler.write(AsteroidUUIDS.NOTIFICATION_UPDATE_CHAR, encode(new Notification(Notification.MsgType.REMOVED, id)), WriteScheduler.Priority.NORMAL, NotificationService.this);
+            } else if (Objects.equals(event, "refreshed")) {
+                // Notifications which went away while the watch was disconnected
+                for (int id : mCache.endRefresh())
+                    mWriteScheduler.write(AsteroidUUIDS.NOTIFICATION_UPDATE_CHAR, encode(new Notification(Notification.MsgType.REMOVED, id)), WriteScheduler.Priority.NORMAL, NotificationService.this);
+                Log.d("NotificationService", mCache.getSuppressedCount() + " duplicate notifications suppressed");
             }
         }
     }
@@ -27,51 +27,83 @@ import android.content.ContentValues;
 import android.content.Context;
 import android.content.Intent;
 import android.content.IntentFilter;
+import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
 import android.media.MediaScannerConnection;
 import android.net.Uri;
 import android.os.Build;
 import android.os.Environment;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
 import androidx.core.app.NotificationCompat;
 import androidx.core.content.FileProvider;
 import android.provider.MediaStore;
 import android.util.Log;
 
 import com.idevicesinc.sweetblue.BleDevice;
+import com.idevicesinc.sweetblue.utils.ByteReader;
 
 import org.asteroidos.sync.R;
 import org.asteroidos.sync.utils.AsteroidUUIDS;
+import org.asteroidos.sync.utils.TransferProgress;
 
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteOrder;
 import java.text.SimpleDateFormat;
 import java.util.Locale;
 import java.util.UUID;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.TimeUnit;
 
 @SuppressWarnings({"FieldCanBeLocal", "deprecation"}) // For clarity, we prefer having NOTIFICATION as a top level field
                                                       // Before upgrading to SweetBlue 3.0, we don't have an alternative to the deprecated ReadWriteListener
 public class ScreenshotService implements BleDevice.ReadWriteListener {
     private static final String NOTIFICATION_CHANNEL_ID = "screenshotservice_channel_id_01";
     private int NOTIFICATION = 2726;
+    private static final int WRITE_BUFFER_SIZE = 8192;
+
+    // Upper bound for the size announced by the watch, anything above is treated as a corrupted header
+    private static final int MAX_SCREENSHOT_SIZE = 16 * 1024 * 1024;
+    private static final int MAX_ATTEMPTS = 3;
+    // Time the watch gets to answer a request with the size header, and between two chunks
+    private static final long STALL_TIMEOUT_MS = 5000;
+    // Chunks of an abandoned transfer can't be told apart from a size header, so a retry is only
+    // requested once the watch has been quiet for this long
+    private static final long RETRY_QUIET_MS = 1000;
+
+    private enum TransferState {
+        IDLE, REQUESTED, RECEIVING, DRAINING
+    }
 
     private Context mCtx;
     private BleDevice mDevice;
+    private WriteScheduler mWriteScheduler;
 
     private ScreenshotReqReceiver mSReceiver;
 
-    private boolean mFirstNotify = true;
-    private boolean mDownloading = false;
+    private TransferState mState = TransferState.IDLE;
+    private int mAttempt;
+    private int mSize;
+    private int mReceived;
+    private int mNotifyCount;
+    private long mStartTime;
+    private File mFile;
+    private Uri mFileUri;
+    private OutputStream mOut;
 
     private NotificationManager mNM;
+    private TransferProgress mProgress;
+    private Handler mHandler;
 
-    public ScreenshotService(Context ctx, BleDevice device)
+    public ScreenshotService(Context ctx, BleDevice device, WriteScheduler writeScheduler)
     {
         mDevice = device;
+        mWriteScheduler = writeScheduler;
         mCtx = ctx;
         mNM = (NotificationManager) mCtx.getSystemService(Context.NOTIFICATION_SERVICE);
 
@@ -81,6 +113,11 @@ public class ScreenshotService implements BleDevice.ReadWriteListener {
             notificationChannel.setVibrationPattern(new long[]{0L});
             mNM.createNotificationChannel(notificationChannel);
         }
+
+        mHandler = new Handler(Looper.getMainLooper());
+        mProgress = new TransferProgress(mCtx, NOTIFICATION_CHANNEL_ID, NOTIFICATION,
+                mCtx.getText(R.string.screenshot), mCtx.getText(R.string.downloading), R.drawable.image_white);
+        mProgress.setListener(mProgressListener);
     }
 
     public void sync() {
@@ -91,7 +128,7 @@ public class ScreenshotService implements BleDevice.ReadWriteListener {
         filter.addAction("org.asteroidos.sync.SCREENSHOT_REQUEST_LISTENER");
         mCtx.registerReceiver(mSReceiver, filter);
 
-        mDownloading = false;
+        mState = TransferState.IDLE;
     }
 
     public void unsync() {
@@ -99,94 +136,228 @@ public class ScreenshotService implements BleDevice.ReadWriteListener {
         try {
             mCtx.unregisterReceiver(mSReceiver);
         } catch (IllegalArgumentException ignored) {}
+        // A transfer in progress is dropped once TransferProgress cancels it on disconnection
     }
 
-    private static int bytesToInt(byte[] b) {
-        int result = 0;
-        for (int i = 3; i >= 0; i--) {
-            result <<= 8;
-            result |= (b[i] & 0xFF);
+    private void requestScreenshot() {
+        mState = TransferState.REQUESTED;
+        mProgress.start(0, STALL_TIMEOUT_MS);
+
+        byte[] data = new byte[1];
+        data[0] = 0x0;
+        mWriteScheduler.write(AsteroidUUIDS.SCREENSHOT_REQUEST, data, WriteScheduler.Priority.NORMAL, ScreenshotService.this);
+    }
+
+    /**
+     * The protocol has no way to request a range of the picture, so a broken transfer is
+     * restarted from scratch until {@link #MAX_ATTEMPTS} is reached. The new request is only sent
+     * once the watch stopped sending what was left of the previous one.
+     */
+    private void retryOrFail(String reason) {
+        Log.w("ScreenshotService", "Screenshot transfer failed (attempt " + mAttempt + "/" + MAX_ATTEMPTS + "): " + reason);
+        if (mAttempt < MAX_ATTEMPTS) {
+            abortDownload();
+            mAttempt++;
+            mState = TransferState.DRAINING;
+            // Kept running without a timeout so that a disconnection still cancels the retry
+            mProgress.start(0, 0);
+            mHandler.postDelayed(mRetryRequest, RETRY_QUIET_MS);
+        } else {
+            fail();
         }
-        return result;
     }
 
-    private BleDevice.ReadWriteListener contentListener = new BleDevice.ReadWriteListener() {
-        private int progress = 0;
-        private int size = 0;
-        private byte[] totalData;
-        private ScheduledExecutorService processUpdate;
+    /**
+     * Gives up on the transfer and tells the user about it.
+     */
+    private void fail() {
+        abortDownload();
+        mProgress.stop();
+        Notification notification = new NotificationCompat.Builder(mCtx, NOTIFICATION_CHANNEL_ID)
+                .setContentTitle(mCtx.getText(R.string.screenshot))
+                .setContentText(mCtx.getText(R.string.download_failed))
+                .setSmallIcon(R.drawable.image_white)
+                .setLocalOnly(true)
+                .build();
+        mNM.notify(NOTIFICATION, notification);
+    }
+
+    /**
+     * Drops a partially received screenshot, e.g. on disconnect or when the watch stops sending.
+     */
+    private void abortDownload() {
+        mHandler.removeCallbacks(mRetryRequest);
+        closeQuietly(mOut);
+        mOut = null;
+        // The entry is created before the stream is opened, so it has to go even without a stream
+        try {
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+                if (mFileUri != null)
+                    mCtx.getContentResolver().delete(mFileUri, null, null);
+            } else if (mFile != null) {
+                mFile.delete();
+            }
+        } catch (SecurityException | IllegalArgumentException e) {
+            e.printStackTrace();
+        }
+        mFileUri = null;
+        mFile = null;
+        mState = TransferState.IDLE;
+    }
 
+    private final TransferProgress.Listener mProgressListener = new TransferProgress.Listener() {
+        @Override
+        public void onCancelled(TransferProgress transfer, final boolean timedOut) {
+            // The transfer state is only touched on the main thread
+            mHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    // Already over, or restarted since
+                    if (mState == TransferState.IDLE || mProgress.isRunning())
+                        return;
+                    if (!timedOut)
+                        abortDownload();
+                    else
+                        retryOrFail(mState == TransferState.REQUESTED ? "no answer to request" : "transfer timed out after " + mReceived + "/" + mSize + " bytes");
+                }
+            });
+        }
+    };
+
+    private final Runnable mRetryRequest = new Runnable() {
+        @Override
+        public void run() {
+            if (mState == TransferState.DRAINING)
+                requestScreenshot();
+        }
+    };
+
+    private BleDevice.ReadWriteListener contentListener = new BleDevice.ReadWriteListener() {
         @Override
         public void onEvent(ReadWriteEvent e) {
             if(e.isNotification() && e.charUuid().equals(AsteroidUUIDS.SCREENSHOT_CONTENT)) {
                 byte[] data = e.data();
-                if(mFirstNotify) {
-                    size = bytesToInt(data);
-                    totalData = new byte[size];
-                    mFirstNotify = false;
-                    progress = 0;
-
-                    processUpdate = Executors.newSingleThreadScheduledExecutor();
-                    processUpdate.scheduleWithFixedDelay(new Runnable() {
-                        @Override
-                        public void run() {
-                            NotificationCompat.Builder notificationBuilder = new NotificationCompat.Builder(mCtx, NOTIFICATION_CHANNEL_ID)
-                                    .setContentTitle(mCtx.getText(R.string.screenshot))
-                                    .setLocalOnly(true);
-
-                            notificationBuilder.setContentText(mCtx.getText(R.string.downloading));
-                            notificationBuilder.setSmallIcon(R.drawable.image_white);
-                            notificationBuilder.setProgress(size, progress, false);
-
-                            Notification notification = notificationBuilder.build();
-                            mNM.notify(NOTIFICATION, notification);
-                        }
-                    }, 0, 1, TimeUnit.SECONDS);
-                } else {
-                    if(data.length + progress <= totalData.length)
-                        System.arraycopy(data, 0, totalData, progress, data.length);
-                    progress += data.length;
-
-                    if(size == progress) {
-                        processUpdate.shutdown();
-                        NotificationCompat.Builder notificationBuilder = new NotificationCompat.Builder(mCtx, NOTIFICATION_CHANNEL_ID)
-                                .setContentTitle(mCtx.getText(R.string.screenshot))
-                                .setLocalOnly(true);
-
-                        Uri fileName = null;
-                        try {
-                            fileName = createFile(totalData);
-                        } catch (IOException ex) {
-                            ex.printStackTrace();
-                        }
-
-                        notificationBuilder.setContentText(mCtx.getText(R.string.downloaded));
-                        notificationBuilder.setLargeIcon(BitmapFactory.decodeByteArray(totalData, 0, size));
-                        notificationBuilder.setSmallIcon(R.drawable.image_white);
-
-                        Intent notificationIntent = new Intent();
-                        notificationIntent.setAction(Intent.ACTION_VIEW);
-                        notificationIntent.setDataAndType(fileName, "image/*");
-                        notificationIntent.addFlags(Intent.FLAG_GRANT_READ_URI_PERMISSION);
-                        PendingIntent contentIntent = PendingIntent.getActivity(mCtx, 0, notificationIntent, 0);
-                        notificationBuilder.setContentIntent(contentIntent);
-                        mDownloading = false;
-
-                        Notification notification = notificationBuilder.build();
-                        mNM.notify(NOTIFICATION, notification);
-                    }
+                if (mState == TransferState.REQUESTED)
+                    onHeader(data);
+                else if (mState == TransferState.RECEIVING)
+                    onChunk(data);
+                else if (mState == TransferState.DRAINING) {
+                    mHandler.removeCallbacks(mRetryRequest);
+                    mHandler.postDelayed(mRetryRequest, RETRY_QUIET_MS);
                 }
             }
         }
     };
 
+    private void onHeader(byte[] data) {
+        if (data.length < 4) {
+            retryOrFail("short size header");
+            return;
+        }
+        mSize = ByteReader.getInt(data, 0, ByteOrder.LITTLE_ENDIAN);
+        if (mSize <= 0 || mSize > MAX_SCREENSHOT_SIZE) {
+            retryOrFail("invalid size " + mSize);
+            return;
+        }
+
+        mState = TransferState.RECEIVING;
+        mReceived = 0;
+        mNotifyCount = 0;
+        mStartTime = SystemClock.elapsedRealtime();
+
+        // Chunks are streamed to storage as they arrive so memory use doesn't depend on the screenshot size
+        try {
+            mFileUri = createFile();
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q)
+                mOut = mCtx.getContentResolver().openOutputStream(mFileUri);
+            else
+                mOut = new FileOutputStream(mFile);
+            if (mOut == null)
+                throw new IOException("Could not open " + mFileUri);
+            mOut = new BufferedOutputStream(mOut, WRITE_BUFFER_SIZE);
+        } catch (IOException | IllegalArgumentException | SecurityException ex) {
+            Log.e("ScreenshotService", "Could not create the screenshot file", ex);
+            fail();
+            return;
+        }
+
+        mProgress.start(mSize, STALL_TIMEOUT_MS);
+    }
+
+    private void onChunk(byte[] data) {
+        if (mReceived + data.length > mSize) {
+            retryOrFail("received " + (mReceived + data.length) + " bytes but " + mSize + " were announced");
+            return;
+        }
+
+        try {
+            mOut.write(data);
+        } catch (IOException ex) {
+            Log.e("ScreenshotService", "Could not write the screenshot", ex);
+            fail();
+            return;
+        }
+        mReceived += data.length;
+        mNotifyCount++;
+        mProgress.update(mReceived);
+        if (mReceived < mSize)
+            return;
+
+        // Closing flushes the last buffered chunks, so it can still fail
+        try {
+            mOut.close();
+        } catch (IOException ex) {
+            Log.e("ScreenshotService", "Could not write the screenshot", ex);
+            fail();
+            return;
+        }
+        mOut = null;
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.Q)
+            doMediaScan(mFile);
+
+        Uri fileUri = mFileUri;
+        mFileUri = null;
+        mFile = null;
+        mState = TransferState.IDLE;
+        mProgress.stop();
+        NotificationCompat.Builder notificationBuilder = new NotificationCompat.Builder(mCtx, NOTIFICATION_CHANNEL_ID)
+                .setContentTitle(mCtx.getText(R.string.screenshot))
+                .setLocalOnly(true);
+
+        long elapsed = Math.max(SystemClock.elapsedRealtime() - mStartTime, 1);
+        Log.i("ScreenshotService", String.format(Locale.US,
+                "Received %d bytes in %d notifications within %d ms (%.1f bytes/s, %.1f notifications/s)",
+                mSize, mNotifyCount, elapsed, mSize * 1000.0 / elapsed, mNotifyCount * 1000.0 / elapsed));
+
+        notificationBuilder.setContentText(mCtx.getText(R.string.downloaded));
+        notificationBuilder.setLargeIcon(decodeThumbnail(fileUri));
+        notificationBuilder.setSmallIcon(R.drawable.image_white);
+
+        Intent notificationIntent = new Intent();
+        notificationIntent.setAction(Intent.ACTION_VIEW);
+        notificationIntent.setDataAndType(fileUri, "image/*");
+        notificationIntent.addFlags(Intent.FLAG_GRANT_READ_URI_PERMISSION);
+        PendingIntent contentIntent = PendingIntent.getActivity(mCtx, 0, notificationIntent, 0);
+        notificationBuilder.setContentIntent(contentIntent);
+
+        Notification notification = notificationBuilder.build();
+        mNM.notify(NOTIFICATION, notification);
+    }
+
     @Override
     public void onEvent(ReadWriteEvent e) {
-        if(!e.wasSuccess())
+        if(!e.wasSuccess()) {
             Log.e("ScreenshotService", e.status().toString());
+            if (mState == TransferState.REQUESTED && AsteroidUUIDS.SCREENSHOT_REQUEST.equals(e.charUuid()))
+                retryOrFail("request write failed");
+        }
     }
 
-    private Uri createFile(byte[] totalData) throws IOException {
+    /**
+     * Creates an empty screenshot entry, either in the MediaStore or as a file shared through our
+     * FileProvider, and returns a {@link Uri} that can be opened for writing.
+     */
+    private Uri createFile() throws IOException {
         String dirStr = Environment.getExternalStoragePublicDirectory(Environment.DIRECTORY_PICTURES) + "/AsteroidOSSync";
         Uri uri;
 
@@ -201,36 +372,60 @@ public class ScreenshotService implements BleDevice.ReadWriteListener {
             metaInfo.put(MediaStore.MediaColumns.RELATIVE_PATH, Environment.DIRECTORY_PICTURES + "/AsteroidOSSync");
             metaInfo.put(MediaStore.Images.Media.DATE_ADDED, System.currentTimeMillis());
             metaInfo.put(MediaStore.Images.Media.DATE_TAKEN, System.currentTimeMillis());
-            Uri imageUri = resolver.insert(MediaStore.Images.Media.EXTERNAL_CONTENT_URI , metaInfo);
-            assert imageUri != null;
-            OutputStream out = resolver.openOutputStream(imageUri);
-            assert out != null;
-            try {
-                out.write(totalData);
-            } catch (IOException ioe) {
-                ioe.printStackTrace();
-            } finally {
-                out.close();
-                uri = imageUri;
-            }
+            uri = resolver.insert(MediaStore.Images.Media.EXTERNAL_CONTENT_URI , metaInfo);
+            if (uri == null)
+                throw new IOException("Could not insert screenshot into the MediaStore");
         } else {
             File directory = new File(dirStr);
             if(!directory.exists())
                 directory.mkdirs();
 
-            try {
-                FileOutputStream out = new FileOutputStream(fileName);
-                out.write(totalData);
-                out.close();
-                doMediaScan(fileName);
-            } catch(IOException e) {
-                e.printStackTrace();
-            }
+            mFile = fileName;
             uri = FileProvider.getUriForFile(mCtx, mCtx.getApplicationContext().getPackageName() + ".fileprovider", fileName);
         }
         return uri;
     }
 
+    /**
+     * Decodes a downsampled version of the screenshot, just big enough for a notification large icon.
+     */
+    private Bitmap decodeThumbnail(Uri uri) {
+        if (uri == null)
+            return null;
+
+        ContentResolver resolver = mCtx.getContentResolver();
+        int target = mCtx.getResources().getDimensionPixelSize(android.R.dimen.notification_large_icon_width);
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        InputStream in = null;
+        try {
+            options.inJustDecodeBounds = true;
+            in = resolver.openInputStream(uri);
+            BitmapFactory.decodeStream(in, null, options);
+            closeQuietly(in);
+
+            options.inSampleSize = 1;
+            while (target > 0 && Math.min(options.outWidth, options.outHeight) / (options.inSampleSize * 2) >= target)
+                options.inSampleSize *= 2;
+
+            options.inJustDecodeBounds = false;
+            in = resolver.openInputStream(uri);
+            return BitmapFactory.decodeStream(in, null, options);
+        } catch (IOException | SecurityException e) {
+            e.printStackTrace();
+            return null;
+        } finally {
+            closeQuietly(in);
+        }
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable == null)
+            return;
+        try {
+            closeable.close();
+        } catch (IOException ignored) {}
+    }
+
     private void doMediaScan(File file){
         MediaScannerConnection.scanFile(mCtx,
                 new String[] { file.toString() }, null,
@@ -245,12 +440,9 @@ public class ScreenshotService implements BleDevice.ReadWriteListener {
     class ScreenshotReqReceiver extends BroadcastReceiver {
         @Override
         public void onReceive(Context context, Intent intent) {
-            if(!mDownloading) {
-                mFirstNotify = true;
-                mDownloading = true;
-                byte[] data = new byte[1];
-                data[0] = 0x0;
-                mDevice.write(AsteroidUUIDS.SCREENSHOT_REQUEST, data, ScreenshotService.this);
+            if(mState == TransferState.IDLE) {
+                mAttempt = 1;
+                requestScreenshot();
             }
         }
     }
@@ -44,6 +44,7 @@ public class TimeService implements BleDevice.ReadWriteListener, SharedPreferenc
     public static final String TIME_SYNC_INTENT = "org.asteroidos.sync.TIME_SYNC_REQUEST_LISTENER";
 
     private BleDevice mDevice;
+    private WriteScheduler mWriteScheduler;
     private Context mCtx;
 
     private SharedPreferences mTimeSyncSettings;
@@ -52,8 +53,9 @@ public class TimeService implements BleDevice.ReadWriteListener, SharedPreferenc
     private PendingIntent alarmPendingIntent;
     private AlarmManager alarmMgr;
 
-    public TimeService(Context ctx, BleDevice device) {
+    public TimeService(Context ctx, BleDevice device, WriteScheduler writeScheduler) {
         mDevice = device;
+        mWriteScheduler = writeScheduler;
         mCtx = ctx;
         mTimeSyncSettings = ctx.getSharedPreferences(PREFS_NAME, 0);
         mTimeSyncSettings.registerOnSharedPreferenceChangeListener(this);
@@ -101,7 +103,7 @@ public class TimeService implements BleDevice.ReadWriteListener, SharedPreferenc
             data[3] = (byte)(c.get(Calendar.HOUR_OF_DAY));
             data[4] = (byte)(c.get(Calendar.MINUTE));
             data[5] = (byte)(c.get(Calendar.SECOND));
-            mDevice.write(AsteroidUUIDS.TIME_SET_CHAR, data, TimeService.this);
+            mWriteScheduler.writeLatest(AsteroidUUIDS.TIME_SET_CHAR, data, WriteScheduler.Priority.NORMAL, TimeService.this);
         }
     }
 
@@ -30,11 +30,13 @@ import android.preference.PreferenceManager;
 import android.util.Log;
 
 import com.idevicesinc.sweetblue.BleDevice;
+import com.idevicesinc.sweetblue.utils.ByteWriter;
 
 import org.asteroidos.sync.services.GPSTracker;
 import org.asteroidos.sync.utils.AsteroidUUIDS;
 import org.osmdroid.config.Configuration;
 
+import java.nio.ByteOrder;
 import java.nio.charset.StandardCharsets;
 import java.util.Calendar;
 import java.util.UUID;
@@ -61,6 +63,7 @@ public class WeatherService implements BleDevice.ReadWriteListener {
     public static final String WEATHER_SYNC_INTENT = "org.asteroidos.sync.WEATHER_SYNC_REQUEST_LISTENER";
 
     private BleDevice mDevice;
+    private WriteScheduler mWriteScheduler;
     private Context mCtx;
     private SharedPreferences mSettings;
 
@@ -72,8 +75,9 @@ public class WeatherService implements BleDevice.ReadWriteListener {
     private Float mLatitude;
     private Float mLongitude;
 
-    public WeatherService(Context ctx, BleDevice device) {
+    public WeatherService(Context ctx, BleDevice device, WriteScheduler writeScheduler) {
         mDevice = device;
+        mWriteScheduler = writeScheduler;
         mCtx = ctx;
 
         Configuration.getInstance().load(ctx, PreferenceManager.getDefaultSharedPreferences(ctx));
@@ -195,19 +199,16 @@ public class WeatherService implements BleDevice.ReadWriteListener {
                             i = i + 1;
                         }
 
-                        ids[2 * j] = (byte) (id >> 8);
-                        ids[2 * j + 1] = (byte) id;
-                        maxTemps[2 * j] = (byte) (max >> 8);
-                        maxTemps[2 * j + 1] = (byte) max;
-                        minTemps[2 * j] = (byte) (min >> 8);
-                        minTemps[2 * j + 1] = (byte) min;
+                        ByteWriter.putShort(ids, 2 * j, id, ByteOrder.BIG_ENDIAN);
+                        ByteWriter.putShort(maxTemps, 2 * j, max, ByteOrder.BIG_ENDIAN);
+                        ByteWriter.putShort(minTemps, 2 * j, min, ByteOrder.BIG_ENDIAN);
                     }
                 } catch(java.lang.ArrayIndexOutOfBoundsException ignored) {}
 
-                mDevice.write(AsteroidUUIDS.WEATHER_CITY_CHAR, city, WeatherService.this);
-                mDevice.write(AsteroidUUIDS.WEATHER_IDS_CHAR, ids, WeatherService.this);
-                mDevice.write(AsteroidUUIDS.WEATHER_MAX_TEMPS_CHAR, maxTemps, WeatherService.this);
-                mDevice.write(AsteroidUUIDS.WEATHER_MIN_TEMPS_CHAR, minTemps, WeatherService.this);
+                mWriteScheduler.writeLatest(AsteroidUUIDS.WEATHER_CITY_CHAR, city, WriteScheduler.Priority.BULK, WeatherService.this);
+                mWriteScheduler.writeLatest(AsteroidUUIDS.WEATHER_IDS_CHAR, ids, WriteScheduler.Priority.BULK, WeatherService.this);
+                mWriteScheduler.writeLatest(AsteroidUUIDS.WEATHER_MAX_TEMPS_CHAR, maxTemps, WriteScheduler.Priority.BULK, WeatherService.this);
+                mWriteScheduler.writeLatest(AsteroidUUIDS.WEATHER_MIN_TEMPS_CHAR, minTemps, WriteScheduler.Priority.BULK, WeatherService.this);
             }
 
             @Override public void failure(String message) {
@@ -0,0 +1,283 @@
+/*
+ * Copyright (C) 2016 - Florent Revest <revestflo@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.asteroidos.sync.ble;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.idevicesinc.sweetblue.BleDevice;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Single entry point for the characteristic writes of all the services of a device.
+ *
+ * <p>Only one write is handed to SweetBlue at a time, the others wait here so that they can be
+ * reordered by {@link Priority} and, for characteristics holding a state (media title, weather...),
+ * replaced by a newer value before they hit the air.</p>
+ *
+ * <p>Each write handed to SweetBlue gets its own callback, so a late answer to a write of a previous
+ * connection can't complete the one in flight. A write which isn't answered within
+ * {@link #WRITE_TIMEOUT_MS} is given up on so the queue doesn't stall.</p>
+ */
+@SuppressWarnings( "deprecation" ) // Before upgrading to SweetBlue 3.0, we don't have an alternative to the deprecated ReadWriteListener
+public class WriteScheduler {
+    // Longer than SweetBlue's own task timeout, which normally answers first
+    public static final long WRITE_TIMEOUT_MS = 20000;
+
+    public enum Priority {
+        // Incoming calls, media state, anything the user is waiting for
+        INTERACTIVE,
+        NORMAL,
+        // Weather and other periodic refreshes
+        BULK
+    }
+
+    /**
+     * Can be implemented by the listener of a write to learn that it will never be called, because
+     * the write was dropped by {@link #clear()}, replaced by {@link #writeLatest} or timed out.
+     */
+    public interface DropListener {
+        void onDropped(UUID charUuid);
+    }
+
+    private class PendingWrite implements BleDevice.ReadWriteListener {
+        final UUID charUuid;
+        final Priority priority;
+        final boolean coalesce;
+        byte[] data;
+        BleDevice.ReadWriteListener listener;
+        long enqueueTime;
+
+        PendingWrite(UUID charUuid, byte[] data, Priority priority, boolean coalesce, BleDevice.ReadWriteListener listener) {
+            this.charUuid = charUuid;
+            this.data = data;
+            this.priority = priority;
+            this.coalesce = coalesce;
+            this.listener = listener;
+            this.enqueueTime = SystemClock.elapsedRealtime();
+        }
+
+        @Override
+        public void onEvent(ReadWriteEvent e) {
+            onWriteEvent(this, e);
+        }
+    }
+
+    private final BleDevice mDevice;
+    private final ArrayDeque<PendingWrite>[] mQueues;
+    // Writes which are still waiting and may be replaced, by characteristic
+    private final Map<UUID, PendingWrite> mCoalescable = new HashMap<>();
+    private PendingWrite mInFlight;
+    private boolean mDispatching = false;
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+
+    private int mDepth;
+    private int mMaxDepth;
+    private int mCompleted;
+    private int mCoalesced;
+    private long mTotalLatencyMs;
+    private long mMaxLatencyMs;
+    private int mDropped;
+
+    @SuppressWarnings("unchecked")
+    public WriteScheduler(BleDevice device) {
+        mDevice = device;
+        mQueues = new ArrayDeque[Priority.values().length];
+        for (int i = 0; i < mQueues.length; i++)
+            mQueues[i] = new ArrayDeque<>();
+    }
+
+    /**
+     * Queues a write which must reach the watch, e.g. a notification.
+     */
+    public void write(UUID charUuid, byte[] data, Priority priority, BleDevice.ReadWriteListener listener) {
+        synchronized (this) {
+            enqueue(new PendingWrite(charUuid, data, priority, false, listener));
+        }
+        dispatch();
+    }
+
+    /**
+     * Queues a write which supersedes any write to the same characteristic that is still waiting.
+     */
+    public void writeLatest(UUID charUuid, byte[] data, Priority priority, BleDevice.ReadWriteListener listener) {
+        BleDevice.ReadWriteListener replaced = null;
+        synchronized (this) {
+            PendingWrite pending = mCoalescable.get(charUuid);
+            if (pending != null)
+                replaced = pending.listener;
+            if (pending != null && pending.priority.ordinal() <= priority.ordinal()) {
+                pending.data = data;
+                pending.listener = listener;
+                mCoalesced++;
+            } else {
+                if (pending != null) {
+                    // The new value is more urgent, drop the old one and queue at the new priority
+                    mQueues[pending.priority.ordinal()].remove(pending);
+                    mDepth--;
+                    mCoalesced++;
+                }
+                PendingWrite write = new PendingWrite(charUuid, data, priority, true, listener);
+                mCoalescable.put(charUuid, write);
+                enqueue(write);
+            }
+        }
+        notifyDropped(charUuid, replaced);
+        dispatch();
+    }
+
+    /**
+     * Drops all the waiting writes, to be called when the connection is lost.
+     */
+    public void clear() {
+        List<PendingWrite> dropped = new ArrayList<>();
+        synchronized (this) {
+            mHandler.removeCallbacks(mTimeout);
+            if (mInFlight != null)
+                dropped.add(mInFlight);
+            for (ArrayDeque<PendingWrite> queue : mQueues) {
+                dropped.addAll(queue);
+                queue.clear();
+            }
+            mCoalescable.clear();
+            mInFlight = null;
+            mDepth = 0;
+            mDropped += dropped.size();
+            Log.d("WriteScheduler", getStats());
+        }
+        for (PendingWrite write : dropped)
+            notifyDropped(write.charUuid, write.listener);
+    }
+
+    public synchronized int getQueueDepth() {
+        return mDepth;
+    }
+
+    public synchronized String getStats() {
+        return "depth=" + mDepth + " maxDepth=" + mMaxDepth + " completed=" + mCompleted
+                + " coalesced=" + mCoalesced + " avgLatencyMs=" + (mCompleted == 0 ? 0 : mTotalLatencyMs / mCompleted)
+                + " maxLatencyMs=" + mMaxLatencyMs + " dropped=" + mDropped;
+    }
+
+    private void enqueue(PendingWrite write) {
+        mQueues[write.priority.ordinal()].addLast(write);
+        mDepth++;
+        mMaxDepth = Math.max(mMaxDepth, mDepth);
+    }
+
+    /**
+     * Hands the next write to SweetBlue if none is in flight. Must be called without holding the
+     * lock, SweetBlue takes its own locks and may call us back synchronously.
+     */
+    private void dispatch() {
+        synchronized (this) {
+            // Whoever is already dispatching picks up the next write once it's done
+            if (mDispatching)
+                return;
+            mDispatching = true;
+        }
+        try {
+            // Loop instead of recursing when SweetBlue answers synchronously
+            PendingWrite next;
+            while ((next = takeNext()) != null)
+                mDevice.write(next.charUuid, next.data, next);
+        } catch (RuntimeException e) {
+            synchronized (this) {
+                mDispatching = false;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Puts the next write in flight, or ends the dispatch in the same critical section when there
+     * is nothing to put in flight, so that a write queued meanwhile can't be missed.
+     */
+    private synchronized PendingWrite takeNext() {
+        PendingWrite next = mInFlight == null ? poll() : null;
+        if (next == null) {
+            mDispatching = false;
+            return null;
+        }
+        mInFlight = next;
+        mHandler.removeCallbacks(mTimeout);
+        mHandler.postDelayed(mTimeout, WRITE_TIMEOUT_MS);
+        return next;
+    }
+
+    private PendingWrite poll() {
+        for (ArrayDeque<PendingWrite> queue : mQueues) {
+            PendingWrite write = queue.pollFirst();
+            if (write != null) {
+                mDepth--;
+                if (write.coalesce)
+                    mCoalescable.remove(write.charUuid);
+                return write;
+            }
+        }
+        return null;
+    }
+
+    private void onWriteEvent(PendingWrite write, BleDevice.ReadWriteListener.ReadWriteEvent e) {
+        synchronized (this) {
+            // Answer to a write which timed out or was dropped by clear()
+            if (write != mInFlight)
+                return;
+            mInFlight = null;
+            mHandler.removeCallbacks(mTimeout);
+            long latency = SystemClock.elapsedRealtime() - write.enqueueTime;
+            mCompleted++;
+            mTotalLatencyMs += latency;
+            mMaxLatencyMs = Math.max(mMaxLatencyMs, latency);
+        }
+        dispatch();
+        if (write.listener != null)
+            write.listener.onEvent(e);
+    }
+
+    private final Runnable mTimeout = new Runnable() {
+        @Override
+        public void run() {
+            PendingWrite write;
+            synchronized (WriteScheduler.this) {
+                // Reposted for every write put in flight, so the current one has waited long enough
+                write = mInFlight;
+                if (write == null)
+                    return;
+                mInFlight = null;
+                mDropped++;
+                Log.w("WriteScheduler", "Write to " + write.charUuid + " timed out");
+            }
+            dispatch();
+            notifyDropped(write.charUuid, write.listener);
+        }
+    };
+
+    private static void notifyDropped(UUID charUuid, BleDevice.ReadWriteListener listener) {
+        if (listener instanceof DropListener)
+            ((DropListener) listener).onDropped(charUuid);
+    }
+}
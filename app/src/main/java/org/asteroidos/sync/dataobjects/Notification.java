@@ -1,12 +1,35 @@
 package org.asteroidos.sync.dataobjects;
 
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
 import java.nio.charset.StandardCharsets;
 
 public class Notification {
+    // Binary wire format: msgType (1 byte), id (int32 LE), then for each non-empty field
+    // tag (1 byte), length (uint16 LE) and UTF-8 value, cut at a character boundary past 0xFFFF bytes
+    public static final byte BINARY_POSTED = 0x01;
+    public static final byte BINARY_REMOVED = 0x02;
+    public static final byte TAG_PACKAGE_NAME = 0x01;
+    public static final byte TAG_VIBRATION = 0x02;
+    public static final byte TAG_APP_NAME = 0x03;
+    public static final byte TAG_APP_ICON = 0x04;
+    public static final byte TAG_SUMMARY = 0x05;
+    public static final byte TAG_BODY = 0x06;
+    private static final int MAX_FIELD_LENGTH = 0xFFFF;
+    // Header and the six fields of a posted notification, all at their maximum length
+    public static final int MAX_BINARY_LENGTH = 5 + 6 * (3 + MAX_FIELD_LENGTH);
+
     String packageName, appName, appIcon, summary, body, vibration = "";
     MsgType msgType = null;
     int id = 0;
 
+    private byte[] xmlBytes;
+
     public Notification(MsgType msgType, String packageName, int id, String appName, String appIcon, String summary, String body, String vibration) {
         this.msgType = msgType;
         this.packageName = packageName;
@@ -27,37 +50,111 @@ public class Notification {
      * @return XML serialized {@link Notification}
      */
     public final String toXML() {
-        String xmlRequest = "";
+        StringBuilder xmlRequest = new StringBuilder();
 
         if (msgType == MsgType.POSTED) {
-            xmlRequest = "<insert><id>" + id + "</id>";
-            if (!packageName.isEmpty())
-                xmlRequest += "<pn>" + packageName + "</pn>";
-            if (!vibration.isEmpty())
-                xmlRequest += "<vb>" + vibration + "</vb>";
-            if (!appName.isEmpty())
-                xmlRequest += "<an>" + appName + "</an>";
-            if (!appIcon.isEmpty())
-                xmlRequest += "<ai>" + appIcon + "</ai>";
-            if (!summary.isEmpty())
-                xmlRequest += "<su>" + summary + "</su>";
-            if (!body.isEmpty())
-                xmlRequest += "<bo>" + body + "</bo>";
-            xmlRequest += "</insert>";
+            xmlRequest.append("<insert><id>").append(id).append("</id>");
+            appendElement(xmlRequest, "pn", packageName);
+            appendElement(xmlRequest, "vb", vibration);
+            appendElement(xmlRequest, "an", appName);
+            appendElement(xmlRequest, "ai", appIcon);
+            appendElement(xmlRequest, "su", summary);
+            appendElement(xmlRequest, "bo", body);
+            xmlRequest.append("</insert>");
         } else if (msgType == MsgType.REMOVED) {
-            xmlRequest = "<removed>" +
-                    "<id>" + id + "</id>" +
-                    "</removed>";
+            xmlRequest.append("<removed>")
+                    .append("<id>").append(id).append("</id>")
+                    .append("</removed>");
         }
 
-        return xmlRequest;
+        return xmlRequest.toString();
+    }
+
+    private static void appendElement(StringBuilder sb, String tag, String value) {
+        if (value == null || value.isEmpty())
+            return;
+
+        sb.append('<').append(tag).append('>');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '<': sb.append("&lt;"); break;
+                case '>': sb.append("&gt;"); break;
+                case '&': sb.append("&amp;"); break;
+                default: sb.append(c);
+            }
+        }
+        sb.append("</").append(tag).append('>');
     }
 
     /***
      * @return Returns {@link Notification#toXML()} as byte[] for BLE transmission
      */
     public final byte[] toBytes() {
-        return this.toXML().getBytes(StandardCharsets.UTF_8);
+        if (xmlBytes == null)
+            xmlBytes = this.toXML().getBytes(StandardCharsets.UTF_8);
+        return xmlBytes;
+    }
+
+    /***
+     * Writes the binary serialized {@link Notification} at the position of out.
+     *
+     * Fields too long for their length prefix are truncated, so a buffer of
+     * {@link #MAX_BINARY_LENGTH} bytes is always large enough.
+     *
+     * @param encoder a reusable UTF-8 encoder
+     * @return false if out is too small, its position is then undefined
+     */
+    public final boolean toBinary(ByteBuffer out, CharsetEncoder encoder) {
+        encoder.onMalformedInput(CodingErrorAction.REPLACE).onUnmappableCharacter(CodingErrorAction.REPLACE);
+        try {
+            out.order(ByteOrder.LITTLE_ENDIAN);
+            out.put(msgType == MsgType.POSTED ? BINARY_POSTED : BINARY_REMOVED);
+            out.putInt(id);
+
+            if (msgType == MsgType.POSTED) {
+                return putField(out, encoder, TAG_PACKAGE_NAME, packageName)
+                        && putField(out, encoder, TAG_VIBRATION, vibration)
+                        && putField(out, encoder, TAG_APP_NAME, appName)
+                        && putField(out, encoder, TAG_APP_ICON, appIcon)
+                        && putField(out, encoder, TAG_SUMMARY, summary)
+                        && putField(out, encoder, TAG_BODY, body);
+            }
+            return true;
+        } catch (BufferOverflowException e) {
+            return false;
+        }
+    }
+
+    private static boolean putField(ByteBuffer out, CharsetEncoder encoder, byte tag, String value) {
+        if (value == null || value.isEmpty())
+            return true;
+
+        out.put(tag);
+        int lengthPosition = out.position();
+        out.putShort((short) 0);
+
+        // Encode straight into the buffer, the length is patched in afterwards. Limiting the buffer
+        // to the longest field makes the encoder stop there, it never writes half a character.
+        int limit = out.limit();
+        int fieldLimit = lengthPosition + 2 + MAX_FIELD_LENGTH;
+        boolean bufferFull;
+        encoder.reset();
+        out.limit(Math.min(limit, fieldLimit));
+        try {
+            CoderResult result = encoder.encode(CharBuffer.wrap(value), out, true);
+            if (!result.isOverflow())
+                result = encoder.flush(out);
+            // An overflow at the field limit only means the value is truncated
+            bufferFull = result.isOverflow() && limit <= fieldLimit;
+        } finally {
+            out.limit(limit);
+        }
+        if (bufferFull)
+            return false;
+
+        out.putShort(lengthPosition, (short) (out.position() - lengthPosition - 2));
+        return true;
     }
 
     public enum MsgType {
@@ -43,10 +43,13 @@ import org.asteroidos.sync.ble.SilentModeService;
 import org.asteroidos.sync.ble.TimeService;
 import org.asteroidos.sync.services.PhoneStateReceiver;
 import org.asteroidos.sync.services.SynchronizationService;
+import org.asteroidos.sync.utils.BatteryHistory;
+import org.asteroidos.sync.views.BatteryChartView;
 
 public class DeviceDetailFragment extends Fragment {
     private TextView mDisconnectedText;
     private TextView mBatteryText;
+    private BatteryChartView mBatteryChart;
 
     private LinearLayout mDisconnectedPlaceholder;
     private LinearLayout mConnectedContent;
@@ -101,6 +104,7 @@ public class DeviceDetailFragment extends Fragment {
         mDisconnectedText = view.findViewById(R.id.info_disconnected);
         mBatteryText = view.findViewById(R.id.info_battery);
         mBatteryText.setText(String.valueOf(mBatteryPercentage)+" %");
+        mBatteryChart = view.findViewById(R.id.info_battery_chart);
 
         mConnectedContent = view.findViewById(R.id.device_connected_content);
         mDisconnectedPlaceholder = view.findViewById(R.id.device_disconnected_placeholder);
@@ -246,6 +250,16 @@ public class DeviceDetailFragment extends Fragment {
         } catch(IllegalStateException ignore) {}
     }
 
+    public void setBatteryHistory(BatteryHistory.Bucket[] buckets, long duration) {
+        if(mBatteryChart != null)
+            mBatteryChart.setBuckets(buckets, duration);
+    }
+
+    public void updateBatteryHistory(BatteryHistory.Bucket current) {
+        if(mBatteryChart != null)
+            mBatteryChart.updateBucket(current);
+    }
+
     public void scanningStarted() {
         if(mStatus == SynchronizationService.STATUS_DISCONNECTED)
             mDisconnectedText.setText(R.string.scanning);
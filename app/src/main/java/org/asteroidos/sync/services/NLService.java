@@ -30,17 +30,158 @@ import android.os.Build;
 import android.os.Handler;
 import android.service.notification.NotificationListenerService;
 import android.service.notification.StatusBarNotification;
+import android.util.Log;
+import android.util.LruCache;
 import androidx.core.app.NotificationCompat;
 
 import org.asteroidos.sync.utils.NotificationParser;
 
-import java.util.Arrays;
-import java.util.Hashtable;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.Map;
 
 public class NLService extends NotificationListenerService {
+    private static final int APP_LABEL_CACHE_SIZE = 64;
+
+    private static final Map<String, String> ICON_FROM_PACKAGE;
+    static {
+        Map<String, String> icons = new HashMap<>();
+        icons.put("code.name.monkey.retromusic", "ios-musical-notes");
+        icons.put("com.android.chrome", "logo-chrome");
+        icons.put("com.android.dialer", "ios-call");
+        icons.put("com.android.mms", "ios-text");
+        icons.put("com.android.vending", "md-appstore");
+        icons.put("com.chrome.beta", "logo-chrome");
+        icons.put("com.chrome.dev", "logo-chrome");
+        icons.put("com.devhd.feedly", "logo-rss");
+        icons.put("com.dropbox.android", "logo-dropbox");
+        icons.put("com.facebook.groups", "logo-facebook");
+        icons.put("com.facebook.katana", "logo-facebook");
+        icons.put("com.facebook.Mentions", "logo-facebook");
+        icons.put("com.facebook.orca", "ios-text");
+        icons.put("com.facebook.work", "logo-facebook");
+        icons.put("com.google.android.apps.docs.editors.docs", "ios-document");
+        icons.put("com.google.android.apps.giant", "md-analytics");
+        icons.put("com.google.android.apps.maps", "ios-map");
+        icons.put("com.google.android.apps.messaging", "ios-text");
+        icons.put("com.google.android.apps.photos", "ios-images");
+        icons.put("com.google.android.apps.plus", "logo-googleplus");
+        icons.put("com.google.android.calendar", "ios-calendar");
+        icons.put("com.google.android.contacts", "ios-contacts");
+        icons.put("com.google.android.dialer", "ios-call");
+        icons.put("com.google.android.gm", "ios-mail");
+        icons.put("com.google.android.googlequicksearchbox", "logo-google");
+        icons.put("com.google.android.music", "ios-musical-notes");
+        icons.put("com.google.android.talk", "ios-quote");
+        icons.put("com.google.android.videos", "ios-film");
+        icons.put("com.google.android.youtube", "logo-youtube");
+        icons.put("com.instagram.android", "logo-instagram");
+        icons.put("com.instagram.boomerang", "logo-instagram");
+        icons.put("com.instagram.layout", "logo-instagram");
+        icons.put("com.jb.gosms", "ios-text");
+        icons.put("com.joelapenna.foursquared", "logo-foursquare");
+        icons.put("com.keylesspalace.tusky", "md-mastodon");
+        icons.put("com.keylesspalace.tusky.test", "md-mastodon");
+        icons.put("com.linkedin.android.jobs.jobseeker", "logo-linkedin");
+        icons.put("com.linkedin.android.learning", "logo-linkedin");
+        icons.put("com.linkedin.android", "logo-linkedin");
+        icons.put("com.linkedin.android.salesnavigator", "logo-linkedin");
+        icons.put("com.linkedin.Coworkers", "logo-linkedin");
+        icons.put("com.linkedin.leap", "logo-linkedin");
+        icons.put("com.linkedin.pulse", "logo-linkedin");
+        icons.put("com.linkedin.recruiter", "logo-linkedin");
+        icons.put("com.mattermost.rnbeta", "logo-mattermost");
+        icons.put("com.mattermost.rn", "logo-mattermost");
+        icons.put("com.maxfour.music", "ios-musical-notes");
+        icons.put("com.microsoft.office.lync15", "logo-skype");
+        icons.put("com.microsoft.xboxone.smartglass.beta", "logo-xbox");
+        icons.put("com.microsoft.xboxone.smartglass", "logo-xbox");
+        icons.put("com.noinnion.android.greader.reader", "logo-rss");
+        icons.put("com.pinterest", "logo-pinterest");
+        icons.put("com.playstation.mobilemessenger", "logo-playstation");
+        icons.put("com.playstation.remoteplay", "logo-playstation");
+        icons.put("com.playstation.video", "logo-playstation");
+        icons.put("com.reddit.frontpage", "logo-reddit");
+        icons.put("com.runtastic.android", "ios-walk");
+        icons.put("com.runtastic.android.pro2", "ios-walk");
+        icons.put("com.scee.psxandroid", "logo-playstation");
+        icons.put("com.sec.android.app.music", "ios-musical-notes");
+        icons.put("com.skype.android.access", "logo-skype");
+        icons.put("com.skype.raider", "logo-skype");
+        icons.put("com.snapchat.android", "logo-snapchat");
+        icons.put("com.sonyericsson.conversations", "ios-text");
+        icons.put("com.spotify.music", "ios-musical-notes");
+        icons.put("com.tinder", "md-flame");
+        icons.put("com.tumblr", "logo-tumblr");
+        icons.put("com.twitter.android", "logo-twitter");
+        icons.put("com.valvesoftware.android.steam.community", "logo-steam");
+        icons.put("com.vimeo.android.videoapp", "logo-vimeo");
+        icons.put("com.whatsapp", "logo-whatsapp");
+        icons.put("com.yahoo.mobile.client.android.atom", "logo-yahoo");
+        icons.put("com.yahoo.mobile.client.android.finance", "logo-yahoo");
+        icons.put("com.yahoo.mobile.client.android.im", "logo-yahoo");
+        icons.put("com.yahoo.mobile.client.android.mail", "logo-yahoo");
+        icons.put("com.yahoo.mobile.client.android.search", "logo-yahoo");
+        icons.put("com.yahoo.mobile.client.android.sportacular", "logo-yahoo");
+        icons.put("com.yahoo.mobile.client.android.weather", "logo-yahoo");
+        icons.put("de.number26.android", "ios-card");
+        icons.put("flipboard.app", "logo-rss");
+        icons.put("net.etuldan.sparss.floss", "logo-rss");
+        icons.put("net.frju.flym", "logo-rss");
+        icons.put("net.slideshare.mobile", "logo-linkedin");
+        icons.put("org.buffer.android", "logo-buffer");
+        icons.put("org.kde.kdeconnect_tp", "md-phone-portrait");
+        icons.put("org.telegram.messenger", "ios-paper-plane");
+        icons.put("org.thoughtcrime.securesms", "logo-signal");
+        icons.put("org.thunderdog.challegram", "ios-paper-plane");
+        icons.put("org.wordpress.android", "logo-wordpress");
+        icons.put("tv.twitch.android.app", "logo-twitch");
+        icons.put("ws.xsoh.etar", "ios-calendar");
+        ICON_FROM_PACKAGE = Collections.unmodifiableMap(icons);
+    }
+
+    /**
+     * Decides which notifications of an app are forwarded to the watch.
+     */
+    static final class AppRule {
+        final boolean allowOngoing;
+        final int minPriority;
+        final boolean allowGroupSummary;
+        // Maximum UTF-8 size of the body sent to the watch, 0 for no limit
+        final int maxBodyBytes;
+
+        AppRule(boolean allowOngoing, int minPriority, boolean allowGroupSummary, int maxBodyBytes) {
+            this.allowOngoing = allowOngoing;
+            this.minPriority = minPriority;
+            this.allowGroupSummary = allowGroupSummary;
+            this.maxBodyBytes = maxBodyBytes;
+        }
+
+        boolean accepts(Notification notification) {
+            return notification.priority >= minPriority
+                    && (allowOngoing || (notification.flags & Notification.FLAG_ONGOING_EVENT) == 0)
+                    && !NotificationCompat.getLocalOnly(notification)
+                    && (allowGroupSummary || !NotificationCompat.isGroupSummary(notification));
+        }
+    }
+
+    private static final AppRule DEFAULT_RULE = new AppRule(false, Notification.PRIORITY_DEFAULT, false,
+            NotificationParser.DEFAULT_MAX_BODY_BYTES);
+    private static final Map<String, AppRule> APP_RULES;
+    static {
+        Map<String, AppRule> rules = new HashMap<>();
+        // Navigation instructions are posted as an ongoing notification
+        rules.put("com.google.android.apps.maps", new AppRule(true, Notification.PRIORITY_DEFAULT, false,
+                NotificationParser.DEFAULT_MAX_BODY_BYTES));
+        APP_RULES = Collections.unmodifiableMap(rules);
+    }
+
     private NLServiceReceiver nlServiceReceiver;
-    private Map<String, String> iconFromPackage;
+    private PackageChangeReceiver packageChangeReceiver;
+    private LruCache<String, String> appLabels;
+
+    private int forwardedCount = 0;
+    private int filteredCount = 0;
 
     @Override
     public void onCreate() {
@@ -50,105 +191,38 @@ public class NLService extends NotificationListenerService {
         filter.addAction("org.asteroidos.sync.NOTIFICATION_LISTENER_SERVICE");
         registerReceiver(nlServiceReceiver, filter);
 
-        iconFromPackage = new Hashtable<>();
-        iconFromPackage.put("code.name.monkey.retromusic", "ios-musical-notes");
-        iconFromPackage.put("com.android.chrome", "logo-chrome");
-        iconFromPackage.put("com.android.dialer", "ios-call");
-        iconFromPackage.put("com.android.mms", "ios-text");
-        iconFromPackage.put("com.android.vending", "md-appstore");
-        iconFromPackage.put("com.chrome.beta", "logo-chrome");
-        iconFromPackage.put("com.chrome.dev", "logo-chrome");
-        iconFromPackage.put("com.devhd.feedly", "logo-rss");
-        iconFromPackage.put("com.dropbox.android", "logo-dropbox");
-        iconFromPackage.put("com.facebook.groups", "logo-facebook");
-        iconFromPackage.put("com.facebook.katana", "logo-facebook");
-        iconFromPackage.put("com.facebook.Mentions", "logo-facebook");
-        iconFromPackage.put("com.facebook.orca", "ios-text");
-        iconFromPackage.put("com.facebook.work", "logo-facebook");
-        iconFromPackage.put("com.google.android.apps.docs.editors.docs", "ios-document");
-        iconFromPackage.put("com.google.android.apps.giant", "md-analytics");
-        iconFromPackage.put("com.google.android.apps.maps", "ios-map");
-        iconFromPackage.put("com.google.android.apps.messaging", "ios-text");
-        iconFromPackage.put("com.google.android.apps.photos", "ios-images");
-        iconFromPackage.put("com.google.android.apps.plus", "logo-googleplus");
-        iconFromPackage.put("com.google.android.calendar", "ios-calendar");
-        iconFromPackage.put("com.google.android.contacts", "ios-contacts");
-        iconFromPackage.put("com.google.android.dialer", "ios-call");
-        iconFromPackage.put("com.google.android.gm", "ios-mail");
-        iconFromPackage.put("com.google.android.googlequicksearchbox", "logo-google");
-        iconFromPackage.put("com.google.android.music", "ios-musical-notes");
-        iconFromPackage.put("com.google.android.talk", "ios-quote");
-        iconFromPackage.put("com.google.android.videos", "ios-film");
-        iconFromPackage.put("com.google.android.youtube", "logo-youtube");
-        iconFromPackage.put("com.instagram.android", "logo-instagram");
-        iconFromPackage.put("com.instagram.boomerang", "logo-instagram");
-        iconFromPackage.put("com.instagram.layout", "logo-instagram");
-        iconFromPackage.put("com.jb.gosms", "ios-text");
-        iconFromPackage.put("com.joelapenna.foursquared", "logo-foursquare");
-        iconFromPackage.put("com.keylesspalace.tusky", "md-mastodon");
-        iconFromPackage.put("com.keylesspalace.tusky.test", "md-mastodon");
-        iconFromPackage.put("com.linkedin.android.jobs.jobseeker", "logo-linkedin");
-        iconFromPackage.put("com.linkedin.android.learning", "logo-linkedin");
-        iconFromPackage.put("com.linkedin.android", "logo-linkedin");
-        iconFromPackage.put("com.linkedin.android.salesnavigator", "logo-linkedin");
-        iconFromPackage.put("com.linkedin.Coworkers", "logo-linkedin");
-        iconFromPackage.put("com.linkedin.leap", "logo-linkedin");
-        iconFromPackage.put("com.linkedin.pulse", "logo-linkedin");
-        iconFromPackage.put("com.linkedin.recruiter", "logo-linkedin");
-        iconFromPackage.put("com.mattermost.rnbeta", "logo-mattermost");
-        iconFromPackage.put("com.mattermost.rn", "logo-mattermost");
-        iconFromPackage.put("com.maxfour.music", "ios-musical-notes");
-        iconFromPackage.put("com.microsoft.office.lync15", "logo-skype");
-        iconFromPackage.put("com.microsoft.xboxone.smartglass.beta", "logo-xbox");
-        iconFromPackage.put("com.microsoft.xboxone.smartglass", "logo-xbox");
-        iconFromPackage.put("com.noinnion.android.greader.reader", "logo-rss");
-        iconFromPackage.put("com.pinterest", "logo-pinterest");
-        iconFromPackage.put("com.playstation.mobilemessenger", "logo-playstation");
-        iconFromPackage.put("com.playstation.remoteplay", "logo-playstation");
-        iconFromPackage.put("com.playstation.video", "logo-playstation");
-        iconFromPackage.put("com.reddit.frontpage", "logo-reddit");
-        iconFromPackage.put("com.runtastic.android", "ios-walk");
-        iconFromPackage.put("com.runtastic.android.pro2", "ios-walk");
-        iconFromPackage.put("com.scee.psxandroid", "logo-playstation");
-        iconFromPackage.put("com.sec.android.app.music", "ios-musical-notes");
-        iconFromPackage.put("com.skype.android.access", "logo-skype");
-        iconFromPackage.put("com.skype.raider", "logo-skype");
-        iconFromPackage.put("com.snapchat.android", "logo-snapchat");
-        iconFromPackage.put("com.sonyericsson.conversations", "ios-text");
-        iconFromPackage.put("com.spotify.music", "ios-musical-notes");
-        iconFromPackage.put("com.tinder", "md-flame");
-        iconFromPackage.put("com.tumblr", "logo-tumblr");
-        iconFromPackage.put("com.twitter.android", "logo-twitter");
-        iconFromPackage.put("com.valvesoftware.android.steam.community", "logo-steam");
-        iconFromPackage.put("com.vimeo.android.videoapp", "logo-vimeo");
-        iconFromPackage.put("com.whatsapp", "logo-whatsapp");
-        iconFromPackage.put("com.yahoo.mobile.client.android.atom", "logo-yahoo");
-        iconFromPackage.put("com.yahoo.mobile.client.android.finance", "logo-yahoo");
-        iconFromPackage.put("com.yahoo.mobile.client.android.im", "logo-yahoo");
-        iconFromPackage.put("com.yahoo.mobile.client.android.mail", "logo-yahoo");
-        iconFromPackage.put("com.yahoo.mobile.client.android.search", "logo-yahoo");
-        iconFromPackage.put("com.yahoo.mobile.client.android.sportacular", "logo-yahoo");
-        iconFromPackage.put("com.yahoo.mobile.client.android.weather", "logo-yahoo");
-        iconFromPackage.put("de.number26.android", "ios-card");
-        iconFromPackage.put("flipboard.app", "logo-rss");
-        iconFromPackage.put("net.etuldan.sparss.floss", "logo-rss");
-        iconFromPackage.put("net.frju.flym", "logo-rss");
-        iconFromPackage.put("net.slideshare.mobile", "logo-linkedin");
-        iconFromPackage.put("org.buffer.android", "logo-buffer");
-        iconFromPackage.put("org.kde.kdeconnect_tp", "md-phone-portrait");
-        iconFromPackage.put("org.telegram.messenger", "ios-paper-plane");
-        iconFromPackage.put("org.thoughtcrime.securesms", "logo-signal");
-        iconFromPackage.put("org.thunderdog.challegram", "ios-paper-plane");
-        iconFromPackage.put("org.wordpress.android", "logo-wordpress");
-        iconFromPackage.put("tv.twitch.android.app", "logo-twitch");
-        iconFromPackage.put("ws.xsoh.etar", "ios-calendar");
+        appLabels = new LruCache<>(APP_LABEL_CACHE_SIZE);
+        packageChangeReceiver = new PackageChangeReceiver();
+        IntentFilter packageFilter = new IntentFilter();
+        packageFilter.addAction(Intent.ACTION_PACKAGE_CHANGED);
+        packageFilter.addAction(Intent.ACTION_PACKAGE_REPLACED);
+        packageFilter.addAction(Intent.ACTION_PACKAGE_REMOVED);
+        packageFilter.addDataScheme("package");
+        registerReceiver(packageChangeReceiver, packageFilter);
     }
 
     @Override
     public void onDestroy() {
         super.onDestroy();
         unregisterReceiver(nlServiceReceiver);
-        iconFromPackage.clear();
+        unregisterReceiver(packageChangeReceiver);
+        appLabels.evictAll();
+        Log.d("NLService", forwardedCount + " notifications forwarded, " + filteredCount + " filtered");
+    }
+
+    private String getAppLabel(String packageName) {
+        String appName = appLabels.get(packageName);
+        if (appName != null)
+            return appName;
+
+        appName = "";
+        try {
+            final PackageManager pm = getApplicationContext().getPackageManager();
+            ApplicationInfo ai = pm.getApplicationInfo(packageName, 0);
+            appName = pm.getApplicationLabel(ai).toString();
+        } catch (PackageManager.NameNotFoundException ignored) {}
+        appLabels.put(packageName, appName);
+        return appName;
     }
 
     @Override
@@ -156,26 +230,21 @@ public class NLService extends NotificationListenerService {
         Notification notification = sbn.getNotification();
         String packageName = sbn.getPackageName();
 
-        String[] allowedOngoingApps = {"com.google.android.apps.maps"};
-        if((notification.priority < Notification.PRIORITY_DEFAULT) ||
-           ((notification.flags & Notification.FLAG_ONGOING_EVENT) != 0
-            && !Arrays.asList(allowedOngoingApps).contains(packageName)) ||
-           (NotificationCompat.getLocalOnly(notification)) ||
-           (NotificationCompat.isGroupSummary(notification)))
+        AppRule rule = APP_RULES.get(packageName);
+        if (rule == null)
+            rule = DEFAULT_RULE;
+        if (!rule.accepts(notification)) {
+            filteredCount++;
             return;
+        }
+        forwardedCount++;
 
-        NotificationParser notifParser = new NotificationParser(notification);
+        NotificationParser notifParser = new NotificationParser(notification, rule.maxBodyBytes);
         String summary = notifParser.summary;
         String body = notifParser.body;
         int id = sbn.getId();
-        String appIcon = iconFromPackage.get(packageName);
-
-        String appName = "";
-        try {
-            final PackageManager pm = getApplicationContext().getPackageManager();
-            ApplicationInfo ai = pm.getApplicationInfo(packageName, 0);
-            appName = pm.getApplicationLabel(ai).toString();
-        } catch (PackageManager.NameNotFoundException ignored) {}
+        String appIcon = ICON_FROM_PACKAGE.get(packageName);
+        String appName = packageName == null ? "" : getAppLabel(packageName);
 
         if(summary == null) summary = "";
         else                summary = summary.trim();
@@ -200,6 +269,7 @@ public class NLService extends NotificationListenerService {
     public void onNotificationRemoved(StatusBarNotification sbn) {
         Intent i = new Intent("org.asteroidos.sync.NOTIFICATION_LISTENER");
         i.putExtra("event", "removed");
+        i.putExtra("packageName", sbn.getPackageName());
         i.putExtra("id", sbn.getId());
         sendBroadcast(i);
     }
@@ -211,6 +281,14 @@ public class NLService extends NotificationListenerService {
         requestRebind(new ComponentName(this, NotificationListenerService.class));
     }
 
+    class PackageChangeReceiver extends BroadcastReceiver {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            if (intent.getData() != null)
+                appLabels.remove(intent.getData().getSchemeSpecificPart());
+        }
+    }
+
     class NLServiceReceiver extends BroadcastReceiver {
         @Override
         public void onReceive(Context context, Intent intent) {
@@ -221,7 +299,12 @@ public class NLService extends NotificationListenerService {
                     public void run() {
                         StatusBarNotification[] notifs = getActiveNotifications();
                         for(StatusBarNotification notif : notifs)
-                            onNotificationPosted(notif);                    }
+                            onNotificationPosted(notif);
+
+                        Intent i = new Intent("org.asteroidos.sync.NOTIFICATION_LISTENER");
+                        i.putExtra("event", "refreshed");
+                        sendBroadcast(i);
+                    }
                 }, 500);
             }
         }
@@ -40,6 +40,8 @@ import com.idevicesinc.sweetblue.BleManager;
 import com.idevicesinc.sweetblue.BleManagerConfig;
 import com.idevicesinc.sweetblue.BleNodeConfig;
 import com.idevicesinc.sweetblue.BleTask;
+import com.idevicesinc.sweetblue.ScanPrefilter;
+import com.idevicesinc.sweetblue.utils.ByteReader;
 import com.idevicesinc.sweetblue.utils.Interval;
 
 import org.asteroidos.sync.BuildConfig;
@@ -51,7 +53,14 @@ import org.asteroidos.sync.ble.ScreenshotService;
 import org.asteroidos.sync.ble.SilentModeService;
 import org.asteroidos.sync.ble.TimeService;
 import org.asteroidos.sync.ble.WeatherService;
+import org.asteroidos.sync.ble.WriteScheduler;
 import org.asteroidos.sync.utils.AsteroidUUIDS;
+import org.asteroidos.sync.utils.BatteryHistory;
+import org.asteroidos.sync.utils.NotificationStateCache;
+import org.asteroidos.sync.utils.TransferProgress;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import static com.idevicesinc.sweetblue.BleManager.get;
 
@@ -75,6 +84,11 @@ public class SynchronizationService extends Service implements BleDevice.StateLi
     public static final int MSG_REQUEST_BATTERY_LIFE = 6;
     public static final int MSG_SET_DEVICE = 7;
     public static final int MSG_UPDATE = 8;
+    public static final int MSG_REQUEST_BATTERY_HISTORY = 9;
+    public static final int MSG_SET_BATTERY_HISTORY = 10;
+    public static final int MSG_UPDATE_BATTERY_HISTORY = 11;
+
+    public static final long BATTERY_HISTORY_DURATION = 3 * 24 * BatteryHistory.HOUR;
 
     public static final int STATUS_CONNECTED = 1;
     public static final int STATUS_DISCONNECTED = 2;
@@ -85,6 +99,14 @@ public class SynchronizationService extends Service implements BleDevice.StateLi
     private NotificationService mNotificationService;
     private MediaService mMediaService;
     private TimeService mTimeService;
+    private WriteScheduler mWriteScheduler;
+    private BatteryHistory mBatteryHistory;
+    // What the current watch was sent, kept across its reconnections
+    private NotificationStateCache mNotificationCache;
+    private String mNotificationCacheMac;
+
+    // The battery history reads and writes SQLite, so everything touching it is serialized on this thread
+    private final ExecutorService mHistoryExecutor = Executors.newSingleThreadExecutor();
 
     private SilentModeService silentModeService;
     private SharedPreferences mPrefs;
@@ -94,11 +116,13 @@ public class SynchronizationService extends Service implements BleDevice.StateLi
         if(mState == STATUS_CONNECTED || mState == STATUS_CONNECTING) return;
         mDevice.setListener_State(SynchronizationService.this);
 
-        mWeatherService = new WeatherService(getApplicationContext(), mDevice);
-        mNotificationService = new NotificationService(getApplicationContext(), mDevice);
-        mMediaService = new MediaService(getApplicationContext(), mDevice);
-        mScreenshotService = new ScreenshotService(getApplicationContext(), mDevice);
-        mTimeService = new TimeService(getApplicationContext(), mDevice);
+        mWriteScheduler = new WriteScheduler(mDevice);
+        replaceBatteryHistory(mDevice);
+        mWeatherService = new WeatherService(getApplicationContext(), mDevice, mWriteScheduler);
+        mNotificationService = new NotificationService(getApplicationContext(), mDevice, mWriteScheduler, notificationCacheFor(mDevice));
+        mMediaService = new MediaService(getApplicationContext(), mDevice, mWriteScheduler);
+        mScreenshotService = new ScreenshotService(getApplicationContext(), mDevice, mWriteScheduler);
+        mTimeService = new TimeService(getApplicationContext(), mDevice, mWriteScheduler);
         silentModeService = new SilentModeService(getApplicationContext());
 
         mDevice.connect();
@@ -124,13 +148,85 @@ public class SynchronizationService extends Service implements BleDevice.StateLi
             @Override public void onEvent(ReadWriteEvent result)
             {
                 if(result.wasSuccess())
-                    try {
-                        replyTo.send(Message.obtain(null, MSG_SET_BATTERY_PERCENTAGE, result.data()[0], 0));
-                    } catch (RemoteException | NullPointerException ignored) {}
+                    sendBatteryPercentage(result.data());
+            }
+        });
+    }
+
+    void handleReqBatteryHistory() {
+        final BatteryHistory history = mBatteryHistory;
+        final Messenger target = replyTo;
+        if(history == null) return;
+        mHistoryExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    Message answer = Message.obtain(null, MSG_SET_BATTERY_HISTORY);
+                    answer.setData(BatteryHistory.toBundle(history.getHourly(BATTERY_HISTORY_DURATION)));
+                    target.send(answer);
+                } catch (RemoteException | NullPointerException ignored) {}
+            }
+        });
+    }
+
+    /**
+     * Forwards the battery percentage byte to the UI and folds it into the history aggregates.
+     */
+    private void sendBatteryPercentage(byte[] data) {
+        if (!ByteReader.isInRange(data, 0, 1))
+            return;
+        final int percentage = ByteReader.getUnsignedByte(data, 0);
+        final long time = System.currentTimeMillis();
+        final BatteryHistory history = mBatteryHistory;
+        final Messenger target = replyTo;
+        try {
+            replyTo.send(Message.obtain(null, MSG_SET_BATTERY_PERCENTAGE, percentage, 0));
+        } catch (RemoteException | NullPointerException ignored) {}
+
+        if (history == null) return;
+        mHistoryExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                history.addSample(percentage, time);
+                BatteryHistory.Bucket current = history.getCurrentHour();
+                if (current == null) return;
+                try {
+                    Message answer = Message.obtain(null, MSG_UPDATE_BATTERY_HISTORY);
+                    answer.obj = current;
+                    target.send(answer);
+                } catch (RemoteException | NullPointerException ignored) {}
             }
         });
     }
 
+    private void flushBatteryHistory() {
+        final BatteryHistory history = mBatteryHistory;
+        if (history == null) return;
+        mHistoryExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                history.flush();
+            }
+        });
+    }
+
+    /**
+     * Starts a new history for <code>device</code>, or none if null, once whatever the current one
+     * still holds in memory is written out.
+     */
+    private void replaceBatteryHistory(BleDevice device) {
+        flushBatteryHistory();
+        mBatteryHistory = device == null ? null : new BatteryHistory(device);
+    }
+
+    private NotificationStateCache notificationCacheFor(BleDevice device) {
+        if (mNotificationCache == null || !device.getMacAddress().equals(mNotificationCacheMac)) {
+            mNotificationCache = new NotificationStateCache();
+            mNotificationCacheMac = device.getMacAddress();
+        }
+        return mNotificationCache;
+    }
+
     void handleSetDevice(String macAddress) {
         SharedPreferences.Editor editor = mPrefs.edit();
         editor.putString(MainActivity.PREFS_DEFAULT_MAC_ADDR, macAddress);
@@ -146,9 +242,13 @@ public class SynchronizationService extends Service implements BleDevice.StateLi
                 mDevice.unbond();
             }
             mDevice = null;
+            replaceBatteryHistory(null);
             editor.putString(MainActivity.PREFS_DEFAULT_LOC_NAME, "");
         } else {
-            mDevice = mBleMngr.getDevice(macAddress);
+            BleDevice device = mBleMngr.getDevice(macAddress);
+            if (device != mDevice)
+                replaceBatteryHistory(null);
+            mDevice = device;
 
             String name = mDevice.getName_normalized();
             try {
@@ -178,9 +278,7 @@ public class SynchronizationService extends Service implements BleDevice.StateLi
                     @Override public void onEvent(ReadWriteEvent result)
                     {
                         if(result.wasSuccess())
-                            try {
-                                replyTo.send(Message.obtain(null, MSG_SET_BATTERY_PERCENTAGE, result.data()[0], 0));
-                            } catch (RemoteException | NullPointerException ignored) {}
+                            sendBatteryPercentage(result.data());
                     }
                 });
             } catch (RemoteException | NullPointerException ignored) {}
@@ -214,6 +312,9 @@ public class SynchronizationService extends Service implements BleDevice.StateLi
                 case MSG_UPDATE:
                     mService.handleUpdate();
                     break;
+                case MSG_REQUEST_BATTERY_HISTORY:
+                    mService.handleReqBatteryHistory();
+                    break;
                 default:
                     super.handleMessage(msg);
             }
@@ -238,10 +339,22 @@ public class SynchronizationService extends Service implements BleDevice.StateLi
         cfg.forceBondDialog = true;
         cfg.taskTimeoutRequestFilter = new TaskTimeoutRequestFilter();
         cfg.defaultScanFilter = new WatchesFilter();
+        // Same criterion as WatchesFilter, but checked on the raw advertisement before SweetBlue does any work
+        cfg.scanPrefilter = new ScanPrefilter(AsteroidUUIDS.SERVICE_UUID);
+        // Let the chipset do that filtering when it can, and batch results for longer while in the background
+        cfg.offloadScanPrefilter = true;
+        cfg.backgroundScanReportDelay = Interval.secs(5.0);
         cfg.enableCrashResolver = true;
         cfg.bondFilter = new BondFilter();
         cfg.alwaysUseAutoConnect = true;
         cfg.useLeTransportForBonding = true;
+        // Let the idle update loop sleep until a poll, callback or new task needs it, instead of ticking every half second
+        cfg.idleUpdatesOnDemand = true;
+        // Don't wake it up again every half second just to poll the adapter state
+        cfg.idleStatePollRate = Interval.secs(10.0);
+        // Keep battery samples on disk for the discharge chart, and everything logged there for two weeks at most
+        cfg.historicalDataLogFilter = new BatteryHistory.LogFilter();
+        cfg.historicalDataMaxAge = Interval.mins(14 * 24 * 60);
         if (BuildConfig.DEBUG)
             cfg.loggingEnabled = true;
         mBleMngr.setConfig(cfg);
@@ -257,11 +370,13 @@ public class SynchronizationService extends Service implements BleDevice.StateLi
             mDevice = mBleMngr.getDevice(defaultDevMacAddr);
             mDevice.setListener_State(SynchronizationService.this);
 
-            mWeatherService = new WeatherService(getApplicationContext(), mDevice);
-            mNotificationService = new NotificationService(getApplicationContext(), mDevice);
-            mMediaService = new MediaService(getApplicationContext(), mDevice);
-            mScreenshotService = new ScreenshotService(getApplicationContext(), mDevice);
-            mTimeService = new TimeService(getApplicationContext(), mDevice);
+            mWriteScheduler = new WriteScheduler(mDevice);
+            replaceBatteryHistory(mDevice);
+            mWeatherService = new WeatherService(getApplicationContext(), mDevice, mWriteScheduler);
+            mNotificationService = new NotificationService(getApplicationContext(), mDevice, mWriteScheduler, notificationCacheFor(mDevice));
+            mMediaService = new MediaService(getApplicationContext(), mDevice, mWriteScheduler);
+            mScreenshotService = new ScreenshotService(getApplicationContext(), mDevice, mWriteScheduler);
+            mTimeService = new TimeService(getApplicationContext(), mDevice, mWriteScheduler);
             silentModeService = new SilentModeService(getApplicationContext());
 
             mDevice.connect();
@@ -308,6 +423,8 @@ public class SynchronizationService extends Service implements BleDevice.StateLi
     public void onDestroy() {
         if(mDevice != null)
             mDevice.disconnect();
+        flushBatteryHistory();
+        mHistoryExecutor.shutdown();
         mNM.cancel(NOTIFICATION);
     }
 
@@ -330,12 +447,8 @@ public class SynchronizationService extends Service implements BleDevice.StateLi
             event.device().enableNotify(AsteroidUUIDS.BATTERY_UUID, new BleDevice.ReadWriteListener() {
                 @Override
                 public void onEvent(ReadWriteEvent e) {
-                    try {
-                        if (e.isNotification() && e.charUuid().equals(AsteroidUUIDS.BATTERY_UUID)) {
-                            byte[] data = e.data();
-                            replyTo.send(Message.obtain(null, MSG_SET_BATTERY_PERCENTAGE, data[0], 0));
-                        }
-                    } catch(RemoteException | NullPointerException ignored) {}
+                    if (e.isNotification() && e.charUuid().equals(AsteroidUUIDS.BATTERY_UUID))
+                        sendBatteryPercentage(e.data());
                 }
             });
 
@@ -358,8 +471,10 @@ public class SynchronizationService extends Service implements BleDevice.StateLi
                 replyTo.send(Message.obtain(null, MSG_SET_STATUS, STATUS_DISCONNECTED, 0));
             } catch (RemoteException | NullPointerException ignored) {}
 
+            // None of the transfers in progress can complete anymore
+            TransferProgress.cancelAll();
             if(mScreenshotService != null)
-                mScreenshotService.sync();
+                mScreenshotService.unsync();
             if (mWeatherService != null)
                 mWeatherService.unsync();
             if (mNotificationService != null)
@@ -370,6 +485,9 @@ public class SynchronizationService extends Service implements BleDevice.StateLi
                 mTimeService.unsync();
             if (silentModeService != null)
                 silentModeService.onDisconnect();
+            if (mWriteScheduler != null)
+                mWriteScheduler.clear();
+            flushBatteryHistory();
         } else if(event.didEnter(BleDeviceState.CONNECTING)) {
             mState = STATUS_CONNECTING;
             updateNotification();
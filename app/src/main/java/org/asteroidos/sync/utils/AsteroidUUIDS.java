@@ -36,4 +36,5 @@ public class AsteroidUUIDS {
     public static final UUID NOTIFICATION_SERVICE_UUID  = UUID.fromString("00009071-0000-0000-0000-00A57E401D05");
     public static final UUID NOTIFICATION_UPDATE_CHAR   = UUID.fromString("00009001-0000-0000-0000-00A57E401D05");
     public static final UUID NOTIFICATION_FEEDBACK_CHAR = UUID.fromString("00009002-0000-0000-0000-00A57E401D05");
+    public static final UUID NOTIFICATION_CAPABILITIES_CHAR = UUID.fromString("00009003-0000-0000-0000-00A57E401D05");
 }
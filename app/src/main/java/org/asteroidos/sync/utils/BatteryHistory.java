@@ -0,0 +1,325 @@
+/*
+ * Copyright (C) 2016 - Florent Revest <revestflo@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.asteroidos.sync.utils;
+
+import android.os.Bundle;
+import android.os.Parcel;
+import android.os.Parcelable;
+
+import com.idevicesinc.sweetblue.BleDevice;
+import com.idevicesinc.sweetblue.BleNodeConfig;
+import com.idevicesinc.sweetblue.utils.ByteReader;
+import com.idevicesinc.sweetblue.utils.ByteWriter;
+import com.idevicesinc.sweetblue.utils.EpochTime;
+import com.idevicesinc.sweetblue.utils.EpochTimeRange;
+import com.idevicesinc.sweetblue.utils.HistoricalDataCursor;
+
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.UUID;
+
+/**
+ * Battery level time-series of a watch, kept in SweetBlue's historical data store.
+ *
+ * Raw samples are logged by SweetBlue itself under {@link AsteroidUUIDS#BATTERY_UUID} whenever the
+ * characteristic is read or notified, as long as {@link LogFilter} is set on the manager config.
+ * Each row holds the one byte percentage. On top of that, per minute and per hour min/max/avg are
+ * folded in as samples arrive and written once their bucket is over, so charts spanning days only
+ * have to walk the hourly rows. Those are read from disk once and then kept in memory as new ones
+ * are written.
+ *
+ * Reading and writing go to SQLite, so this is meant to be used from a background thread.
+ */
+public class BatteryHistory {
+    public static final UUID MINUTE_UUID = UUID.fromString("00000001-0000-0000-0000-00A57E401D0B");
+    public static final UUID HOUR_UUID   = UUID.fromString("00000002-0000-0000-0000-00A57E401D0B");
+
+    public static final long MINUTE = 60 * 1000L;
+    public static final long HOUR = 60 * MINUTE;
+
+    private static final String KEY_BUCKETS = "buckets";
+
+    // min, max, avg and a big endian 16 bit sample count
+    private static final int BUCKET_SIZE = 5;
+
+    private final BleDevice mDevice;
+    private final Aggregate mMinute = new Aggregate(MINUTE_UUID, MINUTE);
+    private final Aggregate mHour = new Aggregate(HOUR_UUID, HOUR);
+
+    // Hourly rows written so far, oldest first, null until first read from disk
+    private ArrayList<Bucket> mHourly;
+    private long mHourlyDuration;
+
+    public BatteryHistory(BleDevice device) {
+        mDevice = device;
+    }
+
+    public synchronized void addSample(int percentage, long time) {
+        mMinute.add(percentage, time);
+        mHour.add(percentage, time);
+    }
+
+    /**
+     * Writes out the buckets still being filled, e.g. when the watch disconnects. Should more samples
+     * of the same bucket come in later, a second row is written for it and reads merge both.
+     */
+    public synchronized void flush() {
+        mMinute.write();
+        mHour.write();
+    }
+
+    /**
+     * Returns the hourly aggregates that started within the last <code>duration</code> milliseconds,
+     * oldest first, including the hour still being filled. Only the first call, or one asking for a
+     * longer duration, reads from disk.
+     */
+    public synchronized Bucket[] getHourly(long duration) {
+        long now = System.currentTimeMillis();
+        if (mHourly == null || duration > mHourlyDuration) {
+            mHourly = load(HOUR_UUID, now - duration - HOUR);
+            mHourlyDuration = duration;
+        }
+
+        // Drop the hours which scrolled out of the chart
+        int expired = 0;
+        while (expired < mHourly.size() && mHourly.get(expired).time + HOUR < now - mHourlyDuration)
+            expired++;
+        mHourly.subList(0, expired).clear();
+
+        ArrayList<Bucket> buckets = new ArrayList<>(mHourly.size() + 1);
+        for (Bucket bucket : mHourly)
+            buckets.add(bucket.copy());
+        Bucket current = mHour.toBucket();
+        if (current != null)
+            append(buckets, current);
+        return buckets.toArray(new Bucket[0]);
+    }
+
+    /**
+     * Returns the hour still being filled, including what was already flushed of it, or null if
+     * nothing was sampled this hour.
+     */
+    public synchronized Bucket getCurrentHour() {
+        Bucket current = mHour.toBucket();
+        if (current == null || mHourly == null || mHourly.isEmpty())
+            return current;
+        Bucket last = mHourly.get(mHourly.size() - 1);
+        if (last.time != current.time)
+            return current;
+        Bucket merged = last.copy();
+        merged.merge(current);
+        return merged;
+    }
+
+    /**
+     * Returns the per minute aggregates that started within the last <code>duration</code> milliseconds,
+     * oldest first, including the minute still being filled. These always come from disk.
+     */
+    public synchronized Bucket[] getMinutes(long duration) {
+        ArrayList<Bucket> buckets = load(MINUTE_UUID, System.currentTimeMillis() - duration - MINUTE);
+        Bucket current = mMinute.toBucket();
+        if (current != null)
+            append(buckets, current);
+        return buckets.toArray(new Bucket[0]);
+    }
+
+    private ArrayList<Bucket> load(UUID uuid, long from) {
+        ArrayList<Bucket> buckets = new ArrayList<>();
+        HistoricalDataCursor cursor = mDevice.getHistoricalData_cursor(uuid, EpochTimeRange.fromGiven_toMax(new EpochTime(from)));
+        try {
+            while (cursor.moveToNext()) {
+                Bucket bucket = Bucket.fromBlob(cursor.getEpochTime(), cursor.getBlob());
+                if (bucket != null)
+                    append(buckets, bucket);
+            }
+        } finally {
+            cursor.close();
+        }
+        return buckets;
+    }
+
+    // Rows of the same hour, written by flush() or when the count overflows, are merged back together
+    private static void append(ArrayList<Bucket> buckets, Bucket bucket) {
+        Bucket previous = buckets.isEmpty() ? null : buckets.get(buckets.size() - 1);
+        if (previous != null && previous.time == bucket.time)
+            previous.merge(bucket);
+        else
+            buckets.add(bucket);
+    }
+
+    /**
+     * Packs buckets into the data of a {@link android.os.Message}, arrays can't go in its obj.
+     */
+    public static Bundle toBundle(Bucket[] buckets) {
+        Bundle data = new Bundle();
+        data.putParcelableArray(KEY_BUCKETS, buckets);
+        return data;
+    }
+
+    public static Bucket[] fromBundle(Bundle data) {
+        data.setClassLoader(Bucket.class.getClassLoader());
+        Parcelable[] buckets = data.getParcelableArray(KEY_BUCKETS);
+        if (buckets == null)
+            return new Bucket[0];
+        return Arrays.copyOf(buckets, buckets.length, Bucket[].class);
+    }
+
+    /**
+     * Aggregate of the samples of one minute or hour. Instances are handed to the UI, which only reads them.
+     */
+    public static class Bucket implements Parcelable {
+        public final long time;
+        public int min;
+        public int max;
+        public int avg;
+        public int count;
+
+        Bucket(long time, int min, int max, int avg, int count) {
+            this.time = time;
+            this.min = min;
+            this.max = max;
+            this.avg = avg;
+            this.count = count;
+        }
+
+        private Bucket(Parcel in) {
+            time = in.readLong();
+            min = in.readInt();
+            max = in.readInt();
+            avg = in.readInt();
+            count = in.readInt();
+        }
+
+        Bucket copy() {
+            return new Bucket(time, min, max, avg, count);
+        }
+
+        @Override
+        public int describeContents() {
+            return 0;
+        }
+
+        @Override
+        public void writeToParcel(Parcel out, int flags) {
+            out.writeLong(time);
+            out.writeInt(min);
+            out.writeInt(max);
+            out.writeInt(avg);
+            out.writeInt(count);
+        }
+
+        public static final Parcelable.Creator<Bucket> CREATOR = new Parcelable.Creator<Bucket>() {
+            @Override
+            public Bucket createFromParcel(Parcel in) {
+                return new Bucket(in);
+            }
+
+            @Override
+            public Bucket[] newArray(int size) {
+                return new Bucket[size];
+            }
+        };
+
+        void merge(Bucket other) {
+            int total = count + other.count;
+            avg = total == 0 ? avg : (avg * count + other.avg * other.count) / total;
+            min = Math.min(min, other.min);
+            max = Math.max(max, other.max);
+            count = total;
+        }
+
+        static Bucket fromBlob(long time, byte[] blob) {
+            if (!ByteReader.isInRange(blob, 0, BUCKET_SIZE))
+                return null;
+            return new Bucket(time, ByteReader.getUnsignedByte(blob, 0), ByteReader.getUnsignedByte(blob, 1),
+                    ByteReader.getUnsignedByte(blob, 2), ByteReader.getUnsignedShort(blob, 3, ByteOrder.BIG_ENDIAN));
+        }
+    }
+
+    private class Aggregate {
+        private final UUID mUuid;
+        private final long mLength;
+
+        private long mStart = -1;
+        private int mMin;
+        private int mMax;
+        private int mSum;
+        private int mCount;
+
+        Aggregate(UUID uuid, long length) {
+            mUuid = uuid;
+            mLength = length;
+        }
+
+        void add(int percentage, long time) {
+            long start = time - time % mLength;
+            if (start != mStart) {
+                write();
+                mStart = start;
+            }
+
+            if (mCount == 0) {
+                mMin = percentage;
+                mMax = percentage;
+            } else {
+                mMin = Math.min(mMin, percentage);
+                mMax = Math.max(mMax, percentage);
+            }
+            mSum += percentage;
+            mCount++;
+
+            // Keeps the count within the 16 bits it's stored on, a second row for the bucket is merged back on read
+            if (mCount == 0xFFFF)
+                write();
+        }
+
+        void write() {
+            if (mCount == 0)
+                return;
+
+            byte[] blob = new byte[BUCKET_SIZE];
+            new ByteWriter(blob).writeByte(mMin).writeByte(mMax).writeByte(mSum / mCount).writeShort(mCount);
+            mDevice.addHistoricalData(mUuid, blob, new EpochTime(mStart));
+            if (this == mHour && mHourly != null)
+                append(mHourly, toBucket());
+
+            mSum = 0;
+            mCount = 0;
+        }
+
+        Bucket toBucket() {
+            return mCount == 0 ? null : new Bucket(mStart, mMin, mMax, mSum / mCount, mCount);
+        }
+    }
+
+    /**
+     * Persists raw battery samples and their aggregates to disk, and leaves every other characteristic
+     * to {@link BleNodeConfig.DefaultHistoricalDataLogFilter}.
+     */
+    public static class LogFilter extends BleNodeConfig.DefaultHistoricalDataLogFilter {
+        private static final Please TO_DISK = Please.logToDisk();
+
+        @Override
+        public Please onEvent(HistoricalDataLogEvent e) {
+            if (e.isFor(AsteroidUUIDS.BATTERY_UUID) || e.isFor(MINUTE_UUID) || e.isFor(HOUR_UUID))
+                return TO_DISK;
+            return super.onEvent(e);
+        }
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright (C) 2016 - Florent Revest <revestflo@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.asteroidos.sync.utils;
+
+/**
+ * StringBuilder which stops growing once its UTF-8 encoded size reaches a limit.
+ *
+ * <p>Text which doesn't fit is cut on a code point boundary and followed by an ellipsis, further
+ * appends are ignored. Callers can check {@link #isFull()} to skip building the rest of their text.</p>
+ */
+public class BoundedTextBuilder {
+    private static final char ELLIPSIS = '…';
+    private static final int ELLIPSIS_BYTES = 3;
+
+    private final StringBuilder mBuilder = new StringBuilder();
+    private final int mMaxBytes;
+    private int mBytes = 0;
+    private boolean mFull = false;
+
+    /**
+     * @param maxBytes maximum UTF-8 size of the text, 0 or less for no limit
+     */
+    public BoundedTextBuilder(int maxBytes) {
+        mMaxBytes = maxBytes <= 0 ? Integer.MAX_VALUE : Math.max(maxBytes, ELLIPSIS_BYTES);
+    }
+
+    public boolean isFull() {
+        return mFull;
+    }
+
+    public BoundedTextBuilder append(CharSequence text) {
+        if (text == null)
+            return this;
+        return append(text, 0, text.length());
+    }
+
+    /**
+     * Appends the characters of text from start to end. Only as much of the text as can still fit
+     * is read, so a huge text costs no more than a short one.
+     */
+    public BoundedTextBuilder append(CharSequence text, int start, int end) {
+        if (mFull || text == null)
+            return this;
+
+        // Walk the code points until the text is done or over the limit, and remember up to where
+        // it still fits along with the ellipsis
+        int budget = mMaxBytes - ELLIPSIS_BYTES;
+        int bytes = 0;
+        int fits = start;
+        int fitsBytes = 0;
+        int i = start;
+        while (i < end) {
+            int chars = Character.isHighSurrogate(text.charAt(i)) && i + 1 < end
+                    && Character.isLowSurrogate(text.charAt(i + 1)) ? 2 : 1;
+            bytes += utf8Length(text, i, i + chars);
+            if (mBytes + bytes > mMaxBytes)
+                break;
+            i += chars;
+            if (mBytes + bytes <= budget) {
+                fits = i;
+                fitsBytes = bytes;
+            }
+        }
+
+        if (i >= end) {
+            mBuilder.append(text, start, end);
+            mBytes += bytes;
+            return this;
+        }
+
+        mBuilder.append(text, start, fits);
+        mBytes += fitsBytes;
+        // What was appended before may have to make room for the ellipsis too
+        while (mBytes > budget) {
+            int length = mBuilder.length();
+            int chars = Character.charCount(mBuilder.codePointBefore(length));
+            mBytes -= utf8Length(mBuilder, length - chars, length);
+            mBuilder.setLength(length - chars);
+        }
+        mBuilder.append(ELLIPSIS);
+        mBytes += ELLIPSIS_BYTES;
+        mFull = true;
+        return this;
+    }
+
+    public int getByteLength() {
+        return mBytes;
+    }
+
+    @Override
+    public String toString() {
+        return mBuilder.toString();
+    }
+
+    private static int utf8Length(CharSequence text, int start, int end) {
+        int bytes = 0;
+        for (int i = start; i < end; i++) {
+            char c = text.charAt(i);
+            if (c < 0x80) {
+                bytes += 1;
+            } else if (c < 0x800) {
+                bytes += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < end && Character.isLowSurrogate(text.charAt(i + 1))) {
+                bytes += 4;
+                i++;
+            } else {
+                bytes += 3;
+            }
+        }
+        return bytes;
+    }
+}
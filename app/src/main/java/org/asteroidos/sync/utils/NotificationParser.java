@@ -21,13 +21,27 @@ import java.util.List;
 // Originally from https://github.com/matejdro/PebbleNotificationCenter-Android written by Matej Drobnič under the terms of the GPLv3
 
 public class NotificationParser {
+    // Longer bodies are split into many MTU-sized writes and keep the link busy for seconds
+    public static final int DEFAULT_MAX_BODY_BYTES = 2048;
+
     public String summary;
     public String body;
 
+    private final int maxBodyBytes;
+
     public NotificationParser(Notification notification)
+    {
+        this(notification, DEFAULT_MAX_BODY_BYTES);
+    }
+
+    /**
+     * @param maxBodyBytes maximum UTF-8 size of the parsed body, 0 or less for no limit
+     */
+    public NotificationParser(Notification notification, int maxBodyBytes)
     {
         this.summary = null;
         this.body = "";
+        this.maxBodyBytes = maxBodyBytes;
 
         if (tryParseNatively(notification))
             return;
@@ -66,22 +80,16 @@ public class NotificationParser {
         if (extras.get(Notification.EXTRA_TEXT_LINES) != null)
         {
             CharSequence[] lines = extras.getCharSequenceArray(Notification.EXTRA_TEXT_LINES);
-
-            StringBuilder sb = new StringBuilder();
-            sb.append(body);
-            if(lines != null) {
-                for (CharSequence line : lines) {
-                    sb.append(formatCharSequence(line));
-                    sb.append("\n\n");
-                }
-            }
-
-            body = sb.toString().trim();
+            body = joinLines(lines);
         }
-        else if (extras.get(Notification.EXTRA_BIG_TEXT) != null)
-            body = formatCharSequence(extras.getCharSequence(Notification.EXTRA_BIG_TEXT));
         else
-            body = formatCharSequence(extras.getCharSequence(Notification.EXTRA_TEXT));
+        {
+            CharSequence text = extras.get(Notification.EXTRA_BIG_TEXT) != null
+                    ? extras.getCharSequence(Notification.EXTRA_BIG_TEXT) : extras.getCharSequence(Notification.EXTRA_TEXT);
+            BoundedTextBuilder sb = new BoundedTextBuilder(maxBodyBytes);
+            appendFormatted(sb, text);
+            body = sb.toString();
+        }
 
         return true;
     }
@@ -108,11 +116,15 @@ public class NotificationParser {
             }
         });
 
-        StringBuilder sb = new StringBuilder();
+        // Newest messages come first, whatever doesn't fit anymore is never formatted
+        BoundedTextBuilder sb = new BoundedTextBuilder(maxBodyBytes);
         body = "";
 
         for (NotificationCompat.MessagingStyle.Message message : messagesDescending)
         {
+            if (sb.isFull())
+                break;
+
             String sender;
             if (message.getSender() == null)
                 sender = formatCharSequence(messagingStyle.getUserDisplayName());
@@ -147,19 +159,34 @@ public class NotificationParser {
             return false;
 
         CharSequence[] lines = extras.getCharSequenceArray(Notification.EXTRA_TEXT_LINES);
+        body = joinLines(lines);
+
+        return true;
+    }
 
-        StringBuilder sb = new StringBuilder();
+    private String joinLines(CharSequence[] lines)
+    {
+        BoundedTextBuilder sb = new BoundedTextBuilder(maxBodyBytes);
         sb.append(body);
-        if(lines != null) {
-            for (CharSequence line : lines) {
-                sb.append(formatCharSequence(line));
-                sb.append("\n\n");
-            }
-        }
+        appendLinesNewestFirst(sb, lines);
 
-        body = sb.toString().trim();
+        return sb.toString().trim();
+    }
 
-        return true;
+    /**
+     * Inbox lines are in the order they were added, so they are walked backwards for the newest
+     * ones to be kept when the body is cut.
+     */
+    static void appendLinesNewestFirst(BoundedTextBuilder sb, CharSequence[] lines)
+    {
+        if (lines == null)
+            return;
+
+        for (int i = lines.length - 1; i >= 0 && !sb.isFull(); i--)
+        {
+            appendFormatted(sb, lines[i]);
+            sb.append("\n\n");
+        }
     }
 
     private String formatCharSequence(CharSequence sequence)
@@ -173,32 +200,76 @@ public class NotificationParser {
         SpannableString spannableString = (SpannableString) sequence;
         String text = spannableString.toString();
 
-        StyleSpan[] spans = spannableString.getSpans(0, spannableString.length(), StyleSpan.class);
+        int boldEnd = getSingleBoldSpanEnd(spannableString);
+        if (boldEnd >= 0)
+            text = insertString(text, boldEnd);
 
+        return text;
+    }
 
-        int amountOfBoldspans = 0;
+    /**
+     * Appends the text the way {@link #formatCharSequence(CharSequence)} formats it, but without
+     * building the formatted String first, so that only what fits in the builder is read.
+     */
+    static void appendFormatted(BoundedTextBuilder sb, CharSequence sequence)
+    {
+        if (sequence == null)
+            return;
 
-        for (int i = spans.length - 1; i >= 0; i--)
+        int boldEnd = sequence instanceof SpannableString ? getSingleBoldSpanEnd((SpannableString) sequence) : -1;
+        if (boldEnd < 0)
         {
-            StyleSpan span = spans[i];
-            if (span.getStyle() == Typeface.BOLD)
-                amountOfBoldspans++;
+            sb.append(sequence);
+            return;
         }
 
-        if (amountOfBoldspans == 1)
+        // Same as insertString(): what comes before the end of the bold span trimmed, then the rest,
+        // the whole being trimmed
+        int length = sequence.length();
+        int headStart = skipWhitespace(sequence, 0, boldEnd);
+        int headEnd = trimWhitespace(sequence, headStart, boldEnd);
+        int tailStart = headStart == headEnd ? skipWhitespace(sequence, boldEnd, length) : boldEnd;
+        int tailEnd = trimWhitespace(sequence, tailStart, length);
+
+        sb.append(sequence, headStart, headEnd);
+        sb.append(sequence, tailStart, tailEnd);
+    }
+
+    /**
+     * @return the end of the only bold span of the text, -1 if there are none or several
+     */
+    private static int getSingleBoldSpanEnd(SpannableString spannableString)
+    {
+        StyleSpan[] spans = spannableString.getSpans(0, spannableString.length(), StyleSpan.class);
+
+        StyleSpan boldSpan = null;
+        for (int i = spans.length - 1; i >= 0; i--)
         {
-            for (int i = spans.length - 1; i >= 0; i--)
+            StyleSpan span = spans[i];
+            if (span.getStyle() == Typeface.BOLD)
             {
-                StyleSpan span = spans[i];
-                if (span.getStyle() == Typeface.BOLD)
-                {
-                    text = insertString(text, spannableString.getSpanEnd(span));
-                    break;
-                }
+                if (boldSpan != null)
+                    return -1;
+                boldSpan = span;
             }
         }
 
-        return text;
+        return boldSpan == null ? -1 : spannableString.getSpanEnd(boldSpan);
+    }
+
+    // Whitespace as String.trim() sees it
+    private static int skipWhitespace(CharSequence text, int start, int end)
+    {
+        while (start < end && text.charAt(start) <= ' ')
+            start++;
+        return start;
+    }
+
+    private static int trimWhitespace(CharSequence text, int start, int end)
+    {
+        while (end > start && text.charAt(end - 1) <= ' ')
+            end--;
+        return end;
     }
 
     private static String insertString(String text, int pos)
@@ -231,46 +302,86 @@ public class NotificationParser {
         parseRemoteView(views);
     }
 
-    @SuppressWarnings("unchecked")
+    // Reflective lookups are resolved once, sReflectionUnavailable remembers when the platform hides them
+    private static boolean sReflectionResolved = false;
+    private static boolean sReflectionUnavailable = false;
+    private static Field sActionsField;
+    private static Field sViewIdField;
+    private static Class<?> sReflectionActionClass;
+    private static Field sTypeField;
+    private static Field sValueField;
+
     @SuppressLint("PrivateApi")
-    private void parseRemoteView(RemoteViews views)
-    {
-        try {
-            Class remoteViewsClass = RemoteViews.class;
-            Class baseActionClass = Class.forName("android.widget.RemoteViews$Action");
+    private static synchronized boolean resolveReflection() {
+        if (!sReflectionResolved) {
+            sReflectionResolved = true;
+            try {
+                sActionsField = RemoteViews.class.getDeclaredField("mActions");
+                sActionsField.setAccessible(true);
+            } catch (Exception e) {
+                e.printStackTrace();
+                sReflectionUnavailable = true;
+            }
+
+            try {
+                Class<?> baseActionClass = Class.forName("android.widget.RemoteViews$Action");
+                sViewIdField = baseActionClass.getDeclaredField("viewId");
+                sViewIdField.setAccessible(true);
+            } catch (Exception ignored) {
+                sViewIdField = null;
+            }
+        }
+        return !sReflectionUnavailable;
+    }
+
+    private static synchronized boolean resolveReflectionAction(Class<?> actionClass) {
+        if (actionClass == sReflectionActionClass)
+            return sTypeField != null && sValueField != null;
 
-            Field actionsField = remoteViewsClass.getDeclaredField("mActions");
+        sReflectionActionClass = actionClass;
+        try {
+            sTypeField = actionClass.getDeclaredField("type");
+            sTypeField.setAccessible(true);
+            sValueField = actionClass.getDeclaredField("value");
+            sValueField.setAccessible(true);
+        } catch (Exception e) {
+            e.printStackTrace();
+            sTypeField = null;
+            sValueField = null;
+        }
+        return sTypeField != null && sValueField != null;
+    }
 
-            actionsField.setAccessible(true);
+    @SuppressWarnings("unchecked")
+    private void parseRemoteView(RemoteViews views)
+    {
+        if (!resolveReflection())
+            return;
 
-            ArrayList<Object> actions = (ArrayList<Object>) actionsField.get(views);
+        try {
+            ArrayList<Object> actions = (ArrayList<Object>) sActionsField.get(views);
+            if (actions == null)
+                return;
 
-            StringBuilder sb = new StringBuilder();
+            BoundedTextBuilder sb = new BoundedTextBuilder(maxBodyBytes);
             sb.append(body);
 
             for (Object action : actions) {
                 if (!action.getClass().getName().contains("$ReflectionAction"))
                     continue;
+                if (!resolveReflectionAction(action.getClass()))
+                    continue;
 
-                Field typeField = action.getClass().getDeclaredField("type");
-                typeField.setAccessible(true);
-                int type = typeField.getInt(action);
+                int type = sTypeField.getInt(action);
                 if (type != 9 && type != 10)
                     continue;
 
 
                 int viewId = -1;
-                try
-                {
-                    Field idField = baseActionClass.getDeclaredField("viewId");
-                    idField.setAccessible(true);
-                    viewId = idField.getInt(action);
-                }
-                catch (NoSuchFieldException ignored) {}
+                if (sViewIdField != null)
+                    viewId = sViewIdField.getInt(action);
 
-                Field valueField = action.getClass().getDeclaredField("value");
-                valueField.setAccessible(true);
-                CharSequence value = (CharSequence) valueField.get(action);
+                CharSequence value = (CharSequence) sValueField.get(action);
 
                 if (value == null ||
                         value.equals("...") ||
@@ -286,7 +397,7 @@ public class NotificationParser {
                         summary = value.toString();
                 }
                 else {
-                    sb.append(formatCharSequence(value));
+                    appendFormatted(sb, value);
                     sb.append("\n\n");
                 }
             }
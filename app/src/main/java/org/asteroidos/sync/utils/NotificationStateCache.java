@@ -0,0 +1,196 @@
+/*
+ * Copyright (C) 2016 - Florent Revest <revestflo@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.asteroidos.sync.utils;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Remembers what the watch acknowledged so that identical re-posts of a notification can be
+ * dropped, and which notifications it may still show so that a refresh after a reconnection can
+ * remove the ones which went away in the meantime.
+ *
+ * <p>Entries are keyed by package name and notification id, the content is kept as a 64 bit hash.
+ * A content only counts as delivered once its write succeeded, a write which is still queued only
+ * suppresses identical posts until it completes.</p>
+ *
+ * <p>The cache is meant to outlive a connection, a refresh after reconnecting to the same watch
+ * then only sends what changed. What was delivered is only forgotten when the watch restarted
+ * in between, see {@link #onConnected(long)}.</p>
+ */
+public class NotificationStateCache {
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    public static final long UNKNOWN_BOOT_ID = -1;
+
+    private static class Entry {
+        final int id;
+        long hash;
+        boolean delivered;
+        long pendingHash;
+        boolean pending;
+        boolean seen;
+
+        Entry(int id) {
+            this.id = id;
+        }
+    }
+
+    private final Map<String, Entry> mEntries = new HashMap<>();
+    private boolean mRefreshing = false;
+    private long mBootId = UNKNOWN_BOOT_ID;
+    private int mSuppressed = 0;
+
+    private static String key(String packageName, int id) {
+        return packageName + ":" + id;
+    }
+
+    public static long hash(String... fields) {
+        long hash = FNV_OFFSET_BASIS;
+        for (String field : fields) {
+            if (field != null) {
+                for (int i = 0; i < field.length(); i++) {
+                    hash ^= field.charAt(i);
+                    hash *= FNV_PRIME;
+                }
+            }
+            // Field separator, so that ("ab", "c") and ("a", "bc") differ
+            hash ^= 0xFFFF;
+            hash *= FNV_PRIME;
+        }
+        return hash;
+    }
+
+    /**
+     * Records a posted notification. When this returns true the caller must report the outcome of
+     * the write with {@link #onDelivered(String, int, long)} or {@link #onFailed(String, int, long)}.
+     *
+     * @return true if the watch doesn't have this exact content yet and it must be sent
+     */
+    public boolean onPosted(String packageName, int id, long hash) {
+        String key = key(packageName, id);
+        Entry entry = mEntries.get(key);
+        if (entry == null) {
+            entry = new Entry(id);
+            mEntries.put(key, entry);
+        }
+        entry.seen = true;
+
+        // The last queued content is what the watch will end up with
+        boolean known = entry.pending ? entry.pendingHash == hash : entry.delivered && entry.hash == hash;
+        if (known) {
+            mSuppressed++;
+            return false;
+        }
+        entry.pending = true;
+        entry.pendingHash = hash;
+        return true;
+    }
+
+    /**
+     * Records that the watch acknowledged a content sent after {@link #onPosted(String, int, long)}.
+     */
+    public void onDelivered(String packageName, int id, long hash) {
+        Entry entry = mEntries.get(key(packageName, id));
+        if (entry == null)
+            return;
+        entry.hash = hash;
+        entry.delivered = true;
+        if (entry.pending && entry.pendingHash == hash)
+            entry.pending = false;
+    }
+
+    /**
+     * Records that a content sent after {@link #onPosted(String, int, long)} didn't make it, so that
+     * it is sent again when posted again.
+     */
+    public void onFailed(String packageName, int id, long hash) {
+        Entry entry = mEntries.get(key(packageName, id));
+        if (entry == null)
+            return;
+        entry.delivered = false;
+        if (entry.pending && entry.pendingHash == hash)
+            entry.pending = false;
+    }
+
+    /**
+     * Records which boot of the watch a new connection reached. What the watch was known to have
+     * is forgotten if it restarted since the last connection, or if it can't tell.
+     */
+    public void onConnected(long bootId) {
+        if (bootId == UNKNOWN_BOOT_ID || bootId != mBootId)
+            invalidate();
+        mBootId = bootId;
+    }
+
+    /**
+     * Forgets what the watch was known to have, e.g. because it restarted.
+     * The entries are kept so that {@link #endRefresh()} still reports the stale ones.
+     */
+    public void invalidate() {
+        for (Entry entry : mEntries.values()) {
+            entry.delivered = false;
+            entry.pending = false;
+        }
+    }
+
+    /**
+     * Forgets a notification, e.g. because it was removed on the phone or muted by the user.
+     */
+    public void onRemoved(String packageName, int id) {
+        mEntries.remove(key(packageName, id));
+    }
+
+    /**
+     * Starts a replay of all the active notifications. Entries which aren't posted again before
+     * {@link #endRefresh()} are considered gone.
+     */
+    public void beginRefresh() {
+        mRefreshing = true;
+        for (Entry entry : mEntries.values())
+            entry.seen = false;
+    }
+
+    /**
+     * @return the ids of the notifications the watch still shows but which aren't active anymore
+     */
+    public List<Integer> endRefresh() {
+        List<Integer> stale = new ArrayList<>();
+        if (!mRefreshing)
+            return stale;
+        mRefreshing = false;
+
+        Iterator<Entry> it = mEntries.values().iterator();
+        while (it.hasNext()) {
+            Entry entry = it.next();
+            if (!entry.seen) {
+                stale.add(entry.id);
+                it.remove();
+            }
+        }
+        return stale;
+    }
+
+    public int getSuppressedCount() {
+        return mSuppressed;
+    }
+}
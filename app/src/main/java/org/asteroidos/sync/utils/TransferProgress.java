@@ -0,0 +1,211 @@
+/*
+ * Copyright (C) 2016 - Florent Revest <revestflo@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.asteroidos.sync.utils;
+
+import android.app.NotificationManager;
+import android.content.Context;
+import android.os.SystemClock;
+import androidx.core.app.NotificationCompat;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Progress notification for long-running BLE transfers.
+ *
+ * <p>All transfers share a single scheduler thread. {@link #update(int)} only records the current
+ * value, the notification itself is refreshed at most once per {@link #REFRESH_PERIOD_MS} and only
+ * when the progress actually changed.</p>
+ *
+ * <p>A transfer which doesn't progress for its stall timeout, or which is still running when
+ * {@link #cancelAll()} is called on disconnection, is cancelled and its {@link Listener} is told
+ * about it.</p>
+ */
+public class TransferProgress {
+    public static final long REFRESH_PERIOD_MS = 1000;
+
+    private static ScheduledThreadPoolExecutor sScheduler;
+    private static final Set<TransferProgress> sRunning = new HashSet<>();
+
+    public interface Listener {
+        /**
+         * Called once the progress notification is gone, on the scheduler thread for a timeout and
+         * on the caller's thread for {@link #cancelAll()}. The listener is free to restart the transfer.
+         *
+         * @param timedOut true if the transfer stalled, false if it was cancelled by {@link #cancelAll()}
+         */
+        void onCancelled(TransferProgress transfer, boolean timedOut);
+    }
+
+    private final NotificationManager mNM;
+    private final NotificationCompat.Builder mBuilder;
+    private final int mNotificationId;
+
+    private Listener mListener;
+    private ScheduledFuture<?> mRefreshTask;
+    private long mStallTimeoutMs;
+
+    private volatile int mTotal;
+    private volatile int mProgress;
+    private volatile long mLastProgressTime;
+    private int mReportedProgress = -1;
+
+    public TransferProgress(Context ctx, String channelId, int notificationId, CharSequence title, CharSequence text, int smallIcon) {
+        mNM = (NotificationManager) ctx.getSystemService(Context.NOTIFICATION_SERVICE);
+        mNotificationId = notificationId;
+        mBuilder = new NotificationCompat.Builder(ctx, channelId)
+                .setContentTitle(title)
+                .setContentText(text)
+                .setSmallIcon(smallIcon)
+                .setOnlyAlertOnce(true)
+                .setLocalOnly(true);
+    }
+
+    public synchronized void setListener(Listener listener) {
+        mListener = listener;
+    }
+
+    /**
+     * Starts reporting a new transfer of {@code total} units, replacing any transfer in progress.
+     * A total of 0 shows an indeterminate progress, e.g. while waiting for the size.
+     *
+     * @param stallTimeoutMs the transfer is cancelled if it doesn't progress for this long, 0 disables it
+     */
+    public synchronized void start(int total, long stallTimeoutMs) {
+        stop();
+        mTotal = total;
+        mProgress = 0;
+        mReportedProgress = -1;
+        mStallTimeoutMs = stallTimeoutMs;
+        mLastProgressTime = SystemClock.elapsedRealtime();
+        synchronized (sRunning) {
+            sRunning.add(this);
+        }
+        mRefreshTask = getScheduler().scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                refresh();
+            }
+        }, 0, REFRESH_PERIOD_MS, TimeUnit.MILLISECONDS);
+    }
+
+    public void update(int progress) {
+        if (progress != mProgress) {
+            mProgress = progress;
+            mLastProgressTime = SystemClock.elapsedRealtime();
+        }
+    }
+
+    public synchronized boolean isRunning() {
+        return mRefreshTask != null;
+    }
+
+    /**
+     * Stops the refreshes but leaves the notification in place so the caller can replace it.
+     */
+    public synchronized void stop() {
+        if (mRefreshTask != null) {
+            mRefreshTask.cancel(false);
+            mRefreshTask = null;
+        }
+        synchronized (sRunning) {
+            sRunning.remove(this);
+        }
+    }
+
+    /**
+     * Stops the refreshes and removes the progress notification.
+     */
+    public synchronized void cancel() {
+        boolean wasRunning = isRunning();
+        stop();
+        if (wasRunning)
+            mNM.cancel(mNotificationId);
+    }
+
+    /**
+     * Cancels every running transfer and tells their listeners, to be called when the watch
+     * disconnects since none of them can complete anymore.
+     */
+    public static void cancelAll() {
+        List<TransferProgress> running;
+        synchronized (sRunning) {
+            running = new ArrayList<>(sRunning);
+        }
+        for (TransferProgress transfer : running)
+            transfer.cancelAndNotify(false);
+    }
+
+    private void cancelAndNotify(boolean timedOut) {
+        Listener listener;
+        synchronized (this) {
+            if (!isRunning())
+                return;
+            cancel();
+            listener = mListener;
+        }
+        // Called outside of the lock, the listener is free to restart the transfer
+        if (listener != null)
+            listener.onCancelled(this, timedOut);
+    }
+
+    private void refresh() {
+        Listener timedOut = null;
+        synchronized (this) {
+            if (mRefreshTask == null)
+                return;
+
+            if (mStallTimeoutMs > 0 && SystemClock.elapsedRealtime() - mLastProgressTime > mStallTimeoutMs) {
+                cancel();
+                timedOut = mListener;
+            } else {
+                int progress = mProgress;
+                if (progress == mReportedProgress)
+                    return;
+                mReportedProgress = progress;
+
+                mBuilder.setProgress(mTotal, progress, mTotal == 0);
+                mNM.notify(mNotificationId, mBuilder.build());
+            }
+        }
+        // Called outside of the lock, the listener is free to restart the transfer
+        if (timedOut != null)
+            timedOut.onCancelled(this, true);
+    }
+
+    private static synchronized ScheduledThreadPoolExecutor getScheduler() {
+        if (sScheduler == null) {
+            sScheduler = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "TransferProgress");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            sScheduler.setRemoveOnCancelPolicy(true);
+        }
+        return sScheduler;
+    }
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright (C) 2016 - Florent Revest <revestflo@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.asteroidos.sync.views;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Path;
+import android.util.AttributeSet;
+import android.view.View;
+
+import androidx.core.content.ContextCompat;
+
+import java.util.Arrays;
+
+import org.asteroidos.sync.R;
+import org.asteroidos.sync.utils.BatteryHistory;
+
+/**
+ * Discharge curve of the hourly {@link BatteryHistory.Bucket}s: a bar from min to max for every
+ * hour, and the average as a line over them.
+ */
+public class BatteryChartView extends View {
+    private final Paint mRangePaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Paint mAvgPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Paint mAxisPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Path mAvgPath = new Path();
+
+    private BatteryHistory.Bucket[] mBuckets = new BatteryHistory.Bucket[0];
+    private long mDuration = 1;
+
+    public BatteryChartView(Context context) {
+        this(context, null);
+    }
+
+    public BatteryChartView(Context context, AttributeSet attrs) {
+        super(context, attrs);
+
+        float density = getResources().getDisplayMetrics().density;
+        int color = ContextCompat.getColor(context, R.color.colorPrimary);
+
+        mRangePaint.setColor(color);
+        mRangePaint.setAlpha(0x60);
+        mRangePaint.setStrokeCap(Paint.Cap.ROUND);
+
+        mAvgPaint.setColor(color);
+        mAvgPaint.setStyle(Paint.Style.STROKE);
+        mAvgPaint.setStrokeWidth(2 * density);
+
+        mAxisPaint.setColor(ContextCompat.getColor(context, R.color.iconTint));
+        mAxisPaint.setAlpha(0x40);
+        mAxisPaint.setStrokeWidth(density);
+    }
+
+    /**
+     * Shows the given buckets, oldest first, on a time axis ending now and <code>duration</code> milliseconds long.
+     */
+    public void setBuckets(BatteryHistory.Bucket[] buckets, long duration) {
+        mBuckets = buckets;
+        mDuration = Math.max(duration, 1);
+        invalidate();
+    }
+
+    /**
+     * Replaces the newest bucket with <code>bucket</code> if it covers the same hour, or appends it
+     * otherwise, letting the oldest one go once it scrolled out of the axis.
+     */
+    public void updateBucket(BatteryHistory.Bucket bucket) {
+        int last = mBuckets.length - 1;
+        if (last >= 0 && mBuckets[last].time == bucket.time) {
+            mBuckets[last] = bucket;
+        } else {
+            int from = 0;
+            if (last >= 0 && mBuckets[0].time + BatteryHistory.HOUR < System.currentTimeMillis() - mDuration)
+                from = 1;
+            mBuckets = Arrays.copyOfRange(mBuckets, from, mBuckets.length + 1);
+            mBuckets[mBuckets.length - 1] = bucket;
+        }
+        invalidate();
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        float left = getPaddingLeft();
+        float top = getPaddingTop();
+        float width = getWidth() - left - getPaddingRight();
+        float height = getHeight() - top - getPaddingBottom();
+        if (width <= 0 || height <= 0)
+            return;
+
+        canvas.drawLine(left, top + height, left + width, top + height, mAxisPaint);
+
+        long start = System.currentTimeMillis() - mDuration;
+        float barWidth = Math.max(width * BatteryHistory.HOUR / mDuration, 1);
+        mRangePaint.setStrokeWidth(barWidth * 0.6f);
+
+        mAvgPath.rewind();
+        boolean first = true;
+        for (BatteryHistory.Bucket bucket : mBuckets) {
+            if (bucket.time + BatteryHistory.HOUR < start)
+                continue;
+
+            float x = left + width * (bucket.time - start) / mDuration + barWidth / 2;
+            canvas.drawLine(x, y(bucket.max, top, height), x, y(bucket.min, top, height), mRangePaint);
+
+            if (first)
+                mAvgPath.moveTo(x, y(bucket.avg, top, height));
+            else
+                mAvgPath.lineTo(x, y(bucket.avg, top, height));
+            first = false;
+        }
+        canvas.drawPath(mAvgPath, mAvgPaint);
+    }
+
+    private static float y(int percentage, float top, float height) {
+        return top + height * (100 - Math.min(Math.max(percentage, 0), 100)) / 100f;
+    }
+}
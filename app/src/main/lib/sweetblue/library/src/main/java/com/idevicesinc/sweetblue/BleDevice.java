@@ -1928,6 +1928,8 @@ public final class BleDevice extends BleNode
 
     final P_ReliableWriteManager m_reliableWriteMngr;
 
+    final P_TaskQueue.WaitStats m_taskWaitStats = new P_TaskQueue.WaitStats();
+
 
 
     BleDevice(BleManager mngr, P_NativeDeviceLayer device_native, String name_normalized, String name_native, BleDeviceOrigin origin, BleDeviceConfig config_nullable, boolean isNull)
@@ -2402,6 +2404,28 @@ public final class BleDevice extends BleNode
         return stateTracker().getState();
     }
 
+    /**
+     * Returns the average time tasks for this device (reads, writes, connecting, etc.) spent in the queue before they started executing.
+     * Along with {@link #getMaxTaskWaitTime()} this shows how much other devices or the manager are holding this device back,
+     * see {@link BleManagerConfig#runDeviceTasksInParallel}.
+     */
+    @Advanced
+    public final Interval getAverageTaskWaitTime()
+    {
+        return Interval.secs(queue().getAverageWaitTime(this));
+    }
+
+    /**
+     * Returns the longest time a task for this device spent in the queue before it started executing.
+     *
+     * @see #getAverageTaskWaitTime()
+     */
+    @Advanced
+    public final Interval getMaxTaskWaitTime()
+    {
+        return Interval.secs(queue().getMaxWaitTime(this));
+    }
+
     /**
      * See similar explanation for {@link #getAverageWriteTime()}.
      *
@@ -5759,6 +5783,9 @@ public final class BleDevice extends BleNode
         }
         else if (scanRecord_nullable != null)
         {
+            //--- Most devices advertise the same thing over and over, no need to parse it again.
+            if (Arrays.equals(m_scanRecord, scanRecord_nullable))  return;
+
             m_scanRecord = scanRecord_nullable;
 
             m_scanInfo = Utils_ScanRecord.parseScanRecord(scanRecord_nullable);
@@ -5863,6 +5890,22 @@ public final class BleDevice extends BleNode
         updateMtu(0);
     }
 
+    /**
+     * Returns how long, in seconds, this device can go without being updated. Anything with its own
+     * timing (transactions, reconnects) asks for the regular update rate by returning 0.
+     */
+    final double timeUntilNextUpdate()
+    {
+        if( isNull() )  return Interval.INFINITE.secs();
+
+        if( m_txnMngr.isRunning() || m_reconnectMngr_longTerm.isRunning() || m_reconnectMngr_shortTerm.isRunning() )
+        {
+            return 0.0;
+        }
+
+        return Math.min(m_pollMngr.timeUntilNextUpdate(), m_rssiPollMngr.timeUntilNextUpdate());
+    }
+
     final void update(double timeStep)
     {
         m_timeSinceLastDiscovery += timeStep;
@@ -2,12 +2,18 @@ package com.idevicesinc.sweetblue;
 
 import static com.idevicesinc.sweetblue.BleManagerState.*;
 
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
 import android.Manifest;
 import android.app.Activity;
 import android.app.Application;
@@ -775,9 +781,27 @@ public final class BleManager
 
 	private final Context m_context;
 	private UpdateRunnable m_updateRunnable;
+	private final AtomicBoolean m_wakePending = new AtomicBoolean();
+	private final AtomicBoolean m_wakeRequested = new AtomicBoolean();
+	private final Runnable m_wakeRunnable = new Runnable()
+	{
+		@Override public void run()
+		{
+			m_wakePending.set(false);
+
+			final UpdateRunnable updateRunnable = m_updateRunnable;
+
+			if (updateRunnable != null && updateRunnable.m_sleeping && !updateRunnable.m_shutdown)
+			{
+				m_postManager.removeUpdateCallbacks(updateRunnable);
+				updateRunnable.run();
+			}
+		}
+	};
 	private final P_ScanFilterManager m_filterMngr;
 	final P_BluetoothCrashResolver m_crashResolver;
 	private			P_Logger m_logger;
+	private			P_EventLog m_eventLog;
 			  BleManagerConfig m_config;
 		final P_DeviceManager m_deviceMngr;
 		final P_DeviceManager m_deviceMngr_cache;
@@ -806,6 +830,8 @@ public final class BleManager
 	private long m_timeTurnedOn = 0;
 	private long m_lastTaskExecution;
 	private long m_currentTick;
+	private long m_scanPrefilterRejectedCount;
+	private long m_scanPrefilterPromotedCount;
 	private boolean m_isForegrounded = false;
 	private boolean m_ready = false;
 	private boolean m_unitTestCheckDone = false;
@@ -903,7 +929,59 @@ public final class BleManager
 
 	private void initLogger(BleManager mgr)
 	{
-		m_logger = new P_Logger(mgr, m_config.debugThreadNames, m_config.uuidNameMaps, m_config.loggingEnabled, m_config.logger);
+		//--- Kept across config changes unless resized, so events leading up to a setConfig() call aren't lost.
+		if( m_config.eventLogSize <= 0 )
+		{
+			m_eventLog = null;
+		}
+		else if( m_eventLog == null || m_eventLog.getCapacity() != m_config.eventLogSize )
+		{
+			m_eventLog = new P_EventLog(m_config.eventLogSize);
+		}
+
+		m_logger = new P_Logger(mgr, m_config.debugThreadNames, m_config.uuidNameMaps, m_config.loggingEnabled, m_config.logCallerInfo, m_config.logger, m_eventLog);
+	}
+
+	/**
+	 * Writes the recent events kept as configured by {@link BleManagerConfig#eventLogSize} to the given file as text, oldest first,
+	 * replacing its contents. Meant to be attached to bug reports. Returns <code>false</code> if the event log is disabled or the file
+	 * couldn't be written.
+	 */
+	@Advanced
+	public final boolean dumpEventLog(final File file)
+	{
+		final P_EventLog eventLog = m_eventLog;
+
+		if( eventLog == null )  return false;
+
+		Writer writer = null;
+
+		try
+		{
+			writer = new BufferedWriter(new FileWriter(file));
+			eventLog.dump(writer);
+
+			return true;
+		}
+		catch(IOException e)
+		{
+			m_logger.e("Couldn't write the event log to " + file + ": " + e.getMessage());
+
+			return false;
+		}
+		finally
+		{
+			if( writer != null )
+			{
+				try
+				{
+					writer.close();
+				}
+				catch(IOException e)
+				{
+				}
+			}
+		}
 	}
 
 	private void initConfigDependentMembers()
@@ -2990,6 +3068,116 @@ public final class BleManager
 		m_diskOptionsMngr.clear();
 	}
 
+	/**
+	 * Returns how many times SweetBlue's update thread woke up since this manager was created, or -1 if
+	 * updates aren't running on SweetBlue's own thread (see {@link BleManagerConfig#runOnMainThread}).
+	 * Together with {@link #getUpdateThreadIdleTime()}, useful to check that the thread sleeps when there's nothing to do.
+	 */
+	public final long getUpdateThreadWakeupCount()
+	{
+		final P_SweetHandler handler = m_postManager.getUpdateHandler();
+
+		return handler instanceof P_SweetBlueThread ? ((P_SweetBlueThread) handler).getWakeupCount() : -1;
+	}
+
+	/**
+	 * Returns the total time in milliseconds SweetBlue's update thread spent waiting for work, or -1 if
+	 * updates aren't running on SweetBlue's own thread.
+	 */
+	public final long getUpdateThreadIdleTime()
+	{
+		final P_SweetHandler handler = m_postManager.getUpdateHandler();
+
+		return handler instanceof P_SweetBlueThread ? ((P_SweetBlueThread) handler).getIdleTimeMillis() : -1;
+	}
+
+	/**
+	 * Returns how many times the update loop has ticked on its own since this manager was created.
+	 */
+	public final long getUpdateTickCount()
+	{
+		return m_updateRunnable != null ? m_updateRunnable.m_tickCount : 0;
+	}
+
+	/**
+	 * Returns how many ticks at {@link BleManagerConfig#idleUpdateRate} the update loop skipped because nothing needed it,
+	 * see {@link BleManagerConfig#idleUpdatesOnDemand}.
+	 */
+	public final long getUpdateTicksSaved()
+	{
+		return m_updateRunnable != null ? m_updateRunnable.m_ticksSaved : 0;
+	}
+
+	/**
+	 * Returns the average time tasks not tied to a device (scanning, turning BLE on/off, servers, etc.) spent in the queue before
+	 * they started executing. See {@link BleDevice#getAverageTaskWaitTime()} for device tasks.
+	 */
+	@Advanced
+	public final Interval getAverageTaskWaitTime()
+	{
+		return Interval.secs(m_taskQueue.getAverageWaitTime(null));
+	}
+
+	/**
+	 * Returns the longest time a task not tied to a device spent in the queue before it started executing.
+	 *
+	 * @see #getAverageTaskWaitTime()
+	 */
+	@Advanced
+	public final Interval getMaxTaskWaitTime()
+	{
+		return Interval.secs(m_taskQueue.getMaxWaitTime(null));
+	}
+
+	/**
+	 * Returns how many raw scan results the native stack reported since this manager was created, including ones that were
+	 * merged or dropped, see {@link #getScanResultsCoalesced()} and {@link #getScanResultsDropped()}.
+	 */
+	@Advanced
+	public final long getScanResultsReceived()
+	{
+		return m_scanManager.getScanResultCount();
+	}
+
+	/**
+	 * Returns how many raw scan results were merged into a newer result for the same device before being processed. Only the
+	 * latest rssi and scan record of a device are processed each update.
+	 */
+	@Advanced
+	public final long getScanResultsCoalesced()
+	{
+		return m_scanManager.getCoalescedScanResultCount();
+	}
+
+	/**
+	 * Returns how many raw scan results were dropped because they came in faster than the update loop could process them.
+	 * Nonzero values here usually mean the {@link BleManagerConfig#autoUpdateRate} is too slow for a busy environment.
+	 */
+	@Advanced
+	public final long getScanResultsDropped()
+	{
+		return m_scanManager.getDroppedScanResultCount();
+	}
+
+	/**
+	 * Returns how many advertisements from unknown devices were dropped by {@link BleManagerConfig#scanPrefilter}.
+	 */
+	@Advanced
+	public final synchronized long getScanPrefilterRejectedCount()
+	{
+		return m_scanPrefilterRejectedCount;
+	}
+
+	/**
+	 * Returns how many advertisements from unknown devices were let through by {@link BleManagerConfig#scanPrefilter} to be
+	 * handled normally.
+	 */
+	@Advanced
+	public final synchronized long getScanPrefilterPromotedCount()
+	{
+		return m_scanPrefilterPromotedCount;
+	}
+
 	//--- DRK > Smooshing together a bunch of package-private accessors here.
 	final P_BleStateTracker			getStateTracker(){				return m_stateTracker;									}
 	final P_NativeBleStateTracker	getNativeStateTracker(){		return m_nativeStateTracker;							}
@@ -3109,6 +3297,18 @@ public final class BleManager
 
 			if (device_sweetblue == null)
 			{
+				if (m_config.scanPrefilter != null)
+				{
+					if (!m_config.scanPrefilter.matches(entry.record()))
+					{
+						m_scanPrefilterRejectedCount++;
+
+						continue;
+					}
+
+					m_scanPrefilterPromotedCount++;
+				}
+
 				final String rawDeviceName;
 
 				try
@@ -3419,6 +3619,58 @@ public final class BleManager
 		return m_ready;
 	}
 
+	/**
+	 * Called whenever something outside of the update loop (a native callback, an API call...) may have given it work to do,
+	 * so that an idle loop sleeping until its next deadline gets a chance to re-evaluate. Call this after the state change,
+	 * or after posting the action that makes it. Does nothing unless the loop is actually parked.
+	 */
+	final void wakeUpdateLoop()
+	{
+		final UpdateRunnable updateRunnable = m_updateRunnable;
+
+		if (updateRunnable == null || m_postManager == null)  return;
+
+		if (m_postManager.isOnSweetBlueThread())
+		{
+			// An awake loop re-evaluates at the end of the tick we're in, or on its next one.
+			if (!updateRunnable.m_sleeping)  return;
+		}
+		else
+		{
+			// The loop may be just about to park, so flag first, then check. Either we see it parked, or it sees the flag right
+			// after parking (see UpdateRunnable#postIdle()).
+			m_wakeRequested.set(true);
+
+			if (!updateRunnable.m_sleeping)  return;
+		}
+
+		postWake();
+	}
+
+	private void postWake()
+	{
+		// Posted behind anything already on the update thread, so the loop re-evaluates after the action that woke it has run.
+		if (m_wakePending.compareAndSet(false, true))
+		{
+			m_postManager.forcePostToUpdate(m_wakeRunnable);
+		}
+	}
+
+	/**
+	 * Returns how long, in seconds, the update loop can sleep before one of the managers needs it, {@link Interval#INFINITE} if none does.
+	 */
+	final double timeUntilNextUpdate()
+	{
+		if (m_config.updateLoopCallback != null)  return 0.0;
+
+		double time = m_taskQueue.timeUntilNextUpdate();
+		time = Math.min(time, m_scanManager.timeUntilNextUpdate());
+		time = Math.min(time, m_listeners.timeUntilNextUpdate());
+		time = Math.min(time, m_deviceMngr.timeUntilNextUpdate());
+
+		return time;
+	}
+
 	final void checkIdleStatus()
 	{
 		if (is(IDLE))
@@ -3429,7 +3681,7 @@ public final class BleManager
 			getPostManager().removeUpdateCallbacks(m_updateRunnable);
 			m_updateRunnable.setUpdateRate(m_config.autoUpdateRate.millis());
 			m_stateTracker.update(E_Intent.INTENTIONAL, BleStatuses.GATT_STATUS_NOT_APPLICABLE, IDLE, false);
-			getPostManager().postToUpdateThread(m_updateRunnable);
+			getPostManager().forcePostToUpdate(m_updateRunnable);
 		}
 	}
 
@@ -3605,7 +3857,10 @@ public final class BleManager
 
 		private Long m_lastAutoUpdateTime;
 		private long m_autoUpdateRate = -1;
-		private boolean m_shutdown = false;
+		private volatile boolean m_shutdown = false;
+		private volatile boolean m_sleeping = false;
+		private volatile long m_tickCount;
+		private volatile long m_ticksSaved;
 
 
 		public UpdateRunnable(long updateRate)
@@ -3634,6 +3889,17 @@ public final class BleManager
 			{
 				m_lastAutoUpdateTime = currentTime;
 			}
+			if (m_sleeping)
+			{
+				m_sleeping = false;
+
+				final long idleRate = m_config.idleUpdateRate.millis();
+				if (idleRate > 0)
+				{
+					m_ticksSaved += Math.max(0, (currentTime - m_lastAutoUpdateTime) / idleRate - 1);
+				}
+			}
+			m_tickCount++;
 			double timeStep = ((double) currentTime - m_lastAutoUpdateTime)/1000.0;
 
 			timeStep = timeStep <= 0.0 ? .00001 : timeStep;
@@ -3648,8 +3914,39 @@ public final class BleManager
 
 			if (!m_shutdown)
 			{
-				m_postManager.postToUpdateThreadDelayed(this, m_autoUpdateRate);
+				// Leaving the IDLE state from within update() already posts us again, make sure we're only in there once.
+				m_postManager.removeUpdateCallbacks(this);
+
+				if (is(IDLE) && m_config.idleUpdatesOnDemand)
+				{
+					postIdle();
+				}
+				else
+				{
+					m_postManager.postToUpdateThreadDelayed(this, m_autoUpdateRate);
+				}
+			}
+		}
+
+		private void postIdle()
+		{
+			final double timeUntilNextUpdate = timeUntilNextUpdate();
+
+			m_sleeping = true;
+
+			// Someone off the update thread may have given us work after timeUntilNextUpdate() looked, but before we were parked.
+			if (m_wakeRequested.getAndSet(false))
+			{
+				postWake();
+			}
+
+			if (timeUntilNextUpdate != Interval.INFINITE.secs())
+			{
+				final long delay = Math.max(m_autoUpdateRate, (long) (timeUntilNextUpdate * 1000.0));
+
+				m_postManager.postToUpdateThreadDelayed(this, delay);
 			}
+			// Otherwise sleep until wakeUpdateLoop() is called.
 		}
 	}
 }
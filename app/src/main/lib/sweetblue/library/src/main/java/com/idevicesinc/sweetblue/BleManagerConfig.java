@@ -71,6 +71,11 @@ public class BleManagerConfig extends BleDeviceConfig
 	 */
 	public static final double DEFAULT_UH_OH_CALLBACK_THROTTLE			= 30.0;
 
+	/**
+	 * Default value for {@link #eventLogSize}.
+	 */
+	public static final int DEFAULT_EVENT_LOG_SIZE						= 256;
+
 	/**
 	 * Default value for {@link #scanClassicBoostLength}.
 	 */
@@ -128,6 +133,22 @@ public class BleManagerConfig extends BleDeviceConfig
 	 */
 	@com.idevicesinc.sweetblue.annotations.Advanced
 	public SweetLogger logger						= new DefaultLogger();
+
+	/**
+	 * Default is <code>false</code> - if <code>true</code>, log statements are tagged with the calling class and method, found by walking
+	 * the stack for each statement. That's a noticeable cost on busy connections, so it's left off unless needed, in which case statements
+	 * are tagged "SweetBlue" and only prefixed with the thread name. If {@link #loggingEnabled} is not set, then this option will not affect anything.
+	 */
+	@com.idevicesinc.sweetblue.annotations.Advanced
+	public boolean logCallerInfo							= false;
+
+	/**
+	 * Default is {@value #DEFAULT_EVENT_LOG_SIZE} - the number of recent GATT callbacks and task starts/ends kept in a compact in-memory
+	 * ring buffer, whether or not {@link #loggingEnabled} is set, so they can be written out with {@link BleManager#dumpEventLog(java.io.File)}
+	 * when reporting a bug. Each event takes a few dozen bytes and recording one doesn't allocate. Set to zero to disable.
+	 */
+	@com.idevicesinc.sweetblue.annotations.Advanced
+	public int eventLogSize								= DEFAULT_EVENT_LOG_SIZE;
 	
 	/**
 	 * Default is <code>false</code> - this option may help mitigate crashes with "Unfortunately,
@@ -285,6 +306,15 @@ public class BleManagerConfig extends BleDeviceConfig
 	@com.idevicesinc.sweetblue.annotations.Advanced
 	public boolean manageLastUhOhOnDisk						= true;
 
+	/**
+	 * Default is <code>null</code> - If set, historical data persisted to disk (see {@link BleNodeConfig.HistoricalDataLogFilter.Please#logToDisk()})
+	 * is deleted once it's older than this, checked as new data is written. Use {@link BleNodeConfig.HistoricalDataLogFilter.Please#andLimitLogTo(long)}
+	 * to limit by count instead.
+	 */
+	@com.idevicesinc.sweetblue.annotations.Advanced
+	@Nullable(Prevalence.NORMAL)
+	public Interval historicalDataMaxAge					= null;
+
 	/**
 	 * Default is {@value #DEFAULT_AUTO_SCAN_DELAY_AFTER_RESUME} seconds - Unless {@link Interval#DISABLED},
 	 * this option will kick off a scan for {@link #autoScanActiveTime} seconds
@@ -373,6 +403,24 @@ public class BleManagerConfig extends BleDeviceConfig
 	@com.idevicesinc.sweetblue.annotations.Advanced
 	public Interval minTimeToIdle							= Interval.secs(DEFAULT_DELAY_BEFORE_IDLE);
 
+	/**
+	 * Default is <code>false</code> - If <code>true</code>, once the update loop is {@link BleManagerState#IDLE}, it only ticks when something needs it,
+	 * for instance a poll coming due, a reconnect or transaction in progress, a new task, or a native callback. If nothing does, the loop
+	 * sleeps until woken up. {@link #idleUpdateRate} is then the shortest time between two idle ticks.
+	 * Otherwise the loop always ticks at {@link #idleUpdateRate} while idle.
+	 */
+	@com.idevicesinc.sweetblue.annotations.Advanced
+	public boolean idleUpdatesOnDemand						= false;
+
+	/**
+	 * Default is <code>null</code> - If set, this replaces {@link #defaultStatePollRate} while the update loop is {@link BleManagerState#IDLE}.
+	 * With {@link #idleUpdatesOnDemand}, native state polling is often the only thing keeping an idle update loop awake, so a slower rate
+	 * here lets the loop sleep longer.
+	 */
+	@com.idevicesinc.sweetblue.annotations.Advanced
+	@Nullable(Prevalence.NORMAL)
+	public Interval idleStatePollRate						= null;
+
 	/**
 	 * Default is {@link Interval#DISABLED} - This sets an amount of time to delay between executing each task in the queue. The delay simply makes sure
 	 * that the amount of time requested here has passed since the last task ended.
@@ -380,6 +428,17 @@ public class BleManagerConfig extends BleDeviceConfig
 	@Advanced
 	public Interval delayBetweenTasks						= Interval.DISABLED;
 
+	/**
+	 * Default is <code>false</code> - If <code>true</code>, tasks for different {@link BleDevice} instances (connecting, reads, writes, etc.)
+	 * may execute at the same time, with each device still running its own tasks one at a time and in order. Tasks which aren't tied to a
+	 * device (scanning, turning BLE on/off, servers, etc.) still run alone. Older Android versions don't cope well with concurrent GATT
+	 * operations on different devices, so only turn this on if you talk to several devices at once and have tested it on your targets.
+	 *
+	 * @see BleDevice#getAverageTaskWaitTime()
+	 */
+	@Advanced
+	public boolean runDeviceTasksInParallel					= false;
+
 	/**
 	 * Default is <code>false</code><br></br>
 	 * <br></br>
@@ -407,6 +466,15 @@ public class BleManagerConfig extends BleDeviceConfig
 	@Nullable(Prevalence.RARE)
 	public Interval scanReportDelay							= Interval.secs(DEFAULT_SCAN_REPORT_DELAY);
 
+	/**
+	 * Default is <code>null</code> - If set, this replaces {@link #scanReportDelay} for scans started while the app is in the background,
+	 * so the chipset can gather results for longer and wake the CPU less often. Scans pick the delay matching the app's state each time
+	 * they (re)start, for instance after each {@link #infiniteScanInterval}.
+	 */
+	@com.idevicesinc.sweetblue.annotations.Advanced
+	@Nullable(Prevalence.NORMAL)
+	public Interval backgroundScanReportDelay				= null;
+
 	/**
 	 * Default is <code>null</code>, meaning no filtering - all discovered devices will
 	 * be piped through your {@link BleManager.DiscoveryListener} instance
@@ -416,6 +484,25 @@ public class BleManagerConfig extends BleDeviceConfig
 	 */
 	@Nullable(Prevalence.NORMAL)
 	public ScanFilter defaultScanFilter						= null;
+
+	/**
+	 * Default is <code>null</code> - If set, advertisements from devices SweetBlue doesn't know about yet are checked against this
+	 * {@link ScanPrefilter} before anything else is done with them, which is much cheaper than going through a {@link ScanFilter} for
+	 * each of the (possibly hundreds of) advertisers around. This applies to every scan, regardless of the {@link ScanFilter} used.
+	 *
+	 * @see BleManager#getScanPrefilterRejectedCount()
+	 */
+	@Nullable(Prevalence.NORMAL)
+	public ScanPrefilter scanPrefilter						= null;
+
+	/**
+	 * Default is <code>false</code> - If <code>true</code> and {@link #scanPrefilter} is {@link ScanPrefilter#isOffloadable()}, Lollipop and up
+	 * scans hand it to the Bluetooth chipset as native scan filters, so non-matching advertisements never reach the app at all. Unlike
+	 * {@link #scanPrefilter} itself, this also hides devices SweetBlue already knows about if they don't match. If the chipset refuses
+	 * filtered scans, SweetBlue restarts the scan unfiltered and keeps filtering in software for the rest of the session.
+	 */
+	@com.idevicesinc.sweetblue.annotations.Advanced
+	public boolean offloadScanPrefilter						= false;
 	
 	/**
 	 * Default is <code>null</code> - can also be set post-construction with {@link BleManager#setListener_Discovery(DiscoveryListener)},
@@ -39,6 +39,7 @@ abstract class PA_Task
 //	private int m_retryCount;
 	
 	private long m_timeCreated;
+	private long m_timeQueued;
 	private long m_timeExecuted;
 	
 	private boolean m_softlyCancelled = false;
@@ -129,6 +130,14 @@ abstract class PA_Task
 		if( !m_manager.ASSERT(newState != m_state) )  return false;
 		
 		m_state = newState;
+
+		if( m_state == PE_TaskState.EXECUTING || m_state.isEndingState() )
+		{
+			final P_EventLog.Type type = m_state == PE_TaskState.EXECUTING ? P_EventLog.Type.TASK_START : P_EventLog.Type.TASK_END;
+			final String macAddress = m_device != null ? m_device.getMacAddress() : null;
+
+			getLogger().event(type, macAddress, getClass(), m_state.ordinal(), 0, getCharUuid(), null);
+		}
 		
 		if( getLogger().isEnabled() )
 		{
@@ -171,6 +180,7 @@ abstract class PA_Task
 	void onAddedToQueue(P_TaskQueue queue)
 	{
 		m_queue = queue;
+		m_timeQueued = System.currentTimeMillis();
 		setState(PE_TaskState.QUEUED);
 //		m_retryCount = 0;
 	}
@@ -397,6 +407,14 @@ abstract class PA_Task
 		return (currentTime - m_timeCreated)/1000.0;
 	}
 
+	/**
+	 * Time since this task was last added to the queue, in seconds.
+	 */
+	public double getTotalTimeQueued()
+	{
+		return (System.currentTimeMillis() - m_timeQueued)/1000.0;
+	}
+
 	public double getAggregatedTimeArmedAndExecuting()
 	{
 		return m_totalTimeArmedAndExecuting;
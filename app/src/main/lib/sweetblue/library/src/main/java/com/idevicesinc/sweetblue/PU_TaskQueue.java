@@ -14,14 +14,17 @@ final class PU_TaskQueue
 	{
 		if( taskList.size() == 0 )  return 0;
 		
-		for( int i = 0; i < taskList.size(); i++ )
+		int i = 0;
+		
+		//--- Walked with an iterator, P_TaskList#get() isn't constant time.
+		for( PA_Task ithQueuedTask : taskList )
 		{
-			PA_Task ithQueuedTask = taskList.get(i);
-			
 			if( taskToAdd.isMoreImportantThan(ithQueuedTask) )
 			{
 				return i;
 			}
+			
+			i++;
 		}
 		
 		return -1;
@@ -18,6 +18,7 @@ import com.idevicesinc.sweetblue.compat.L_Util;
 import com.idevicesinc.sweetblue.compat.M_Util;
 import com.idevicesinc.sweetblue.utils.Interval;
 import com.idevicesinc.sweetblue.utils.Utils;
+import com.idevicesinc.sweetblue.utils.Utils_Reflection;
 import java.lang.reflect.Method;
 import java.util.HashSet;
 import java.util.Set;
@@ -109,7 +110,13 @@ public final class P_AndroidBluetoothManager implements P_NativeManagerLayer
         {
             if (m_getLeState_marshmallow == null)
             {
-                m_getLeState_marshmallow = BluetoothAdapter.class.getDeclaredMethod("getLeState");
+                //--- Cached, including when it's missing, so devices without it don't throw on every poll.
+                m_getLeState_marshmallow = Utils_Reflection.getDeclaredMethod(BluetoothAdapter.class, "getLeState");
+
+                if (m_getLeState_marshmallow == null)
+                {
+                    return m_adaptor.getState();
+                }
             }
             m_refState = (Integer) m_getLeState_marshmallow.invoke(m_adaptor);
             m_state = m_adaptor.getState();
@@ -256,14 +263,14 @@ public final class P_AndroidBluetoothManager implements P_NativeManagerLayer
         }
     }
 
-    @Override public final void startLScan(int scanMode, Interval delay, L_Util.ScanCallback callback)
+    @Override public final void startLScan(int scanMode, Interval delay, ScanPrefilter filter_nullable, L_Util.ScanCallback callback)
     {
-        L_Util.startNativeScan(m_adaptor, scanMode, delay, callback);
+        L_Util.startNativeScan(m_adaptor, scanMode, delay, L_Util.buildScanFilters(filter_nullable), callback);
     }
 
-    @Override public final void startMScan(int scanMode, Interval delay, L_Util.ScanCallback callback)
+    @Override public final void startMScan(int scanMode, Interval delay, ScanPrefilter filter_nullable, L_Util.ScanCallback callback)
     {
-        M_Util.startNativeScan(m_adaptor, scanMode, delay, callback);
+        M_Util.startNativeScan(m_adaptor, scanMode, delay, L_Util.buildScanFilters(filter_nullable), callback);
     }
 
     @Override public final boolean startLeScan(BluetoothAdapter.LeScanCallback callback)
@@ -14,6 +14,7 @@ import android.os.DeadObjectException;
 import com.idevicesinc.sweetblue.compat.K_Util;
 import com.idevicesinc.sweetblue.compat.L_Util;
 import com.idevicesinc.sweetblue.utils.Utils;
+import com.idevicesinc.sweetblue.utils.Utils_Reflection;
 import java.lang.reflect.Field;
 import java.util.ConcurrentModificationException;
 import java.util.List;
@@ -77,12 +78,11 @@ final class P_AndroidGatt implements P_GattLayer
                         return null;
                     }
                 }
-                try
-                {
-                    m_authRetryField = m_gatt.getClass().getDeclaredField(s_authRetryFieldName);
-                } catch (NoSuchFieldException e1)
+                m_authRetryField = Utils_Reflection.getDeclaredField(m_gatt.getClass(), s_authRetryFieldName);
+                if (m_authRetryField == null)
                 {
                     getManager().ASSERT(false, "Problem getting field " + m_gatt.getClass().getSimpleName() + "." + s_authRetryFieldName);
+                    return null;
                 }
             }
             try
@@ -8,6 +8,7 @@ import android.bluetooth.BluetoothGattCallback;
 import android.bluetooth.BluetoothGattCharacteristic;
 import android.bluetooth.BluetoothGattDescriptor;
 import android.bluetooth.BluetoothProfile;
+import android.util.Log;
 
 import com.idevicesinc.sweetblue.BleDevice.BondListener.Status;
 import com.idevicesinc.sweetblue.BleNode.ConnectionFailListener.AutoConnectUsage;
@@ -130,6 +131,11 @@ final class P_BleDevice_Listeners extends BluetoothGattCallback
         return m_device.getManager().getLogger();
     }
 
+    private void event(final P_EventLog.Type type, final int code, final int gattStatus, final UUID uuid_nullable, final byte[] data_nullable)
+    {
+        logger().event(type, m_device.getMacAddress(), null, code, gattStatus, uuid_nullable, data_nullable);
+    }
+
     @Override
     public final void onConnectionStateChange(final BluetoothGatt gatt, final int gattStatus, final int newState)
     {
@@ -152,6 +158,7 @@ final class P_BleDevice_Listeners extends BluetoothGattCallback
         //--- RB > NOTE: Regarding the above comment, 8 is actually BleStatuses.CONN_TIMEOUT -- it seems connection status codes have different variables
         //---				associated to them. Some of them share the same value as BluetoothGatt status codes. This is fixed now with the new log_conn_status
         //---				logger method (and the values are in BleStatuses)
+        event(P_EventLog.Type.CONNECTION_STATE, newState, gattStatus, null, null);
         logger().log_conn_status(gattStatus, logger().gattConn(newState));
 
         if (newState == BluetoothProfile.STATE_DISCONNECTED)
@@ -284,6 +291,7 @@ final class P_BleDevice_Listeners extends BluetoothGattCallback
 
     private void onServicesDiscovered_updateThread(final BluetoothGatt gatt, final int gattStatus)
     {
+        event(P_EventLog.Type.SERVICES_DISCOVERED, 0, gattStatus, null, null);
         logger().log_status(gattStatus);
 
         if (Utils.isSuccess(gattStatus))
@@ -319,7 +327,8 @@ final class P_BleDevice_Listeners extends BluetoothGattCallback
     private void onCharacteristicRead_updateThread(final BluetoothGatt gatt, final BluetoothGattCharacteristic characteristic, final int gattStatus, final byte[] value)
     {
         final UUID uuid = characteristic.getUuid();
-        logger().i(logger().charName(uuid));
+        event(P_EventLog.Type.READ, 0, gattStatus, uuid, value);
+        logger().logf(Log.INFO, "char=%s", uuid);
         logger().log_status(gattStatus);
 
         final P_Task_Read readTask = m_queue.getCurrent(P_Task_Read.class, m_device);
@@ -360,7 +369,8 @@ final class P_BleDevice_Listeners extends BluetoothGattCallback
     private void onCharacteristicWrite_updateThread(final BluetoothGatt gatt, final BluetoothGattCharacteristic characteristic, final byte[] data, final int gattStatus)
     {
         final UUID uuid = characteristic.getUuid();
-        logger().i(logger().charName(uuid));
+        event(P_EventLog.Type.WRITE, 0, gattStatus, uuid, data);
+        logger().logf(Log.INFO, "char=%s", uuid);
         logger().log_status(gattStatus);
 
         final P_Task_Write task = m_queue.getCurrent(P_Task_Write.class, m_device);
@@ -436,6 +446,7 @@ final class P_BleDevice_Listeners extends BluetoothGattCallback
 
     private void onReliableWriteCompleted_updateThread(final BluetoothGatt gatt, final int gattStatus)
     {
+        event(P_EventLog.Type.RELIABLE_WRITE, 0, gattStatus, null, null);
         logger().log_status(gattStatus);
 
         final P_Task_ExecuteReliableWrite task = m_queue.getCurrent(P_Task_ExecuteReliableWrite.class, m_device);
@@ -465,6 +476,8 @@ final class P_BleDevice_Listeners extends BluetoothGattCallback
 
     private void onReadRemoteRssi_updateThread(final BluetoothGatt gatt, final int rssi, final int gattStatus)
     {
+        event(P_EventLog.Type.RSSI, rssi, gattStatus, null, null);
+
         if (Utils.isSuccess(gattStatus))
         {
             m_device.updateRssi(rssi, false);
@@ -500,7 +513,8 @@ final class P_BleDevice_Listeners extends BluetoothGattCallback
     private void onDescriptorWrite_updateThread(final BluetoothGatt gatt, final BluetoothGattDescriptor descriptor, final byte[] data, final int gattStatus)
     {
         final UUID uuid = descriptor.getUuid();
-        logger().i(logger().descriptorName(uuid));
+        event(P_EventLog.Type.DESCRIPTOR_WRITE, 0, gattStatus, uuid, data);
+        logger().logf(Log.INFO, "descriptor=%s", uuid);
         logger().log_status(gattStatus);
 
         final P_Task_WriteDescriptor task_write = m_queue.getCurrent(P_Task_WriteDescriptor.class, m_device);
@@ -541,6 +555,8 @@ final class P_BleDevice_Listeners extends BluetoothGattCallback
 
     private void onDescriptorRead_updateThread(final BluetoothGatt gatt, final BluetoothGattDescriptor descriptor, final byte[] data, final int gattStatus)
     {
+        event(P_EventLog.Type.DESCRIPTOR_READ, 0, gattStatus, descriptor.getUuid(), data);
+
         final PA_Task_ReadOrWrite task_readOrWrite = m_queue.getCurrent(PA_Task_ReadOrWrite.class, m_device);
 
         if (task_readOrWrite != null && task_readOrWrite.descriptorMatches(descriptor))
@@ -592,7 +608,8 @@ final class P_BleDevice_Listeners extends BluetoothGattCallback
         final UUID characteristicUuid = characteristic.getUuid();
         final UUID serviceUuid = characteristic.getService().getUuid();
 
-        logger().d("characteristic=" + characteristicUuid.toString());
+        event(P_EventLog.Type.NOTIFY, 0, BleStatuses.GATT_SUCCESS, characteristicUuid, value);
+        logger().logf(Log.DEBUG, "characteristic=%s", characteristicUuid);
 
         m_device.getPollManager().onCharacteristicChangedFromNativeNotify(serviceUuid, characteristicUuid, value);
     }
@@ -605,6 +622,8 @@ final class P_BleDevice_Listeners extends BluetoothGattCallback
 
     public final void onNativeBondStateChanged_updateThread(int previousState, int newState, int failReason)
     {
+        event(P_EventLog.Type.BOND_STATE, newState, failReason, null, null);
+
         if (newState == BluetoothDevice.ERROR)
         {
             P_TaskQueue queue = m_device.getTaskQueue();
@@ -695,6 +714,8 @@ final class P_BleDevice_Listeners extends BluetoothGattCallback
 
     private void onMtuChanged_updateThread(BluetoothGatt gatt, int mtu, int gattStatus)
     {
+        event(P_EventLog.Type.MTU, mtu, gattStatus, null, null);
+
         if (Utils.isSuccess(gattStatus))
         {
             m_device.updateMtu(mtu);
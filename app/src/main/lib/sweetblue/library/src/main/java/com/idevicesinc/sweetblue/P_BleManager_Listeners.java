@@ -194,6 +194,24 @@ final class P_BleManager_Listeners
         m_pollRate = rate;
     }
 
+    private Interval getPollRate()
+    {
+        final Interval idleRate = m_mngr.m_config.idleStatePollRate;
+
+        return idleRate != null && m_mngr.is(IDLE) ? idleRate : m_pollRate;
+    }
+
+    final double timeUntilNextUpdate()
+    {
+        final Interval pollRate = getPollRate();
+
+        if (!Utils.isMarshmallow() || !m_mngr.m_config.allowManagerStatePolling || Interval.isDisabled(pollRate))
+        {
+            return Interval.INFINITE.secs();
+        }
+        return Math.max(0.0, pollRate.secs() - m_timeSinceLastPoll);
+    }
+
     private static IntentFilter newIntentFilter()
     {
         final IntentFilter intentFilter = new IntentFilter();
@@ -600,7 +618,9 @@ final class P_BleManager_Listeners
     {
 //		m_mngr.getLogger().e("*********************" + m_mngr.getLogger().gattBleState(getBleState()));
 
-        if (Utils.isMarshmallow() && m_mngr.m_config.allowManagerStatePolling && Interval.isEnabled(m_pollRate) && m_timeSinceLastPoll >= m_pollRate.secs())
+        final Interval pollRate = getPollRate();
+
+        if (Utils.isMarshmallow() && m_mngr.m_config.allowManagerStatePolling && Interval.isEnabled(pollRate) && m_timeSinceLastPoll >= pollRate.secs())
         {
             m_checkingState = true;
 
@@ -778,7 +798,7 @@ final class P_BleManager_Listeners
             }
             m_checkingState = false;
         }
-        else if (Interval.isEnabled(m_pollRate) && m_timeSinceLastPoll < m_pollRate.secs())
+        else if (Interval.isEnabled(pollRate) && m_timeSinceLastPoll < pollRate.secs())
         {
             m_timeSinceLastPoll += time_Step;
         }
@@ -374,6 +374,18 @@ final class P_DeviceManager
         }
     }
 
+    double timeUntilNextUpdate()
+    {
+        double time = Interval.INFINITE.secs();
+
+        for (int i = m_list.size() - 1; i >= 0; i--)
+        {
+            time = Math.min(time, m_list.get(i).timeUntilNextUpdate());
+        }
+
+        return time;
+    }
+
     void update(double timeStep)
     {
         //--- DRK > The asserts here and keeping track of "is updating" is because
@@ -0,0 +1,235 @@
+package com.idevicesinc.sweetblue;
+
+import com.idevicesinc.sweetblue.utils.ByteReader;
+import com.idevicesinc.sweetblue.utils.ByteWriter;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteOrder;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Fixed-size binary ring buffer of the most recent GATT callbacks and task transitions, kept regardless of
+ * {@link BleManagerConfig#loggingEnabled} so there's something to attach to bug reports. Recording is lock-free and doesn't
+ * allocate: every record is written into a preallocated slot of {@link #RECORD_SIZE} bytes, along with references to objects
+ * that already exist (the MAC address and the task class). Only {@link #dump(Writer)} turns records into text.
+ * <br><br>
+ * Each slot is stamped with its sequence number once written, so records overwritten while being dumped are skipped. Writers
+ * claim a slot by swapping its stamp for {@link #STAMP_WRITING}, so two writers a whole lap apart never write the same slot at once,
+ * the one that loses drops its record.
+ */
+final class P_EventLog
+{
+	enum Type
+	{
+		TASK_START,
+		TASK_END,
+		CONNECTION_STATE,
+		SERVICES_DISCOVERED,
+		READ,
+		WRITE,
+		NOTIFY,
+		DESCRIPTOR_READ,
+		DESCRIPTOR_WRITE,
+		RELIABLE_WRITE,
+		RSSI,
+		MTU,
+		BOND_STATE;
+
+		private static final Type[] VALUES = values();
+	}
+
+	//--- Only this many bytes of a payload are kept, the full length is recorded next to them.
+	static final int DATA_CAPACITY = 20;
+
+	//--- time(8) type(1) captured(1) length(2) code(4) status(4) uuid(16) data(DATA_CAPACITY)
+	static final int RECORD_SIZE = 36 + DATA_CAPACITY;
+
+	private static final int OFFSET_TIME = 0;
+	private static final int OFFSET_TYPE = 8;
+	private static final int OFFSET_CAPTURED = 9;
+	private static final int OFFSET_LENGTH = 10;
+	private static final int OFFSET_CODE = 12;
+	private static final int OFFSET_STATUS = 16;
+	private static final int OFFSET_UUID = 20;
+	private static final int OFFSET_DATA = 36;
+
+	private static final long STAMP_WRITING = -1;
+	private static final long STAMP_EMPTY = Long.MIN_VALUE;
+
+	private final int m_capacity;
+	private final byte[] m_buffer;
+	private final String[] m_macAddresses;
+	private final Object[] m_tags;
+	private final AtomicLongArray m_stamps;
+	private final AtomicLong m_next = new AtomicLong();
+
+	P_EventLog(final int capacity)
+	{
+		m_capacity = capacity;
+		m_buffer = new byte[capacity * RECORD_SIZE];
+		m_macAddresses = new String[capacity];
+		m_tags = new Object[capacity];
+		m_stamps = new AtomicLongArray(capacity);
+
+		for( int i = 0; i < capacity; i++ )
+		{
+			m_stamps.set(i, STAMP_EMPTY);
+		}
+	}
+
+	int getCapacity()
+	{
+		return m_capacity;
+	}
+
+	/**
+	 * Records an event. <code>tag_nullable</code> is printed as-is, or by simple name if it's a {@link Class}, and
+	 * <code>code</code> is the {@link PE_TaskState} ordinal for task events or the new native state for state changes.
+	 */
+	void record(final Type type, final String macAddress_nullable, final Object tag_nullable, final int code, final int status, final UUID uuid_nullable, final byte[] data_nullable)
+	{
+		final long sequence = m_next.getAndIncrement();
+		final int slot = (int) (sequence % m_capacity);
+		final int offset = slot * RECORD_SIZE;
+
+		//--- Claim the slot from whichever older record it holds. If another writer is still in it, or a newer lap already took
+		//--- it over, this record is dropped rather than waiting on a GATT callback thread.
+		long stamp = m_stamps.get(slot);
+
+		while( true )
+		{
+			if( stamp == STAMP_WRITING || stamp >= sequence )  return;
+
+			if( m_stamps.compareAndSet(slot, stamp, STAMP_WRITING) )  break;
+
+			stamp = m_stamps.get(slot);
+		}
+
+		final int length = data_nullable != null ? data_nullable.length : 0;
+		final int captured = Math.min(length, DATA_CAPACITY);
+
+		ByteWriter.putLong(m_buffer, offset + OFFSET_TIME, System.currentTimeMillis(), ByteOrder.BIG_ENDIAN);
+		m_buffer[offset + OFFSET_TYPE] = (byte) type.ordinal();
+		m_buffer[offset + OFFSET_CAPTURED] = (byte) captured;
+		ByteWriter.putShort(m_buffer, offset + OFFSET_LENGTH, Math.min(length, 0xFFFF), ByteOrder.BIG_ENDIAN);
+		ByteWriter.putInt(m_buffer, offset + OFFSET_CODE, code, ByteOrder.BIG_ENDIAN);
+		ByteWriter.putInt(m_buffer, offset + OFFSET_STATUS, status, ByteOrder.BIG_ENDIAN);
+		ByteWriter.putLong(m_buffer, offset + OFFSET_UUID, uuid_nullable != null ? uuid_nullable.getMostSignificantBits() : 0L, ByteOrder.BIG_ENDIAN);
+		ByteWriter.putLong(m_buffer, offset + OFFSET_UUID + 8, uuid_nullable != null ? uuid_nullable.getLeastSignificantBits() : 0L, ByteOrder.BIG_ENDIAN);
+
+		if( captured > 0 )
+		{
+			System.arraycopy(data_nullable, 0, m_buffer, offset + OFFSET_DATA, captured);
+		}
+
+		m_macAddresses[slot] = macAddress_nullable;
+		m_tags[slot] = tag_nullable;
+
+		//--- Must stay last: the stamp is a volatile write, it's what publishes the bytes and references above to dump().
+		m_stamps.set(slot, sequence);
+	}
+
+	/**
+	 * Writes every record still in the buffer as one line of text, oldest first, and returns how many were written.
+	 */
+	int dump(final Writer writer) throws IOException
+	{
+		final SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS", Locale.US);
+		final byte[] record = new byte[RECORD_SIZE];
+		final StringBuilder line = new StringBuilder();
+
+		final long end = m_next.get();
+		final long start = Math.max(0, end - m_capacity);
+		int written = 0;
+
+		for( long sequence = start; sequence < end; sequence++ )
+		{
+			final int slot = (int) (sequence % m_capacity);
+
+			if( m_stamps.get(slot) != sequence )  continue;
+
+			System.arraycopy(m_buffer, slot * RECORD_SIZE, record, 0, RECORD_SIZE);
+			final String macAddress = m_macAddresses[slot];
+			final Object tag = m_tags[slot];
+
+			//--- Overwritten while copying.
+			if( m_stamps.get(slot) != sequence )  continue;
+
+			line.setLength(0);
+			append(line, dateFormat, record, macAddress, tag);
+			line.append('\n');
+
+			writer.write(line.toString());
+			written++;
+		}
+
+		writer.flush();
+
+		return written;
+	}
+
+	private static void append(final StringBuilder line, final SimpleDateFormat dateFormat, final byte[] record, final String macAddress, final Object tag)
+	{
+		final int typeOrdinal = record[OFFSET_TYPE] & 0xFF;
+		final Type type = typeOrdinal < Type.VALUES.length ? Type.VALUES[typeOrdinal] : null;
+		final int code = ByteReader.getInt(record, OFFSET_CODE, ByteOrder.BIG_ENDIAN);
+
+		line.append(dateFormat.format(new Date(ByteReader.getLong(record, OFFSET_TIME, ByteOrder.BIG_ENDIAN))));
+		line.append(' ').append(type != null ? type.name() : "UNKNOWN(" + typeOrdinal + ")");
+
+		if( macAddress != null )
+		{
+			line.append(' ').append(macAddress);
+		}
+
+		if( tag != null )
+		{
+			line.append(' ').append(tag instanceof Class ? ((Class<?>) tag).getSimpleName() : tag.toString());
+		}
+
+		if( type == Type.TASK_START || type == Type.TASK_END )
+		{
+			line.append(" state=").append(code >= 0 && code < PE_TaskState.values().length ? PE_TaskState.values()[code].name() : String.valueOf(code));
+
+			return;
+		}
+
+		line.append(" code=").append(code);
+		line.append(" status=").append(ByteReader.getInt(record, OFFSET_STATUS, ByteOrder.BIG_ENDIAN));
+
+		final long msb = ByteReader.getLong(record, OFFSET_UUID, ByteOrder.BIG_ENDIAN);
+		final long lsb = ByteReader.getLong(record, OFFSET_UUID + 8, ByteOrder.BIG_ENDIAN);
+
+		if( msb != 0L || lsb != 0L )
+		{
+			line.append(" uuid=").append(new UUID(msb, lsb));
+		}
+
+		final int length = ByteReader.getUnsignedShort(record, OFFSET_LENGTH, ByteOrder.BIG_ENDIAN);
+
+		if( length > 0 )
+		{
+			final int captured = record[OFFSET_CAPTURED] & 0xFF;
+
+			line.append(" data(").append(length).append(")=");
+
+			for( int i = 0; i < captured; i++ )
+			{
+				final int b = record[OFFSET_DATA + i] & 0xFF;
+
+				line.append(Character.forDigit(b >> 4, 16)).append(Character.forDigit(b & 0xF, 16));
+			}
+
+			if( captured < length )
+			{
+				line.append("...");
+			}
+		}
+	}
+}
@@ -3,6 +3,7 @@ package com.idevicesinc.sweetblue;
 import java.lang.reflect.Field;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.UUID;
 
 import android.bluetooth.BluetoothAdapter;
@@ -24,6 +25,7 @@ import com.idevicesinc.sweetblue.utils.UuidNameMap_ListWrapper;
 final class P_Logger
 {
 
+	private final static String TAG = "SweetBlue";
 	private final static String MAIN = "MAIN(%d)";
 	private final static String UPDATE = "UPDATE(%d)";
 	private String[] m_debugThreadNamePool;
@@ -36,18 +38,22 @@ final class P_Logger
 	private HashMap<Integer, String> m_gattBondStates = null;
 	private HashMap<Integer, String> m_unbondReasonCodes = null;
 	private boolean m_enabled;
+	private final boolean m_logCallerInfo;
 	private final UuidNameMap_ListWrapper m_nameMap;
 	private SweetLogger m_logger = null;
 	private final BleManager m_mgr;
+	private final P_EventLog m_eventLog;
 
 
-	public P_Logger(final BleManager manager, String[] debugThreadNamePool, List<UuidNameMap> debugUuidNameDicts, boolean enabled, SweetLogger logger)
+	public P_Logger(final BleManager manager, String[] debugThreadNamePool, List<UuidNameMap> debugUuidNameDicts, boolean enabled, boolean logCallerInfo, SweetLogger logger, P_EventLog eventLog_nullable)
 	{
 		m_mgr = manager;
 		m_logger = logger;
 		m_debugThreadNamePool = debugThreadNamePool;
 		m_nameMap = new UuidNameMap_ListWrapper(debugUuidNameDicts);
 		m_enabled = enabled;
+		m_logCallerInfo = logCallerInfo;
+		m_eventLog = eventLog_nullable;
 	}
 
 	public void printBuildInfo()
@@ -70,12 +76,9 @@ final class P_Logger
 		return m_enabled;
 	}
 
-	public synchronized String getDebugAction(String action)
+	public String getDebugAction(String action)
 	{
-		String[] action_split = action.split("\\.");
-		String action_debug = action_split[action_split.length - 1];
-
-		return action_debug;
+		return action.substring(action.lastIndexOf('.') + 1);
 	}
 
 	public synchronized String getThreadName(int threadId)
@@ -129,23 +132,97 @@ final class P_Logger
 		return null;
 	}
 	
-	private String prefixMessage(String methodName, String message)
+	private String prefixMessage(StackTraceElement trace_nullable, String message)
 	{
 		String threadName = getThreadName(Process.myTid());
-		message = threadName + " " + methodName + "() - " + message;
-		
-		return message;
+
+		if( trace_nullable == null )
+		{
+			return threadName + " - " + message;
+		}
+
+		return threadName + " " + trace_nullable.getMethodName() + "() - " + message;
+	}
+
+	/**
+	 * Returns the caller outside this class if {@link BleManagerConfig#logCallerInfo} is set, otherwise <code>null</code>
+	 * without walking the stack.
+	 */
+	private StackTraceElement getCallerTrace()
+	{
+		return m_logCallerInfo ? getSoonestTrace() : null;
 	}
 	
 	public void log(int level, String message)
 	{
 		if( !m_enabled )  return;
 		
-		StackTraceElement trace = getSoonestTrace();
-		String className = trace.getClassName();
-		String[] className_split = className.split("\\.");
-		className = className_split[className_split.length-1];
-		log_private(level, className, message, trace);
+		StackTraceElement trace = getCallerTrace();
+		String tag = TAG;
+
+		if( trace != null )
+		{
+			tag = trace.getClassName();
+			tag = tag.substring(tag.lastIndexOf('.') + 1);
+		}
+
+		log_private(level, tag, message, trace);
+	}
+
+	/**
+	 * Logs <code>String.format(format, arg0)</code>, formatting only if logging is enabled, so call sites don't pay for string
+	 * building on hot paths. {@link UUID} arguments are printed through {@link #uuidName(UUID)}.
+	 */
+	public void logf(int level, String format, Object arg0)
+	{
+		if( !m_enabled )  return;
+
+		log(level, String.format(Locale.US, format, formatArg(arg0)));
+	}
+
+	/**
+	 * Same as {@link #logf(int, String, Object)} with two arguments.
+	 */
+	public void logf(int level, String format, Object arg0, Object arg1)
+	{
+		if( !m_enabled )  return;
+
+		log(level, String.format(Locale.US, format, formatArg(arg0), formatArg(arg1)));
+	}
+
+	/**
+	 * Same as {@link #logf(int, String, Object)} with three arguments.
+	 */
+	public void logf(int level, String format, Object arg0, Object arg1, Object arg2)
+	{
+		if( !m_enabled )  return;
+
+		log(level, String.format(Locale.US, format, formatArg(arg0), formatArg(arg1), formatArg(arg2)));
+	}
+
+	private Object formatArg(Object arg)
+	{
+		return arg instanceof UUID ? uuidName((UUID) arg) : arg;
+	}
+
+	/**
+	 * Records an event to the {@link P_EventLog} if {@link BleManagerConfig#eventLogSize} is above zero, whether or not logging is enabled.
+	 */
+	void event(P_EventLog.Type type, String macAddress_nullable, Object tag_nullable, int code, int status, UUID uuid_nullable, byte[] data_nullable)
+	{
+		if( m_eventLog == null )  return;
+
+		m_eventLog.record(type, macAddress_nullable, tag_nullable, code, status, uuid_nullable, data_nullable);
+	}
+
+	void event(P_EventLog.Type type, String macAddress_nullable, int status, UUID uuid_nullable, byte[] data_nullable)
+	{
+		event(type, macAddress_nullable, null, 0, status, uuid_nullable, data_nullable);
+	}
+
+	P_EventLog getEventLog()
+	{
+		return m_eventLog;
 	}
 	
 	public void log_status(int gattStatus)
@@ -182,13 +259,13 @@ final class P_Logger
 	{
 		if( !m_enabled )  return;
 		
-		StackTraceElement trace = getSoonestTrace();
+		StackTraceElement trace = getCallerTrace();
 		log_private(level, tag, message, trace); 
 	}
 	
-	private void log_private(int level, String tag, String message, StackTraceElement trace)
+	private void log_private(int level, String tag, String message, StackTraceElement trace_nullable)
 	{
-		message = prefixMessage(trace.getMethodName(), message);
+		message = prefixMessage(trace_nullable, message);
 		if (m_logger != null)
 		{
 			m_logger.onLogEntry(level, tag, message);
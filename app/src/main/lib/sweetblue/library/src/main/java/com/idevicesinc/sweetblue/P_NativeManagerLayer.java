@@ -37,8 +37,8 @@ interface P_NativeManagerLayer {
     boolean isLocationEnabledForScanning_byRuntimePermissions();
     boolean isLocationEnabledForScanning();
     boolean isBluetoothEnabled();
-    void startLScan(int scanMode, Interval delay, L_Util.ScanCallback callback);
-    void startMScan(int scanMode, Interval delay, L_Util.ScanCallback callback);
+    void startLScan(int scanMode, Interval delay, ScanPrefilter filter_nullable, L_Util.ScanCallback callback);
+    void startMScan(int scanMode, Interval delay, ScanPrefilter filter_nullable, L_Util.ScanCallback callback);
     boolean startLeScan(BluetoothAdapter.LeScanCallback callback);
     void stopLeScan(BluetoothAdapter.LeScanCallback callback);
     BluetoothDevice getRemoteDevice(String macAddress);
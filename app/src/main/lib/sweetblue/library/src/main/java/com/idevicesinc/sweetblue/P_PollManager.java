@@ -230,6 +230,14 @@ final class P_PollManager
 			m_timeTracker = 0.0;
 		}
 		
+		double timeUntilNextUpdate()
+		{
+			if( m_interval <= 0.0 )  return Interval.INFINITE.secs();
+			if( m_interval == Interval.INFINITE.secs() )  return Interval.INFINITE.secs();
+
+			return Math.max(0.0, m_interval - m_timeTracker);
+		}
+
 		void update(double timeStep)
 		{
 			if( m_interval <= 0.0 )  return;
@@ -290,6 +298,7 @@ final class P_PollManager
 					if( ithEntry.trackingChanges() == trackChanges)
 					{
 						ithEntry.m_pollingReadListener.addListener(listener);
+						m_device.getManager().wakeUpdateLoop();
 						
 						return;
 					}
@@ -306,6 +315,8 @@ final class P_PollManager
 		}
 
 		m_entries.add(newEntry);
+
+		m_device.getManager().wakeUpdateLoop();
 	}
 	
 	void stopPoll(final UUID serviceUuid, final UUID characteristicUuid, DescriptorFilter descriptorFilter, Double interval_nullable, ReadWriteListener listener, boolean usingNotify)
@@ -323,6 +334,18 @@ final class P_PollManager
 		}
 	}
 	
+	double timeUntilNextUpdate()
+	{
+		double time = Interval.INFINITE.secs();
+
+		for( int i = 0; i < m_entries.size(); i++ )
+		{
+			time = Math.min(time, m_entries.get(i).timeUntilNextUpdate());
+		}
+
+		return time;
+	}
+
 	void update(double timeStep)
 	{
 		for( int i = 0; i < m_entries.size(); i++ )
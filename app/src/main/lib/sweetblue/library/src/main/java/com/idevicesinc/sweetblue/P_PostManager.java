@@ -37,10 +37,12 @@ final class P_PostManager
             if (Utils.isOnMainThread())
             {
                 action.run();
+                m_manager.wakeUpdateLoop();
             }
             else
             {
                 m_uiHandler.post(action);
+                m_manager.wakeUpdateLoop();
             }
         }
         else
@@ -48,10 +50,12 @@ final class P_PostManager
             if (isOnSweetBlueThread())
             {
                 action.run();
+                m_manager.wakeUpdateLoop();
             }
             else
             {
                 m_updateHandler.post(action);
+                m_manager.wakeUpdateLoop();
             }
         }
     }
@@ -78,6 +82,7 @@ final class P_PostManager
     public final void postToUpdateThread(Runnable action)
     {
         m_updateHandler.post(action);
+        m_manager.wakeUpdateLoop();
     }
 
     public final void runOrPostToUpdateThread(Runnable action)
@@ -85,10 +90,12 @@ final class P_PostManager
         if (isOnSweetBlueThread())
         {
             action.run();
+            m_manager.wakeUpdateLoop();
         }
         else
         {
             m_updateHandler.post(action);
+            m_manager.wakeUpdateLoop();
         }
     }
 
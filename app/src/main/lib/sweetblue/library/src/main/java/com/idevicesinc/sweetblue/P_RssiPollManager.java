@@ -3,6 +3,7 @@ package com.idevicesinc.sweetblue;
 
 import com.idevicesinc.sweetblue.BleDevice.ReadWriteListener;
 import com.idevicesinc.sweetblue.BleDevice.ReadWriteListener.Type;
+import com.idevicesinc.sweetblue.utils.Interval;
 
 
 final class P_RssiPollManager
@@ -56,6 +57,7 @@ final class P_RssiPollManager
 			m_timeTracker = ENABLE_TIMER;
 			m_interval = interval;
 			m_listener = new CustomListener(this, listener_nullable, m_device.getManager().getPostManager().getUIHandler(), m_device.conf_mngr().postCallbacksToMainThread);
+			m_device.getManager().wakeUpdateLoop();
 		}
 	}
 
@@ -72,6 +74,13 @@ final class P_RssiPollManager
 		m_waitingOnResponse = false;
 	}
 
+	final double timeUntilNextUpdate()
+	{
+		if( m_timeTracker == DISABLE_TIMER )  return Interval.INFINITE.secs();
+
+		return Math.max(0.0, m_interval - m_timeTracker);
+	}
+
 	final void update(double timestep)
 	{
 		if( m_timeTracker != DISABLE_TIMER )
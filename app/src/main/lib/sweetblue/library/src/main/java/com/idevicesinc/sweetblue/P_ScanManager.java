@@ -8,10 +8,8 @@ import com.idevicesinc.sweetblue.utils.Interval;
 import com.idevicesinc.sweetblue.utils.Utils;
 import com.idevicesinc.sweetblue.utils.Utils_String;
 import java.util.ArrayList;
-import java.util.HashSet;
-import java.util.Iterator;
+import java.util.HashMap;
 import java.util.List;
-import java.util.Set;
 import java.util.concurrent.atomic.AtomicReference;
 import static com.idevicesinc.sweetblue.BleManagerState.SCANNING;
 import static com.idevicesinc.sweetblue.BleManagerState.BOOST_SCANNING;
@@ -28,13 +26,25 @@ final class P_ScanManager
     static final int Mode_CLASSIC = 1;
     static final int Mode_BLE_POST_LOLLIPOP = 2;
 
+    // Raw results that can pile up between two update ticks before new ones get dropped.
+    private static final int SCAN_RESULT_BUFFER_SIZE = 512;
+
 
     private final BleManager m_manager;
     private PreLollipopScanCallback m_preLollipopScanCallback;
     private PostLollipopScanCallback m_postLollipopScanCallback;
     private AtomicReference<BleScanApi> mCurrentApi;
     private AtomicReference<BleScanPower> mCurrentPower;
-    private Set<ScanInfo> m_scanEntries;
+    private final P_ScanResultBuffer m_scanResults;
+
+    // Unique devices waiting to be handled, in the order they were first seen, and the same by mac address. Only touched
+    // while holding entryLock, which native callback threads never take.
+    private final ArrayList<ScanInfo> m_pendingEntries;
+    private final HashMap<String, ScanInfo> m_pendingByAddress;
+    private final ArrayList<ScanInfo> m_scanInfoPool;
+    private final P_ScanResultBuffer.Slot m_polledResult;
+    private final ArrayList<DiscoveryEntry> m_discoveryEntries;
+    private long m_coalescedCount;
 
     private final int m_retryCountMax = 3;
     private boolean m_triedToStartScanAfterTurnedOn;
@@ -52,6 +62,12 @@ final class P_ScanManager
 
     private int m_mode;
 
+    // Native mode of the last Lollipop and up scan, and whether it was handed native filters, so it can be restarted without them.
+    private int m_nativeScanMode;
+    private volatile boolean m_nativeFiltersActive;
+    // Set once the chipset refused a filtered scan, we don't ask again until the manager is recreated.
+    private volatile boolean m_nativeFiltersRefused;
+
     private final Object entryLock = new Object();
 
 
@@ -60,7 +76,12 @@ final class P_ScanManager
         m_manager = mgr;
         mCurrentApi = new AtomicReference<>(mgr.m_config.scanApi);
         mCurrentPower = new AtomicReference<>(BleScanPower.AUTO);
-        m_scanEntries = new HashSet<>();
+        m_scanResults = new P_ScanResultBuffer(SCAN_RESULT_BUFFER_SIZE);
+        m_pendingEntries = new ArrayList<>();
+        m_pendingByAddress = new HashMap<>();
+        m_scanInfoPool = new ArrayList<>();
+        m_polledResult = new P_ScanResultBuffer.Slot();
+        m_discoveryEntries = new ArrayList<>();
         m_preLollipopScanCallback = new PreLollipopScanCallback();
         if(Utils.isLollipop())
         {
@@ -218,22 +239,42 @@ final class P_ScanManager
 
     final void addScanResult(final BluetoothDevice device, final int rssi, final byte[] scanRecord)
     {
-        final ScanInfo info = new ScanInfo(device, rssi, scanRecord);
-        synchronized (entryLock)
+        m_scanResults.offer(device, rssi, scanRecord);
+    }
+
+    final void addBatchScanResults(final List<L_Util.ScanResult> devices)
+    {
+        for (int i = 0; i < devices.size(); i++)
         {
-            m_scanEntries.add(info);
+            final L_Util.ScanResult res = devices.get(i);
+            m_scanResults.offer(res.getDevice(), res.getRssi(), res.getRecord());
         }
     }
 
-    final void addBatchScanResults(final List<L_Util.ScanResult> devices)
+    /**
+     * Number of raw results handed to us by the native stack.
+     */
+    final long getScanResultCount()
+    {
+        return m_scanResults.getOfferedCount();
+    }
+
+    /**
+     * Number of raw results dropped because they came in faster than the update loop could take them.
+     */
+    final long getDroppedScanResultCount()
+    {
+        return m_scanResults.getDroppedCount();
+    }
+
+    /**
+     * Number of raw results merged into a newer result for the same device before being handled.
+     */
+    final long getCoalescedScanResultCount()
     {
         synchronized (entryLock)
         {
-            for (L_Util.ScanResult res : devices)
-            {
-                final ScanInfo info = new ScanInfo(res.getDevice(), res.getRssi(), res.getRecord());
-                m_scanEntries.add(info);
-            }
+            return m_coalescedCount;
         }
     }
 
@@ -247,6 +288,16 @@ final class P_ScanManager
         m_timeNotScanning = 0.0;
     }
 
+    // Returns 0 if anything scan related (including auto scanning) needs the update loop to keep ticking.
+    final double timeUntilNextUpdate()
+    {
+        if (m_manager.isAny(SCANNING, SCANNING_PAUSED, BOOST_SCANNING, STARTING_SCAN) || m_periodicScan || Interval.isEnabled(m_manager.m_config.autoScanActiveTime))
+        {
+            return 0.0;
+        }
+        return Interval.INFINITE.secs();
+    }
+
     // Returns if the startScan boolean is true or not.
     final boolean update(double timeStep, long currentTime)
     {
@@ -255,9 +306,7 @@ final class P_ScanManager
             m_totalTimeScanning += timeStep;
             m_intervalTimeScanning += timeStep;
 
-            int size = m_scanEntries.size();
-
-            handleScanEntries(size);
+            handleScanEntries();
 
             if (!m_forceActualInfinite && m_doingInfiniteScan && Interval.isEnabled(m_manager.m_config.infiniteScanInterval) && m_intervalTimeScanning >= m_manager.m_config.infiniteScanInterval.secs())
             {
@@ -410,33 +459,27 @@ final class P_ScanManager
 
 
 
-    private void handleScanEntries(int size)
+    private void handleScanEntries()
     {
-        if ( size > 0 )
+        synchronized (entryLock)
         {
-            final List<ScanInfo> infos;
+            drainScanResults();
+
+            final int size = m_pendingEntries.size();
+
+            if (size == 0)  return;
 
             // Get our max scan entries to process based off the update loop rate, with
             // a minimum of 5.
             final long upRate = m_manager.m_config.autoUpdateRate.millis();
             final int maxEntries = (int) Math.min(size, Math.max(5, upRate));
-            infos = new ArrayList<>(maxEntries);
-            synchronized (entryLock)
-            {
-                int current = 0;
-                final Iterator<ScanInfo> it = m_scanEntries.iterator();
-                while (it.hasNext() && current < maxEntries)
-                {
-                    infos.add(it.next());
-                    it.remove();
-                    current++;
-                }
-            }
 
-            final List<DiscoveryEntry> entries = new ArrayList<>(infos.size());
+            m_discoveryEntries.clear();
 
-            for (ScanInfo info : infos)
+            for (int i = 0; i < maxEntries; i++)
             {
+                final ScanInfo info = m_pendingEntries.get(i);
+
                 final P_NativeDeviceLayer layer = m_manager.m_config.newDeviceLayer(BleDevice.NULL);
                 layer.setNativeDevice(info.m_device);
 
@@ -449,10 +492,89 @@ final class P_ScanManager
                     m_manager.getCrashResolver().notifyScannedDevice(layer, null, L_Util.getNativeScanCallback());
                 }
 
-                entries.add(DiscoveryEntry.newEntry(layer, info.m_rssi, info.m_record));
+                m_discoveryEntries.add(DiscoveryEntry.newEntry(layer, info.m_rssi, info.m_record));
+
+                if (info.m_address != null)
+                {
+                    m_pendingByAddress.remove(info.m_address);
+                }
+                releaseScanInfo(info);
+            }
+
+            m_pendingEntries.subList(0, maxEntries).clear();
+        }
+
+        m_manager.onDiscoveredFromNativeStack(m_discoveryEntries);
+        m_discoveryEntries.clear();
+    }
+
+    // Moves everything from the lock-free buffer to the pending entries, keeping only the latest rssi and record of each device.
+    private void drainScanResults()
+    {
+        final P_ScanResultBuffer.Slot result = m_polledResult;
+
+        while (m_scanResults.poll(result))
+        {
+            final String address = result.m_device != null ? result.m_device.getAddress() : null;
+            ScanInfo info = address != null ? m_pendingByAddress.get(address) : null;
+
+            if (info != null)
+            {
+                m_coalescedCount++;
             }
+            else
+            {
+                info = obtainScanInfo();
+                info.m_device = result.m_device;
+                info.m_address = address;
+                m_pendingEntries.add(info);
 
-            m_manager.onDiscoveredFromNativeStack(entries);
+                if (address != null)
+                {
+                    m_pendingByAddress.put(address, info);
+                }
+            }
+
+            info.m_rssi = result.m_rssi;
+            info.m_record = result.m_record;
+        }
+
+        result.m_device = null;
+        result.m_record = null;
+    }
+
+    private ScanInfo obtainScanInfo()
+    {
+        final int size = m_scanInfoPool.size();
+
+        return size > 0 ? m_scanInfoPool.remove(size - 1) : new ScanInfo();
+    }
+
+    private void releaseScanInfo(final ScanInfo info)
+    {
+        info.m_device = null;
+        info.m_address = null;
+        info.m_record = null;
+
+        if (m_scanInfoPool.size() < SCAN_RESULT_BUFFER_SIZE)
+        {
+            m_scanInfoPool.add(info);
+        }
+    }
+
+    private void clearScanEntries()
+    {
+        synchronized (entryLock)
+        {
+            drainScanResults();
+
+            for (int i = 0; i < m_pendingEntries.size(); i++)
+            {
+                releaseScanInfo(m_pendingEntries.get(i));
+            }
+
+            m_pendingEntries.clear();
+            m_pendingByAddress.clear();
         }
     }
 
@@ -508,10 +630,7 @@ final class P_ScanManager
         }
         // Clear out the scan entries list so we don't end up caching old discoveries (it's possible there's a large amount of time between scans, so
         // what's held in the list may not actually be within range anymore, or some other data on it has changed).
-        synchronized (entryLock)
-        {
-            m_scanEntries.clear();
-        }
+        clearScanEntries();
     }
 
     private boolean startScanPreLollipop(PA_StateTracker.E_Intent intent)
@@ -636,14 +755,7 @@ final class P_ScanManager
             }
             nativePowerMode = power.getNativeMode();
         }
-        if (Utils.isMarshmallow())
-        {
-            startMScan(nativePowerMode);
-        }
-        else
-        {
-            startLScan(nativePowerMode);
-        }
+        startNativeScan(nativePowerMode);
         m_mode = Mode_BLE_POST_LOLLIPOP;
         mCurrentPower.set(power);
         setStateToScanning();
@@ -693,14 +805,57 @@ final class P_ScanManager
         return m_manager.managerLayer().startLeScan(m_preLollipopScanCallback);
     }
 
-    private void startLScan(int mode)
+    private void startNativeScan(int mode)
     {
-        m_manager.managerLayer().startLScan(mode, m_manager.m_config.scanReportDelay, m_postLollipopScanCallback);
+        final ScanPrefilter filter = getNativeScanFilter();
+        final Interval reportDelay = getScanReportDelay();
+
+        m_nativeScanMode = mode;
+        m_nativeFiltersActive = filter != null;
+
+        if (Utils.isMarshmallow())
+        {
+            m_manager.managerLayer().startMScan(mode, reportDelay, filter, m_postLollipopScanCallback);
+        }
+        else
+        {
+            m_manager.managerLayer().startLScan(mode, reportDelay, filter, m_postLollipopScanCallback);
+        }
     }
 
-    private void startMScan(int mode)
+    private ScanPrefilter getNativeScanFilter()
     {
-        m_manager.managerLayer().startMScan(mode, m_manager.m_config.scanReportDelay, m_postLollipopScanCallback);
+        final ScanPrefilter filter = m_manager.m_config.scanPrefilter;
+
+        if (!m_manager.m_config.offloadScanPrefilter || m_nativeFiltersRefused || filter == null || !filter.isOffloadable())  return null;
+
+        return filter;
+    }
+
+    private Interval getScanReportDelay()
+    {
+        final Interval background = m_manager.m_config.backgroundScanReportDelay;
+
+        return background != null && !m_manager.isForegrounded() ? background : m_manager.m_config.scanReportDelay;
+    }
+
+    // Called when a filtered scan failed to start, tries again without filters as long as we're still meant to be scanning.
+    private void restartNativeScanUnfiltered(final int errorCode)
+    {
+        m_nativeFiltersRefused = true;
+
+        m_manager.getLogger().w(Utils_String.concatStrings("Native scan filters refused with error code ", String.valueOf(errorCode), ", falling back to software filtering."));
+
+        m_manager.getPostManager().postToUpdateThread(new Runnable()
+        {
+            @Override public void run()
+            {
+                if (m_mode == Mode_BLE_POST_LOLLIPOP && m_manager.isAny(SCANNING, STARTING_SCAN))
+                {
+                    startNativeScan(m_nativeScanMode);
+                }
+            }
+        });
     }
 
     private void fail()
@@ -776,43 +931,13 @@ final class P_ScanManager
         }
     }
 
+    // Pooled, see obtainScanInfo()/releaseScanInfo().
     private final static class ScanInfo
     {
-        private final BluetoothDevice m_device;
-        private final int m_rssi;
-        private final byte[] m_record;
-
-        ScanInfo(BluetoothDevice device, int rssi, byte[] record)
-        {
-            m_device = device;
-            m_rssi = rssi;
-            m_record = record;
-        }
-
-        @Override
-        public int hashCode()
-        {
-            if (m_device != null)
-            {
-                return m_device.getAddress().hashCode();
-            }
-            return super.hashCode();
-        }
-
-        @Override
-        public boolean equals(Object obj)
-        {
-            if (obj == null)
-                return false;
-            if (obj instanceof ScanInfo)
-            {
-                ScanInfo other = (ScanInfo) obj;
-                if ((m_device == null && other.m_device != null) || (m_device != null && other.m_device == null))
-                    return false;
-                return m_device.getAddress().equals(other.m_device.getAddress());
-            }
-            return false;
-        }
+        private BluetoothDevice m_device;
+        private String m_address;
+        private int m_rssi;
+        private byte[] m_record;
     }
 
     private final class PreLollipopScanCallback implements BluetoothAdapter.LeScanCallback
@@ -846,6 +971,12 @@ final class P_ScanManager
                 m_manager.ASSERT(false, "Got an error stating the scan has already started when trying to start a scan.");
                 // We're already scanning, so nothing to do here
             }
+            else if (m_nativeFiltersActive)
+            {
+                m_nativeFiltersActive = false;
+
+                restartNativeScanUnfiltered(errorCode);
+            }
             else
             {
                 m_manager.getLogger().e(Utils_String.concatStrings("Post lollipop scan failed with error code ", String.valueOf(errorCode)));
@@ -0,0 +1,133 @@
+package com.idevicesinc.sweetblue;
+
+
+import android.bluetooth.BluetoothDevice;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+
+/**
+ * Bounded, lock-free queue of raw scan results. Any number of native callback threads may {@link #offer(BluetoothDevice, int, byte[])},
+ * but only one thread at a time may {@link #poll(Slot)}. Slots are allocated once up front and reused, so a result only costs the
+ * native stack's own objects. When the buffer is full new results are dropped and counted, they'll come around again with the
+ * next advertisement anyway.
+ */
+final class P_ScanResultBuffer
+{
+
+    static final class Slot
+    {
+        BluetoothDevice m_device;
+        int m_rssi;
+        byte[] m_record;
+    }
+
+
+    private final Slot[] m_slots;
+    // Per slot sequence number. A slot is free for the producer claiming position p when its sequence is p,
+    // and holds a result for the consumer at position p when it's p + 1.
+    private final AtomicLongArray m_sequences;
+    private final int m_mask;
+
+    private final AtomicLong m_tail = new AtomicLong();
+    private long m_head;
+
+    private final AtomicLong m_offered = new AtomicLong();
+    private final AtomicLong m_dropped = new AtomicLong();
+
+
+    P_ScanResultBuffer(int capacity)
+    {
+        final int size = Integer.highestOneBit(Math.max(capacity - 1, 1)) << 1;
+
+        m_slots = new Slot[size];
+        m_sequences = new AtomicLongArray(size);
+        m_mask = size - 1;
+
+        for (int i = 0; i < size; i++)
+        {
+            m_slots[i] = new Slot();
+            m_sequences.set(i, i);
+        }
+    }
+
+
+    /**
+     * Returns <code>false</code> if the buffer was full and the result was dropped.
+     */
+    final boolean offer(final BluetoothDevice device, final int rssi, final byte[] record)
+    {
+        m_offered.incrementAndGet();
+
+        long position = m_tail.get();
+
+        while (true)
+        {
+            final int index = (int) position & m_mask;
+            final long diff = m_sequences.get(index) - position;
+
+            if (diff == 0)
+            {
+                if (m_tail.compareAndSet(position, position + 1))
+                {
+                    final Slot slot = m_slots[index];
+                    slot.m_device = device;
+                    slot.m_rssi = rssi;
+                    slot.m_record = record;
+                    m_sequences.lazySet(index, position + 1);
+
+                    return true;
+                }
+
+                position = m_tail.get();
+            }
+            else if (diff < 0)
+            {
+                m_dropped.incrementAndGet();
+
+                return false;
+            }
+            else
+            {
+                position = m_tail.get();
+            }
+        }
+    }
+
+    /**
+     * Copies the oldest result into the given slot and frees its place in the buffer. Returns <code>false</code> if there was nothing
+     * to poll. Must only be called by one thread at a time.
+     */
+    final boolean poll(final Slot out)
+    {
+        final int index = (int) m_head & m_mask;
+
+        if (m_sequences.get(index) != m_head + 1)  return false;
+
+        final Slot slot = m_slots[index];
+        out.m_device = slot.m_device;
+        out.m_rssi = slot.m_rssi;
+        out.m_record = slot.m_record;
+        slot.m_device = null;
+        slot.m_record = null;
+        m_sequences.lazySet(index, m_head + m_slots.length);
+        m_head++;
+
+        return true;
+    }
+
+    final int capacity()
+    {
+        return m_slots.length;
+    }
+
+    final long getOfferedCount()
+    {
+        return m_offered.get();
+    }
+
+    final long getDroppedCount()
+    {
+        return m_dropped.get();
+    }
+}
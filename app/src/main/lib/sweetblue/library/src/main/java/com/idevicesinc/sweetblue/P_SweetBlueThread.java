@@ -1,21 +1,37 @@
 package com.idevicesinc.sweetblue;
 
-import java.util.Iterator;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.concurrent.locks.LockSupport;
 
 
 final class P_SweetBlueThread implements P_SweetHandler
 {
 
-    private final LinkedBlockingQueue<SweetRunnable> m_runnables;
+    private static final int INITIAL_CAPACITY = 16;
+
+    // Binary min-heap of pending runnables ordered by deadline, then by post order. Each entry knows its
+    // index so that removal is O(log n).
+    private SweetRunnable[] m_heap;
+    private int m_size;
+    private long m_sequence;
+
+    // Pending entries by runnable, chained through SweetRunnable.m_nextSame, for removeCallbacks().
+    private final HashMap<Runnable, SweetRunnable> m_byRunnable;
+
+    private final Object m_lock = new Object();
 
     private Thread thread;
-    private boolean m_running;
+    private volatile boolean m_running;
+
+    private volatile long m_wakeups;
+    private volatile long m_idleNanos;
 
 
     P_SweetBlueThread()
     {
-        m_runnables = new LinkedBlockingQueue<>();
+        m_heap = new SweetRunnable[INITIAL_CAPACITY];
+        m_byRunnable = new HashMap<>();
         m_running = true;
         thread = new Thread(new HandlerRunner());
         thread.start();
@@ -24,26 +40,40 @@ final class P_SweetBlueThread implements P_SweetHandler
 
     @Override public void post(Runnable action)
     {
-        m_runnables.add(new SweetRunnable(action, System.currentTimeMillis(), 0));
+        postDelayed(action, 0);
     }
 
     @Override public void postDelayed(Runnable action, long delay)
     {
-        m_runnables.add(new SweetRunnable(action, System.currentTimeMillis(), delay));
+        final long deadline = System.nanoTime() + Math.max(delay, 0) * 1000000L;
+        final boolean wake;
+        synchronized (m_lock)
+        {
+            final SweetRunnable run = new SweetRunnable(action, deadline, m_sequence++);
+            run.m_nextSame = m_byRunnable.put(action, run);
+            offer(run);
+            // Only wake the thread up if it now has to run something sooner than it planned to
+            wake = m_heap[0] == run;
+        }
+        if (wake && Thread.currentThread() != thread)
+        {
+            LockSupport.unpark(thread);
+        }
     }
 
     @Override public void removeCallbacks(Runnable action)
     {
-        Iterator<SweetRunnable> it = m_runnables.iterator();
-        while (it.hasNext())
+        synchronized (m_lock)
         {
-            SweetRunnable run = it.next();
-            if (run.m_runnable == action)
+            SweetRunnable run = m_byRunnable.remove(action);
+            while (run != null)
             {
                 run.cancel();
-                it.remove();
+                removeAt(run.m_heapIndex);
+                run = run.m_nextSame;
             }
         }
+        // No need to wake the thread, it'll simply find nothing to do when it wakes up
     }
 
     @Override public Thread getThread()
@@ -54,6 +84,7 @@ final class P_SweetBlueThread implements P_SweetHandler
     public void quit()
     {
         m_running = false;
+        LockSupport.unpark(thread);
         if (Thread.currentThread() != thread)
         {
             try
@@ -65,19 +96,153 @@ final class P_SweetBlueThread implements P_SweetHandler
         }
     }
 
+    /**
+     * Number of times the thread woke up, whether it had something to run or not.
+     */
+    final long getWakeupCount()
+    {
+        return m_wakeups;
+    }
+
+    /**
+     * Total time the thread spent parked waiting for work, in milliseconds.
+     */
+    final long getIdleTimeMillis()
+    {
+        return m_idleNanos / 1000000L;
+    }
+
+    final int getPendingCount()
+    {
+        synchronized (m_lock)
+        {
+            return m_size;
+        }
+    }
+
+    private void offer(SweetRunnable run)
+    {
+        if (m_size == m_heap.length)
+        {
+            m_heap = Arrays.copyOf(m_heap, m_heap.length * 2);
+        }
+        run.m_heapIndex = m_size;
+        m_heap[m_size++] = run;
+        siftUp(run.m_heapIndex);
+    }
+
+    private SweetRunnable poll()
+    {
+        final SweetRunnable head = m_heap[0];
+        removeAt(0);
+        unlinkFromRunnable(head);
+        return head;
+    }
+
+    private void removeAt(int index)
+    {
+        if (index < 0 || index >= m_size)  return;
+
+        final SweetRunnable removed = m_heap[index];
+        removed.m_heapIndex = -1;
+        m_size--;
+        if (index == m_size)
+        {
+            m_heap[m_size] = null;
+            return;
+        }
+
+        final SweetRunnable last = m_heap[m_size];
+        m_heap[m_size] = null;
+        m_heap[index] = last;
+        last.m_heapIndex = index;
+        siftDown(index);
+        if (m_heap[index] == last)
+        {
+            siftUp(index);
+        }
+    }
+
+    private void unlinkFromRunnable(SweetRunnable run)
+    {
+        SweetRunnable head = m_byRunnable.get(run.m_runnable);
+        if (head == run)
+        {
+            if (run.m_nextSame == null)
+            {
+                m_byRunnable.remove(run.m_runnable);
+            }
+            else
+            {
+                m_byRunnable.put(run.m_runnable, run.m_nextSame);
+            }
+        }
+        else
+        {
+            while (head != null && head.m_nextSame != run)
+            {
+                head = head.m_nextSame;
+            }
+            if (head != null)
+            {
+                head.m_nextSame = run.m_nextSame;
+            }
+        }
+        run.m_nextSame = null;
+    }
+
+    private void siftUp(int index)
+    {
+        final SweetRunnable run = m_heap[index];
+        while (index > 0)
+        {
+            final int parent = (index - 1) >>> 1;
+            final SweetRunnable p = m_heap[parent];
+            if (!run.before(p))  break;
+            m_heap[index] = p;
+            p.m_heapIndex = index;
+            index = parent;
+        }
+        m_heap[index] = run;
+        run.m_heapIndex = index;
+    }
+
+    private void siftDown(int index)
+    {
+        final SweetRunnable run = m_heap[index];
+        final int half = m_size >>> 1;
+        while (index < half)
+        {
+            int child = (index << 1) + 1;
+            final int right = child + 1;
+            if (right < m_size && m_heap[right].before(m_heap[child]))
+            {
+                child = right;
+            }
+            if (!m_heap[child].before(run))  break;
+            m_heap[index] = m_heap[child];
+            m_heap[index].m_heapIndex = index;
+            index = child;
+        }
+        m_heap[index] = run;
+        run.m_heapIndex = index;
+    }
+
     private final static class SweetRunnable
     {
         private final Runnable m_runnable;
-        private final long m_postedTime;
-        private final long m_delay;
+        private final long m_deadline;
+        private final long m_sequence;
         private boolean m_canceled;
+        private int m_heapIndex = -1;
+        private SweetRunnable m_nextSame;
 
 
-        public SweetRunnable(Runnable action, long postedTime, long delay)
+        public SweetRunnable(Runnable action, long deadline, long sequence)
         {
             m_runnable = action;
-            m_postedTime = postedTime;
-            m_delay = delay;
+            m_deadline = deadline;
+            m_sequence = sequence;
         }
 
         public void run()
@@ -98,14 +263,15 @@ final class P_SweetBlueThread implements P_SweetHandler
             return m_canceled;
         }
 
-        public boolean ready(long curTime)
+        public boolean ready(long curNanos)
         {
-            return m_canceled || (curTime - m_postedTime) > m_delay;
+            return m_canceled || curNanos - m_deadline >= 0;
         }
 
-        public boolean ready()
+        boolean before(SweetRunnable other)
         {
-            return m_canceled || ready(System.currentTimeMillis());
+            final long diff = m_deadline - other.m_deadline;
+            return diff < 0 || (diff == 0 && m_sequence < other.m_sequence);
         }
     }
 
@@ -115,27 +281,46 @@ final class P_SweetBlueThread implements P_SweetHandler
         {
             while (m_running)
             {
-                if (!m_runnables.isEmpty())
+                SweetRunnable next = null;
+                long waitNanos = 0;
+                synchronized (m_lock)
                 {
-                    long curTime = System.currentTimeMillis();
-                    Iterator<SweetRunnable> it = m_runnables.iterator();
-                    while (it.hasNext())
+                    if (m_size == 0)
                     {
-                        SweetRunnable run = it.next();
-                        if (run.ready(curTime))
+                        waitNanos = -1;
+                    }
+                    else
+                    {
+                        final long now = System.nanoTime();
+                        if (m_heap[0].ready(now))
                         {
-                            it.remove();
-                            run.run();
+                            next = poll();
+                        }
+                        else
+                        {
+                            waitNanos = m_heap[0].m_deadline - now;
                         }
                     }
                 }
-                // Sleep for a short period, so we don't hog the cpu
-                try
+
+                if (next != null)
                 {
-                    Thread.sleep(5);
-                } catch (Exception e)
+                    next.run();
+                    continue;
+                }
+
+                // Nothing is due, sleep until the next deadline or until something is posted
+                final long parkStart = System.nanoTime();
+                if (waitNanos < 0)
+                {
+                    LockSupport.park(this);
+                }
+                else
                 {
+                    LockSupport.parkNanos(this, waitNanos);
                 }
+                m_idleNanos += System.nanoTime() - parkStart;
+                m_wakeups++;
             }
         }
     }
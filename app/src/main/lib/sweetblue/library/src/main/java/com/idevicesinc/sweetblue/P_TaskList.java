@@ -0,0 +1,591 @@
+package com.idevicesinc.sweetblue;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.ConcurrentModificationException;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.TreeSet;
+
+/**
+ * The queued tasks of {@link P_TaskQueue}, in queue order. That order is only ever decided by where a task gets inserted, see
+ * {@link #findSoonestSpot(PA_Task)}, because {@link PA_Task#isMoreImportantThan(PA_Task)} isn't a total order that a heap could
+ * sort by. Instead the tasks are the nodes of a treap keyed by position, each node knowing its subtree size and its parent, so
+ * inserting at, removing from and finding the position of a task are all O(log n). A task's node is found through an identity map.
+ * <br><br>
+ * Tasks are also indexed by priority, by class and by device, each index iterating in queue order, so lookups and
+ * {@link #findSoonestSpot(PA_Task)} only visit candidates. A task can only be queued once at a time. This class is not thread safe.
+ */
+final class P_TaskList extends AbstractList<PA_Task>
+{
+	private static final class Node
+	{
+		private final PA_Task m_task;
+		private final int m_weight;
+
+		private Node m_parent;
+		private Node m_left;
+		private Node m_right;
+		private int m_size = 1;
+
+		private Node(final PA_Task task, final int weight)
+		{
+			m_task = task;
+			m_weight = weight;
+		}
+
+		private void setLeft(final Node left_nullable)
+		{
+			m_left = left_nullable;
+
+			if( left_nullable != null )  left_nullable.m_parent = this;
+		}
+
+		private void setRight(final Node right_nullable)
+		{
+			m_right = right_nullable;
+
+			if( right_nullable != null )  right_nullable.m_parent = this;
+		}
+
+		private Node updateSize()
+		{
+			m_size = 1 + size(m_left) + size(m_right);
+
+			return this;
+		}
+	}
+
+	private final IdentityHashMap<PA_Task, Node> m_nodes = new IdentityHashMap<PA_Task, Node>();
+	private Node m_root = null;
+	private int m_seed = 0x2545F491;
+
+	//--- Results of split(), kept here rather than allocating a pair for every insert.
+	private Node m_splitLeft = null;
+	private Node m_splitRight = null;
+
+	private final Comparator<PA_Task> m_queueOrder = new Comparator<PA_Task>()
+	{
+		@Override public int compare(final PA_Task lhs, final PA_Task rhs)
+		{
+			return lhs == rhs ? 0 : Integer.compare(indexOf(lhs), indexOf(rhs));
+		}
+	};
+
+	//--- Secondary indexes, all ordered by m_queueOrder. A task is added to them once it's in the treap and removed from them
+	//--- before it leaves it, since their ordering looks positions up.
+	private final ArrayList<TreeSet<PA_Task>> m_byPriority = new ArrayList<TreeSet<PA_Task>>();
+	private final HashMap<Class<? extends PA_Task>, TreeSet<PA_Task>> m_byClass = new HashMap<Class<? extends PA_Task>, TreeSet<PA_Task>>();
+	private final HashMap<BleDevice, TreeSet<PA_Task>> m_byDevice = new HashMap<BleDevice, TreeSet<PA_Task>>();
+	//--- Tasks with no device, i.e. for the manager itself or a server.
+	private final TreeSet<PA_Task> m_withoutDevice = new TreeSet<PA_Task>(m_queueOrder);
+
+	P_TaskList()
+	{
+		for( int i = 0; i < PE_TaskPriority.values().length; i++ )
+		{
+			m_byPriority.add(new TreeSet<PA_Task>(m_queueOrder));
+		}
+	}
+
+	/**
+	 * Returns the device the task is for, or <code>null</code> if it's for the manager or a server.
+	 */
+	static BleDevice getDevice(final PA_Task task)
+	{
+		final BleDevice device = task.getDevice();
+
+		return device == null || device.isNull() ? null : device;
+	}
+
+	@Override public final int size()
+	{
+		return size(m_root);
+	}
+
+	@Override public final PA_Task get(int index)
+	{
+		checkIndex(index, size()-1);
+
+		Node node = m_root;
+
+		while( true )
+		{
+			final int leftSize = size(node.m_left);
+
+			if( index < leftSize )
+			{
+				node = node.m_left;
+			}
+			else if( index > leftSize )
+			{
+				index -= leftSize + 1;
+				node = node.m_right;
+			}
+			else
+			{
+				return node.m_task;
+			}
+		}
+	}
+
+	/**
+	 * Returns the first task in the queue, or <code>null</code> if it's empty.
+	 */
+	final PA_Task peek()
+	{
+		return m_root == null ? null : leftmost(m_root).m_task;
+	}
+
+	@Override public final void add(final int index, final PA_Task task)
+	{
+		checkIndex(index, size());
+
+		if( m_nodes.containsKey(task) )
+		{
+			throw new IllegalArgumentException("Task is already queued: " + task);
+		}
+
+		final Node node = new Node(task, nextWeight());
+
+		m_nodes.put(task, node);
+
+		split(m_root, index);
+
+		final Node right = m_splitRight;
+
+		m_root = merge(merge(m_splitLeft, node), right);
+		m_root.m_parent = null;
+		m_splitLeft = m_splitRight = null;
+
+		index(task);
+
+		modCount++;
+	}
+
+	@Override public final PA_Task remove(final int index)
+	{
+		final PA_Task task = get(index);
+
+		remove(task);
+
+		return task;
+	}
+
+	@Override public final boolean remove(final Object task)
+	{
+		final Node node = m_nodes.get(task);
+
+		if( node == null )  return false;
+
+		unindex(node.m_task);
+		unlink(node);
+		m_nodes.remove(task);
+
+		modCount++;
+
+		return true;
+	}
+
+	@Override public final int indexOf(final Object task)
+	{
+		final Node node = m_nodes.get(task);
+
+		return node != null ? position(node) : -1;
+	}
+
+	@Override public final int lastIndexOf(final Object task)
+	{
+		return indexOf(task);
+	}
+
+	@Override public final boolean contains(final Object task)
+	{
+		return m_nodes.containsKey(task);
+	}
+
+	@Override public final void clear()
+	{
+		m_nodes.clear();
+		m_root = null;
+
+		for( int i = 0; i < m_byPriority.size(); i++ )
+		{
+			m_byPriority.get(i).clear();
+		}
+
+		m_byClass.clear();
+		m_byDevice.clear();
+		m_withoutDevice.clear();
+
+		modCount++;
+	}
+
+	@Override public final Iterator<PA_Task> iterator()
+	{
+		return new Iterator<PA_Task>()
+		{
+			private Node m_next = m_root == null ? null : leftmost(m_root);
+			private Node m_lastReturned = null;
+			private int m_expectedModCount = modCount;
+
+			@Override public boolean hasNext()
+			{
+				return m_next != null;
+			}
+
+			@Override public PA_Task next()
+			{
+				if( modCount != m_expectedModCount )  throw new ConcurrentModificationException();
+				if( m_next == null )  throw new NoSuchElementException();
+
+				m_lastReturned = m_next;
+				m_next = successor(m_next);
+
+				return m_lastReturned.m_task;
+			}
+
+			@Override public void remove()
+			{
+				if( m_lastReturned == null )  throw new IllegalStateException();
+				if( modCount != m_expectedModCount )  throw new ConcurrentModificationException();
+
+				//--- Unlinking a node leaves the others, including m_next, as they are.
+				P_TaskList.this.remove(m_lastReturned.m_task);
+				m_lastReturned = null;
+				m_expectedModCount = modCount;
+			}
+		};
+	}
+
+	/**
+	 * Returns the first position where the new task is more important than the queued one, or -1 if there's none, same as
+	 * {@link PU_TaskQueue#findSoonestSpot(List, PA_Task)}. {@link PA_Task#isMoreImportantThan(PA_Task)} only ever ranks a task
+	 * above one of equal or higher priority when the other one is a {@link P_Task_TxnLock}, so unless one of those is queued only
+	 * the queued tasks of lower priority are checked, each priority in queue order and only up to the soonest spot found so far.
+	 */
+	final int findSoonestSpot(final PA_Task newTask)
+	{
+		if( m_root == null )  return 0;
+
+		if( hasQueued(P_Task_TxnLock.class) )  return PU_TaskQueue.findSoonestSpot(this, newTask);
+
+		int soonestSpot = -1;
+
+		for( int i = 0; i < newTask.getPriority().ordinal(); i++ )
+		{
+			for( PA_Task task : m_byPriority.get(i) )
+			{
+				final int index = indexOf(task);
+
+				if( soonestSpot >= 0 && index >= soonestSpot )  break;
+
+				if( newTask.isMoreImportantThan(task) )
+				{
+					soonestSpot = index;
+
+					break;
+				}
+			}
+		}
+
+		return soonestSpot;
+	}
+
+	final boolean hasQueued(final Class<? extends PA_Task> taskClass)
+	{
+		if( m_byClass.containsKey(taskClass) )  return true;
+
+		for( Class<? extends PA_Task> queuedClass : m_byClass.keySet() )
+		{
+			if( taskClass.isAssignableFrom(queuedClass) )  return true;
+		}
+
+		return false;
+	}
+
+	/**
+	 * Returns the queued tasks for the given device, or for the manager and servers if <code>null</code>, in queue order.
+	 */
+	final Collection<PA_Task> getQueued(final BleDevice device_nullable)
+	{
+		if( device_nullable == null )  return m_withoutDevice;
+
+		final TreeSet<PA_Task> tasks = m_byDevice.get(device_nullable);
+
+		return tasks != null ? tasks : Collections.<PA_Task>emptySet();
+	}
+
+	/**
+	 * Returns the first queued task matching {@link PU_TaskQueue#isMatch(PA_Task, Class, BleManager, BleDevice, BleServer)}, or
+	 * <code>null</code>. Only the tasks of matching classes are checked.
+	 */
+	final PA_Task findFirst(final Class<? extends PA_Task> taskClass, final BleManager mngr_nullable, final BleDevice device_nullable, final BleServer server_nullable)
+	{
+		PA_Task found = null;
+		int foundIndex = Integer.MAX_VALUE;
+
+		for( Map.Entry<Class<? extends PA_Task>, TreeSet<PA_Task>> entry : m_byClass.entrySet() )
+		{
+			if( !taskClass.isAssignableFrom(entry.getKey()) )  continue;
+
+			for( PA_Task task : entry.getValue() )
+			{
+				if( PU_TaskQueue.isMatch(task, taskClass, mngr_nullable, device_nullable, server_nullable) )
+				{
+					final int index = indexOf(task);
+
+					if( index < foundIndex )
+					{
+						found = task;
+						foundIndex = index;
+					}
+
+					break;
+				}
+			}
+		}
+
+		return found;
+	}
+
+	/**
+	 * Returns every queued task matching {@link PU_TaskQueue#isMatch(PA_Task, Class, BleManager, BleDevice, BleServer)}, in queue order.
+	 */
+	final ArrayList<PA_Task> findAll(final Class<? extends PA_Task> taskClass, final BleManager mngr_nullable, final BleDevice device_nullable, final BleServer server_nullable)
+	{
+		final ArrayList<PA_Task> found = new ArrayList<PA_Task>();
+
+		for( Map.Entry<Class<? extends PA_Task>, TreeSet<PA_Task>> entry : m_byClass.entrySet() )
+		{
+			if( !taskClass.isAssignableFrom(entry.getKey()) )  continue;
+
+			for( PA_Task task : entry.getValue() )
+			{
+				if( PU_TaskQueue.isMatch(task, taskClass, mngr_nullable, device_nullable, server_nullable) )
+				{
+					found.add(task);
+				}
+			}
+		}
+
+		Collections.sort(found, m_queueOrder);
+
+		return found;
+	}
+
+	private void index(final PA_Task task)
+	{
+		m_byPriority.get(task.getPriority().ordinal()).add(task);
+
+		TreeSet<PA_Task> byClass = m_byClass.get(task.getClass());
+
+		if( byClass == null )
+		{
+			byClass = new TreeSet<PA_Task>(m_queueOrder);
+			m_byClass.put(task.getClass(), byClass);
+		}
+
+		byClass.add(task);
+
+		final BleDevice device = getDevice(task);
+
+		if( device == null )
+		{
+			m_withoutDevice.add(task);
+		}
+		else
+		{
+			TreeSet<PA_Task> byDevice = m_byDevice.get(device);
+
+			if( byDevice == null )
+			{
+				byDevice = new TreeSet<PA_Task>(m_queueOrder);
+				m_byDevice.put(device, byDevice);
+			}
+
+			byDevice.add(task);
+		}
+	}
+
+	private void unindex(final PA_Task task)
+	{
+		m_byPriority.get(task.getPriority().ordinal()).remove(task);
+
+		final TreeSet<PA_Task> byClass = m_byClass.get(task.getClass());
+
+		if( byClass != null && byClass.remove(task) && byClass.isEmpty() )
+		{
+			m_byClass.remove(task.getClass());
+		}
+
+		final BleDevice device = getDevice(task);
+
+		if( device == null )
+		{
+			m_withoutDevice.remove(task);
+		}
+		else
+		{
+			final TreeSet<PA_Task> byDevice = m_byDevice.get(device);
+
+			if( byDevice != null && byDevice.remove(task) && byDevice.isEmpty() )
+			{
+				m_byDevice.remove(device);
+			}
+		}
+	}
+
+	private static void checkIndex(final int index, final int max)
+	{
+		if( index < 0 || index > max )
+		{
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + (max+1));
+		}
+	}
+
+	private static int size(final Node node_nullable)
+	{
+		return node_nullable != null ? node_nullable.m_size : 0;
+	}
+
+	private int nextWeight()
+	{
+		//--- Xorshift, only needs to be random enough to keep the tree balanced.
+		int x = m_seed;
+		x ^= x << 13;
+		x ^= x >>> 17;
+		x ^= x << 5;
+		m_seed = x;
+
+		return x;
+	}
+
+	/**
+	 * Splits the given subtree into its first <code>count</code> nodes and the rest, left in {@link #m_splitLeft} and {@link #m_splitRight}.
+	 */
+	private void split(final Node node_nullable, final int count)
+	{
+		if( node_nullable == null )
+		{
+			m_splitLeft = m_splitRight = null;
+
+			return;
+		}
+
+		if( size(node_nullable.m_left) < count )
+		{
+			split(node_nullable.m_right, count - size(node_nullable.m_left) - 1);
+
+			node_nullable.setRight(m_splitLeft);
+			node_nullable.m_parent = null;
+			m_splitLeft = node_nullable.updateSize();
+		}
+		else
+		{
+			split(node_nullable.m_left, count);
+
+			node_nullable.setLeft(m_splitRight);
+			node_nullable.m_parent = null;
+			m_splitRight = node_nullable.updateSize();
+		}
+	}
+
+	/**
+	 * Joins two subtrees, every node of the first one coming before those of the second one, and returns the new subtree's root.
+	 * Its parent link is left for the caller to set.
+	 */
+	private static Node merge(final Node first_nullable, final Node second_nullable)
+	{
+		if( first_nullable == null )  return second_nullable;
+		if( second_nullable == null )  return first_nullable;
+
+		if( first_nullable.m_weight > second_nullable.m_weight )
+		{
+			first_nullable.setRight(merge(first_nullable.m_right, second_nullable));
+
+			return first_nullable.updateSize();
+		}
+		else
+		{
+			second_nullable.setLeft(merge(first_nullable, second_nullable.m_left));
+
+			return second_nullable.updateSize();
+		}
+	}
+
+	private void unlink(final Node node)
+	{
+		final Node parent = node.m_parent;
+		final Node replacement = merge(node.m_left, node.m_right);
+
+		if( replacement != null )  replacement.m_parent = parent;
+
+		if( parent == null )
+		{
+			m_root = replacement;
+		}
+		else if( parent.m_left == node )
+		{
+			parent.m_left = replacement;
+		}
+		else
+		{
+			parent.m_right = replacement;
+		}
+
+		for( Node ancestor = parent; ancestor != null; ancestor = ancestor.m_parent )
+		{
+			ancestor.updateSize();
+		}
+
+		node.m_parent = node.m_left = node.m_right = null;
+	}
+
+	private static int position(final Node node)
+	{
+		int position = size(node.m_left);
+
+		for( Node child = node, parent = node.m_parent; parent != null; child = parent, parent = parent.m_parent )
+		{
+			if( parent.m_right == child )
+			{
+				position += size(parent.m_left) + 1;
+			}
+		}
+
+		return position;
+	}
+
+	private static Node leftmost(Node node)
+	{
+		while( node.m_left != null )
+		{
+			node = node.m_left;
+		}
+
+		return node;
+	}
+
+	private static Node successor(Node node)
+	{
+		if( node.m_right != null )  return leftmost(node.m_right);
+
+		Node parent = node.m_parent;
+
+		while( parent != null && parent.m_right == node )
+		{
+			node = parent;
+			parent = parent.m_parent;
+		}
+
+		return parent;
+	}
+}
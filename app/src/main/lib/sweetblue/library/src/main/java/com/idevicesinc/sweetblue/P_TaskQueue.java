@@ -1,8 +1,9 @@
 package com.idevicesinc.sweetblue;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
-import java.util.concurrent.atomic.AtomicReference;
 import android.os.Handler;
 import android.os.Looper;
 import android.util.Log;
@@ -10,10 +11,21 @@ import android.util.Log;
 import com.idevicesinc.sweetblue.utils.Interval;
 
 
+/**
+ * Tasks are changed on the update thread but looked up from any thread (e.g. {@link BleDevice#disconnect()} checks the queue from the
+ * caller's), so the queue and its lanes are only ever touched with this object's lock held.
+ */
 final class P_TaskQueue
 {
-	private final ArrayList<PA_Task> m_queue = new ArrayList<PA_Task>();
-	private final AtomicReference<PA_Task> m_current;
+	private final P_TaskList m_queue = new P_TaskList();
+	//--- Each lane has its own current task. The manager lane (scan, BLE on/off, servers...) is exclusive, device lanes may run
+	//--- side by side if BleManagerConfig#runDeviceTasksInParallel is on, otherwise they're exclusive too.
+	//--- A device only holds a lane while it has something running or queued, see releaseIdleLanes(). Released lanes are kept in
+	//--- m_freeLanes for the next device, so m_lanes only grows to the most devices ever busy at once.
+	private final Lane m_managerLane = new Lane();
+	private final HashMap<BleDevice, Lane> m_deviceLanes = new HashMap<>();
+	private final ArrayList<Lane> m_lanes = new ArrayList<>();
+	private final ArrayList<Lane> m_freeLanes = new ArrayList<>();
 	private long m_updateCount;
 	private final BleManager m_mngr;
 	private double m_time = 0.0;
@@ -28,7 +40,8 @@ final class P_TaskQueue
 	{
 		m_mngr = mngr;
 
-		m_current = new AtomicReference<>(null);
+		m_managerLane.m_waitStats = new WaitStats();
+		m_lanes.add(m_managerLane);
 		
 		initHandler(); 
 	}
@@ -37,6 +50,217 @@ final class P_TaskQueue
 	{
 		return m_mngr.getLogger();
 	}
+
+	/**
+	 * A slot for one running task. The tasks queued for it are those {@link P_TaskList#getQueued(BleDevice)} returns for its device.
+	 * Device lanes are reused, their device is <code>null</code> while they're free.
+	 */
+	private static final class Lane
+	{
+		private BleDevice m_device;
+		private WaitStats m_waitStats;
+		private PA_Task m_current;
+		private double m_timeSinceEnding;
+	}
+
+	/**
+	 * How long tasks waited in the queue before they started. Device tasks report to {@link BleDevice#m_taskWaitStats} so the numbers
+	 * outlive the device's lane.
+	 */
+	static final class WaitStats
+	{
+		private int m_tasksStarted;
+		private double m_totalWaitTime;
+		private double m_maxWaitTime;
+
+		synchronized void onStarted(final PA_Task task)
+		{
+			final double waitTime = task.getTotalTimeQueued();
+
+			m_tasksStarted++;
+			m_totalWaitTime += waitTime;
+			m_maxWaitTime = Math.max(m_maxWaitTime, waitTime);
+		}
+
+		synchronized double getAverageWaitTime()
+		{
+			return m_tasksStarted == 0 ? 0.0 : m_totalWaitTime / m_tasksStarted;
+		}
+
+		synchronized double getMaxWaitTime()
+		{
+			return m_maxWaitTime;
+		}
+	}
+
+	private boolean runsInParallel()
+	{
+		return m_mngr.m_config.runDeviceTasksInParallel;
+	}
+
+	/**
+	 * Returns the device whose lane the task runs in, or <code>null</code> for the manager lane.
+	 */
+	private static BleDevice getLaneDevice(final PA_Task task)
+	{
+		return P_TaskList.getDevice(task);
+	}
+
+	private Collection<PA_Task> getQueued(final Lane lane)
+	{
+		return m_queue.getQueued(lane.m_device);
+	}
+
+	/**
+	 * Returns the lane of the given device, taking a free one if it has none. Only used for tasks being queued, lookups go through
+	 * {@link #findLane(BleDevice)} so they don't hold on to lanes.
+	 */
+	private Lane obtainLane(final BleDevice device_nullable)
+	{
+		if( device_nullable == null )  return m_managerLane;
+
+		Lane lane = m_deviceLanes.get(device_nullable);
+
+		if( lane == null )
+		{
+			if( m_freeLanes.isEmpty() )
+			{
+				lane = new Lane();
+				m_lanes.add(lane);
+			}
+			else
+			{
+				lane = m_freeLanes.remove(m_freeLanes.size()-1);
+			}
+
+			lane.m_device = device_nullable;
+			lane.m_waitStats = device_nullable.m_taskWaitStats;
+			//--- A lane is only released once its delay has passed, so it starts out past it.
+			lane.m_timeSinceEnding = Interval.INFINITE.secs();
+			m_deviceLanes.put(device_nullable, lane);
+		}
+
+		return lane;
+	}
+
+	private boolean isFree(final Lane lane)
+	{
+		return lane != m_managerLane && lane.m_device == null;
+	}
+
+	/**
+	 * Returns the task's lane, or <code>null</code> if it has none because it's neither queued nor running.
+	 */
+	private Lane findLaneOf(final PA_Task task)
+	{
+		return findLane(getLaneDevice(task));
+	}
+
+	/**
+	 * Frees the device lanes with nothing running or queued once their delay between tasks has passed, so devices don't hold on to
+	 * lanes forever. The next task queued for the device takes a free lane again.
+	 */
+	private void releaseIdleLanes()
+	{
+		for( int i = 0; i < m_lanes.size(); i++ )
+		{
+			final Lane lane = m_lanes.get(i);
+
+			if( lane != m_managerLane && !isFree(lane) && lane.m_current == null && getQueued(lane).isEmpty() && hasDelayTimePassed(lane) )
+			{
+				m_deviceLanes.remove(lane.m_device);
+				lane.m_device = null;
+				lane.m_waitStats = null;
+				m_freeLanes.add(lane);
+			}
+		}
+	}
+
+	private boolean isExclusive(final Lane lane)
+	{
+		return lane == m_managerLane || !runsInParallel();
+	}
+
+	private boolean isExclusive(final PA_Task task)
+	{
+		return getLaneDevice(task) == null || !runsInParallel();
+	}
+
+	private boolean hasCurrent()
+	{
+		for( int i = 0; i < m_lanes.size(); i++ )
+		{
+			if( m_lanes.get(i).m_current != null )  return true;
+		}
+
+		return false;
+	}
+
+	/**
+	 * Returns the lanes whose current task a new task may cancel or interrupt: its own, plus the others it can't run alongside.
+	 */
+	private ArrayList<Lane> getContendedLanes(final PA_Task newTask)
+	{
+		final ArrayList<Lane> lanes = new ArrayList<>();
+
+		if( isExclusive(newTask) )
+		{
+			lanes.addAll(m_lanes);
+		}
+		else
+		{
+			final Lane lane = findLaneOf(newTask);
+
+			//--- No lane yet means nothing is running for the device.
+			if( lane != null )  lanes.add(lane);
+
+			lanes.add(m_managerLane);
+		}
+
+		return lanes;
+	}
+
+	private Lane findCurrentLane(final Class<? extends PA_Task> taskClass, final BleManager mngr_nullable, final BleDevice device_nullable, final BleServer server_nullable)
+	{
+		if( device_nullable != null && !device_nullable.isNull() )
+		{
+			final Lane lane = findLane(device_nullable);
+
+			if( lane != null && PU_TaskQueue.isMatch(lane.m_current, taskClass, mngr_nullable, device_nullable, server_nullable) )  return lane;
+		}
+
+		for( int i = 0; i < m_lanes.size(); i++ )
+		{
+			final Lane lane = m_lanes.get(i);
+
+			if( PU_TaskQueue.isMatch(lane.m_current, taskClass, mngr_nullable, device_nullable, server_nullable) )  return lane;
+		}
+
+		return null;
+	}
+
+	/**
+	 * Returns the average time tasks for the given device (or the manager if <code>null</code>) spent queued before they started executing.
+	 */
+	final double getAverageWaitTime(final BleDevice device_nullable)
+	{
+		return getWaitStats(device_nullable).getAverageWaitTime();
+	}
+
+	final double getMaxWaitTime(final BleDevice device_nullable)
+	{
+		return getWaitStats(device_nullable).getMaxWaitTime();
+	}
+
+	private WaitStats getWaitStats(final BleDevice device_nullable)
+	{
+		return device_nullable == null || device_nullable.isNull() ? m_managerLane.m_waitStats : device_nullable.m_taskWaitStats;
+	}
+
+	private Lane findLane(final BleDevice device_nullable)
+	{
+		return device_nullable == null || device_nullable.isNull() ? m_managerLane : m_deviceLanes.get(device_nullable);
+	}
 	
 	final int assignOrdinal()
 	{
@@ -57,9 +281,9 @@ final class P_TaskQueue
 		return m_currentOrdinal;
 	}
 
-	public final PA_Task peek()
+	public final synchronized PA_Task peek()
 	{
-		return m_queue.size() > 0 ? m_queue.get(0) : null;
+		return m_queue.peek();
 	}
 
 	private void initHandler()
@@ -79,45 +303,63 @@ final class P_TaskQueue
 
 	private boolean tryCancellingCurrentTask(PA_Task newTask)
 	{
-		if( getCurrent() != null && getCurrent().isCancellableBy(newTask) )
-		{
-//			int soonestSpot = U_BtTaskQueue.findSoonestSpot(m_queue, newTask);
+		boolean cancelled = false;
 
-//			if( soonestSpot == 0 )
+		for( Lane lane : getContendedLanes(newTask) )
+		{
+			if( lane.m_current != null && lane.m_current.isCancellableBy(newTask) )
 			{
-				endCurrentTask(PE_TaskState.CANCELLED);
-				addAtIndex(newTask, 0);
+//				int soonestSpot = U_BtTaskQueue.findSoonestSpot(m_queue, newTask);
 
-				return true;
+//				if( soonestSpot == 0 )
+				{
+					endCurrentTask(lane, PE_TaskState.CANCELLED);
+					cancelled = true;
+				}
 			}
 		}
 
-		return false;
+		if( cancelled )
+		{
+			addAtIndex(newTask, 0);
+		}
+
+		return cancelled;
 	}
 
 	private boolean tryInterruptingCurrentTask(PA_Task newTask)
 	{
-		if( getCurrent() != null && getCurrent().isInterruptableBy(newTask) )
-		{
-//			int soonestSpot = U_BtTaskQueue.findSoonestSpot(m_queue, newTask);
+		final ArrayList<PA_Task> interrupted = new ArrayList<>();
 
-//			if( soonestSpot == 0 )
+		for( Lane lane : getContendedLanes(newTask) )
+		{
+			if( lane.m_current != null && lane.m_current.isInterruptableBy(newTask) )
 			{
-				PA_Task current_saved = getCurrent();
-				endCurrentTask(PE_TaskState.INTERRUPTED);
-				addAtIndex(newTask, 0);
-				addAtIndex(current_saved, 1);
+//				int soonestSpot = U_BtTaskQueue.findSoonestSpot(m_queue, newTask);
 
-				return true;
+//				if( soonestSpot == 0 )
+				{
+					interrupted.add(lane.m_current);
+					endCurrentTask(lane, PE_TaskState.INTERRUPTED);
+				}
 			}
 		}
 
-		return false;
+		if( interrupted.isEmpty() )  return false;
+
+		addAtIndex(newTask, 0);
+
+		for( int i = 0; i < interrupted.size(); i++ )
+		{
+			addAtIndex(interrupted.get(i), i + 1);
+		}
+
+		return true;
 	}
 
 	private boolean tryInsertingIntoQueue(PA_Task newTask)
 	{
-		int soonestSpot = PU_TaskQueue.findSoonestSpot(m_queue, newTask);
+		int soonestSpot = m_queue.findSoonestSpot(newTask);
 
 		if( soonestSpot >= 0 )
 		{
@@ -134,32 +376,56 @@ final class P_TaskQueue
 		addAtIndex(task, -1);
 	}
 	
+	/**
+	 * Every {@link PA_Task#isSoftlyCancellableBy(PA_Task)} override only reacts to one of these exact classes, other tasks can't
+	 * softly cancel anything so there's no need to walk the queue for them.
+	 */
+	private static boolean canSoftlyCancel(final PA_Task task)
+	{
+		final Class<?> taskClass = task.getClass();
+
+		return	taskClass == P_Task_Connect.class || taskClass == P_Task_Disconnect.class || taskClass == P_Task_Unbond.class ||
+				taskClass == P_Task_ConnectServer.class || taskClass == P_Task_DisconnectServer.class;
+	}
+
 	public final void softlyCancelTasks(final PA_Task task)
 	{
+		if( !canSoftlyCancel(task) )  return;
+
 		m_mngr.getPostManager().runOrPostToUpdateThread(new Runnable()
 		{
 			@Override
 			public void run()
 			{
-				for( int i = 0; i < m_queue.size()-1; i++ )
-				{
-					PA_Task ithTask = m_queue.get(i);
-					if( ithTask.isSoftlyCancellableBy(task) )
-					{
-						ithTask.attemptToSoftlyCancel(task);
-					}
-				}
-
-				if( getCurrent() != null )
-				{
-					if( getCurrent().isSoftlyCancellableBy(task) )
-					{
-						getCurrent().attemptToSoftlyCancel(task);
-					}
-				}
+				softlyCancelTasks_updateThread(task);
 			}
 		});
 	}
+
+	private synchronized void softlyCancelTasks_updateThread(final PA_Task task)
+	{
+		//--- Walks a copy, soft cancelling may end tasks. Only happens for the few classes canSoftlyCancel() lets through.
+		final PA_Task[] queued = m_queue.toArray(new PA_Task[m_queue.size()]);
+
+		for( int i = 0; i < queued.length-1; i++ )
+		{
+			PA_Task ithTask = queued[i];
+			if( ithTask.isSoftlyCancellableBy(task) )
+			{
+				ithTask.attemptToSoftlyCancel(task);
+			}
+		}
+
+		for( int i = 0; i < m_lanes.size(); i++ )
+		{
+			final PA_Task current = m_lanes.get(i).m_current;
+
+			if( current != null && current.isSoftlyCancellableBy(task) )
+			{
+				current.attemptToSoftlyCancel(task);
+			}
+		}
+	}
 	
 	private void addAtIndex(PA_Task task, int index)
 	{
@@ -170,10 +436,10 @@ final class P_TaskQueue
 		else
 		{
 			m_queue.add(task);
-			
-			index = m_queue.size()-1;
 		}
 
+		obtainLane(getLaneDevice(task));
+
 		task.assignDefaultOrdinal(this);
 		
 		softlyCancelTasks(task);
@@ -205,17 +471,14 @@ final class P_TaskQueue
 		add_updateThread(newTask);
 	}
 
-	private void add_updateThread(final PA_Task newTask)
+	private synchronized void add_updateThread(final PA_Task newTask)
 	{
 		// Check the idle status to ensure the new task gets executed as soon as possible (rather than
 		// waiting until the idle interval's next tick)
 		m_mngr.checkIdleStatus();
 		if( tryCancellingCurrentTask(newTask) )
 		{
-			if( getCurrent() == null )
-			{
-				dequeue();
-			}
+			dequeue();
 		}
 		else if( tryInterruptingCurrentTask(newTask) ) {}
 		else if( tryInsertingIntoQueue(newTask) ) {}
@@ -238,15 +501,23 @@ final class P_TaskQueue
 		return m_time;
 	}
 
-	public final boolean update(double timeStep, long currentTime)
+	public final synchronized boolean update(double timeStep, long currentTime)
 	{
 		boolean executingTask = false;
 
 		m_time += timeStep;
 
-		if (getCurrent() == null)
+		if (!hasCurrent())
 			m_timeSinceEnding += timeStep;
 
+		for( int i = 0; i < m_lanes.size(); i++ )
+		{
+			final Lane lane = m_lanes.get(i);
+
+			if( lane.m_current == null )
+				lane.m_timeSinceEnding += timeStep;
+		}
+
 		if( m_executeHandler == null )
 		{
 			logger().d("Waiting for execute handler to initialize.");
@@ -254,81 +525,180 @@ final class P_TaskQueue
 			return executingTask;
 		}
 
-		if( getCurrent() == null )
-		{
-			executingTask = dequeue();
-		}
+		executingTask = dequeue();
+
+		//--- Lanes may be added while updating (a task adding a task for a new device), only update the ones we started with.
+		final int laneCount = m_lanes.size();
 
-		if( getCurrent() != null )
+		for( int i = 0; i < laneCount; i++ )
 		{
-			getCurrent().update_internal(timeStep, currentTime);
-			executingTask = true;
+			final PA_Task current = m_lanes.get(i).m_current;
+
+			if( current != null )
+			{
+				current.update_internal(timeStep, currentTime);
+				executingTask = true;
+			}
 		}
 
+		releaseIdleLanes();
+
 		m_updateCount++;
 
 		return executingTask;
 	}
 
-	private boolean hasDelayTimePassed()
+	/**
+	 * Returns {@link Interval#INFINITE} seconds if there's nothing running or waiting in the queue, or 0 if the queue needs to be ticked.
+	 */
+	final synchronized double timeUntilNextUpdate()
+	{
+		return !hasCurrent() && m_queue.isEmpty() ? Interval.INFINITE.secs() : 0.0;
+	}
+
+	private boolean hasDelayTimePassed(final Lane lane)
 	{
 		Interval delayTime = m_mngr.m_config.delayBetweenTasks;
 		if (Interval.isDisabled(delayTime))
 			return true;
 
-		return m_timeSinceEnding >= delayTime.secs();
+		return (isExclusive(lane) ? m_timeSinceEnding : lane.m_timeSinceEnding) >= delayTime.secs();
 	}
 
+	/**
+	 * Starts the first armable task of every idle lane. An exclusive task only starts once every lane is idle, and nothing queued
+	 * behind it starts before it does.
+	 */
 	private synchronized boolean dequeue()
 	{
-		if ( !m_mngr.ASSERT(m_current.get() == null) )  return false;
 		if ( m_queue.size() == 0 )  return false;
-		if ( !hasDelayTimePassed() )	return false;
+		if ( m_managerLane.m_current != null )  return false;
 
-		for( int i = 0; i < m_queue.size(); i++ )
+		return runsInParallel() ? dequeue_parallel() : dequeue_exclusive();
+	}
+
+	/**
+	 * Every task is exclusive, so the first armable one in the queue starts once nothing is running.
+	 */
+	private boolean dequeue_exclusive()
+	{
+		if( hasCurrent() || !hasDelayTimePassed(m_managerLane) )  return false;
+
+		for( PA_Task newPotentialCurrent : m_queue )
 		{
-			PA_Task newPotentialCurrent = m_queue.get(i);
-			
 			if( newPotentialCurrent.isArmable() )
 			{
-				m_queue.remove(i);
-				m_current.set(newPotentialCurrent);
-				newPotentialCurrent.arm();
-				if (!newPotentialCurrent.tryExecuting())
-				{
-					print();
-				}
+				start(newPotentialCurrent);
+
 				return true;
 			}
 		}
+
 		return false;
 	}
 
+	/**
+	 * Only looks at the idle device lanes with something queued, through their own lists, so ticks where every lane is busy or
+	 * waiting don't walk the queue. The queue is only searched to check a task against a queued exclusive task.
+	 */
+	private boolean dequeue_parallel()
+	{
+		boolean dequeued = false;
+
+		//--- Arming or executing can end tasks, start others and take lanes under us, so every lane is checked as it is now.
+		for( int i = 0; i < m_lanes.size(); i++ )
+		{
+			final Lane lane = m_lanes.get(i);
+
+			if( m_managerLane.m_current != null )  return dequeued;
+
+			if( lane == m_managerLane || isFree(lane) || lane.m_current != null || getQueued(lane).isEmpty() )  continue;
+			if( !hasDelayTimePassed(lane) )  continue;
+
+			final PA_Task newPotentialCurrent = getFirstArmable(lane);
+
+			if( newPotentialCurrent == null )  continue;
+
+			final PA_Task exclusive = getFirstArmable(m_managerLane);
+
+			if( exclusive != null && m_queue.indexOf(newPotentialCurrent) > m_queue.indexOf(exclusive) )  continue;
+
+			start(newPotentialCurrent);
+			dequeued = true;
+		}
+
+		final PA_Task exclusive = getFirstArmable(m_managerLane);
+
+		if( exclusive != null && !hasCurrent() && hasDelayTimePassed(m_managerLane) )
+		{
+			start(exclusive);
+			dequeued = true;
+		}
+
+		return dequeued;
+	}
+
+	private PA_Task getFirstArmable(final Lane lane)
+	{
+		for( PA_Task task : getQueued(lane) )
+		{
+			if( task.isArmable() )  return task;
+		}
+
+		return null;
+	}
+
+	private void start(final PA_Task newCurrent)
+	{
+		final Lane lane = findLaneOf(newCurrent);
+
+		m_queue.remove(newCurrent);
+		lane.m_current = newCurrent;
+		lane.m_waitStats.onStarted(newCurrent);
+		newCurrent.arm();
+		if (!newCurrent.tryExecuting())
+		{
+			print();
+		}
+	}
+
 	public final long getUpdateCount()
 	{
 		return m_updateCount;
 	}
 
-	public final PA_Task getCurrent()
+	/**
+	 * Returns the manager lane's current task, or if there's none, the current task of one of the device lanes. Without
+	 * {@link BleManagerConfig#runDeviceTasksInParallel} there's at most one current task so this is exactly that one.
+	 */
+	public final synchronized PA_Task getCurrent()
 	{
 //		return m_pendingEndingStateForCurrentTask != null ? null : m_current;
-		return m_current.get();
+		for( int i = 0; i < m_lanes.size(); i++ )
+		{
+			final PA_Task current = m_lanes.get(i).m_current;
+
+			if( current != null )  return current;
+		}
+
+		return null;
 	}
 
-	private boolean endCurrentTask(PE_TaskState endingState)
+	private boolean endCurrentTask(final Lane lane, PE_TaskState endingState)
 	{
 		if( !m_mngr.ASSERT(endingState.isEndingState()) )	return false;
-		if( getCurrent() == null ) 							return false;
+		if( lane.m_current == null ) 						return false;
 //		if( m_pendingEndingStateForCurrentTask != null )	return false;
 		
-		PA_Task current_saved = m_current.get();
-		m_current.set(null);
+		PA_Task current_saved = lane.m_current;
+		lane.m_current = null;
+		lane.m_timeSinceEnding = 0.0;
 		m_timeSinceEnding = 0.0;
 		current_saved.setEndingState(endingState);
 
 		boolean printed = false;
 
-		if( m_queue.size() > 0 && getCurrent() == null )
+		if( m_queue.size() > 0 )
 		{
 			if( endingState.canGoToNextTaskImmediately() )
 			{
@@ -341,7 +711,7 @@ final class P_TaskQueue
 				{
 					@Override public void run()
 					{
-						if( m_queue.size() > 0 && getCurrent() == null )
+						if( m_queue.size() > 0 )
 						{
 							dequeue();
 						}
@@ -364,7 +734,7 @@ final class P_TaskQueue
 	{
 		PA_Task current = getCurrent(taskClass, manager);
 
-		if( PU_TaskQueue.isMatch(getCurrent(), taskClass, manager, null, null) )
+		if( current != null )
 		{
 			tryEndingTask(current, PE_TaskState.INTERRUPTED);
 
@@ -404,11 +774,13 @@ final class P_TaskQueue
 		return tryEndingTask(taskClass, null, null, server, PE_TaskState.FAILED);
 	}
 
-	private boolean tryEndingTask(final Class<? extends PA_Task> taskClass, final BleManager mngr_nullable, final BleDevice device_nullable, final BleServer server_nullable, final PE_TaskState endingState)
+	private synchronized boolean tryEndingTask(final Class<? extends PA_Task> taskClass, final BleManager mngr_nullable, final BleDevice device_nullable, final BleServer server_nullable, final PE_TaskState endingState)
 	{
-		if( PU_TaskQueue.isMatch(getCurrent(), taskClass, mngr_nullable, device_nullable, server_nullable ) )
+		final Lane lane = findCurrentLane(taskClass, mngr_nullable, device_nullable, server_nullable);
+
+		if( lane != null )
 		{
-			return endCurrentTask(endingState);
+			return endCurrentTask(lane, endingState);
 		}
 		
 		return false;
@@ -425,66 +797,57 @@ final class P_TaskQueue
 		});
 	}
 
-	private void tryEndingTask_updateThread(final PA_Task task, final PE_TaskState endingState)
+	private synchronized void tryEndingTask_updateThread(final PA_Task task, final PE_TaskState endingState)
 	{
-		if( task != null && task == getCurrent() )
+		final Lane lane = task != null ? findLaneOf(task) : null;
+
+		if( lane != null && task == lane.m_current )
 		{
-			if( !endCurrentTask(endingState) )
+			if( !endCurrentTask(lane, endingState) )
 			{
 				m_mngr.ASSERT(false);
 			}
 		}
 	}
 
-	public final boolean isCurrent(Class<? extends PA_Task> taskClass, BleManager mngr)
+	public final synchronized boolean isCurrent(Class<? extends PA_Task> taskClass, BleManager mngr)
 	{
-		return PU_TaskQueue.isMatch(getCurrent(), taskClass, mngr, null, null);
+		return findCurrentLane(taskClass, mngr, null, null) != null;
 	}
 
-	public final boolean isCurrent(Class<? extends PA_Task> taskClass, BleDevice device)
+	public final synchronized boolean isCurrent(Class<? extends PA_Task> taskClass, BleDevice device)
 	{
-		return PU_TaskQueue.isMatch(getCurrent(), taskClass, null, device, null);
+		return findCurrentLane(taskClass, null, device, null) != null;
 	}
 
-	public final boolean isCurrent(Class<? extends PA_Task> taskClass, BleServer server)
+	public final synchronized boolean isCurrent(Class<? extends PA_Task> taskClass, BleServer server)
 	{
-		return PU_TaskQueue.isMatch(getCurrent(), taskClass, null, null, server);
+		return findCurrentLane(taskClass, null, null, server) != null;
 	}
 
-	private boolean isInQueue(Class<? extends PA_Task> taskClass, BleManager mngr_nullable, BleDevice device_nullable, BleServer server_nullable)
+	private synchronized boolean isInQueue(Class<? extends PA_Task> taskClass, BleManager mngr_nullable, BleDevice device_nullable, BleServer server_nullable)
 	{
-		for( int i = 0; i < m_queue.size(); i++ )
-		{
-			if( PU_TaskQueue.isMatch(m_queue.get(i), taskClass, mngr_nullable, device_nullable, server_nullable) )
-			{
-				return true;
-			}
-		}
-		
-		return false;
+		return m_queue.findFirst(taskClass, mngr_nullable, device_nullable, server_nullable) != null;
 	}
 
-	private int positionInQueue(Class<? extends PA_Task> taskClass, BleManager mngr_nullable, BleDevice device_nullable, BleServer server_nullable)
+	private synchronized int positionInQueue(Class<? extends PA_Task> taskClass, BleManager mngr_nullable, BleDevice device_nullable, BleServer server_nullable)
 	{
-		for( int i = 0; i < m_queue.size(); i++ )
-		{
-			if( PU_TaskQueue.isMatch(m_queue.get(i), taskClass, mngr_nullable, device_nullable, server_nullable) )
-			{
-				return i;
-			}
-		}
+		final PA_Task task = m_queue.findFirst(taskClass, mngr_nullable, device_nullable, server_nullable);
 
-		return -1;
+		return task != null ? m_queue.indexOf(task) : -1;
 	}
 
-	public final int getSize()
+	public final synchronized int getSize()
 	{
 		return m_queue.size();
 	}
 
-	public final List<PA_Task> getRaw()
+	/**
+	 * Returns a copy of the queue, which can be walked without holding this queue's lock.
+	 */
+	public final synchronized List<PA_Task> getRaw()
 	{
-		return m_queue;
+		return new ArrayList<PA_Task>(m_queue);
 	}
 
 	public final int positionInQueue(Class<? extends PA_Task> taskClass, BleManager mngr)
@@ -522,56 +885,36 @@ final class P_TaskQueue
 		return isCurrent(taskClass, mngr) || isInQueue(taskClass, mngr);
 	}
 
-	public final <T extends PA_Task> T get(Class<T> taskClass, BleManager mngr)
+	public final synchronized <T extends PA_Task> T get(Class<T> taskClass, BleManager mngr)
 	{
-		final PA_Task current = getCurrent();
-		if( PU_TaskQueue.isMatch(current, taskClass, mngr, null, null) )
+		final T current = getCurrent(taskClass, mngr);
+		if( current != null )
 		{
-			return (T) current;
+			return current;
 		}
 
-		for( int i = 0; i < m_queue.size(); i++ )
-		{
-			if( PU_TaskQueue.isMatch(m_queue.get(i), taskClass, mngr, null, null) )
-			{
-				return (T) m_queue.get(i);
-			}
-		}
-
-		return null;
+		return (T) m_queue.findFirst(taskClass, mngr, null, null);
 	}
 
-	public final <T extends PA_Task> T getCurrent(Class<T> taskClass, BleDevice device)
+	public final synchronized <T extends PA_Task> T getCurrent(Class<T> taskClass, BleDevice device)
 	{
-		final PA_Task current = getCurrent();
-		if( PU_TaskQueue.isMatch(current, taskClass, null, device, null) )
-		{
-			return (T) current;
-		}
+		final Lane lane = findCurrentLane(taskClass, null, device, null);
 
-		return null;
+		return lane != null ? (T) lane.m_current : null;
 	}
 
-	public final <T extends PA_Task> T getCurrent(Class<T> taskClass, BleManager mngr)
+	public final synchronized <T extends PA_Task> T getCurrent(Class<T> taskClass, BleManager mngr)
 	{
-		final PA_Task current = getCurrent();
-		if( PU_TaskQueue.isMatch(current, taskClass, mngr, null, null) )
-		{
-			return (T) current;
-		}
+		final Lane lane = findCurrentLane(taskClass, mngr, null, null);
 
-		return null;
+		return lane != null ? (T) lane.m_current : null;
 	}
 
-	public final <T extends PA_Task> T getCurrent(Class<T> taskClass, BleServer server)
+	public final synchronized <T extends PA_Task> T getCurrent(Class<T> taskClass, BleServer server)
 	{
-		final PA_Task current = getCurrent();
-		if( PU_TaskQueue.isMatch(current, taskClass, null, null, server) )
-		{
-			return (T) current;
-		}
+		final Lane lane = findCurrentLane(taskClass, null, null, server);
 
-		return null;
+		return lane != null ? (T) lane.m_current : null;
 	}
 
 	final void print()
@@ -591,19 +934,44 @@ final class P_TaskQueue
 		}
 	}
 
-	private void clearQueueOf$removeFromQueue(int index)
+	/**
+	 * Removes every task matching the given filters, found through the class index, then ends the removed tasks back to front like
+	 * they used to be.
+	 */
+	private synchronized void clearQueueOf$removeFromQueue(final Class<? extends PA_Task> taskClass, final BleManager mngr_nullable, final BleDevice device_nullable, final BleServer server_nullable, final int ordinal)
 	{
-		PA_Task task = m_queue.remove(index);
+		if( !m_queue.hasQueued(taskClass) )  return;
 
-		if( task.wasSoftlyCancelled() )
+		final ArrayList<PA_Task> removed = m_queue.findAll(taskClass, mngr_nullable, device_nullable, server_nullable);
+
+		for( int i = removed.size()-1; i >= 0; i-- )
 		{
-			task.setEndingState(PE_TaskState.SOFTLY_CANCELLED);
+			if( ordinal <= -1 || removed.get(i).getOrdinal() <= ordinal )
+			{
+				m_queue.remove(removed.get(i));
+			}
+			else
+			{
+				removed.remove(i);
+			}
 		}
-		else
+
+		if( removed.isEmpty() )  return;
+
+		for( int i = removed.size()-1; i >= 0; i-- )
 		{
-			task.setEndingState(PE_TaskState.CLEARED_FROM_QUEUE);
+			final PA_Task task = removed.get(i);
+
+			if( task.wasSoftlyCancelled() )
+			{
+				task.setEndingState(PE_TaskState.SOFTLY_CANCELLED);
+			}
+			else
+			{
+				task.setEndingState(PE_TaskState.CLEARED_FROM_QUEUE);
+			}
 		}
-		
+
 		print();
 	}
 
@@ -614,13 +982,7 @@ final class P_TaskQueue
 			@Override
 			public void run()
 			{
-				for( int i = m_queue.size()-1; i >= 0; i-- )
-				{
-					if( PU_TaskQueue.isMatch(m_queue.get(i), taskClass, mngr, null, null) )
-					{
-						clearQueueOf$removeFromQueue(i);
-					}
-				}
+				clearQueueOf$removeFromQueue(taskClass, mngr, null, null, -1);
 			}
 		});
 	}
@@ -632,18 +994,7 @@ final class P_TaskQueue
 			@Override
 			public void run()
 			{
-				for( int i = m_queue.size()-1; i >= 0; i-- )
-				{
-					final PA_Task task_ith = m_queue.get(i);
-
-					if( ordinal <= -1 || ordinal >= 0 && task_ith.getOrdinal() <= ordinal )
-					{
-						if( PU_TaskQueue.isMatch(task_ith, taskClass, null, device, null) )
-						{
-							clearQueueOf$removeFromQueue(i);
-						}
-					}
-				}
+				clearQueueOf$removeFromQueue(taskClass, null, device, null, ordinal);
 			}
 		});
 	}
@@ -655,13 +1006,7 @@ final class P_TaskQueue
 			@Override
 			public void run()
 			{
-				for( int i = m_queue.size()-1; i >= 0; i-- )
-				{
-					if( PU_TaskQueue.isMatch(m_queue.get(i), taskClass, null, null, server) )
-					{
-						clearQueueOf$removeFromQueue(i);
-					}
-				}
+				clearQueueOf$removeFromQueue(taskClass, null, null, server, -1);
 			}
 		});
 	}
@@ -680,15 +1025,24 @@ final class P_TaskQueue
 
 	final void clearQueueOfAll_blocking()
 	{
-		for (int i = m_queue.size() - 1; i >= 0; i-- )
-		{
-			clearQueueOf$removeFromQueue(i);
-		}
+		clearQueueOf$removeFromQueue(PA_Task.class, null, null, null, -1);
 	}
 
-	@Override public final String toString()
+	@Override public final synchronized String toString()
 	{
-		final String current = m_current.get() != null ? m_current.get().toString() : "no current task";
+		String current = "";
+
+		for( int i = 0; i < m_lanes.size(); i++ )
+		{
+			final PA_Task task = m_lanes.get(i).m_current;
+
+			if( task != null )
+			{
+				current += (current.length() > 0 ? ", " : "") + task.toString();
+			}
+		}
+
+		current = current.length() > 0 ? current : "no current task";
 //		if( m_pendingEndingStateForCurrentTask != null)
 //		{
 //			current += "(" + m_pendingEndingStateForCurrentTask.name() +")";
@@ -138,6 +138,14 @@ final class P_TransactionManager
 	{
 		return m_current;
 	}
+
+	boolean isRunning()
+	{
+		return	(m_authTxn != null && m_authTxn.isRunning()) ||
+				(m_initTxn != null && m_initTxn.isRunning()) ||
+				(m_otaTxn != null && m_otaTxn.isRunning()) ||
+				(m_anonTxn != null && m_anonTxn.isRunning());
+	}
 	
 	void clearQueueLock()
 	{
@@ -0,0 +1,262 @@
+package com.idevicesinc.sweetblue;
+
+
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+
+
+/**
+ * Cheap first pass over raw advertisements, set through {@link BleManagerConfig#scanPrefilter}. Advertisers that aren't known yet must
+ * advertise one of the given service uuids, manufacturer ids, or a local name starting with one of the given prefixes, otherwise they're
+ * dropped before SweetBlue parses their name, hits the disk, builds a {@link BleManagerConfig.ScanFilter.ScanEvent}, or creates a
+ * {@link BleDevice} for them. Matching works directly on the scan record bytes and doesn't allocate anything.
+ * <br><br>
+ * A prefilter with no criteria at all lets everything through. Anything it lets through still goes through the regular
+ * {@link BleManagerConfig.ScanFilter}, so the prefilter only needs to be a superset of what that filter acknowledges.
+ */
+public final class ScanPrefilter
+{
+
+    private static final int DATA_TYPE_SERVICE_UUIDS_16_BIT_PARTIAL = 0x02;
+    private static final int DATA_TYPE_SERVICE_UUIDS_16_BIT_COMPLETE = 0x03;
+    private static final int DATA_TYPE_SERVICE_UUIDS_32_BIT_PARTIAL = 0x04;
+    private static final int DATA_TYPE_SERVICE_UUIDS_32_BIT_COMPLETE = 0x05;
+    private static final int DATA_TYPE_SERVICE_UUIDS_128_BIT_PARTIAL = 0x06;
+    private static final int DATA_TYPE_SERVICE_UUIDS_128_BIT_COMPLETE = 0x07;
+    private static final int DATA_TYPE_LOCAL_NAME_SHORT = 0x08;
+    private static final int DATA_TYPE_LOCAL_NAME_COMPLETE = 0x09;
+    private static final int DATA_TYPE_MANUFACTURER_SPECIFIC_DATA = 0xFF;
+
+    private static final UUID BASE_UUID = UUID.fromString("00000000-0000-1000-8000-00805F9B34FB");
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    // Service uuids as pairs of most/least significant bits, so 16 and 32 bit uuids can be compared without building a UUID.
+    private long[] m_serviceUuids = new long[0];
+    private int[] m_manufacturerIds = new int[0];
+    private byte[][] m_namePrefixes = new byte[0][];
+
+
+    /**
+     * Creates a prefilter that lets through advertisers advertising any of the given service uuids.
+     */
+    public ScanPrefilter(final UUID... serviceUuids)
+    {
+        for (int i = 0; i < serviceUuids.length; i++)
+        {
+            addServiceUuid(serviceUuids[i]);
+        }
+    }
+
+    /**
+     * Also lets through advertisers advertising the given service uuid.
+     */
+    public final ScanPrefilter addServiceUuid(final UUID serviceUuid)
+    {
+        final int length = m_serviceUuids.length;
+        m_serviceUuids = Arrays.copyOf(m_serviceUuids, length + 2);
+        m_serviceUuids[length] = serviceUuid.getMostSignificantBits();
+        m_serviceUuids[length + 1] = serviceUuid.getLeastSignificantBits();
+
+        return this;
+    }
+
+    /**
+     * Also lets through advertisers with manufacturer specific data for the given company identifier.
+     */
+    public final ScanPrefilter addManufacturerId(final int manufacturerId)
+    {
+        final int length = m_manufacturerIds.length;
+        m_manufacturerIds = Arrays.copyOf(m_manufacturerIds, length + 1);
+        m_manufacturerIds[length] = manufacturerId & 0xFFFF;
+
+        return this;
+    }
+
+    /**
+     * Also lets through advertisers whose advertised local name (short or complete) starts with the given prefix. Note that this
+     * is case sensitive, and that the name only counts if it's in the advertisement itself.
+     */
+    public final ScanPrefilter addNamePrefix(final String prefix)
+    {
+        final int length = m_namePrefixes.length;
+        m_namePrefixes = Arrays.copyOf(m_namePrefixes, length + 1);
+        m_namePrefixes[length] = prefix.getBytes(UTF_8);
+
+        return this;
+    }
+
+    /**
+     * Returns <code>true</code> if there are no criteria at all, in which case {@link #matches(byte[])} always returns <code>true</code>.
+     */
+    public final boolean isEmpty()
+    {
+        return m_serviceUuids.length == 0 && m_manufacturerIds.length == 0 && m_namePrefixes.length == 0;
+    }
+
+    /**
+     * Returns <code>true</code> if every criterion can be handed to the Bluetooth chipset as a native scan filter, see
+     * {@link BleManagerConfig#offloadScanPrefilter}. Name prefixes can't be, native filters only match complete names.
+     */
+    public final boolean isOffloadable()
+    {
+        return !isEmpty() && m_namePrefixes.length == 0;
+    }
+
+    public final List<UUID> getServiceUuids()
+    {
+        final List<UUID> uuids = new ArrayList<>(m_serviceUuids.length / 2);
+
+        for (int i = 0; i < m_serviceUuids.length; i += 2)
+        {
+            uuids.add(new UUID(m_serviceUuids[i], m_serviceUuids[i + 1]));
+        }
+
+        return uuids;
+    }
+
+    public final int[] getManufacturerIds()
+    {
+        return m_manufacturerIds.clone();
+    }
+
+    /**
+     * Returns <code>true</code> if the given raw scan record matches any of the criteria.
+     */
+    public final boolean matches(final byte[] scanRecord)
+    {
+        if (isEmpty())  return true;
+        if (scanRecord == null)  return false;
+
+        int position = 0;
+
+        while (position < scanRecord.length)
+        {
+            final int length = scanRecord[position] & 0xFF;
+
+            //--- Either the zero padding at the end of the record, or a malformed field running past the end.
+            if (length == 0 || position + 1 + length > scanRecord.length)  break;
+
+            final int type = scanRecord[position + 1] & 0xFF;
+            final int dataStart = position + 2;
+            final int dataLength = length - 1;
+
+            switch (type)
+            {
+                case DATA_TYPE_SERVICE_UUIDS_16_BIT_PARTIAL:
+                case DATA_TYPE_SERVICE_UUIDS_16_BIT_COMPLETE:
+                    if (matchesShortUuids(scanRecord, dataStart, dataLength, 2))  return true;
+                    break;
+                case DATA_TYPE_SERVICE_UUIDS_32_BIT_PARTIAL:
+                case DATA_TYPE_SERVICE_UUIDS_32_BIT_COMPLETE:
+                    if (matchesShortUuids(scanRecord, dataStart, dataLength, 4))  return true;
+                    break;
+                case DATA_TYPE_SERVICE_UUIDS_128_BIT_PARTIAL:
+                case DATA_TYPE_SERVICE_UUIDS_128_BIT_COMPLETE:
+                    if (matchesLongUuids(scanRecord, dataStart, dataLength))  return true;
+                    break;
+                case DATA_TYPE_LOCAL_NAME_SHORT:
+                case DATA_TYPE_LOCAL_NAME_COMPLETE:
+                    if (matchesName(scanRecord, dataStart, dataLength))  return true;
+                    break;
+                case DATA_TYPE_MANUFACTURER_SPECIFIC_DATA:
+                    if (dataLength >= 2 && matchesManufacturerId((scanRecord[dataStart] & 0xFF) | ((scanRecord[dataStart + 1] & 0xFF) << 8)))  return true;
+                    break;
+                default:
+                    break;
+            }
+
+            position += length + 1;
+        }
+
+        return false;
+    }
+
+    private boolean matchesShortUuids(final byte[] record, int position, final int dataLength, final int uuidLength)
+    {
+        final int end = position + dataLength - uuidLength;
+
+        for (; position <= end; position += uuidLength)
+        {
+            long shortUuid = 0;
+
+            for (int i = uuidLength - 1; i >= 0; i--)
+            {
+                shortUuid = (shortUuid << 8) | (record[position + i] & 0xFF);
+            }
+
+            if (matchesUuid(BASE_UUID.getMostSignificantBits() + (shortUuid << 32), BASE_UUID.getLeastSignificantBits()))  return true;
+        }
+
+        return false;
+    }
+
+    private boolean matchesLongUuids(final byte[] record, int position, final int dataLength)
+    {
+        final int end = position + dataLength - 16;
+
+        for (; position <= end; position += 16)
+        {
+            //--- Little endian, least significant half first.
+            if (matchesUuid(readLongLittleEndian(record, position + 8), readLongLittleEndian(record, position)))  return true;
+        }
+
+        return false;
+    }
+
+    private boolean matchesUuid(final long msb, final long lsb)
+    {
+        for (int i = 0; i < m_serviceUuids.length; i += 2)
+        {
+            if (m_serviceUuids[i] == msb && m_serviceUuids[i + 1] == lsb)  return true;
+        }
+
+        return false;
+    }
+
+    private boolean matchesManufacturerId(final int manufacturerId)
+    {
+        for (int i = 0; i < m_manufacturerIds.length; i++)
+        {
+            if (m_manufacturerIds[i] == manufacturerId)  return true;
+        }
+
+        return false;
+    }
+
+    private boolean matchesName(final byte[] record, final int position, final int dataLength)
+    {
+        for (int i = 0; i < m_namePrefixes.length; i++)
+        {
+            final byte[] prefix = m_namePrefixes[i];
+
+            if (prefix.length > dataLength)  continue;
+
+            int j = 0;
+
+            while (j < prefix.length && record[position + j] == prefix[j])
+            {
+                j++;
+            }
+
+            if (j == prefix.length)  return true;
+        }
+
+        return false;
+    }
+
+    private static long readLongLittleEndian(final byte[] record, final int position)
+    {
+        long value = 0;
+
+        for (int i = 7; i >= 0; i--)
+        {
+            value = (value << 8) | (record[position + i] & 0xFF);
+        }
+
+        return value;
+    }
+}
@@ -13,7 +13,7 @@ import com.idevicesinc.sweetblue.utils.HistoricalDataCursor;
 import com.idevicesinc.sweetblue.utils.SingleElementIterator;
 import com.idevicesinc.sweetblue.utils.UpdateLoop;
 
-import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.UUID;
 
@@ -241,12 +241,7 @@ public class Backend_HistoricalDataList_Default implements Backend_HistoricalDat
 	{
 		if( m_data != null )
 		{
-			final ArrayList<HistoricalData> list = new ArrayList<HistoricalData>();
-			list.add(m_data);
-
-			P_HistoricalDataIndexCache indexCache = new P_HistoricalDataIndexCache(m_data.getEpochTime(), m_data.getEpochTime(), 0, 0);
-
-			return new P_HistoricalDataCursor_List(list, indexCache);
+			return new P_HistoricalDataCursor_List(this, Collections.singletonList(m_data), range);
 		}
 		else
 		{
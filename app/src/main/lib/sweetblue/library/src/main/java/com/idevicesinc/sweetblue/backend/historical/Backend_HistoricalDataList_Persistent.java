@@ -0,0 +1,554 @@
+package com.idevicesinc.sweetblue.backend.historical;
+
+import com.idevicesinc.sweetblue.BleNodeConfig.HistoricalDataLogFilter;
+import com.idevicesinc.sweetblue.utils.EpochTimeRange;
+import com.idevicesinc.sweetblue.utils.ForEach_Breakable;
+import com.idevicesinc.sweetblue.utils.ForEach_Returning;
+import com.idevicesinc.sweetblue.utils.ForEach_Void;
+import com.idevicesinc.sweetblue.utils.HistoricalData;
+import com.idevicesinc.sweetblue.utils.HistoricalDataCursor;
+import com.idevicesinc.sweetblue.utils.UpdateLoop;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.UUID;
+
+/**
+ * Implementation of {@link Backend_HistoricalDataList} with no limit on how much data is tracked. Data logged to memory is kept in a
+ * list sorted by time. Data logged to disk is buffered and handed to the {@link Backend_HistoricalDatabase} in batches on the
+ * {@link UpdateLoop} given to {@link #init(Backend_HistoricalDatabase, UpdateLoop, String, UUID, String, boolean)}.
+ * <br><br>
+ * Once anything for this MAC-address/UUID is on disk, reads go to the database until {@link #load(AsyncLoadCallback)} brings it all
+ * into memory, after which the two are kept in sync and reads are served from memory.
+ */
+public class Backend_HistoricalDataList_Persistent implements Backend_HistoricalDataList
+{
+	//--- How long disk writes are buffered for, so bursts of notifications go in as one transaction.
+	private static final long WRITE_DELAY = 250;
+
+	private final ArrayList<HistoricalData> m_memory = new ArrayList<HistoricalData>();
+
+	private final ArrayList<HistoricalData> m_pendingWrites = new ArrayList<HistoricalData>();
+	private long m_pendingLimit = Long.MAX_VALUE;
+
+	private final Object m_flushLock = new Object();
+
+	private final ArrayList<AsyncLoadCallback> m_loadCallbacks = new ArrayList<AsyncLoadCallback>();
+
+	private Backend_HistoricalDatabase m_database;
+	private UpdateLoop m_updateLoop;
+	private String m_macAddress;
+	private UUID m_uuid;
+
+	private boolean m_hasDiskData = false;
+	private volatile int m_loadState = LOAD_STATE__NOT_LOADED;
+
+	private final Runnable m_flushRunnable = new Runnable()
+	{
+		@Override public void run()
+		{
+			flush();
+		}
+	};
+
+	public Backend_HistoricalDataList_Persistent()
+	{
+	}
+
+	@Override public void init(final Backend_HistoricalDatabase database, final UpdateLoop updateLoop, final String macAddress, final UUID uuid, final String uuidName, final boolean hasExistingTable)
+	{
+		m_database = database;
+		m_updateLoop = updateLoop;
+		m_macAddress = macAddress;
+		m_uuid = uuid;
+		m_hasDiskData = hasExistingTable;
+	}
+
+	private synchronized boolean readsFromDisk()
+	{
+		return m_hasDiskData && m_loadState != LOAD_STATE__LOADED;
+	}
+
+	/**
+	 * Writes out whatever is still buffered, so the database is up to date before it's read from or deleted from.
+	 */
+	private void flush()
+	{
+		synchronized(m_flushLock)
+		{
+			final ArrayList<HistoricalData> batch;
+			final long limit;
+
+			synchronized(this)
+			{
+				if( m_pendingWrites.isEmpty() )  return;
+
+				batch = new ArrayList<HistoricalData>(m_pendingWrites);
+				limit = m_pendingLimit;
+
+				m_pendingWrites.clear();
+				m_pendingLimit = Long.MAX_VALUE;
+			}
+
+			m_database.add_multiple_start();
+
+			for( int i = 0; i < batch.size(); i++ )
+			{
+				m_database.add_multiple_next(m_macAddress, m_uuid, batch.get(i));
+			}
+
+			m_database.add_multiple_end();
+
+			if( limit != Long.MAX_VALUE )
+			{
+				//--- Same end result as cropping to the limit before each write: the newest limit+1 rows survive.
+				final long excess = m_database.getCount(m_macAddress, m_uuid, EpochTimeRange.FROM_MIN_TO_MAX) - (Math.max(limit, 0) + 1);
+
+				if( excess > 0 )
+				{
+					m_database.delete_singleUuid_inRange(m_macAddress, m_uuid, EpochTimeRange.FROM_MIN_TO_MAX, excess);
+				}
+			}
+		}
+	}
+
+	private int indexOfFirst(final long from)
+	{
+		return P_HistoricalDataIndexCache.indexOfFirst(m_memory, from);
+	}
+
+	private int indexAfterLast(final long to)
+	{
+		return P_HistoricalDataIndexCache.indexAfterLast(m_memory, to);
+	}
+
+	private void addToMemory(final HistoricalData historicalData, final long limit)
+	{
+		if( limit != Long.MAX_VALUE )
+		{
+			final int excess = m_memory.size() - (int) Math.max(0, Math.min(limit, Integer.MAX_VALUE));
+
+			if( excess > 0 )
+			{
+				m_memory.subList(0, excess).clear();
+			}
+		}
+
+		final long time = historicalData.getEpochTime_millis();
+
+		if( m_memory.isEmpty() || m_memory.get(m_memory.size() - 1).getEpochTime_millis() <= time )
+		{
+			m_memory.add(historicalData);
+		}
+		else
+		{
+			m_memory.add(indexAfterLast(time), historicalData);
+		}
+	}
+
+	/**
+	 * Returns whether this exact instance is in {@link #m_memory}, looking only at the rows logged at the same time.
+	 */
+	private boolean isInMemory(final HistoricalData historicalData)
+	{
+		final long time = historicalData.getEpochTime_millis();
+
+		for( int i = indexOfFirst(time); i < m_memory.size() && m_memory.get(i).getEpochTime_millis() == time; i++ )
+		{
+			if( m_memory.get(i) == historicalData )  return true;
+		}
+
+		return false;
+	}
+
+	/**
+	 * Merges rows read from disk with the ones in memory, both sorted by time. Rows logged to memory only aren't on disk so they're kept,
+	 * rows logged to both (or added to memory after a previous load) show up on each side and are only kept once, matched by time and data.
+	 */
+	private static ArrayList<HistoricalData> merge(final ArrayList<HistoricalData> disk, final ArrayList<HistoricalData> memory)
+	{
+		final ArrayList<HistoricalData> merged = new ArrayList<HistoricalData>(disk.size() + memory.size());
+		int i = 0;
+		int j = 0;
+
+		while( i < disk.size() || j < memory.size() )
+		{
+			final long diskTime = i < disk.size() ? disk.get(i).getEpochTime_millis() : Long.MAX_VALUE;
+			final long memoryTime = j < memory.size() ? memory.get(j).getEpochTime_millis() : Long.MAX_VALUE;
+			final long time = Math.min(diskTime, memoryTime);
+
+			final int diskStart = i;
+
+			while( i < disk.size() && disk.get(i).getEpochTime_millis() == time )
+			{
+				merged.add(disk.get(i));
+				i++;
+			}
+
+			boolean[] matched = null;
+
+			for( ; j < memory.size() && memory.get(j).getEpochTime_millis() == time; j++ )
+			{
+				final HistoricalData candidate = memory.get(j);
+				boolean onDisk = false;
+
+				for( int k = diskStart; k < i; k++ )
+				{
+					if( matched != null && matched[k - diskStart] )  continue;
+
+					if( Arrays.equals(disk.get(k).getBlob(), candidate.getBlob()) )
+					{
+						if( matched == null )  matched = new boolean[i - diskStart];
+
+						matched[k - diskStart] = true;
+						onDisk = true;
+
+						break;
+					}
+				}
+
+				if( !onDisk )
+				{
+					merged.add(candidate);
+				}
+			}
+		}
+
+		return merged;
+	}
+
+	private void deleteFromMemory(final EpochTimeRange range, final long count)
+	{
+		if( count <= 0 )  return;
+
+		final int from = indexOfFirst(range.from().toMilliseconds());
+		final int to = (int) Math.min(indexAfterLast(range.to().toMilliseconds()), from + Math.min(count, Integer.MAX_VALUE));
+
+		if( from < to )
+		{
+			m_memory.subList(from, to).clear();
+		}
+	}
+
+	@Override public void add_single(final HistoricalData historicalData, final int persistenceLevel, final long limit)
+	{
+		if( persistenceLevel == HistoricalDataLogFilter.PersistenceLevel_NONE )  return;
+
+		final boolean toDisk = HistoricalDataLogFilter.HistoricalDataLogEvent.includesDisk(persistenceLevel);
+
+		synchronized(this)
+		{
+			if( HistoricalDataLogFilter.HistoricalDataLogEvent.includesMemory(persistenceLevel) || (toDisk && m_loadState == LOAD_STATE__LOADED) )
+			{
+				addToMemory(historicalData, limit);
+			}
+
+			if( !toDisk )  return;
+
+			m_hasDiskData = true;
+
+			if( m_pendingWrites.isEmpty() )
+			{
+				m_updateLoop.getHandler().postDelayed(m_flushRunnable, WRITE_DELAY);
+			}
+
+			m_pendingWrites.add(historicalData);
+			m_pendingLimit = Math.min(m_pendingLimit, limit);
+		}
+	}
+
+	@Override public void add_multiple(final Iterator<HistoricalData> historicalData, final int persistenceLevel, final long limit)
+	{
+		while( historicalData.hasNext() )
+		{
+			add_single(historicalData.next(), persistenceLevel, limit);
+		}
+	}
+
+	@Override public void add_multiple(final ForEach_Returning<HistoricalData> historicalData, final int persistenceLevel, final long limit)
+	{
+		int i = 0;
+
+		while( true )
+		{
+			final HistoricalData next = historicalData.next(i);
+
+			if( next == null )  break;
+
+			add_single(next, persistenceLevel, limit);
+
+			i++;
+		}
+	}
+
+	@Override public int getCount(final EpochTimeRange range)
+	{
+		if( readsFromDisk() )
+		{
+			flush();
+
+			return m_database.getCount(m_macAddress, m_uuid, range);
+		}
+
+		synchronized(this)
+		{
+			return Math.max(0, indexAfterLast(range.to().toMilliseconds()) - indexOfFirst(range.from().toMilliseconds()));
+		}
+	}
+
+	@Override public HistoricalData get(final EpochTimeRange range, final int offset)
+	{
+		if( readsFromDisk() )
+		{
+			flush();
+
+			return m_database.get(m_macAddress, m_uuid, range, offset);
+		}
+
+		synchronized(this)
+		{
+			final int index = indexOfFirst(range.from().toMilliseconds()) + offset;
+
+			if( offset < 0 || index >= m_memory.size() )  return HistoricalData.NULL;
+
+			final HistoricalData data = m_memory.get(index);
+
+			return data.getEpochTime_millis() <= range.to().toMilliseconds() ? data : HistoricalData.NULL;
+		}
+	}
+
+	@Override public Iterator<HistoricalData> getIterator(final EpochTimeRange range)
+	{
+		if( readsFromDisk() )
+		{
+			return new P_HistoricalDataIterator_Cursor(getCursor(range));
+		}
+
+		return new Iterator<HistoricalData>()
+		{
+			private final long m_to = range.to().toMilliseconds();
+			private int m_next;
+			private boolean m_canRemove = false;
+
+			{
+				synchronized(Backend_HistoricalDataList_Persistent.this)
+				{
+					m_next = indexOfFirst(range.from().toMilliseconds());
+				}
+			}
+
+			@Override public boolean hasNext()
+			{
+				synchronized(Backend_HistoricalDataList_Persistent.this)
+				{
+					return m_next < m_memory.size() && m_memory.get(m_next).getEpochTime_millis() <= m_to;
+				}
+			}
+
+			@Override public HistoricalData next()
+			{
+				synchronized(Backend_HistoricalDataList_Persistent.this)
+				{
+					if( !hasNext() )  throw new NoSuchElementException();
+
+					m_canRemove = true;
+
+					return m_memory.get(m_next++);
+				}
+			}
+
+			@Override public void remove()
+			{
+				synchronized(Backend_HistoricalDataList_Persistent.this)
+				{
+					if( !m_canRemove )  throw new IllegalStateException();
+
+					m_canRemove = false;
+					m_memory.remove(--m_next);
+				}
+			}
+		};
+	}
+
+	private static boolean dispatch(final Object forEach, final HistoricalData next)
+	{
+		if( forEach instanceof ForEach_Void )
+		{
+			((ForEach_Void) forEach).next(next);
+
+			return true;
+		}
+		else
+		{
+			final ForEach_Breakable.Please please = ((ForEach_Breakable) forEach).next(next);
+
+			return please == null || please.shouldContinue();
+		}
+	}
+
+	@Override public boolean doForEach(final EpochTimeRange range, final Object forEach)
+	{
+		if( !(forEach instanceof ForEach_Void) && !(forEach instanceof ForEach_Breakable) )  return false;
+
+		if( readsFromDisk() )
+		{
+			final HistoricalDataCursor cursor = getCursor(range);
+
+			try
+			{
+				while( cursor.moveToNext() && dispatch(forEach, cursor.getHistoricalData()) )
+				{
+				}
+			}
+			finally
+			{
+				cursor.close();
+			}
+		}
+		else
+		{
+			final Iterator<HistoricalData> iterator = getIterator(range);
+
+			while( iterator.hasNext() && dispatch(forEach, iterator.next()) )
+			{
+			}
+		}
+
+		return true;
+	}
+
+	@Override public synchronized void delete_fromMemoryOnly(final EpochTimeRange range, final long count)
+	{
+		deleteFromMemory(range, count);
+	}
+
+	@Override public void delete_fromMemoryOnlyForNowButDatabaseSoon(final EpochTimeRange range, final long count)
+	{
+		//--- The caller deletes from the database next, which has to include anything still buffered.
+		flush();
+
+		delete_fromMemoryOnly(range, count);
+	}
+
+	@Override public void delete_fromMemoryAndDatabase(final EpochTimeRange range, final long count)
+	{
+		flush();
+
+		delete_fromMemoryOnly(range, count);
+
+		if( m_hasDiskData )
+		{
+			m_database.delete_singleUuid_inRange(m_macAddress, m_uuid, range, count);
+		}
+	}
+
+	@Override public String getMacAddress()
+	{
+		return m_macAddress;
+	}
+
+	@Override public void load(final AsyncLoadCallback callback_nullable)
+	{
+		synchronized(this)
+		{
+			if( callback_nullable != null )
+			{
+				m_loadCallbacks.add(callback_nullable);
+			}
+
+			if( m_loadState == LOAD_STATE__LOADING )  return;
+
+			m_loadState = LOAD_STATE__LOADING;
+		}
+
+		m_updateLoop.forcePost(new Runnable()
+		{
+			@Override public void run()
+			{
+				final ArrayList<AsyncLoadCallback> callbacks;
+
+				//--- Held throughout so nothing gets flushed between reading the database and swapping in what was read.
+				synchronized(m_flushLock)
+				{
+					flush();
+
+					final ArrayList<HistoricalData> loaded = new ArrayList<HistoricalData>();
+
+					m_database.load(m_macAddress, m_uuid, EpochTimeRange.FROM_MIN_TO_MAX, new ForEach_Void<HistoricalData>()
+					{
+						@Override public void next(final HistoricalData next)
+						{
+							loaded.add(next);
+						}
+					});
+
+					synchronized(Backend_HistoricalDataList_Persistent.this)
+					{
+						//--- Rows logged to memory only would be lost by just swapping in what was read.
+						final ArrayList<HistoricalData> merged = merge(loaded, m_memory);
+
+						m_memory.clear();
+						m_memory.addAll(merged);
+
+						//--- Anything logged to disk while loading is still buffered, so it goes on top unless it was logged to memory too.
+						for( int i = 0; i < m_pendingWrites.size(); i++ )
+						{
+							final HistoricalData pending = m_pendingWrites.get(i);
+
+							if( !isInMemory(pending) )
+							{
+								addToMemory(pending, Long.MAX_VALUE);
+							}
+						}
+
+						m_loadState = loaded.isEmpty() && m_pendingWrites.isEmpty() ? LOAD_STATE__NOT_LOADED : LOAD_STATE__LOADED;
+
+						callbacks = new ArrayList<AsyncLoadCallback>(m_loadCallbacks);
+						m_loadCallbacks.clear();
+					}
+				}
+
+				for( int i = 0; i < callbacks.size(); i++ )
+				{
+					callbacks.get(i).onDone();
+				}
+			}
+		});
+	}
+
+	@Override public int getLoadState()
+	{
+		return m_loadState;
+	}
+
+	@Override public HistoricalDataCursor getCursor(final EpochTimeRange range)
+	{
+		if( readsFromDisk() )
+		{
+			flush();
+
+			return m_database.getCursor(m_macAddress, m_uuid, range);
+		}
+
+		return new P_HistoricalDataCursor_List(this, m_memory, range);
+	}
+
+	@Override public EpochTimeRange getRange()
+	{
+		if( readsFromDisk() )
+		{
+			flush();
+
+			return m_database.getRange(m_macAddress, m_uuid);
+		}
+
+		synchronized(this)
+		{
+			if( m_memory.isEmpty() )  return EpochTimeRange.NULL;
+
+			return new EpochTimeRange(m_memory.get(0).getEpochTime(), m_memory.get(m_memory.size() - 1).getEpochTime());
+		}
+	}
+}
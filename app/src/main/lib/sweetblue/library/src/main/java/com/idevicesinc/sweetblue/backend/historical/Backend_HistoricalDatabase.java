@@ -43,6 +43,10 @@ public interface Backend_HistoricalDatabase
 
 	int getCount(final String macAddress, final UUID uuid, final EpochTimeRange range);
 
+	HistoricalData get(final String macAddress, final UUID uuid, final EpochTimeRange range, final int offset);
+
+	EpochTimeRange getRange(final String macAddress, final UUID uuid);
+
 	HistoricalDataCursor getCursor(final String macAddress, final UUID uuid, final EpochTimeRange range);
 
 	Cursor query(final String query);
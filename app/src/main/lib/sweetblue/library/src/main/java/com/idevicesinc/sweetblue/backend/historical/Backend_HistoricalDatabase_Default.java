@@ -104,6 +104,20 @@ public class Backend_HistoricalDatabase_Default implements Backend_HistoricalDat
 		return 0;
 	}
 
+	@Override public HistoricalData get(String macAddress, UUID uuid, EpochTimeRange range, int offset)
+	{
+		printWarning();
+
+		return HistoricalData.NULL;
+	}
+
+	@Override public EpochTimeRange getRange(String macAddress, UUID uuid)
+	{
+		printWarning();
+
+		return EpochTimeRange.NULL;
+	}
+
 	@Override public HistoricalDataCursor getCursor(String macAddress, UUID uuid, EpochTimeRange range)
 	{
 		printWarning();
@@ -0,0 +1,702 @@
+package com.idevicesinc.sweetblue.backend.historical;
+
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteException;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
+import android.util.Log;
+
+import com.idevicesinc.sweetblue.BleManager;
+import com.idevicesinc.sweetblue.BleManagerConfig;
+import com.idevicesinc.sweetblue.utils.EmptyCursor;
+import com.idevicesinc.sweetblue.utils.EpochTimeRange;
+import com.idevicesinc.sweetblue.utils.ForEach_Void;
+import com.idevicesinc.sweetblue.utils.HistoricalData;
+import com.idevicesinc.sweetblue.utils.HistoricalDataColumn;
+import com.idevicesinc.sweetblue.utils.HistoricalDataCursor;
+import com.idevicesinc.sweetblue.utils.Interval;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.UUID;
+
+/**
+ * Implementation of {@link Backend_HistoricalDatabase} persisting to SQLite in write-ahead-logging mode. Each MAC-address/UUID
+ * combination gets its own append-only table, indexed on {@link HistoricalDataColumn#EPOCH_TIME} so range queries, counts and
+ * deletes only touch the rows in range. Cursors page through rows in fixed windows instead of holding a database cursor open.
+ * Inserts go through cached prepared statements, and everything between {@link #add_multiple_start()} and
+ * {@link #add_multiple_end()} is written in a single transaction.
+ * <br><br>
+ * Rows older than {@link BleManagerConfig#historicalDataMaxAge} are pruned as new data comes in.
+ */
+public class Backend_HistoricalDatabase_Sqlite implements Backend_HistoricalDatabase
+{
+	private static final String DATABASE_NAME = "sweetblue_historical_data.db";
+	private static final int DATABASE_VERSION = 1;
+
+	private static final String TABLE_PREFIX = "hd_";
+
+	private static final String DATE = HistoricalDataColumn.EPOCH_TIME.getColumnName();
+	private static final String DATA = HistoricalDataColumn.DATA.getColumnName();
+
+	//--- Retention is enforced at most this often per table, the config is cloned for every check.
+	private static final long RETENTION_CHECK_RATE = 60 * 1000;
+
+	private static final HistoricalDataCursor EMPTY_CURSOR = new P_HistoricalDataCursor_Empty();
+
+	private static class OpenHelper extends SQLiteOpenHelper
+	{
+		OpenHelper(final Context context)
+		{
+			super(context, DATABASE_NAME, null, DATABASE_VERSION);
+		}
+
+		@Override public void onConfigure(final SQLiteDatabase db)
+		{
+			db.enableWriteAheadLogging();
+		}
+
+		@Override public void onCreate(final SQLiteDatabase db)
+		{
+			//--- Tables are created on demand, one per MAC-address/UUID combination.
+		}
+
+		@Override public void onUpgrade(final SQLiteDatabase db, final int oldVersion, final int newVersion)
+		{
+		}
+	}
+
+	private static class Table
+	{
+		private final String m_name;
+
+		private SQLiteStatement m_insert = null;
+
+		//--- Row count, -1 until first needed.
+		private long m_count = -1;
+
+		private long m_lastRetentionCheck = 0;
+
+		private final ArrayList<HistoricalData> m_batch = new ArrayList<HistoricalData>();
+
+		Table(final String name)
+		{
+			m_name = name;
+		}
+	}
+
+	private final OpenHelper m_helper;
+
+	private BleManager m_manager;
+
+	private HashMap<String, Table> m_tables = null;
+
+	private final ArrayList<Table> m_batchTables = new ArrayList<Table>();
+
+	public Backend_HistoricalDatabase_Sqlite(final Context context)
+	{
+		m_helper = new OpenHelper(context.getApplicationContext());
+	}
+
+	@Override public void init(final BleManager manager)
+	{
+		m_manager = manager;
+	}
+
+	static void onError(final SQLiteException e)
+	{
+		Log.e("SweetBlue", "Historical data database error.", e);
+	}
+
+	private SQLiteDatabase getDatabase()
+	{
+		try
+		{
+			return m_helper.getWritableDatabase();
+		}
+		catch(SQLiteException e)
+		{
+			onError(e);
+
+			return null;
+		}
+	}
+
+	private static String where(final EpochTimeRange range)
+	{
+		//--- Bounds are inlined rather than bound, selection args would be bound as text.
+		return DATE + " BETWEEN " + range.from().toMilliseconds() + " AND " + range.to().toMilliseconds();
+	}
+
+	private synchronized Table getTable(final SQLiteDatabase db, final String macAddress, final UUID uuid, final boolean createIfNotExists)
+	{
+		if( m_tables == null )
+		{
+			m_tables = new HashMap<String, Table>();
+
+			final Cursor cursor = db.rawQuery("SELECT name FROM sqlite_master WHERE type = 'table' AND name LIKE '" + TABLE_PREFIX + "%'", null);
+
+			try
+			{
+				while( cursor.moveToNext() )
+				{
+					final String name = cursor.getString(0);
+
+					m_tables.put(name, new Table(name));
+				}
+			}
+			finally
+			{
+				cursor.close();
+			}
+		}
+
+		final String name = getTableName(macAddress, uuid);
+		Table table = m_tables.get(name);
+
+		if( table == null && createIfNotExists )
+		{
+			db.execSQL("CREATE TABLE IF NOT EXISTS " + name + " (" + DATE + " INTEGER NOT NULL, " + DATA + " BLOB NOT NULL)");
+			db.execSQL("CREATE INDEX IF NOT EXISTS " + name + "_" + DATE + " ON " + name + " (" + DATE + ")");
+
+			table = new Table(name);
+			table.m_count = 0;
+			m_tables.put(name, table);
+		}
+
+		return table;
+	}
+
+	private Table getTable(final String macAddress, final UUID uuid)
+	{
+		final SQLiteDatabase db = getDatabase();
+
+		if( db == null )  return null;
+
+		try
+		{
+			return getTable(db, macAddress, uuid, false);
+		}
+		catch(SQLiteException e)
+		{
+			onError(e);
+
+			return null;
+		}
+	}
+
+	private static long getRowCount(final SQLiteDatabase db, final Table table)
+	{
+		if( table.m_count < 0 )
+		{
+			table.m_count = DatabaseUtils.queryNumEntries(db, table.m_name);
+		}
+
+		return table.m_count;
+	}
+
+	private static void insert(final SQLiteDatabase db, final Table table, final HistoricalData data)
+	{
+		if( table.m_insert == null )
+		{
+			table.m_insert = db.compileStatement("INSERT INTO " + table.m_name + " (" + DATE + ", " + DATA + ") VALUES (?, ?)");
+		}
+
+		table.m_insert.bindLong(1, data.getEpochTime_millis());
+		table.m_insert.bindBlob(2, data.getBlob());
+		table.m_insert.executeInsert();
+
+		if( table.m_count >= 0 )
+		{
+			table.m_count++;
+		}
+	}
+
+	private static void delete(final SQLiteDatabase db, final Table table, final EpochTimeRange range, final long maxCountToDelete)
+	{
+		if( maxCountToDelete <= 0 )  return;
+
+		final String sql;
+
+		if( maxCountToDelete == Long.MAX_VALUE || maxCountToDelete >= getRowCount(db, table) )
+		{
+			sql = "DELETE FROM " + table.m_name + " WHERE " + where(range);
+		}
+		else
+		{
+			//--- Oldest first.
+			sql = "DELETE FROM " + table.m_name + " WHERE rowid IN (SELECT rowid FROM " + table.m_name + " WHERE " + where(range) + " ORDER BY " + DATE + " LIMIT " + maxCountToDelete + ")";
+		}
+
+		final SQLiteStatement statement = db.compileStatement(sql);
+
+		try
+		{
+			final int deleted = statement.executeUpdateDelete();
+
+			if( table.m_count >= 0 )
+			{
+				table.m_count = Math.max(0, table.m_count - deleted);
+			}
+		}
+		finally
+		{
+			statement.close();
+		}
+	}
+
+	private static void cropTo(final SQLiteDatabase db, final Table table, final long limit)
+	{
+		if( limit == Long.MAX_VALUE )  return;
+
+		delete(db, table, EpochTimeRange.FROM_MIN_TO_MAX, getRowCount(db, table) - Math.max(limit, 0));
+	}
+
+	private void enforceRetention(final SQLiteDatabase db, final Table table)
+	{
+		final long now = System.currentTimeMillis();
+
+		if( now - table.m_lastRetentionCheck < RETENTION_CHECK_RATE )  return;
+
+		table.m_lastRetentionCheck = now;
+
+		final Interval maxAge = m_manager != null ? m_manager.getConfigClone().historicalDataMaxAge : null;
+
+		if( Interval.isDisabled(maxAge) )  return;
+
+		delete(db, table, new EpochTimeRange(Long.MIN_VALUE, now - maxAge.millis() - 1), Long.MAX_VALUE);
+	}
+
+	private static void closeStatements(final Table table)
+	{
+		if( table.m_insert != null )
+		{
+			table.m_insert.close();
+			table.m_insert = null;
+		}
+	}
+
+	/**
+	 * Forgets every cached table, closing their statements, so they're read back from the database when next needed.
+	 */
+	private void resetTables()
+	{
+		if( m_tables == null )  return;
+
+		for( final Table table : m_tables.values() )
+		{
+			closeStatements(table);
+		}
+
+		m_tables = null;
+	}
+
+	private void drop(final SQLiteDatabase db, final Table table)
+	{
+		closeStatements(table);
+
+		db.execSQL("DROP TABLE IF EXISTS " + table.m_name);
+
+		m_tables.remove(table.m_name);
+		m_batchTables.remove(table);
+	}
+
+	/**
+	 * Crops the log to <code>limit</code> rows, oldest first, before writing the new data, same as
+	 * {@link com.idevicesinc.sweetblue.BleNodeConfig.HistoricalDataLogFilter.Please#andLimitLogTo(long)}.
+	 */
+	@Override public synchronized void add_single(final String macAddress, final UUID uuid, final HistoricalData data, final long limit)
+	{
+		final SQLiteDatabase db = getDatabase();
+
+		if( db == null )  return;
+
+		try
+		{
+			final Table table = getTable(db, macAddress, uuid, true);
+
+			cropTo(db, table, limit);
+			insert(db, table, data);
+			enforceRetention(db, table);
+		}
+		catch(SQLiteException e)
+		{
+			onError(e);
+		}
+	}
+
+	@Override public void add_multiple_start()
+	{
+	}
+
+	@Override public synchronized void add_multiple_next(final String macAddress, final UUID uuid, final HistoricalData data)
+	{
+		final SQLiteDatabase db = getDatabase();
+
+		if( db == null )  return;
+
+		try
+		{
+			final Table table = getTable(db, macAddress, uuid, true);
+
+			if( table.m_batch.isEmpty() )
+			{
+				m_batchTables.add(table);
+			}
+
+			table.m_batch.add(data);
+		}
+		catch(SQLiteException e)
+		{
+			onError(e);
+		}
+	}
+
+	@Override public synchronized void add_multiple_end()
+	{
+		if( m_batchTables.isEmpty() )  return;
+
+		final SQLiteDatabase db = getDatabase();
+
+		try
+		{
+			if( db == null )  return;
+
+			//--- Rows are only buffered until here, so a transaction never spans calls (or threads).
+			db.beginTransactionNonExclusive();
+
+			try
+			{
+				for( int i = 0; i < m_batchTables.size(); i++ )
+				{
+					final Table table = m_batchTables.get(i);
+
+					for( int j = 0; j < table.m_batch.size(); j++ )
+					{
+						insert(db, table, table.m_batch.get(j));
+					}
+
+					enforceRetention(db, table);
+				}
+
+				db.setTransactionSuccessful();
+			}
+			finally
+			{
+				db.endTransaction();
+			}
+		}
+		catch(SQLiteException e)
+		{
+			//--- The transaction was rolled back, so the cached counts can't be trusted anymore.
+			for( int i = 0; i < m_batchTables.size(); i++ )
+			{
+				m_batchTables.get(i).m_count = -1;
+			}
+
+			onError(e);
+		}
+		finally
+		{
+			for( int i = 0; i < m_batchTables.size(); i++ )
+			{
+				m_batchTables.get(i).m_batch.clear();
+			}
+
+			m_batchTables.clear();
+		}
+	}
+
+	@Override public synchronized void delete_singleUuid_all(final String macAddress, final UUID uuid)
+	{
+		final SQLiteDatabase db = getDatabase();
+
+		if( db == null )  return;
+
+		try
+		{
+			final Table table = getTable(db, macAddress, uuid, false);
+
+			if( table != null )
+			{
+				drop(db, table);
+			}
+		}
+		catch(SQLiteException e)
+		{
+			onError(e);
+		}
+	}
+
+	@Override public synchronized void delete_singleUuid_inRange(final String macAddress, final UUID uuid, final EpochTimeRange range, final long maxCountToDelete)
+	{
+		final SQLiteDatabase db = getDatabase();
+
+		if( db == null )  return;
+
+		try
+		{
+			final Table table = getTable(db, macAddress, uuid, false);
+
+			if( table != null )
+			{
+				delete(db, table, range, maxCountToDelete);
+			}
+		}
+		catch(SQLiteException e)
+		{
+			onError(e);
+		}
+	}
+
+	@Override public void delete_singleUuid_singleDate(final String macAddress, final UUID uuid, final long date)
+	{
+		delete_singleUuid_inRange(macAddress, uuid, new EpochTimeRange(date, date), Long.MAX_VALUE);
+	}
+
+	@Override public synchronized void delete_multipleUuids(final String[] macAddresses, final UUID[] uuids, final EpochTimeRange range, final long count)
+	{
+		final SQLiteDatabase db = getDatabase();
+
+		if( db == null )  return;
+
+		try
+		{
+			db.beginTransactionNonExclusive();
+
+			try
+			{
+				for( int i = 0; i < uuids.length; i++ )
+				{
+					final Table table = getTable(db, macAddresses[i], uuids[i], false);
+
+					if( table == null )  continue;
+
+					if( count == Long.MAX_VALUE && range.from().toMilliseconds() == Long.MIN_VALUE && range.to().toMilliseconds() == Long.MAX_VALUE )
+					{
+						drop(db, table);
+					}
+					else
+					{
+						delete(db, table, range, count);
+					}
+				}
+
+				db.setTransactionSuccessful();
+			}
+			finally
+			{
+				db.endTransaction();
+			}
+		}
+		catch(SQLiteException e)
+		{
+			//--- Rolled back, so reload what's actually there next time around.
+			resetTables();
+
+			onError(e);
+		}
+	}
+
+	@Override public boolean doesDataExist(final String macAddress, final UUID uuid)
+	{
+		return getCount(macAddress, uuid, EpochTimeRange.FROM_MIN_TO_MAX) > 0;
+	}
+
+	@Override public void load(final String macAddress, final UUID uuid, final EpochTimeRange range, final ForEach_Void<HistoricalData> forEach)
+	{
+		//--- Paged like getCursor() so each page is read under the lock, a table dropped midway just ends the load.
+		final HistoricalDataCursor cursor = getCursor(macAddress, uuid, range);
+
+		try
+		{
+			while( cursor.moveToNext() )
+			{
+				forEach.next(cursor.getHistoricalData());
+			}
+		}
+		finally
+		{
+			cursor.close();
+		}
+	}
+
+	@Override public int getCount(final String macAddress, final UUID uuid, final EpochTimeRange range)
+	{
+		final SQLiteDatabase db = getDatabase();
+
+		if( db == null )  return 0;
+
+		try
+		{
+			final boolean everything = range.from().toMilliseconds() == Long.MIN_VALUE && range.to().toMilliseconds() == Long.MAX_VALUE;
+
+			synchronized(this)
+			{
+				final Table table = getTable(db, macAddress, uuid, false);
+
+				if( table == null )  return 0;
+
+				if( everything )
+				{
+					return (int) Math.min(getRowCount(db, table), Integer.MAX_VALUE);
+				}
+
+				//--- Queried under the lock so a concurrent drop can't remove the table in between.
+				return (int) DatabaseUtils.longForQuery(db, "SELECT COUNT(*) FROM " + table.m_name + " WHERE " + where(range), null);
+			}
+		}
+		catch(SQLiteException e)
+		{
+			onError(e);
+
+			return 0;
+		}
+	}
+
+	@Override public HistoricalData get(final String macAddress, final UUID uuid, final EpochTimeRange range, final int offset)
+	{
+		if( offset < 0 )  return HistoricalData.NULL;
+
+		final Cursor cursor = queryRange(macAddress, uuid, range, "", " LIMIT 1 OFFSET " + offset);
+
+		if( cursor == null )  return HistoricalData.NULL;
+
+		try
+		{
+			return cursor.moveToFirst() ? HistoricalData.fromCursor(cursor) : HistoricalData.NULL;
+		}
+		catch(SQLiteException e)
+		{
+			onError(e);
+
+			return HistoricalData.NULL;
+		}
+		finally
+		{
+			cursor.close();
+		}
+	}
+
+	@Override public synchronized EpochTimeRange getRange(final String macAddress, final UUID uuid)
+	{
+		final SQLiteDatabase db = getDatabase();
+
+		if( db == null )  return EpochTimeRange.NULL;
+
+		Cursor cursor = null;
+
+		try
+		{
+			final Table table = getTable(db, macAddress, uuid, false);
+
+			if( table == null )  return EpochTimeRange.NULL;
+
+			//--- Both are answered straight from the index.
+			cursor = db.rawQuery("SELECT MIN(" + DATE + "), MAX(" + DATE + ") FROM " + table.m_name, null);
+
+			if( !cursor.moveToFirst() || cursor.isNull(0) )  return EpochTimeRange.NULL;
+
+			return new EpochTimeRange(cursor.getLong(0), cursor.getLong(1));
+		}
+		catch(SQLiteException e)
+		{
+			onError(e);
+
+			return EpochTimeRange.NULL;
+		}
+		finally
+		{
+			if( cursor != null )
+			{
+				cursor.close();
+			}
+		}
+	}
+
+	@Override public HistoricalDataCursor getCursor(final String macAddress, final UUID uuid, final EpochTimeRange range)
+	{
+		if( getTable(macAddress, uuid) == null )  return EMPTY_CURSOR;
+
+		return new P_HistoricalDataCursor_Database(this, macAddress, uuid, range);
+	}
+
+	/**
+	 * Returns at most <code>limit</code> rows in range that come after the row with the given time and rowid, using the index
+	 * to seek there instead of stepping over every row before it like an <code>OFFSET</code> would.
+	 */
+	Cursor queryWindow(final String macAddress, final UUID uuid, final EpochTimeRange range, final long afterTime, final long afterRowId, final int limit)
+	{
+		return queryRange(macAddress, uuid, range, " AND (" + DATE + " > " + afterTime + " OR (" + DATE + " = " + afterTime + " AND rowid > " + afterRowId + "))", " LIMIT " + limit);
+	}
+
+	/**
+	 * Returns at most <code>limit</code> rows in range, skipping the first <code>offset</code>.
+	 */
+	Cursor queryWindow(final String macAddress, final UUID uuid, final EpochTimeRange range, final int offset, final int limit)
+	{
+		return queryRange(macAddress, uuid, range, "", " LIMIT " + limit + " OFFSET " + offset);
+	}
+
+	//--- Columns are EPOCH_TIME and DATA as expected by HistoricalData.fromCursor(), then the rowid to break ties between equal times.
+	//--- Returns null if the table doesn't exist. Callers always pass a LIMIT, and the query is run to fill the cursor while
+	//--- the lock is held, so a concurrent drop either happens before and reads as empty or waits until the rows are in memory.
+	private synchronized Cursor queryRange(final String macAddress, final UUID uuid, final EpochTimeRange range, final String condition, final String suffix)
+	{
+		final SQLiteDatabase db = getDatabase();
+
+		if( db == null )  return null;
+
+		Cursor cursor = null;
+
+		try
+		{
+			final Table table = getTable(db, macAddress, uuid, false);
+
+			if( table == null )  return null;
+
+			cursor = db.rawQuery("SELECT " + DATE + ", " + DATA + ", rowid FROM " + table.m_name + " WHERE " + where(range) + condition + " ORDER BY " + DATE + ", rowid" + suffix, null);
+			cursor.getCount();
+
+			return cursor;
+		}
+		catch(SQLiteException e)
+		{
+			onError(e);
+
+			if( cursor != null )
+			{
+				cursor.close();
+			}
+
+			return null;
+		}
+	}
+
+	@Override public Cursor query(final String query)
+	{
+		final SQLiteDatabase db = getDatabase();
+
+		if( db == null )  return EmptyCursor.SINGLETON;
+
+		try
+		{
+			return db.rawQuery(query, null);
+		}
+		catch(SQLiteException e)
+		{
+			onError(e);
+
+			return EmptyCursor.SINGLETON;
+		}
+	}
+
+	@Override public String getTableName(final String macAddress, final UUID uuid)
+	{
+		return TABLE_PREFIX + macAddress.replace(":", "") + "_" + uuid.toString().replace("-", "");
+	}
+}
@@ -0,0 +1,79 @@
+package com.idevicesinc.sweetblue.backend.historical;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteException;
+
+import com.idevicesinc.sweetblue.utils.EpochTimeRange;
+import com.idevicesinc.sweetblue.utils.HistoricalDataCursor;
+
+import java.util.UUID;
+
+/**
+ * Windowed {@link HistoricalDataCursor} over a {@link Backend_HistoricalDatabase_Sqlite} table. Each page is its own short query
+ * that's closed right away, so no database cursor stays open between pages, and the count is only queried if asked for.
+ * Pages following the previous one seek past its last row through the time index, others fall back to an offset.
+ */
+class P_HistoricalDataCursor_Database extends P_HistoricalDataCursor_Windowed
+{
+	private final Backend_HistoricalDatabase_Sqlite m_database;
+	private final String m_macAddress;
+	private final UUID m_uuid;
+	private final EpochTimeRange m_range;
+
+	private long m_lastTime;
+	private long m_lastRowId;
+
+	P_HistoricalDataCursor_Database(final Backend_HistoricalDatabase_Sqlite database, final String macAddress, final UUID uuid, final EpochTimeRange range)
+	{
+		m_database = database;
+		m_macAddress = macAddress;
+		m_uuid = uuid;
+		m_range = range;
+	}
+
+	@Override int loadCount()
+	{
+		return m_database.getCount(m_macAddress, m_uuid, m_range);
+	}
+
+	@Override int loadWindow(final int position, final int maxCount, final boolean continuing)
+	{
+		final Cursor cursor;
+
+		if( continuing )
+		{
+			cursor = m_database.queryWindow(m_macAddress, m_uuid, m_range, m_lastTime, m_lastRowId, maxCount);
+		}
+		else
+		{
+			cursor = m_database.queryWindow(m_macAddress, m_uuid, m_range, position, maxCount);
+		}
+
+		if( cursor == null )  return 0;
+
+		int loaded = 0;
+
+		try
+		{
+			while( loaded < maxCount && cursor.moveToNext() )
+			{
+				m_lastTime = cursor.getLong(0);
+				m_lastRowId = cursor.getLong(2);
+
+				setRow(loaded, m_lastTime, cursor.getBlob(1), null);
+
+				loaded++;
+			}
+		}
+		catch(SQLiteException e)
+		{
+			Backend_HistoricalDatabase_Sqlite.onError(e);
+		}
+		finally
+		{
+			cursor.close();
+		}
+
+		return loaded;
+	}
+}
@@ -1,134 +1,85 @@
 package com.idevicesinc.sweetblue.backend.historical;
 
-import android.database.Cursor;
-
 import com.idevicesinc.sweetblue.utils.EpochTimeRange;
 import com.idevicesinc.sweetblue.utils.HistoricalData;
-import com.idevicesinc.sweetblue.utils.HistoricalDataCursor;
 
 import java.util.List;
 
-class P_HistoricalDataCursor_List implements HistoricalDataCursor
+/**
+ * Windowed cursor over an in-memory, time-sorted list of {@link HistoricalData} that other threads may keep adding to or cropping.
+ * The list is only touched while holding the given lock, one page at a time, and the count is fixed to the rows in range when
+ * the cursor was created. Pages following the previous one are found by binary searching the time of its last row, so they
+ * pick up where it left off even if rows were cropped off the front in between.
+ */
+class P_HistoricalDataCursor_List extends P_HistoricalDataCursor_Windowed
 {
+	private final Object m_lock;
 	private final List<HistoricalData> m_historicalData;
 	private final P_HistoricalDataIndexCache m_indexCache;
 
-	private int m_position = -1;
-
-	private boolean m_isClosed = false;
+	//--- Time of the last row handed out, and how many rows with that same time were handed out up to it.
+	private long m_lastTime;
+	private int m_lastTimeCount = 0;
 
-	public P_HistoricalDataCursor_List(final List<HistoricalData> data, final P_HistoricalDataIndexCache indexCache)
+	public P_HistoricalDataCursor_List(final Object lock, final List<HistoricalData> data, final EpochTimeRange range)
 	{
+		m_lock = lock;
 		m_historicalData = data;
-		m_indexCache = indexCache;
-	}
-
-	@Override public int getCount()
-	{
-		return m_indexCache.getCount();
-	}
-
-	private boolean checkPosition(final int newPosition)
-	{
-		return newPosition >= m_indexCache.m_from_index && newPosition <= m_indexCache.m_to_index;
-	}
-
-	@Override public int getPosition()
-	{
-		return m_position;
-	}
 
-	@Override public boolean move(int offset)
-	{
-		return moveToPosition(getPosition() + offset);
-	}
-
-	@Override public boolean moveToPosition(int position)
-	{
-		if( checkPosition(position) )
-		{
-			m_position = position;
-
-			return false;
-		}
-		else
+		synchronized(m_lock)
 		{
-			return false;
+			m_indexCache = new P_HistoricalDataIndexCache(data, range);
 		}
-	}
-
-	@Override public boolean moveToFirst()
-	{
-		return moveToPosition(m_indexCache.m_from_index);
-	}
-
-	@Override public boolean moveToLast()
-	{
-		return moveToPosition(getCount()-1);
-	}
 
-	@Override public boolean moveToNext()
-	{
-		return moveToPosition(getPosition()+1);
+		setCount(m_indexCache.getCount());
 	}
 
-	@Override public boolean moveToPrevious()
+	@Override int loadCount()
 	{
-		return moveToPosition(getPosition()-1);
+		return m_indexCache.getCount();
 	}
 
-	@Override public boolean isFirst()
+	@Override int loadWindow(final int position, final int maxCount, final boolean continuing)
 	{
-		return getPosition() == 0;
-	}
+		synchronized(m_lock)
+		{
+			final int start;
 
-	@Override public boolean isLast()
-	{
-		return getPosition() == getCount()-1;
-	}
+			if( continuing && m_lastTimeCount > 0 )
+			{
+				start = P_HistoricalDataIndexCache.indexOfFirst(m_historicalData, m_lastTime) + m_lastTimeCount;
+			}
+			else
+			{
+				if( !m_indexCache.isFromCurrent(m_historicalData) )
+				{
+					m_indexCache.refresh(m_historicalData);
+				}
 
-	@Override public boolean isBeforeFirst()
-	{
-		return m_position == -1;
-	}
+				start = m_indexCache.m_from_index + position;
+			}
 
-	@Override public boolean isAfterLast()
-	{
-		return m_position >= getCount();
-	}
+			final long to = m_indexCache.getToDate();
+			int loaded = 0;
 
-	@Override public void close()
-	{
-		if( m_isClosed )  return;
+			while( loaded < maxCount && start + loaded < m_historicalData.size() )
+			{
+				final HistoricalData row = m_historicalData.get(start + loaded);
 
-		m_isClosed = true;
-	}
+				if( row.getEpochTime_millis() > to )  break;
 
-	@Override public boolean isClosed()
-	{
-		return m_isClosed;
-	}
+				setRow(loaded, row.getEpochTime_millis(), row.getBlob(), row);
 
-	@Override public long getEpochTime()
-	{
-		return getHistoricalData().getEpochTime_millis();
-	}
+				loaded++;
+			}
 
-	@Override public byte[] getBlob()
-	{
-		return getHistoricalData().getBlob();
-	}
+			if( loaded > 0 )
+			{
+				m_lastTime = m_historicalData.get(start + loaded - 1).getEpochTime_millis();
+				m_lastTimeCount = start + loaded - P_HistoricalDataIndexCache.indexOfFirst(m_historicalData, m_lastTime);
+			}
 
-	@Override public HistoricalData getHistoricalData()
-	{
-		if( checkPosition(getPosition()) )
-		{
-			return m_historicalData.get(getPosition());
-		}
-		else
-		{
-			return HistoricalData.NULL;
+			return loaded;
 		}
 	}
-
 }
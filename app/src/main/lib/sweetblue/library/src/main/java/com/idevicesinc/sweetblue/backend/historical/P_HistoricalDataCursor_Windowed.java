@@ -0,0 +1,235 @@
+package com.idevicesinc.sweetblue.backend.historical;
+
+import com.idevicesinc.sweetblue.utils.EpochTime;
+import com.idevicesinc.sweetblue.utils.HistoricalData;
+import com.idevicesinc.sweetblue.utils.HistoricalDataCursor;
+import com.idevicesinc.sweetblue.utils.P_Const;
+
+/**
+ * Base for {@link HistoricalDataCursor} implementations that page rows in from their backend {@link #WINDOW_SIZE} at a time
+ * instead of materializing the whole range up front. The window's arrays are allocated once and refilled for every page.
+ * <br><br>
+ * Subclasses are told whether a page directly follows the current one, so sequential iteration can seek from the last row
+ * handed out rather than by offset. The count is only asked for when it can't be inferred from a short page.
+ */
+abstract class P_HistoricalDataCursor_Windowed implements HistoricalDataCursor
+{
+	static final int WINDOW_SIZE = 128;
+
+	private final long[] m_times = new long[WINDOW_SIZE];
+	private final byte[][] m_blobs = new byte[WINDOW_SIZE][];
+	private final HistoricalData[] m_rows = new HistoricalData[WINDOW_SIZE];
+
+	//--- Cursor position of the first row in the window, and how many rows the window holds.
+	private int m_windowStart = 0;
+	private int m_windowSize = 0;
+
+	private int m_position = -1;
+
+	//--- -1 until known.
+	private int m_count = -1;
+
+	private boolean m_isClosed = false;
+
+	/**
+	 * Returns the number of rows in range.
+	 */
+	abstract int loadCount();
+
+	/**
+	 * Fills the window through {@link #setRow(int, long, byte[], HistoricalData)} with at most <code>maxCount</code> rows starting
+	 * at cursor position <code>position</code> and returns how many were set. <code>continuing</code> is <code>true</code> when
+	 * <code>position</code> directly follows the last row of the previous page.
+	 */
+	abstract int loadWindow(final int position, final int maxCount, final boolean continuing);
+
+	/**
+	 * Sets a row of the window being loaded. <code>row_nullable</code> can be given if the backend already holds an instance,
+	 * otherwise one is only created if {@link #getHistoricalData()} is called for that row.
+	 */
+	final void setRow(final int index, final long epochTime, final byte[] blob, final HistoricalData row_nullable)
+	{
+		m_times[index] = epochTime;
+		m_blobs[index] = blob;
+		m_rows[index] = row_nullable;
+	}
+
+	/**
+	 * Lets subclasses that capture their count up front skip {@link #loadCount()}.
+	 */
+	final void setCount(final int count)
+	{
+		m_count = count;
+	}
+
+	private boolean isInWindow(final int position)
+	{
+		return position >= m_windowStart && position < m_windowStart + m_windowSize;
+	}
+
+	private boolean isOnRow()
+	{
+		return !m_isClosed && isInWindow(m_position);
+	}
+
+	private int getWindowStart(final int position, final boolean continuing)
+	{
+		//--- Moving backwards past the window loads the page ending at the target, so further moveToPrevious() calls stay in it.
+		if( !continuing && m_windowSize > 0 && position < m_windowStart )
+		{
+			return Math.max(0, position - WINDOW_SIZE + 1);
+		}
+
+		return position;
+	}
+
+	private boolean load(final int position)
+	{
+		final boolean continuing = m_windowSize > 0 && position == m_windowStart + m_windowSize;
+		final int start = getWindowStart(position, continuing);
+		final int maxCount = m_count >= 0 ? Math.min(WINDOW_SIZE, m_count - start) : WINDOW_SIZE;
+
+		final int loaded = maxCount > 0 ? loadWindow(start, maxCount, continuing) : 0;
+
+		for( int i = loaded; i < m_windowSize; i++ )
+		{
+			setRow(i, 0, null, null);
+		}
+
+		m_windowStart = start;
+		m_windowSize = loaded;
+
+		if( loaded < maxCount && (loaded > 0 || continuing) )
+		{
+			m_count = start + loaded;
+		}
+
+		return isInWindow(position);
+	}
+
+	@Override public int getCount()
+	{
+		if( m_count < 0 )
+		{
+			m_count = m_isClosed ? 0 : Math.max(0, loadCount());
+		}
+
+		return m_count;
+	}
+
+	@Override public int getPosition()
+	{
+		return m_position;
+	}
+
+	@Override public boolean move(int offset)
+	{
+		return moveToPosition(getPosition() + offset);
+	}
+
+	@Override public boolean moveToPosition(int position)
+	{
+		if( m_isClosed )  return false;
+
+		if( position < 0 )
+		{
+			m_position = -1;
+
+			return false;
+		}
+
+		if( isInWindow(position) || ((m_count < 0 || position < m_count) && load(position)) )
+		{
+			m_position = position;
+
+			return true;
+		}
+
+		m_position = getCount();
+
+		return false;
+	}
+
+	@Override public boolean moveToFirst()
+	{
+		return moveToPosition(0);
+	}
+
+	@Override public boolean moveToLast()
+	{
+		return moveToPosition(getCount() - 1);
+	}
+
+	@Override public boolean moveToNext()
+	{
+		return moveToPosition(getPosition() + 1);
+	}
+
+	@Override public boolean moveToPrevious()
+	{
+		return moveToPosition(getPosition() - 1);
+	}
+
+	@Override public boolean isFirst()
+	{
+		return m_position == 0 && isOnRow();
+	}
+
+	@Override public boolean isLast()
+	{
+		return isOnRow() && m_position == getCount() - 1;
+	}
+
+	@Override public boolean isBeforeFirst()
+	{
+		return m_position == -1;
+	}
+
+	@Override public boolean isAfterLast()
+	{
+		return m_position >= 0 && !isOnRow();
+	}
+
+	@Override public void close()
+	{
+		if( m_isClosed )  return;
+
+		m_isClosed = true;
+
+		for( int i = 0; i < m_windowSize; i++ )
+		{
+			setRow(i, 0, null, null);
+		}
+
+		m_windowSize = 0;
+	}
+
+	@Override public boolean isClosed()
+	{
+		return m_isClosed;
+	}
+
+	@Override public long getEpochTime()
+	{
+		return isOnRow() ? m_times[m_position - m_windowStart] : EpochTime.NULL.toMilliseconds();
+	}
+
+	@Override public byte[] getBlob()
+	{
+		return isOnRow() ? m_blobs[m_position - m_windowStart] : P_Const.EMPTY_BYTE_ARRAY;
+	}
+
+	@Override public HistoricalData getHistoricalData()
+	{
+		if( !isOnRow() )  return HistoricalData.NULL;
+
+		final int index = m_position - m_windowStart;
+
+		if( m_rows[index] == null )
+		{
+			m_rows[index] = new HistoricalData(m_times[index], m_blobs[index]);
+		}
+
+		return m_rows[index];
+	}
+}
@@ -2,13 +2,20 @@ package com.idevicesinc.sweetblue.backend.historical;
 
 import com.idevicesinc.sweetblue.utils.EpochTime;
 import com.idevicesinc.sweetblue.utils.EpochTimeRange;
+import com.idevicesinc.sweetblue.utils.HistoricalData;
 
+import java.util.List;
+
+/**
+ * Caches the indices bounding an {@link EpochTimeRange} in a time-sorted list of {@link HistoricalData}, so they're only binary
+ * searched again once the list has shifted under them.
+ */
 class P_HistoricalDataIndexCache
 {
 	private final long m_from_date;
 	private final long m_to_date;
 
-	final int m_from_index;
+	int m_from_index;
 	int m_to_index;
 
 	P_HistoricalDataIndexCache(final EpochTime from_date, final EpochTime to_date, final int from_index, final int to_index)
@@ -25,6 +32,89 @@ class P_HistoricalDataIndexCache
 		m_to_index = to_index;
 	}
 
+	/**
+	 * Binary searches the bounds of the given range in the given list, which must be sorted by time.
+	 */
+	P_HistoricalDataIndexCache(final List<HistoricalData> list, final EpochTimeRange range)
+	{
+		this(range.from().toMilliseconds(), range.to().toMilliseconds(), 0, -1);
+
+		refresh(list);
+	}
+
+	/**
+	 * Returns the index of the first item at or after the given time, or the list's size if there's none.
+	 */
+	static int indexOfFirst(final List<HistoricalData> list, final long from)
+	{
+		int low = 0;
+		int high = list.size();
+
+		while( low < high )
+		{
+			final int mid = (low + high) >>> 1;
+
+			if( list.get(mid).getEpochTime_millis() < from )
+			{
+				low = mid + 1;
+			}
+			else
+			{
+				high = mid;
+			}
+		}
+
+		return low;
+	}
+
+	/**
+	 * Returns the index after the last item at or before the given time, or zero if there's none.
+	 */
+	static int indexAfterLast(final List<HistoricalData> list, final long to)
+	{
+		int low = 0;
+		int high = list.size();
+
+		while( low < high )
+		{
+			final int mid = (low + high) >>> 1;
+
+			if( list.get(mid).getEpochTime_millis() <= to )
+			{
+				low = mid + 1;
+			}
+			else
+			{
+				high = mid;
+			}
+		}
+
+		return low;
+	}
+
+	void refresh(final List<HistoricalData> list)
+	{
+		m_from_index = indexOfFirst(list, m_from_date);
+		m_to_index = indexAfterLast(list, m_to_date) - 1;
+	}
+
+	/**
+	 * Returns whether {@link #m_from_index} still points at the first item in range of the given list.
+	 */
+	boolean isFromCurrent(final List<HistoricalData> list)
+	{
+		if( m_from_index < 0 || m_from_index > list.size() )  return false;
+
+		if( m_from_index < list.size() && list.get(m_from_index).getEpochTime_millis() < m_from_date )  return false;
+
+		return m_from_index == 0 || list.get(m_from_index - 1).getEpochTime_millis() < m_from_date;
+	}
+
+	long getToDate()
+	{
+		return m_to_date;
+	}
+
 	boolean isValid()
 	{
 		return m_from_index >= 0 && m_to_index >= 0 && m_from_index <= m_to_index;
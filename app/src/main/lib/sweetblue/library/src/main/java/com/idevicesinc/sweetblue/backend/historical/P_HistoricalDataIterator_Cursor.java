@@ -0,0 +1,58 @@
+package com.idevicesinc.sweetblue.backend.historical;
+
+import com.idevicesinc.sweetblue.utils.HistoricalData;
+import com.idevicesinc.sweetblue.utils.HistoricalDataCursor;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Read-only {@link Iterator} over a {@link HistoricalDataCursor}, closing it once the last row has been handed out.
+ * Only steps the cursor forward, so it never needs {@link HistoricalDataCursor#getCount()}.
+ */
+class P_HistoricalDataIterator_Cursor implements Iterator<HistoricalData>
+{
+	private final HistoricalDataCursor m_cursor;
+
+	//--- Whether the cursor was already moved onto the row next() will return.
+	private boolean m_hasPeeked = false;
+	private boolean m_hasNext = false;
+
+	P_HistoricalDataIterator_Cursor(final HistoricalDataCursor cursor)
+	{
+		m_cursor = cursor;
+	}
+
+	@Override public boolean hasNext()
+	{
+		if( !m_hasPeeked )
+		{
+			m_hasNext = !m_cursor.isClosed() && m_cursor.moveToNext();
+			m_hasPeeked = true;
+
+			if( !m_hasNext )
+			{
+				m_cursor.close();
+			}
+		}
+
+		return m_hasNext;
+	}
+
+	@Override public HistoricalData next()
+	{
+		if( !hasNext() )
+		{
+			throw new NoSuchElementException();
+		}
+
+		m_hasPeeked = false;
+
+		return m_cursor.getHistoricalData();
+	}
+
+	@Override public void remove()
+	{
+		throw new UnsupportedOperationException("Historical data on disk can't be removed through an iterator.");
+	}
+}
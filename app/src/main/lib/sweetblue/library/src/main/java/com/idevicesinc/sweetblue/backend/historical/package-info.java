@@ -1,8 +1,8 @@
 /**
  * Contains specification and default implementation of a "backend" for instances of {@link com.idevicesinc.sweetblue.BleDevice}
- * that stores and manages historical data. The default implementation released with the open source GPLv3 code can only
- * track one piece of historical data per UUID at a time, and only to memory.
- * <br><br>
- * Please contact sweetblue@idevicesinc.com to discuss upgrade options.
+ * that stores and manages historical data. The implementations used by default, {@link com.idevicesinc.sweetblue.backend.historical.Backend_HistoricalDataList_Persistent}
+ * and {@link com.idevicesinc.sweetblue.backend.historical.Backend_HistoricalDatabase_Sqlite}, track any amount of historical data per UUID,
+ * in memory and/or persisted to SQLite. The original sample implementations, which can only track one piece of historical data per UUID
+ * at a time and only to memory, are still available as the <code>_Default</code> classes.
  */
 package com.idevicesinc.sweetblue.backend.historical;
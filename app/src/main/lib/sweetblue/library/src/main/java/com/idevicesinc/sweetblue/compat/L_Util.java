@@ -10,15 +10,19 @@ import android.bluetooth.le.AdvertiseData;
 import android.bluetooth.le.AdvertiseSettings;
 import android.bluetooth.le.BluetoothLeAdvertiser;
 import android.bluetooth.le.BluetoothLeScanner;
+import android.bluetooth.le.ScanFilter;
 import android.bluetooth.le.ScanSettings;
 import android.os.Build;
+import android.os.ParcelUuid;
 import android.util.Log;
 import com.idevicesinc.sweetblue.BleAdvertisingSettings;
 import com.idevicesinc.sweetblue.BleDevice;
 import com.idevicesinc.sweetblue.BleManager;
+import com.idevicesinc.sweetblue.ScanPrefilter;
 import com.idevicesinc.sweetblue.utils.Interval;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.UUID;
 
 
 @TargetApi(Build.VERSION_CODES.LOLLIPOP)
@@ -190,9 +194,37 @@ public class L_Util
 
     public static void startNativeScan(BluetoothAdapter adapter, int scanMode, Interval scanReportDelay, ScanCallback listener) {
 
+        startNativeScan(adapter, scanMode, scanReportDelay, null, listener);
+    }
+
+    public static void startNativeScan(BluetoothAdapter adapter, int scanMode, Interval scanReportDelay, List<ScanFilter> filters_nullable, ScanCallback listener) {
+
         final ScanSettings settings = buildSettings(adapter, scanMode, scanReportDelay).build();
 
-        startScan(adapter, settings, listener);
+        startScan(adapter, settings, filters_nullable, listener);
+    }
+
+    /**
+     * Turns the given {@link ScanPrefilter} into native filters the chipset can apply itself, one per service uuid and manufacturer id.
+     * Returns <code>null</code>, meaning no filtering, if the prefilter is <code>null</code> or can't be fully expressed natively.
+     */
+    public static List<ScanFilter> buildScanFilters(ScanPrefilter prefilter_nullable) {
+        if (prefilter_nullable == null || !prefilter_nullable.isOffloadable())
+            return null;
+
+        final List<ScanFilter> filters = new ArrayList<>();
+
+        for (UUID uuid : prefilter_nullable.getServiceUuids())
+        {
+            filters.add(new ScanFilter.Builder().setServiceUuid(new ParcelUuid(uuid)).build());
+        }
+
+        for (int manufacturerId : prefilter_nullable.getManufacturerIds())
+        {
+            filters.add(new ScanFilter.Builder().setManufacturerData(manufacturerId, new byte[0]).build());
+        }
+
+        return filters;
     }
 
     // TODO - Remove this in version 3.0
@@ -246,6 +278,10 @@ public class L_Util
     }
 
     static void startScan(BluetoothAdapter adapter, ScanSettings scanSettings, ScanCallback listener) {
+        startScan(adapter, scanSettings, null, listener);
+    }
+
+    static void startScan(BluetoothAdapter adapter, ScanSettings scanSettings, List<ScanFilter> filters_nullable, ScanCallback listener) {
         m_UserScanCallback = listener;
         // Add a last ditch check to make sure the adapter isn't null before trying to start the scan.
         // We check in the task, but by the time we reach this method, it could have been shut off
@@ -255,7 +291,7 @@ public class L_Util
             m_callback.onScanFailed(android.bluetooth.le.ScanCallback.SCAN_FAILED_INTERNAL_ERROR);
             return;
         }
-        adapter.getBluetoothLeScanner().startScan(null, scanSettings, m_callback);
+        adapter.getBluetoothLeScanner().startScan(filters_nullable, scanSettings, m_callback);
     }
 
     public static boolean startAdvertising(BluetoothAdapter adapter, AdvertiseSettings settings, AdvertiseData adData, AdvertisingCallback callback)
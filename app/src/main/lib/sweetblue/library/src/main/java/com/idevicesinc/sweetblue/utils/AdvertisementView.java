@@ -0,0 +1,368 @@
+package com.idevicesinc.sweetblue.utils;
+
+import java.nio.charset.Charset;
+import java.util.UUID;
+
+import com.idevicesinc.sweetblue.BleNodeConfig;
+
+/**
+ * Read-only view over a raw scan record that walks its AD structures in place, without copying the record or any of its fields.
+ * Unlike {@link Utils_ScanRecord#parseScanRecord(byte[])}, nothing is built up front: fields are exposed as offsets into
+ * {@link #record()}, and {@link UUID}s or {@link String}s are only created when asked for. One instance can be reused for
+ * any number of records through {@link #reset(byte[])}, but an instance is not thread safe.
+ * <br><br>
+ * Typical usage:
+ * <pre>
+ * view.reset(scanRecord);
+ * while( view.next() )
+ * {
+ *     if( view.type() == AdvertisementView.DATA_TYPE_MANUFACTURER_SPECIFIC_DATA ) ...
+ * }
+ * </pre>
+ */
+public final class AdvertisementView
+{
+	public static final int DATA_TYPE_FLAGS = 0x01;
+	public static final int DATA_TYPE_SERVICE_UUIDS_16_BIT_PARTIAL = 0x02;
+	public static final int DATA_TYPE_SERVICE_UUIDS_16_BIT_COMPLETE = 0x03;
+	public static final int DATA_TYPE_SERVICE_UUIDS_32_BIT_PARTIAL = 0x04;
+	public static final int DATA_TYPE_SERVICE_UUIDS_32_BIT_COMPLETE = 0x05;
+	public static final int DATA_TYPE_SERVICE_UUIDS_128_BIT_PARTIAL = 0x06;
+	public static final int DATA_TYPE_SERVICE_UUIDS_128_BIT_COMPLETE = 0x07;
+	public static final int DATA_TYPE_LOCAL_NAME_SHORT = 0x08;
+	public static final int DATA_TYPE_LOCAL_NAME_COMPLETE = 0x09;
+	public static final int DATA_TYPE_TX_POWER_LEVEL = 0x0A;
+	public static final int DATA_TYPE_SERVICE_DATA = 0x16;
+	public static final int DATA_TYPE_MANUFACTURER_SPECIFIC_DATA = 0xFF;
+
+	private static final long BASE_UUID_MSB = 0x0000000000001000L;
+	private static final long BASE_UUID_LSB = 0x800000805F9B34FBL;
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	//--- Interned 16-bit uuids for the ranges nearly all advertisements use: SIG assigned services (0x18xx) and
+	//--- member/company services (0xFDxx-0xFExx). Filled lazily, racing threads just create equal instances.
+	private static final UUID[] s_serviceUuids = new UUID[0x100];
+	private static final UUID[] s_memberUuids = new UUID[0x200];
+
+	private byte[] m_record;
+	private int m_position;
+	private int m_type;
+	private int m_dataOffset;
+	private int m_dataLength;
+
+	public AdvertisementView()
+	{
+		reset(null);
+	}
+
+	public AdvertisementView(final byte[] record_nullable)
+	{
+		reset(record_nullable);
+	}
+
+	/**
+	 * Points this view at a new record and rewinds it to before its first field.
+	 */
+	public AdvertisementView reset(final byte[] record_nullable)
+	{
+		m_record = record_nullable;
+
+		return rewind();
+	}
+
+	/**
+	 * Goes back to before the first field of the current record.
+	 */
+	public AdvertisementView rewind()
+	{
+		m_position = 0;
+		m_type = -1;
+		m_dataOffset = 0;
+		m_dataLength = 0;
+
+		return this;
+	}
+
+	public byte[] record()
+	{
+		return m_record;
+	}
+
+	/**
+	 * Moves to the next AD structure. Returns <code>false</code> once the end of the record, its zero padding, or a malformed
+	 * structure running past the end of the record is reached.
+	 */
+	public boolean next()
+	{
+		if( m_record == null || m_position >= m_record.length )  return false;
+
+		final int length = m_record[m_position] & 0xFF;
+
+		if( length == 0 || m_position + 1 + length > m_record.length )
+		{
+			m_position = m_record.length;
+
+			return false;
+		}
+
+		m_type = m_record[m_position + 1] & 0xFF;
+		m_dataOffset = m_position + 2;
+		m_dataLength = length - 1;
+		m_position += length + 1;
+
+		return true;
+	}
+
+	/**
+	 * Rewinds and moves to the first AD structure of the given type, returning <code>false</code> if there's none.
+	 */
+	public boolean find(final int type)
+	{
+		rewind();
+
+		while( next() )
+		{
+			if( m_type == type )  return true;
+		}
+
+		return false;
+	}
+
+	/**
+	 * The AD type of the current structure, one of the <code>DATA_TYPE_*</code> constants for the common ones.
+	 */
+	public int type()
+	{
+		return m_type;
+	}
+
+	/**
+	 * Offset in {@link #record()} of the current structure's data, right after its type.
+	 */
+	public int dataOffset()
+	{
+		return m_dataOffset;
+	}
+
+	public int dataLength()
+	{
+		return m_dataLength;
+	}
+
+	/**
+	 * Returns the unsigned byte at the given index of the current structure's data.
+	 */
+	public int dataAt(final int index)
+	{
+		return m_record[m_dataOffset + index] & 0xFF;
+	}
+
+	/**
+	 * Returns the advertising flags, or -1 if the record has none.
+	 */
+	public int getFlags()
+	{
+		return find(DATA_TYPE_FLAGS) && m_dataLength > 0 ? dataAt(0) : -1;
+	}
+
+	/**
+	 * Returns the advertised tx power, or {@link BleNodeConfig#INVALID_TX_POWER} if the record has none.
+	 */
+	public int getTxPowerLevel()
+	{
+		return find(DATA_TYPE_TX_POWER_LEVEL) && m_dataLength > 0 ? m_record[m_dataOffset] : BleNodeConfig.INVALID_TX_POWER;
+	}
+
+	/**
+	 * Returns the company identifier of the first manufacturer specific data, or -1 if the record has none. When this returns
+	 * something else, the view is left on that structure so the payload is at {@link #dataOffset()} + 2.
+	 */
+	public int getManufacturerId()
+	{
+		return find(DATA_TYPE_MANUFACTURER_SPECIFIC_DATA) && m_dataLength >= 2 ? dataAt(0) | (dataAt(1) << 8) : -1;
+	}
+
+	/**
+	 * Returns the advertised local name, complete or short, or <code>null</code> if the record has none.
+	 */
+	public String getLocalName()
+	{
+		rewind();
+
+		while( next() )
+		{
+			if( m_type == DATA_TYPE_LOCAL_NAME_COMPLETE || m_type == DATA_TYPE_LOCAL_NAME_SHORT )
+			{
+				return new String(m_record, m_dataOffset, m_dataLength, UTF_8);
+			}
+		}
+
+		return null;
+	}
+
+	/**
+	 * Returns the number of service uuids listed in the record, of any size.
+	 */
+	public int getServiceUuidCount()
+	{
+		int count = 0;
+
+		rewind();
+
+		while( next() )
+		{
+			final int uuidSize = uuidSize(m_type);
+
+			if( uuidSize != 0 )
+			{
+				count += m_dataLength / uuidSize;
+			}
+		}
+
+		return count;
+	}
+
+	/**
+	 * Returns the service uuid at the given index, counting like {@link #getServiceUuidCount()}, or <code>null</code> if there's none.
+	 * Common 16-bit uuids are interned, so this usually doesn't allocate for those.
+	 */
+	public UUID getServiceUuid(int index)
+	{
+		rewind();
+
+		while( next() )
+		{
+			final int uuidSize = uuidSize(m_type);
+
+			if( uuidSize == 0 )  continue;
+
+			final int count = m_dataLength / uuidSize;
+
+			if( index < count )
+			{
+				return uuidAt(m_record, m_dataOffset + index * uuidSize, uuidSize);
+			}
+
+			index -= count;
+		}
+
+		return null;
+	}
+
+	/**
+	 * Returns <code>true</code> if the given service uuid is listed in the record, without creating any {@link UUID}.
+	 */
+	public boolean hasServiceUuid(final UUID uuid)
+	{
+		final long msb = uuid.getMostSignificantBits();
+		final long lsb = uuid.getLeastSignificantBits();
+
+		rewind();
+
+		while( next() )
+		{
+			final int uuidSize = uuidSize(m_type);
+
+			if( uuidSize == 0 )  continue;
+
+			for( int offset = m_dataOffset; offset + uuidSize <= m_dataOffset + m_dataLength; offset += uuidSize )
+			{
+				if( uuidSize == 16 )
+				{
+					if( readLong(m_record, offset + 8) == msb && readLong(m_record, offset) == lsb )  return true;
+				}
+				else
+				{
+					if( BASE_UUID_LSB == lsb && BASE_UUID_MSB + (readLittleEndian(m_record, offset, uuidSize) << 32) == msb )  return true;
+				}
+			}
+		}
+
+		return false;
+	}
+
+	/**
+	 * Builds the uuid stored little endian at the given offset, which may be 2, 4 or 16 bytes long.
+	 */
+	public static UUID uuidAt(final byte[] record, final int offset, final int uuidSize)
+	{
+		if( uuidSize == 16 )
+		{
+			return new UUID(readLong(record, offset + 8), readLong(record, offset));
+		}
+		else if( uuidSize == 2 || uuidSize == 4 )
+		{
+			return shortUuid(readLittleEndian(record, offset, uuidSize));
+		}
+		else
+		{
+			throw new IllegalArgumentException("uuidBytes length invalid - " + uuidSize);
+		}
+	}
+
+	/**
+	 * Returns the full uuid for a 16 or 32 bit one, interned for the common 16-bit ranges.
+	 */
+	public static UUID shortUuid(final long shortUuid)
+	{
+		final UUID[] table;
+		final int index;
+
+		if( shortUuid >= 0x1800 && shortUuid < 0x1900 )
+		{
+			table = s_serviceUuids;
+			index = (int) shortUuid - 0x1800;
+		}
+		else if( shortUuid >= 0xFD00 && shortUuid < 0xFF00 )
+		{
+			table = s_memberUuids;
+			index = (int) shortUuid - 0xFD00;
+		}
+		else
+		{
+			return new UUID(BASE_UUID_MSB + (shortUuid << 32), BASE_UUID_LSB);
+		}
+
+		UUID uuid = table[index];
+
+		if( uuid == null )
+		{
+			uuid = new UUID(BASE_UUID_MSB + (shortUuid << 32), BASE_UUID_LSB);
+			table[index] = uuid;
+		}
+
+		return uuid;
+	}
+
+	private static int uuidSize(final int type)
+	{
+		switch( type )
+		{
+			case DATA_TYPE_SERVICE_UUIDS_16_BIT_PARTIAL:
+			case DATA_TYPE_SERVICE_UUIDS_16_BIT_COMPLETE:		return 2;
+			case DATA_TYPE_SERVICE_UUIDS_32_BIT_PARTIAL:
+			case DATA_TYPE_SERVICE_UUIDS_32_BIT_COMPLETE:		return 4;
+			case DATA_TYPE_SERVICE_UUIDS_128_BIT_PARTIAL:
+			case DATA_TYPE_SERVICE_UUIDS_128_BIT_COMPLETE:		return 16;
+			default:											return 0;
+		}
+	}
+
+	private static long readLittleEndian(final byte[] record, final int offset, final int uuidSize)
+	{
+		long value = 0;
+
+		for( int i = uuidSize - 1; i >= 0; i-- )
+		{
+			value = (value << 8) | (record[offset + i] & 0xFF);
+		}
+
+		return value;
+	}
+
+	private static long readLong(final byte[] record, final int offset)
+	{
+		return readLittleEndian(record, offset, 8);
+	}
+}
@@ -699,8 +699,9 @@ public final class BluetoothEnabler
     {
         try
         {
-            Method scanstate = bleMngr().getClass().getDeclaredMethod("setBleScanReady", (Class[]) null);
-            scanstate.setAccessible(true);
+            Method scanstate = Utils_Reflection.getDeclaredMethod(bleMngr().getClass(), "setBleScanReady");
+            if (scanstate == null)
+                return;
             scanstate.invoke(bleMngr(), (Object[]) null);
         }
         catch (Exception e)
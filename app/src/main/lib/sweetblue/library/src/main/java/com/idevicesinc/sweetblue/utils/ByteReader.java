@@ -0,0 +1,316 @@
+package com.idevicesinc.sweetblue.utils;
+
+import java.nio.ByteOrder;
+
+/**
+ * Cursor over a <code>byte[]</code> that decodes primitives in place, without copying the array or boxing anything, unlike the
+ * {@link Pointer}-returning offset methods of {@link Utils_Byte}. Reads are relative to {@link #position()}, which moves forward as
+ * they succeed, and are bounds checked against the window given to {@link #reset(byte[], int, int)}: reading past it throws an
+ * {@link IndexOutOfBoundsException} and leaves the position untouched, so {@link #remaining()} can be checked up front instead.
+ * One instance can be reused for any number of arrays, but an instance is not thread safe.
+ * <br><br>
+ * The byte order defaults to {@link ByteOrder#BIG_ENDIAN}, same as {@link Utils_Byte}. The static <code>get*</code> methods decode
+ * at an absolute offset for one-off reads that don't warrant a cursor.
+ * <br><br>
+ * Typical usage:
+ * <pre>
+ * reader.reset(e.data()).order(ByteOrder.LITTLE_ENDIAN);
+ * final int size = reader.readInt();
+ * final int flags = reader.readUnsignedByte();
+ * </pre>
+ */
+public final class ByteReader
+{
+	private byte[] m_buffer;
+	private int m_start;
+	private int m_position;
+	private int m_limit;
+	private boolean m_littleEndian;
+
+	public ByteReader()
+	{
+		reset(null);
+	}
+
+	public ByteReader(final byte[] buffer_nullable)
+	{
+		reset(buffer_nullable);
+	}
+
+	public ByteReader(final byte[] buffer, final int offset, final int length)
+	{
+		reset(buffer, offset, length);
+	}
+
+	/**
+	 * Points this reader at the whole of the given array, with the position back at its start. A <code>null</code> array behaves like
+	 * an empty one.
+	 */
+	public ByteReader reset(final byte[] buffer_nullable)
+	{
+		return reset(buffer_nullable, 0, buffer_nullable != null ? buffer_nullable.length : 0);
+	}
+
+	/**
+	 * Points this reader at <code>length</code> bytes of the given array starting at <code>offset</code>, with the position back at
+	 * <code>offset</code>. Positions stay relative to the array, not to <code>offset</code>.
+	 */
+	public ByteReader reset(final byte[] buffer_nullable, final int offset, final int length)
+	{
+		final int capacity = buffer_nullable != null ? buffer_nullable.length : 0;
+
+		if( offset < 0 || length < 0 || offset > capacity - length )
+		{
+			throw new IndexOutOfBoundsException("offset=" + offset + " length=" + length + " capacity=" + capacity);
+		}
+
+		m_buffer = buffer_nullable;
+		m_start = offset;
+		m_position = offset;
+		m_limit = offset + length;
+
+		return this;
+	}
+
+	public ByteReader order(final ByteOrder order)
+	{
+		m_littleEndian = order == ByteOrder.LITTLE_ENDIAN;
+
+		return this;
+	}
+
+	public ByteOrder order()
+	{
+		return m_littleEndian ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN;
+	}
+
+	public byte[] buffer()
+	{
+		return m_buffer;
+	}
+
+	public int position()
+	{
+		return m_position;
+	}
+
+	/**
+	 * Moves the cursor to the given absolute index in {@link #buffer()}, which must be within the window given to {@link #reset(byte[], int, int)}.
+	 */
+	public ByteReader position(final int position)
+	{
+		if( position < m_start || position > m_limit )
+		{
+			throw new IndexOutOfBoundsException("position=" + position + " start=" + m_start + " limit=" + m_limit);
+		}
+
+		m_position = position;
+
+		return this;
+	}
+
+	/**
+	 * Goes back to the start of the current window.
+	 */
+	public ByteReader rewind()
+	{
+		m_position = m_start;
+
+		return this;
+	}
+
+	public int remaining()
+	{
+		return m_limit - m_position;
+	}
+
+	public boolean hasRemaining(final int byteCount)
+	{
+		return byteCount <= m_limit - m_position;
+	}
+
+	public ByteReader skip(final int byteCount)
+	{
+		m_position = claim(byteCount) + byteCount;
+
+		return this;
+	}
+
+	public byte readByte()
+	{
+		final int offset = claim(1);
+		m_position = offset + 1;
+
+		return m_buffer[offset];
+	}
+
+	public int readUnsignedByte()
+	{
+		return readByte() & 0xFF;
+	}
+
+	/**
+	 * Reads one byte, anything other than 0x0 being <code>true</code> like {@link Utils_Byte#byteToBool(byte)}.
+	 */
+	public boolean readBoolean()
+	{
+		return readByte() != 0x0;
+	}
+
+	public short readShort()
+	{
+		final int offset = claim(2);
+		m_position = offset + 2;
+
+		return (short) read(m_buffer, offset, 2, m_littleEndian);
+	}
+
+	public int readUnsignedShort()
+	{
+		return readShort() & 0xFFFF;
+	}
+
+	public int readInt()
+	{
+		final int offset = claim(4);
+		m_position = offset + 4;
+
+		return (int) read(m_buffer, offset, 4, m_littleEndian);
+	}
+
+	public long readUnsignedInt()
+	{
+		return readInt() & 0xFFFFFFFFL;
+	}
+
+	public long readLong()
+	{
+		final int offset = claim(8);
+		m_position = offset + 8;
+
+		return read(m_buffer, offset, 8, m_littleEndian);
+	}
+
+	public float readFloat()
+	{
+		return Float.intBitsToFloat(readInt());
+	}
+
+	public double readDouble()
+	{
+		return Double.longBitsToDouble(readLong());
+	}
+
+	/**
+	 * Copies the next <code>length</code> bytes into the given array, starting at <code>offset</code>.
+	 */
+	public ByteReader readBytes(final byte[] out, final int offset, final int length)
+	{
+		final int position = claim(length);
+
+		System.arraycopy(m_buffer, position, out, offset, length);
+		m_position = position + length;
+
+		return this;
+	}
+
+	/**
+	 * Returns the unsigned byte at the given absolute offset.
+	 */
+	public static int getUnsignedByte(final byte[] buffer, final int offset)
+	{
+		check(buffer, offset, 1);
+
+		return buffer[offset] & 0xFF;
+	}
+
+	public static short getShort(final byte[] buffer, final int offset, final ByteOrder order)
+	{
+		check(buffer, offset, 2);
+
+		return (short) read(buffer, offset, 2, order == ByteOrder.LITTLE_ENDIAN);
+	}
+
+	public static int getUnsignedShort(final byte[] buffer, final int offset, final ByteOrder order)
+	{
+		return getShort(buffer, offset, order) & 0xFFFF;
+	}
+
+	public static int getInt(final byte[] buffer, final int offset, final ByteOrder order)
+	{
+		check(buffer, offset, 4);
+
+		return (int) read(buffer, offset, 4, order == ByteOrder.LITTLE_ENDIAN);
+	}
+
+	public static long getUnsignedInt(final byte[] buffer, final int offset, final ByteOrder order)
+	{
+		return getInt(buffer, offset, order) & 0xFFFFFFFFL;
+	}
+
+	public static long getLong(final byte[] buffer, final int offset, final ByteOrder order)
+	{
+		check(buffer, offset, 8);
+
+		return read(buffer, offset, 8, order == ByteOrder.LITTLE_ENDIAN);
+	}
+
+	public static float getFloat(final byte[] buffer, final int offset, final ByteOrder order)
+	{
+		return Float.intBitsToFloat(getInt(buffer, offset, order));
+	}
+
+	public static double getDouble(final byte[] buffer, final int offset, final ByteOrder order)
+	{
+		return Double.longBitsToDouble(getLong(buffer, offset, order));
+	}
+
+	/**
+	 * Returns <code>true</code> if <code>byteCount</code> bytes can be read from the given array at the given offset, so callers
+	 * that would rather not catch {@link IndexOutOfBoundsException} can check first.
+	 */
+	public static boolean isInRange(final byte[] buffer_nullable, final int offset, final int byteCount)
+	{
+		return buffer_nullable != null && offset >= 0 && byteCount >= 0 && offset <= buffer_nullable.length - byteCount;
+	}
+
+	private int claim(final int byteCount)
+	{
+		if( byteCount < 0 || byteCount > m_limit - m_position )
+		{
+			throw new IndexOutOfBoundsException("Tried to read " + byteCount + " bytes at position " + m_position + " but limit is " + m_limit);
+		}
+
+		return m_position;
+	}
+
+	private static void check(final byte[] buffer, final int offset, final int byteCount)
+	{
+		if( !isInRange(buffer, offset, byteCount) )
+		{
+			throw new IndexOutOfBoundsException("Tried to read " + byteCount + " bytes at offset " + offset + " of " + (buffer != null ? buffer.length + " bytes" : "null"));
+		}
+	}
+
+	static long read(final byte[] buffer, final int offset, final int byteCount, final boolean littleEndian)
+	{
+		long value = 0;
+
+		if( littleEndian )
+		{
+			for( int i = byteCount - 1; i >= 0; i-- )
+			{
+				value = (value << 8) | (buffer[offset + i] & 0xFF);
+			}
+		}
+		else
+		{
+			for( int i = 0; i < byteCount; i++ )
+			{
+				value = (value << 8) | (buffer[offset + i] & 0xFF);
+			}
+		}
+
+		return value;
+	}
+}
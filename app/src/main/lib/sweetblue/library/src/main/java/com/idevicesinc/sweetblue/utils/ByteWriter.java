@@ -0,0 +1,256 @@
+package com.idevicesinc.sweetblue.utils;
+
+import java.nio.ByteOrder;
+
+/**
+ * Counterpart of {@link ByteReader} that encodes primitives into a caller-supplied <code>byte[]</code>, instead of allocating a new
+ * array per value like {@link Utils_Byte#intToBytes(int)} and friends. Writes are relative to {@link #position()} and bounds checked
+ * against the window given to {@link #reset(byte[], int, int)}: writing past it throws an {@link IndexOutOfBoundsException} and leaves
+ * both the position and the array untouched. One instance can be reused for any number of arrays, but an instance is not thread safe.
+ * <br><br>
+ * The byte order defaults to {@link ByteOrder#BIG_ENDIAN}, same as {@link Utils_Byte}. The static <code>put*</code> methods encode
+ * at an absolute offset for one-off writes that don't warrant a cursor.
+ */
+public final class ByteWriter
+{
+	private byte[] m_buffer;
+	private int m_start;
+	private int m_position;
+	private int m_limit;
+	private boolean m_littleEndian;
+
+	public ByteWriter(final byte[] buffer)
+	{
+		reset(buffer);
+	}
+
+	public ByteWriter(final byte[] buffer, final int offset, final int length)
+	{
+		reset(buffer, offset, length);
+	}
+
+	/**
+	 * Points this writer at the whole of the given array, with the position back at its start.
+	 */
+	public ByteWriter reset(final byte[] buffer)
+	{
+		return reset(buffer, 0, buffer.length);
+	}
+
+	/**
+	 * Points this writer at <code>length</code> bytes of the given array starting at <code>offset</code>, with the position back at
+	 * <code>offset</code>. Positions stay relative to the array, not to <code>offset</code>.
+	 */
+	public ByteWriter reset(final byte[] buffer, final int offset, final int length)
+	{
+		if( offset < 0 || length < 0 || offset > buffer.length - length )
+		{
+			throw new IndexOutOfBoundsException("offset=" + offset + " length=" + length + " capacity=" + buffer.length);
+		}
+
+		m_buffer = buffer;
+		m_start = offset;
+		m_position = offset;
+		m_limit = offset + length;
+
+		return this;
+	}
+
+	public ByteWriter order(final ByteOrder order)
+	{
+		m_littleEndian = order == ByteOrder.LITTLE_ENDIAN;
+
+		return this;
+	}
+
+	public ByteOrder order()
+	{
+		return m_littleEndian ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN;
+	}
+
+	public byte[] buffer()
+	{
+		return m_buffer;
+	}
+
+	public int position()
+	{
+		return m_position;
+	}
+
+	/**
+	 * Moves the cursor to the given absolute index in {@link #buffer()}, which must be within the window given to {@link #reset(byte[], int, int)}.
+	 */
+	public ByteWriter position(final int position)
+	{
+		if( position < m_start || position > m_limit )
+		{
+			throw new IndexOutOfBoundsException("position=" + position + " start=" + m_start + " limit=" + m_limit);
+		}
+
+		m_position = position;
+
+		return this;
+	}
+
+	/**
+	 * Returns the number of bytes written since the start of the current window.
+	 */
+	public int length()
+	{
+		return m_position - m_start;
+	}
+
+	public int remaining()
+	{
+		return m_limit - m_position;
+	}
+
+	public ByteWriter writeByte(final int value)
+	{
+		final int offset = claim(1);
+
+		m_buffer[offset] = (byte) value;
+		m_position = offset + 1;
+
+		return this;
+	}
+
+	/**
+	 * Writes 0x1 for <code>true</code> and 0x0 for <code>false</code>, like {@link Utils_Byte#boolToByte(boolean)}.
+	 */
+	public ByteWriter writeBoolean(final boolean value)
+	{
+		return writeByte(value ? 0x1 : 0x0);
+	}
+
+	/**
+	 * Writes the low 16 bits of the given value, so unsigned shorts can be passed as an <code>int</code>.
+	 */
+	public ByteWriter writeShort(final int value)
+	{
+		final int offset = claim(2);
+
+		write(m_buffer, offset, value, 2, m_littleEndian);
+		m_position = offset + 2;
+
+		return this;
+	}
+
+	public ByteWriter writeInt(final int value)
+	{
+		final int offset = claim(4);
+
+		write(m_buffer, offset, value, 4, m_littleEndian);
+		m_position = offset + 4;
+
+		return this;
+	}
+
+	/**
+	 * Writes the low 32 bits of the given value, so unsigned ints can be passed as a <code>long</code>.
+	 */
+	public ByteWriter writeUnsignedInt(final long value)
+	{
+		return writeInt((int) value);
+	}
+
+	public ByteWriter writeLong(final long value)
+	{
+		final int offset = claim(8);
+
+		write(m_buffer, offset, value, 8, m_littleEndian);
+		m_position = offset + 8;
+
+		return this;
+	}
+
+	public ByteWriter writeFloat(final float value)
+	{
+		return writeInt(Float.floatToRawIntBits(value));
+	}
+
+	public ByteWriter writeDouble(final double value)
+	{
+		return writeLong(Double.doubleToRawLongBits(value));
+	}
+
+	public ByteWriter writeBytes(final byte[] data, final int offset, final int length)
+	{
+		final int position = claim(length);
+
+		System.arraycopy(data, offset, m_buffer, position, length);
+		m_position = position + length;
+
+		return this;
+	}
+
+	public static void putShort(final byte[] buffer, final int offset, final int value, final ByteOrder order)
+	{
+		check(buffer, offset, 2);
+
+		write(buffer, offset, value, 2, order == ByteOrder.LITTLE_ENDIAN);
+	}
+
+	public static void putInt(final byte[] buffer, final int offset, final int value, final ByteOrder order)
+	{
+		check(buffer, offset, 4);
+
+		write(buffer, offset, value, 4, order == ByteOrder.LITTLE_ENDIAN);
+	}
+
+	public static void putLong(final byte[] buffer, final int offset, final long value, final ByteOrder order)
+	{
+		check(buffer, offset, 8);
+
+		write(buffer, offset, value, 8, order == ByteOrder.LITTLE_ENDIAN);
+	}
+
+	public static void putFloat(final byte[] buffer, final int offset, final float value, final ByteOrder order)
+	{
+		putInt(buffer, offset, Float.floatToRawIntBits(value), order);
+	}
+
+	public static void putDouble(final byte[] buffer, final int offset, final double value, final ByteOrder order)
+	{
+		putLong(buffer, offset, Double.doubleToRawLongBits(value), order);
+	}
+
+	private int claim(final int byteCount)
+	{
+		if( byteCount < 0 || byteCount > m_limit - m_position )
+		{
+			throw new IndexOutOfBoundsException("Tried to write " + byteCount + " bytes at position " + m_position + " but limit is " + m_limit);
+		}
+
+		return m_position;
+	}
+
+	private static void check(final byte[] buffer, final int offset, final int byteCount)
+	{
+		if( !ByteReader.isInRange(buffer, offset, byteCount) )
+		{
+			throw new IndexOutOfBoundsException("Tried to write " + byteCount + " bytes at offset " + offset + " of " + (buffer != null ? buffer.length + " bytes" : "null"));
+		}
+	}
+
+	static void write(final byte[] buffer, final int offset, long value, final int byteCount, final boolean littleEndian)
+	{
+		if( littleEndian )
+		{
+			for( int i = 0; i < byteCount; i++ )
+			{
+				buffer[offset + i] = (byte) value;
+				value >>= 8;
+			}
+		}
+		else
+		{
+			for( int i = byteCount - 1; i >= 0; i-- )
+			{
+				buffer[offset + i] = (byte) value;
+				value >>= 8;
+			}
+		}
+	}
+}
@@ -1,22 +1,32 @@
 package com.idevicesinc.sweetblue.utils;
 
-import java.util.ArrayList;
+import java.util.Arrays;
 
+/**
+ * Queue of listener/event pairs dispatched together by {@link #dispatch()}. Events added while dispatching, for example by a
+ * listener, are purposely not dispatched until the next call, in order to force async behavior. Likewise a call to {@link #dispatch()}
+ * from inside a listener does nothing, the outer call keeps walking its batch and the new events wait for the next call.
+ * <br><br>
+ * Events are held in two pairs of parallel arrays: {@link #add(GenericListener_Void, Event)} appends to the back one, and
+ * {@link #dispatch()} swaps it to the front before walking it. The arrays only grow, to the largest burst seen so far (see
+ * {@link #getMaxBurstSize()}), so adding and dispatching don't allocate once they've warmed up. This class is not thread safe.
+ */
 public final class EventQueue
 {
-	private static class DispatchEntry
-	{
-		private final GenericListener_Void listener;
-		private final Event event;
+	private static final int INITIAL_CAPACITY = 16;
 
-		public DispatchEntry(final GenericListener_Void listener_in, final Event event_in)
-		{
-			listener = listener_in;
-			event = event_in;
-		}
-	}
+	private GenericListener_Void[] m_frontListeners = new GenericListener_Void[INITIAL_CAPACITY];
+	private Event[] m_frontEvents = new Event[INITIAL_CAPACITY];
+	private int m_frontIndex = 0;
+	private int m_frontCount = 0;
+
+	private GenericListener_Void[] m_backListeners = new GenericListener_Void[INITIAL_CAPACITY];
+	private Event[] m_backEvents = new Event[INITIAL_CAPACITY];
+	private int m_backCount = 0;
+
+	private boolean m_isDispatching = false;
 
-	private final ArrayList<DispatchEntry> m_queue = new ArrayList<DispatchEntry>();
+	private int m_maxBurstSize = 0;
 
 	public EventQueue()
 	{
@@ -26,29 +36,86 @@ public final class EventQueue
 	{
 		if( listener_nullable != null && event_nullable != null )
 		{
-			final DispatchEntry entry = new DispatchEntry(listener_nullable, event_nullable);
+			if( m_backCount == m_backListeners.length )
+			{
+				m_backListeners = Arrays.copyOf(m_backListeners, m_backCount * 2);
+				m_backEvents = Arrays.copyOf(m_backEvents, m_backCount * 2);
+			}
 
-			m_queue.add(entry);
+			m_backListeners[m_backCount] = listener_nullable;
+			m_backEvents[m_backCount] = event_nullable;
+			m_backCount++;
 		}
 	}
 
+	@SuppressWarnings("unchecked")
 	public void dispatch()
 	{
-		//--- DRK > For now purposely not dispatching recursive additions in order to force async behavior.
-		final int size = m_queue.size();
+		if( m_isDispatching )  return;
 
-		for( int i = 0; i < size; i++ )
+		m_isDispatching = true;
+
+		try
 		{
-			final DispatchEntry entry = m_queue.get(i);
+			//--- If a listener threw last time, what was left of that batch goes first and later additions wait for the next call.
+			if( m_frontIndex == m_frontCount )
+			{
+				swap();
+			}
 
-			entry.listener.onEvent(entry.event);
+			m_maxBurstSize = Math.max(m_maxBurstSize, m_frontCount - m_frontIndex);
 
-			m_queue.set(i, null);
-		}
+			while( m_frontIndex < m_frontCount )
+			{
+				final int i = m_frontIndex++;
+
+				final GenericListener_Void listener = m_frontListeners[i];
+				final Event event = m_frontEvents[i];
 
-		while( m_queue.size() > 0 && m_queue.get(0) == null )
+				m_frontListeners[i] = null;
+				m_frontEvents[i] = null;
+
+				listener.onEvent(event);
+			}
+
+			m_frontIndex = 0;
+			m_frontCount = 0;
+		}
+		finally
 		{
-			m_queue.remove(0);
+			m_isDispatching = false;
 		}
 	}
+
+	private void swap()
+	{
+		final GenericListener_Void[] listeners = m_frontListeners;
+		final Event[] events = m_frontEvents;
+
+		m_frontListeners = m_backListeners;
+		m_frontEvents = m_backEvents;
+		m_frontIndex = 0;
+		m_frontCount = m_backCount;
+
+		m_backListeners = listeners;
+		m_backEvents = events;
+		m_backCount = 0;
+	}
+
+	/**
+	 * Returns the number of events waiting for {@link #dispatch()}.
+	 */
+	public int getSize()
+	{
+		return (m_frontCount - m_frontIndex) + m_backCount;
+	}
+
+	/**
+	 * Returns the most events dispatched by a single call to {@link #dispatch()} so far, which is also about how large this
+	 * queue's arrays have grown.
+	 */
+	public int getMaxBurstSize()
+	{
+		return m_maxBurstSize;
+	}
 }
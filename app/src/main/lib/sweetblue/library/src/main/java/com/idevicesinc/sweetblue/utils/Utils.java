@@ -112,7 +112,13 @@ public class Utils
 	{
 		try
 		{
-			Method method = gatt.getClass().getMethod("refresh", (Class[]) null);
+			Method method = Utils_Reflection.getMethod(gatt.getClass(), "refresh");
+
+			if( method == null )
+			{
+				return false;
+			}
+
 			Boolean result = (Boolean) method.invoke(gatt, (Object[]) null);
 
 			if( result == null || !result )
@@ -7,6 +7,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
@@ -380,7 +381,7 @@ public final class Utils_Byte extends Utils
 	}
 
 	/**
-	 * Convert a short to a byte array
+	 * Convert a short to a byte array. See {@link ByteWriter} to write into an existing array instead.
      */
 	public static byte[] shortToBytes(short l)
 	{
@@ -412,6 +413,7 @@ public final class Utils_Byte extends Utils
 	/**
 	 * Outputs a {@link Pointer} from the given byte array, starting at the offset provided. If there is not enough space to
 	 * create the short, the {@link Pointer} value will be <code>null</code>.
+	 * See {@link ByteReader} to decode without boxing.
      */
 	public static Pointer<Short> bytesToShort(byte[] b, int offset)
 	{
@@ -421,8 +423,7 @@ public final class Utils_Byte extends Utils
 		}
 		else
 		{
-			byte[] bytes = subBytes(b, offset, offset + (Short.SIZE / 8));
-			return new Pointer<>(bytesToShort(bytes));
+			return new Pointer<>(ByteReader.getShort(b, offset, ByteOrder.BIG_ENDIAN));
 		}
 	}
 
@@ -459,7 +460,7 @@ public final class Utils_Byte extends Utils
 	}
 
 	/**
-	 * Convert an int to a byte array
+	 * Convert an int to a byte array. See {@link ByteWriter} to write into an existing array instead.
      */
 	public static byte[] intToBytes(int l)
 	{
@@ -491,6 +492,7 @@ public final class Utils_Byte extends Utils
 	/**
 	 * Convert bytes to an int from the given byte array, starting at the given offset. If the offset is an invalid index (less than 0, or doesn't leave enough
 	 * room in the array to create an int) the {@link Pointer} value will be <code>null</code>.
+	 * See {@link ByteReader} to decode without boxing.
      */
 	public static Pointer<Integer> bytesToInt(byte[] b, int offset)
 	{
@@ -500,13 +502,12 @@ public final class Utils_Byte extends Utils
 		}
 		else
 		{
-			byte[] bytes = subBytes(b, offset, offset + (Integer.SIZE / 8));
-			return new Pointer<>(bytesToInt(bytes));
+			return new Pointer<>(ByteReader.getInt(b, offset, ByteOrder.BIG_ENDIAN));
 		}
 	}
 
 	/**
-	 * Convert a long to a byte array
+	 * Convert a long to a byte array. See {@link ByteWriter} to write into an existing array instead.
      */
 	public static byte[] longToBytes(long l)
 	{
@@ -537,6 +538,7 @@ public final class Utils_Byte extends Utils
 	/**
 	 * Convert bytes to a long from the given byte array, starting at the given offset. If the offset is an invalid index (less than 0, or doesn't leave enough
 	 * room in the array to create a long) the {@link Pointer} value will be <code>null</code>.
+	 * See {@link ByteReader} to decode without boxing.
 	 */
 	public static Pointer<Long> bytesToLong(byte[] b, int offset)
 	{
@@ -546,8 +548,7 @@ public final class Utils_Byte extends Utils
 		}
 		else
 		{
-			byte[] bytes = subBytes(b, offset, offset + (Long.SIZE / 8));
-			return new Pointer<>(bytesToLong(bytes));
+			return new Pointer<>(ByteReader.getLong(b, offset, ByteOrder.BIG_ENDIAN));
 		}
 	}
 
@@ -572,6 +573,7 @@ public final class Utils_Byte extends Utils
 	/**
 	 * Convert bytes to a float from the given byte array, starting at the given offset. If the offset is an invalid index (less than 0, or doesn't leave enough
 	 * room in the array to create a float) the {@link Pointer} value will be <code>null</code>.
+	 * See {@link ByteReader} to decode without boxing.
 	 */
 	public static Pointer<Float> bytesToFloat(byte[] b, int offset)
 	{
@@ -581,8 +583,7 @@ public final class Utils_Byte extends Utils
 		}
 		else
 		{
-			byte[] bytes = subBytes(b, offset, offset + (Float.SIZE / 8));
-			return new Pointer<>(bytesToFloat(bytes));
+			return new Pointer<>(ByteReader.getFloat(b, offset, ByteOrder.BIG_ENDIAN));
 		}
 	}
 
@@ -607,6 +608,7 @@ public final class Utils_Byte extends Utils
 	/**
 	 * Convert bytes to a double from the given byte array, starting at the given offset. If the offset is an invalid index (less than 0, or doesn't leave enough
 	 * room in the array to create a double) the {@link Pointer} value will be <code>null</code>.
+	 * See {@link ByteReader} to decode without boxing.
 	 */
 	public static Pointer<Double> bytesToDouble(byte[] b, int offset)
 	{
@@ -616,8 +618,7 @@ public final class Utils_Byte extends Utils
 		}
 		else
 		{
-			byte[] bytes = subBytes(b, offset, offset + (Double.SIZE / 8));
-			return new Pointer<>(bytesToDouble(bytes));
+			return new Pointer<>(ByteReader.getDouble(b, offset, ByteOrder.BIG_ENDIAN));
 		}
 	}
 
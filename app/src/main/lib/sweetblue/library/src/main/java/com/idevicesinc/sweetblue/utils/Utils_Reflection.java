@@ -8,6 +8,8 @@ import java.nio.ByteOrder;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 import android.util.Log;
 
@@ -19,6 +21,16 @@ public final class Utils_Reflection extends Utils
 	private Utils_Reflection(){super();}
 
 	private static final String TAG = Utils_Reflection.class.getName();
+
+	//--- Resolved methods and fields by class, then by name (plus parameter types for methods that have any). Lookups that
+	//--- failed are cached too, as MISSING, since hidden APIs that aren't there won't show up later and throwing is expensive.
+	private static final ConcurrentHashMap<Class<?>, ConcurrentHashMap<String, Object>> s_methods = new ConcurrentHashMap<>();
+	private static final ConcurrentHashMap<Class<?>, ConcurrentHashMap<String, Object>> s_declaredMethods = new ConcurrentHashMap<>();
+	private static final ConcurrentHashMap<Class<?>, ConcurrentHashMap<String, Object>> s_declaredFields = new ConcurrentHashMap<>();
+	private static final Object MISSING = new Object();
+
+	private static final AtomicLong s_cacheHits = new AtomicLong();
+	private static final AtomicLong s_cacheMisses = new AtomicLong();
 	
 	public static String fieldStringValue(Field field)
 	{
@@ -91,7 +103,13 @@ public final class Utils_Reflection extends Utils
 	{
 		try
 		{
-			final Method method = instance.getClass().getMethod(methodName, paramTypes);
+			final Method method = getMethod(instance.getClass(), methodName, paramTypes);
+
+			if( method == null )
+			{
+				throw new NoSuchMethodException(methodName);
+			}
+
 			final Boolean result = (Boolean) method.invoke(instance, params);
 
 			if( result == null || !result )
@@ -111,4 +129,150 @@ public final class Utils_Reflection extends Utils
 
 		return true;
 	}
+
+	/**
+	 * Returns the public method of the given class (or its superclasses) with the given name and parameter types, or <code>null</code>
+	 * if there's none. The result, including a missing method, is cached for the lifetime of the process.
+	 */
+	public static Method getMethod(final Class<?> clazz, final String methodName, final Class... paramTypes)
+	{
+		final ConcurrentHashMap<String, Object> cache = cacheFor(s_methods, clazz);
+		final String key = methodKey(methodName, paramTypes);
+		Object cached = cache.get(key);
+
+		if( cached == null )
+		{
+			s_cacheMisses.incrementAndGet();
+
+			try
+			{
+				cached = clazz.getMethod(methodName, paramTypes);
+			}
+			catch (Exception e)
+			{
+				cached = MISSING;
+			}
+
+			cache.put(key, cached);
+		}
+		else
+		{
+			s_cacheHits.incrementAndGet();
+		}
+
+		return cached != MISSING ? (Method) cached : null;
+	}
+
+	/**
+	 * Same as {@link #getMethod(Class, String, Class[])}, but for a method declared by the given class itself, whatever its visibility.
+	 * The returned method is already made accessible.
+	 */
+	public static Method getDeclaredMethod(final Class<?> clazz, final String methodName, final Class... paramTypes)
+	{
+		final ConcurrentHashMap<String, Object> cache = cacheFor(s_declaredMethods, clazz);
+		final String key = methodKey(methodName, paramTypes);
+		Object cached = cache.get(key);
+
+		if( cached == null )
+		{
+			s_cacheMisses.incrementAndGet();
+
+			try
+			{
+				final Method method = clazz.getDeclaredMethod(methodName, paramTypes);
+				method.setAccessible(true);
+				cached = method;
+			}
+			catch (Exception e)
+			{
+				cached = MISSING;
+			}
+
+			cache.put(key, cached);
+		}
+		else
+		{
+			s_cacheHits.incrementAndGet();
+		}
+
+		return cached != MISSING ? (Method) cached : null;
+	}
+
+	/**
+	 * Returns the field declared by the given class with the given name, already made accessible, or <code>null</code> if there's none.
+	 * The result, including a missing field, is cached for the lifetime of the process.
+	 */
+	public static Field getDeclaredField(final Class<?> clazz, final String fieldName)
+	{
+		final ConcurrentHashMap<String, Object> cache = cacheFor(s_declaredFields, clazz);
+		Object cached = cache.get(fieldName);
+
+		if( cached == null )
+		{
+			s_cacheMisses.incrementAndGet();
+
+			try
+			{
+				final Field field = clazz.getDeclaredField(fieldName);
+				field.setAccessible(true);
+				cached = field;
+			}
+			catch (Exception e)
+			{
+				cached = MISSING;
+			}
+
+			cache.put(fieldName, cached);
+		}
+		else
+		{
+			s_cacheHits.incrementAndGet();
+		}
+
+		return cached != MISSING ? (Field) cached : null;
+	}
+
+	/**
+	 * Number of method/field lookups answered from the cache, see {@link #getMethod(Class, String, Class[])}.
+	 */
+	public static long getCacheHitCount()
+	{
+		return s_cacheHits.get();
+	}
+
+	/**
+	 * Number of method/field lookups that had to go through actual reflection.
+	 */
+	public static long getCacheMissCount()
+	{
+		return s_cacheMisses.get();
+	}
+
+	private static ConcurrentHashMap<String, Object> cacheFor(final ConcurrentHashMap<Class<?>, ConcurrentHashMap<String, Object>> caches, final Class<?> clazz)
+	{
+		ConcurrentHashMap<String, Object> cache = caches.get(clazz);
+
+		if( cache == null )
+		{
+			cache = new ConcurrentHashMap<>();
+			final ConcurrentHashMap<String, Object> existing = caches.putIfAbsent(clazz, cache);
+			cache = existing != null ? existing : cache;
+		}
+
+		return cache;
+	}
+
+	private static String methodKey(final String methodName, final Class[] paramTypes)
+	{
+		if( paramTypes == null || paramTypes.length == 0 )  return methodName;
+
+		final StringBuilder key = new StringBuilder(methodName).append('(');
+
+		for( int i = 0; i < paramTypes.length; i++ )
+		{
+			key.append(paramTypes[i].getName()).append(',');
+		}
+
+		return key.append(')').toString();
+	}
 }
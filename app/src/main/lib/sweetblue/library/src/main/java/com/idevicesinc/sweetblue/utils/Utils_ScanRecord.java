@@ -16,8 +16,6 @@
 
 package com.idevicesinc.sweetblue.utils;
 
-import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
@@ -28,7 +26,6 @@ import java.util.UUID;
 import android.bluetooth.le.*;
 import android.nfc.Tag;
 import android.os.ParcelUuid;
-import android.text.TextUtils;
 import android.util.ArrayMap;
 import android.util.Log;
 import android.util.SparseArray;
@@ -72,8 +69,6 @@ public final class Utils_ScanRecord extends Utils
 	/** Length of bytes for 128 bit UUID */
 	private static final int UUID_BYTES_128_BIT = 16;
 
-	private static final UUID BASE_UUID = UUID.fromString("00000000-0000-1000-8000-00805F9B34FB");
-
 	/**
 	 *
 	 */
@@ -170,8 +165,7 @@ public final class Utils_ScanRecord extends Utils
 					try
 					{
 						int serviceUuidLength = UUID_BYTES_16_BIT;
-						byte[] serviceDataUuidBytes = extractBytes(scanRecord, currentPos, serviceUuidLength);
-						UUID serviceDataUuid = parseUuidFrom(serviceDataUuidBytes);
+						UUID serviceDataUuid = AdvertisementView.uuidAt(scanRecord, currentPos, serviceUuidLength);
 						byte[] serviceDataArray = extractBytes(scanRecord, currentPos + serviceUuidLength, dataLength - serviceUuidLength);
 						serviceData.put(serviceDataUuid, serviceDataArray);
 					}
@@ -292,8 +286,7 @@ public final class Utils_ScanRecord extends Utils
 						// The first two bytes of the service data are service data UUID in little
 						// endian. The rest bytes are service data.
 						int serviceUuidLength = UUID_BYTES_16_BIT;
-						byte[] serviceDataUuidBytes = extractBytes(scanRecord, currentPos, serviceUuidLength);
-						UUID serviceDataUuid = parseUuidFrom(serviceDataUuidBytes);
+						UUID serviceDataUuid = AdvertisementView.uuidAt(scanRecord, currentPos, serviceUuidLength);
 						byte[] serviceDataArray = extractBytes(scanRecord, currentPos + serviceUuidLength, dataLength - serviceUuidLength);
 
 						if( serviceData_out_nullable != null )
@@ -331,40 +324,15 @@ public final class Utils_ScanRecord extends Utils
 		{
 			return name;
 		}
-		int currentPos = 0;
-		try
+		// Walk the record in place, only the name itself gets copied.
+		final AdvertisementView view = new AdvertisementView(scanRecord);
+		while( view.next() )
 		{
-			while( currentPos < scanRecord.length )
+			if( view.type() == DATA_TYPE_LOCAL_NAME_COMPLETE && view.dataLength() > 0 )
 			{
-				// length is unsigned int.
-				int length = scanRecord[currentPos++] & 0xFF;
-				if( length == 0 )
-				{
-					break;
-				}
-				// Note the length includes the length of the field type itself.
-				int dataLength = length - 1;
-				// fieldType is unsigned int.
-				int fieldType = scanRecord[currentPos++] & 0xFF;
-				switch( fieldType )
-				{
-					case DATA_TYPE_LOCAL_NAME_COMPLETE:
-						String n = new String(extractBytes(scanRecord, currentPos, dataLength));
-						if (!TextUtils.isEmpty(n)) {
-							return n;
-						}
-						break;
-					default:
-						// Just ignore, we don't handle such data type.
-						break;
-				}
-				currentPos += dataLength;
+				return new String(scanRecord, view.dataOffset(), view.dataLength());
 			}
 		}
-		catch(Exception e)
-		{
-			Log.e(TAG, "unable to parse scan record: " + Arrays.toString(scanRecord));
-		}
 		return name;
 	}
 
@@ -375,11 +343,9 @@ public final class Utils_ScanRecord extends Utils
 		{
 			while( dataLength > 0 )
 			{
-				byte[] uuidBytes = extractBytes(scanRecord, currentPos, uuidLength);
-
 				if( serviceUuids_nullable != null )
 				{
-					serviceUuids_nullable.add(parseUuidFrom(uuidBytes));
+					serviceUuids_nullable.add(AdvertisementView.uuidAt(scanRecord, currentPos, uuidLength));
 				}
 
 				dataLength -= uuidLength;
@@ -402,57 +368,6 @@ public final class Utils_ScanRecord extends Utils
 		return bytes;
 	}
 
-	/**
-	 * Parse UUID from bytes. The {@code uuidBytes} can represent a 16-bit, 32-bit or 128-bit UUID,
-	 * but the returned UUID is always in 128-bit format.
-	 * Note UUID is little endian in Bluetooth.
-	 *
-	 * @param uuidBytes Byte representation of uuid.
-	 * @return {@link ParcelUuid} parsed from bytes.
-	 * @throws IllegalArgumentException If the {@code uuidBytes} cannot be parsed.
-	 */
-	private static UUID parseUuidFrom(byte[] uuidBytes)
-	{
-		if( uuidBytes == null )
-		{
-			throw new IllegalArgumentException("uuidBytes cannot be null");
-		}
-		int length = uuidBytes.length;
-		if( length != UUID_BYTES_16_BIT && length != UUID_BYTES_32_BIT &&
-				length != UUID_BYTES_128_BIT )
-		{
-			throw new IllegalArgumentException("uuidBytes length invalid - " + length);
-		}
-
-		// Construct a 128 bit UUID.
-		if( length == UUID_BYTES_128_BIT )
-		{
-			ByteBuffer buf = ByteBuffer.wrap(uuidBytes).order(ByteOrder.LITTLE_ENDIAN);
-			long msb = buf.getLong(8);
-			long lsb = buf.getLong(0);
-			return new UUID(msb, lsb);
-		}
-
-		// For 16 bit and 32 bit UUID we need to convert them to 128 bit value.
-		// 128_bit_value = uuid * 2^96 + BASE_UUID
-		long shortUuid;
-		if( length == UUID_BYTES_16_BIT )
-		{
-			shortUuid = uuidBytes[0] & 0xFF;
-			shortUuid += (uuidBytes[1] & 0xFF) << 8;
-		}
-		else
-		{
-			shortUuid = uuidBytes[0] & 0xFF;
-			shortUuid += (uuidBytes[1] & 0xFF) << 8;
-			shortUuid += (uuidBytes[2] & 0xFF) << 16;
-			shortUuid += (uuidBytes[3] & 0xFF) << 24;
-		}
-		long msb = BASE_UUID.getMostSignificantBits() + (shortUuid << 32);
-		long lsb = BASE_UUID.getLeastSignificantBits();
-		return new UUID(msb, lsb);
-
-	}
 
 
 	/**
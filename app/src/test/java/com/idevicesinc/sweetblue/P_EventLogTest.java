@@ -0,0 +1,136 @@
+package com.idevicesinc.sweetblue;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that {@link P_EventLog} never mixes two records in one slot, however many threads write and dump it at once.
+ */
+public class P_EventLogTest
+{
+	//--- "<time> READ <tag> code=<code> status=0 data(4)=<hex>"
+	private static final Pattern LINE = Pattern.compile(".* READ (\\d+) code=(\\d+) status=0 data\\(4\\)=([0-9a-f]{8})");
+
+	private static byte[] toBytes(final int value)
+	{
+		return new byte[] { (byte) (value >> 24), (byte) (value >> 16), (byte) (value >> 8), (byte) value };
+	}
+
+	/**
+	 * Returns how many lines were checked, every one of them must describe a single record.
+	 */
+	private static int checkDump(final P_EventLog log) throws IOException
+	{
+		final StringWriter writer = new StringWriter();
+		final int written = log.dump(writer);
+		final String[] lines = writer.toString().split("\n");
+		int checked = 0;
+
+		for( String line : lines )
+		{
+			if( line.isEmpty() )  continue;
+
+			final Matcher matcher = LINE.matcher(line);
+
+			assertTrue(line, matcher.matches());
+			assertEquals(line, matcher.group(1), matcher.group(2));
+			assertEquals(line, Integer.parseInt(matcher.group(1)), (int) Long.parseLong(matcher.group(3), 16));
+			checked++;
+		}
+
+		assertEquals(written, checked);
+
+		return checked;
+	}
+
+	@Test public void recordsInOrderUntilTheRingWraps() throws IOException
+	{
+		final P_EventLog log = new P_EventLog(8);
+
+		for( int i = 0; i < 5; i++ )
+		{
+			log.record(P_EventLog.Type.READ, null, i, i, 0, null, toBytes(i));
+		}
+
+		assertEquals(5, checkDump(log));
+
+		for( int i = 5; i < 20; i++ )
+		{
+			log.record(P_EventLog.Type.READ, null, i, i, 0, null, toBytes(i));
+		}
+
+		final StringWriter writer = new StringWriter();
+
+		assertEquals(8, log.dump(writer));
+		assertTrue(writer.toString().split("\n")[0].contains(" READ 12 "));
+	}
+
+	@Test public void concurrentWritersNeverTearRecords() throws Exception
+	{
+		final P_EventLog log = new P_EventLog(2);
+		final Thread[] writers = new Thread[4];
+		final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+
+		for( int t = 0; t < writers.length; t++ )
+		{
+			final int base = t * 1000000;
+
+			writers[t] = new Thread(new Runnable()
+			{
+				@Override public void run()
+				{
+					for( int i = 0; i < 200000; i++ )
+					{
+						final int value = base + i;
+
+						log.record(P_EventLog.Type.READ, null, value, value, 0, null, toBytes(value));
+					}
+				}
+			});
+		}
+
+		final Thread dumper = new Thread(new Runnable()
+		{
+			@Override public void run()
+			{
+				try
+				{
+					for( int i = 0; i < 2000; i++ )
+					{
+						checkDump(log);
+					}
+				}
+				catch( Throwable e )
+				{
+					failure.set(e);
+				}
+			}
+		});
+
+		for( Thread writer : writers )
+		{
+			writer.start();
+		}
+
+		dumper.start();
+
+		for( Thread writer : writers )
+		{
+			writer.join();
+		}
+
+		dumper.join();
+
+		assertNull(String.valueOf(failure.get()), failure.get());
+		checkDump(log);
+	}
+}
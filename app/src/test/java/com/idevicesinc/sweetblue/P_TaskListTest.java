@@ -0,0 +1,304 @@
+package com.idevicesinc.sweetblue;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that {@link P_TaskList} orders tasks exactly like the plain list and linear {@link PU_TaskQueue#findSoonestSpot} it replaced.
+ */
+public class P_TaskListTest
+{
+	private static class FakeTask extends PA_Task
+	{
+		private final PE_TaskPriority m_priority;
+
+		FakeTask(final PE_TaskPriority priority)
+		{
+			super((BleManager) null, null);
+
+			m_priority = priority;
+		}
+
+		@Override protected BleTask getTaskType()
+		{
+			return null;
+		}
+
+		@Override void execute()
+		{
+		}
+
+		@Override public PE_TaskPriority getPriority()
+		{
+			return m_priority;
+		}
+
+		@Override public String toString()
+		{
+			return getClass().getSimpleName() + "(" + m_priority + ")";
+		}
+	}
+
+	private static final class FakeScan extends FakeTask
+	{
+		FakeScan()
+		{
+			super(PE_TaskPriority.TRIVIAL);
+		}
+	}
+
+	//--- Like PA_Task_Transactionable, normal reads and writes don't jump ahead of a scan.
+	private static final class FakeWrite extends FakeTask
+	{
+		FakeWrite(final PE_TaskPriority priority)
+		{
+			super(priority);
+		}
+
+		@Override public boolean isMoreImportantThan(final PA_Task task)
+		{
+			if( task instanceof FakeScan && getPriority().ordinal() <= PE_TaskPriority.FOR_NORMAL_READS_WRITES.ordinal() )  return false;
+
+			return super.isMoreImportantThan(task);
+		}
+	}
+
+	private static final class FakeUnbond extends FakeTask
+	{
+		FakeUnbond()
+		{
+			super(PE_TaskPriority.MEDIUM);
+		}
+	}
+
+	//--- Like P_Task_TurnBleOff, never goes ahead of an unbond.
+	private static final class FakeTurnBleOff extends FakeTask
+	{
+		FakeTurnBleOff()
+		{
+			super(PE_TaskPriority.CRITICAL);
+		}
+
+		@Override public boolean isMoreImportantThan(final PA_Task task)
+		{
+			return !(task instanceof FakeUnbond) && super.isMoreImportantThan(task);
+		}
+	}
+
+	private static FakeTask newRandomTask(final Random random)
+	{
+		final PE_TaskPriority[] priorities = PE_TaskPriority.values();
+
+		switch( random.nextInt(6) )
+		{
+			case 0:		return new FakeScan();
+			case 1:		return new FakeUnbond();
+			case 2:		return new FakeTurnBleOff();
+			case 3:		return new FakeTask(priorities[random.nextInt(priorities.length)]);
+			default:	return new FakeWrite(priorities[random.nextInt(priorities.length)]);
+		}
+	}
+
+	/**
+	 * Inserts like P_TaskQueue#add_updateThread() does when nothing is cancelled or interrupted.
+	 */
+	private static void add(final P_TaskList list, final ArrayList<PA_Task> expected, final PA_Task task)
+	{
+		final int expectedSpot = PU_TaskQueue.findSoonestSpot(expected, task);
+		final int spot = list.findSoonestSpot(task);
+
+		assertEquals("soonest spot of " + task + " in " + expected, expectedSpot, spot);
+
+		if( spot >= 0 )
+		{
+			list.add(spot, task);
+			expected.add(expectedSpot, task);
+		}
+		else
+		{
+			list.add(task);
+			expected.add(task);
+		}
+	}
+
+	private static void assertSameOrder(final ArrayList<PA_Task> expected, final P_TaskList list)
+	{
+		assertEquals(expected.size(), list.size());
+
+		final Iterator<PA_Task> iterator = list.iterator();
+
+		for( int i = 0; i < expected.size(); i++ )
+		{
+			assertSame(expected.get(i), iterator.next());
+			assertSame(expected.get(i), list.get(i));
+			assertEquals(i, list.indexOf(expected.get(i)));
+		}
+
+		assertFalse(iterator.hasNext());
+	}
+
+	@Test public void randomAddsAndRemovesKeepListOrder()
+	{
+		final Random random = new Random(42);
+		final P_TaskList list = new P_TaskList();
+		final ArrayList<PA_Task> expected = new ArrayList<PA_Task>();
+
+		for( int round = 0; round < 5000; round++ )
+		{
+			if( expected.isEmpty() || random.nextInt(3) != 0 )
+			{
+				add(list, expected, newRandomTask(random));
+			}
+			else if( random.nextBoolean() )
+			{
+				final int index = random.nextInt(expected.size());
+
+				assertSame(expected.remove(index), list.remove(index));
+			}
+			else
+			{
+				final PA_Task task = expected.remove(random.nextInt(expected.size()));
+
+				assertTrue(list.remove(task));
+				assertFalse(list.contains(task));
+				assertEquals(-1, list.indexOf(task));
+			}
+
+			if( round % 100 == 0 )
+			{
+				assertSameOrder(expected, list);
+			}
+		}
+
+		assertSameOrder(expected, list);
+	}
+
+	@Test public void writeFloodKeepsPriorityOrder()
+	{
+		final P_TaskList list = new P_TaskList();
+		final ArrayList<PA_Task> expected = new ArrayList<PA_Task>();
+
+		add(list, expected, new FakeScan());
+
+		for( int i = 0; i < 5000; i++ )
+		{
+			add(list, expected, new FakeWrite(PE_TaskPriority.FOR_NORMAL_READS_WRITES));
+		}
+
+		final FakeTask connect = new FakeTask(PE_TaskPriority.FOR_EXPLICIT_BONDING_AND_CONNECTING);
+		final FakeTask implicitConnect = new FakeTask(PE_TaskPriority.FOR_IMPLICIT_BONDING_AND_CONNECTING);
+		final FakeWrite priorityWrite = new FakeWrite(PE_TaskPriority.FOR_PRIORITY_READS_WRITES);
+
+		add(list, expected, connect);
+		add(list, expected, implicitConnect);
+		add(list, expected, priorityWrite);
+
+		//--- Higher priorities go ahead of the scan and every write, most important first, same priority in the order added.
+		assertSame(implicitConnect, list.get(0));
+		assertSame(connect, list.get(1));
+		assertSame(priorityWrite, list.get(2));
+		assertTrue(list.get(3) instanceof FakeScan);
+		assertSameOrder(expected, list);
+
+		//--- A normal write never jumps ahead, even of the scan.
+		final FakeWrite write = new FakeWrite(PE_TaskPriority.FOR_NORMAL_READS_WRITES);
+
+		add(list, expected, write);
+
+		assertSame(write, list.get(list.size()-1));
+	}
+
+	@Test public void bleOffStaysBehindUnbond()
+	{
+		final P_TaskList list = new P_TaskList();
+		final ArrayList<PA_Task> expected = new ArrayList<PA_Task>();
+
+		final FakeUnbond unbond = new FakeUnbond();
+		final FakeTask read = new FakeTask(PE_TaskPriority.LOW);
+		final FakeTurnBleOff bleOff = new FakeTurnBleOff();
+
+		add(list, expected, read);
+		add(list, expected, unbond);
+		add(list, expected, bleOff);
+
+		assertSame(unbond, list.get(0));
+		assertSame(bleOff, list.get(1));
+		assertSame(read, list.get(2));
+	}
+
+	@Test public void lookupsFollowQueueOrder()
+	{
+		final P_TaskList list = new P_TaskList();
+		final FakeUnbond first = new FakeUnbond();
+		final FakeUnbond second = new FakeUnbond();
+
+		list.add(new FakeScan());
+		list.add(second);
+		list.add(1, first);
+		list.add(new FakeWrite(PE_TaskPriority.LOW));
+
+		assertTrue(list.hasQueued(FakeUnbond.class));
+		assertTrue(list.hasQueued(FakeTask.class));
+		assertFalse(list.hasQueued(FakeTurnBleOff.class));
+
+		assertSame(first, list.findFirst(FakeUnbond.class, null, null, null));
+		assertEquals(2, list.findAll(FakeUnbond.class, null, null, null).size());
+		assertSame(first, list.findAll(FakeUnbond.class, null, null, null).get(0));
+		assertEquals(4, list.getQueued(null).size());
+
+		list.remove(first);
+
+		assertSame(second, list.findFirst(FakeUnbond.class, null, null, null));
+		assertSame(list.peek(), list.findFirst(FakeTask.class, null, null, null));
+
+		list.remove(second);
+
+		assertFalse(list.hasQueued(FakeUnbond.class));
+		assertNull(list.findFirst(FakeUnbond.class, null, null, null));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void taskCanOnlyBeQueuedOnce()
+	{
+		final P_TaskList list = new P_TaskList();
+		final FakeScan scan = new FakeScan();
+
+		list.add(scan);
+		list.add(scan);
+	}
+
+	@Test public void iteratorRemoveKeepsWalking()
+	{
+		final P_TaskList list = new P_TaskList();
+		final ArrayList<PA_Task> expected = new ArrayList<PA_Task>();
+
+		for( int i = 0; i < 100; i++ )
+		{
+			final FakeTask task = new FakeTask(PE_TaskPriority.LOW);
+
+			list.add(task);
+
+			if( i % 3 != 0 )  expected.add(task);
+		}
+
+		int i = 0;
+
+		for( Iterator<PA_Task> iterator = list.iterator(); iterator.hasNext(); i++ )
+		{
+			iterator.next();
+
+			if( i % 3 == 0 )  iterator.remove();
+		}
+
+		assertSameOrder(expected, list);
+	}
+}
@@ -0,0 +1,167 @@
+package com.idevicesinc.sweetblue.backend.historical;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that {@link P_HistoricalDataCursor_Windowed} pages rows in like {@link P_HistoricalDataCursor_Database} expects,
+ * against an in-memory table standing in for SQLite.
+ */
+public class P_HistoricalDataCursor_WindowedTest
+{
+	private static final class FakeCursor extends P_HistoricalDataCursor_Windowed
+	{
+		private final int m_rowCount;
+
+		//--- Once set, pages come back empty like queryRange() does for a dropped table.
+		private boolean m_dropped = false;
+
+		private int m_countLoads = 0;
+		private int m_windowLoads = 0;
+		private int m_continuingLoads = 0;
+		private int m_lastRow = -1;
+
+		FakeCursor(final int rowCount)
+		{
+			m_rowCount = rowCount;
+		}
+
+		@Override int loadCount()
+		{
+			m_countLoads++;
+
+			return m_dropped ? 0 : m_rowCount;
+		}
+
+		@Override int loadWindow(final int position, final int maxCount, final boolean continuing)
+		{
+			m_windowLoads++;
+
+			if( continuing )
+			{
+				m_continuingLoads++;
+
+				//--- Seeks from the last row handed out, so the page has to start right after it.
+				assertEquals(m_lastRow + 1, position);
+			}
+
+			if( m_dropped )  return 0;
+
+			int loaded = 0;
+
+			for( int row = position; loaded < maxCount && row < m_rowCount; row++, loaded++ )
+			{
+				setRow(loaded, row * 10L, new byte[]{(byte) row}, null);
+
+				m_lastRow = row;
+			}
+
+			return loaded;
+		}
+	}
+
+	@Test public void forwardScanOfAMillionRowsSeeksEveryPage()
+	{
+		final int rowCount = 1000000;
+		final FakeCursor cursor = new FakeCursor(rowCount);
+
+		int position = 0;
+
+		while( cursor.moveToNext() )
+		{
+			assertEquals(position * 10L, cursor.getEpochTime());
+
+			position++;
+		}
+
+		final int pages = (rowCount + P_HistoricalDataCursor_Windowed.WINDOW_SIZE - 1) / P_HistoricalDataCursor_Windowed.WINDOW_SIZE;
+
+		assertEquals(rowCount, position);
+		assertTrue(cursor.isAfterLast());
+
+		//--- The short last page tells the cursor where the end is, so the count is never queried.
+		assertEquals(pages, cursor.m_windowLoads);
+		assertEquals(pages - 1, cursor.m_continuingLoads);
+		assertEquals(0, cursor.m_countLoads);
+		assertEquals(rowCount, cursor.getCount());
+		assertEquals(0, cursor.m_countLoads);
+	}
+
+	@Test public void backwardScanStaysInLoadedPages()
+	{
+		final int rowCount = 1000;
+		final FakeCursor cursor = new FakeCursor(rowCount);
+
+		assertTrue(cursor.moveToLast());
+		assertEquals(1, cursor.m_countLoads);
+
+		for( int position = rowCount - 1; position >= 0; position-- )
+		{
+			assertEquals(position, cursor.getPosition());
+			assertEquals(position * 10L, cursor.getEpochTime());
+			assertEquals((byte) position, cursor.getBlob()[0]);
+
+			if( position > 0 )
+			{
+				assertTrue(cursor.moveToPrevious());
+			}
+		}
+
+		assertTrue(cursor.isFirst());
+		assertFalse(cursor.moveToPrevious());
+		assertTrue(cursor.isBeforeFirst());
+
+		//--- The last row on its own, then full pages ending at each row moved back to.
+		final int pages = 1 + (rowCount - 1 + P_HistoricalDataCursor_Windowed.WINDOW_SIZE - 1) / P_HistoricalDataCursor_Windowed.WINDOW_SIZE;
+
+		assertEquals(pages, cursor.m_windowLoads);
+		assertEquals(0, cursor.m_continuingLoads);
+	}
+
+	@Test public void randomAccessMatchesRows()
+	{
+		final int rowCount = 5000;
+		final FakeCursor cursor = new FakeCursor(rowCount);
+
+		for( int position : new int[]{ 4999, 0, 127, 128, 2500, 2499, 4872 } )
+		{
+			assertTrue(cursor.moveToPosition(position));
+			assertEquals(position * 10L, cursor.getHistoricalData().getEpochTime().toMilliseconds());
+		}
+
+		assertFalse(cursor.moveToPosition(rowCount));
+		assertTrue(cursor.isAfterLast());
+	}
+
+	@Test public void droppedTableEndsIteration()
+	{
+		final FakeCursor cursor = new FakeCursor(1000);
+
+		for( int i = 0; i < P_HistoricalDataCursor_Windowed.WINDOW_SIZE; i++ )
+		{
+			assertTrue(cursor.moveToNext());
+		}
+
+		cursor.m_dropped = true;
+
+		assertFalse(cursor.moveToNext());
+		assertTrue(cursor.isAfterLast());
+		assertEquals(P_HistoricalDataCursor_Windowed.WINDOW_SIZE, cursor.getCount());
+	}
+
+	@Test public void closedCursorHasNoRows()
+	{
+		final FakeCursor cursor = new FakeCursor(10);
+
+		assertTrue(cursor.moveToFirst());
+
+		cursor.close();
+
+		assertTrue(cursor.isClosed());
+		assertFalse(cursor.moveToNext());
+		assertEquals(0, cursor.getBlob().length);
+	}
+}
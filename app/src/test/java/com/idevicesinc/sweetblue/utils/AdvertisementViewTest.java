@@ -0,0 +1,170 @@
+package com.idevicesinc.sweetblue.utils;
+
+import com.idevicesinc.sweetblue.BleNodeConfig;
+
+import org.junit.Test;
+
+import java.util.UUID;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that {@link AdvertisementView} walks AD structures in place and reads the same fields a copying parser would.
+ */
+public class AdvertisementViewTest
+{
+	private static final UUID HEART_RATE = UUID.fromString("0000180d-0000-1000-8000-00805f9b34fb");
+	private static final UUID EDDYSTONE = UUID.fromString("0000feaa-0000-1000-8000-00805f9b34fb");
+	private static final UUID LONG_32 = UUID.fromString("12345678-0000-1000-8000-00805f9b34fb");
+	private static final UUID CUSTOM = UUID.fromString("00000000-0000-0000-0000-00a0cc7ee571");
+
+	//--- Flags, 16-bit, 32-bit and 128-bit service uuids, a name, tx power and manufacturer data, then the zero padding of a 62 byte record.
+	private static byte[] newRecord()
+	{
+		final byte[] record = new byte[62];
+		final byte[] fields =
+		{
+			0x02, 0x01, 0x06,
+			0x05, 0x03, 0x0D, 0x18, (byte) 0xAA, (byte) 0xFE,
+			0x05, 0x05, 0x78, 0x56, 0x34, 0x12,
+			0x11, 0x07, 0x71, (byte) 0xE5, 0x7E, (byte) 0xCC, (byte) 0xA0, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00,
+			0x06, 0x09, 'W', 'a', 't', 'c', 'h',
+			0x02, 0x0A, (byte) 0xF4,
+			0x05, (byte) 0xFF, 0x4C, 0x00, 0x01, 0x02,
+		};
+
+		System.arraycopy(fields, 0, record, 0, fields.length);
+
+		return record;
+	}
+
+	@Test public void walksEveryStructureInPlace()
+	{
+		final byte[] record = newRecord();
+		final AdvertisementView view = new AdvertisementView(record);
+
+		final int[] types =
+		{
+			AdvertisementView.DATA_TYPE_FLAGS,
+			AdvertisementView.DATA_TYPE_SERVICE_UUIDS_16_BIT_COMPLETE,
+			AdvertisementView.DATA_TYPE_SERVICE_UUIDS_32_BIT_COMPLETE,
+			AdvertisementView.DATA_TYPE_SERVICE_UUIDS_128_BIT_COMPLETE,
+			AdvertisementView.DATA_TYPE_LOCAL_NAME_COMPLETE,
+			AdvertisementView.DATA_TYPE_TX_POWER_LEVEL,
+			AdvertisementView.DATA_TYPE_MANUFACTURER_SPECIFIC_DATA,
+		};
+
+		int offset = 0;
+
+		for( int type : types )
+		{
+			assertTrue(view.next());
+			assertEquals(type, view.type());
+			assertEquals(offset + 2, view.dataOffset());
+			assertEquals((record[offset] & 0xFF) - 1, view.dataLength());
+
+			offset += (record[offset] & 0xFF) + 1;
+		}
+
+		//--- Stops at the zero padding and stays stopped.
+		assertFalse(view.next());
+		assertFalse(view.next());
+		assertSame(record, view.record());
+	}
+
+	@Test public void readsFields()
+	{
+		final AdvertisementView view = new AdvertisementView(newRecord());
+
+		assertEquals(0x06, view.getFlags());
+		assertEquals(-12, view.getTxPowerLevel());
+		assertEquals("Watch", view.getLocalName());
+		assertEquals(0x004C, view.getManufacturerId());
+
+		//--- Left on the manufacturer data, its payload follows the company id.
+		assertEquals(0x01, view.dataAt(2));
+		assertEquals(0x02, view.dataAt(3));
+	}
+
+	@Test public void readsServiceUuids()
+	{
+		final AdvertisementView view = new AdvertisementView(newRecord());
+
+		assertEquals(4, view.getServiceUuidCount());
+		assertEquals(HEART_RATE, view.getServiceUuid(0));
+		assertEquals(EDDYSTONE, view.getServiceUuid(1));
+		assertEquals(LONG_32, view.getServiceUuid(2));
+		assertEquals(CUSTOM, view.getServiceUuid(3));
+		assertNull(view.getServiceUuid(4));
+
+		//--- Common 16-bit uuids are interned.
+		assertSame(view.getServiceUuid(0), view.getServiceUuid(0));
+		assertSame(view.getServiceUuid(1), AdvertisementView.shortUuid(0xFEAA));
+
+		assertTrue(view.hasServiceUuid(HEART_RATE));
+		assertTrue(view.hasServiceUuid(EDDYSTONE));
+		assertTrue(view.hasServiceUuid(LONG_32));
+		assertTrue(view.hasServiceUuid(CUSTOM));
+		assertFalse(view.hasServiceUuid(UUID.fromString("0000180f-0000-1000-8000-00805f9b34fb")));
+		assertFalse(view.hasServiceUuid(UUID.fromString("00000000-0000-0000-0000-00a0cc7ee572")));
+	}
+
+	@Test public void missingFieldsReadAsAbsent()
+	{
+		final AdvertisementView view = new AdvertisementView(new byte[]{ 0x02, 0x01, 0x06 });
+
+		assertEquals(-1, view.getManufacturerId());
+		assertEquals(BleNodeConfig.INVALID_TX_POWER, view.getTxPowerLevel());
+		assertNull(view.getLocalName());
+		assertEquals(0, view.getServiceUuidCount());
+		assertFalse(view.find(AdvertisementView.DATA_TYPE_SERVICE_DATA));
+
+		view.reset(null);
+
+		assertFalse(view.next());
+		assertEquals(-1, view.getFlags());
+	}
+
+	@Test public void stopsAtStructureRunningPastTheEnd()
+	{
+		//--- The second structure claims 9 bytes but only 2 are left.
+		final AdvertisementView view = new AdvertisementView(new byte[]{ 0x02, 0x01, 0x06, 0x09, 0x09, 'W', 'a' });
+
+		assertTrue(view.next());
+		assertFalse(view.next());
+		assertNull(view.getLocalName());
+		assertEquals(0x06, view.getFlags());
+	}
+
+	@Test public void resetReusesTheView()
+	{
+		final AdvertisementView view = new AdvertisementView(newRecord());
+
+		assertTrue(view.find(AdvertisementView.DATA_TYPE_LOCAL_NAME_COMPLETE));
+
+		view.reset(new byte[]{ 0x04, 0x08, 'A', 'B', 'C' });
+
+		assertEquals(-1, view.type());
+		assertEquals("ABC", view.getLocalName());
+		assertEquals(AdvertisementView.DATA_TYPE_LOCAL_NAME_SHORT, view.type());
+	}
+
+	@Test public void uuidAtMatchesByteOrder()
+	{
+		final byte[] record = newRecord();
+
+		assertEquals(HEART_RATE, AdvertisementView.uuidAt(record, 5, 2));
+		assertEquals(LONG_32, AdvertisementView.uuidAt(record, 11, 4));
+		assertEquals(CUSTOM, AdvertisementView.uuidAt(record, 17, 16));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void uuidAtRejectsOtherSizes()
+	{
+		AdvertisementView.uuidAt(newRecord(), 0, 3);
+	}
+}
@@ -0,0 +1,249 @@
+package com.idevicesinc.sweetblue.utils;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Checks that {@link ByteWriter} and {@link ByteReader} round-trip every primitive in both byte orders, encode exactly like
+ * {@link ByteBuffer}, and reject out of bounds access without moving or writing anything.
+ */
+public class ByteReaderWriterTest
+{
+	private static final ByteOrder[] ORDERS = { ByteOrder.BIG_ENDIAN, ByteOrder.LITTLE_ENDIAN };
+
+	//--- Byte, boolean, short, int, unsigned int, long, float and double.
+	private static final int RECORD_LENGTH = 1 + 1 + 2 + 4 + 4 + 8 + 4 + 8;
+
+	@Test public void roundTripsMatchByteBuffer()
+	{
+		final Random random = new Random(7);
+		final byte[] buffer = new byte[RECORD_LENGTH * 100];
+
+		for( ByteOrder order : ORDERS )
+		{
+			final ByteWriter writer = new ByteWriter(buffer).order(order);
+			final ByteBuffer expected = ByteBuffer.allocate(buffer.length).order(order);
+
+			final long[] values = new long[100];
+
+			for( int i = 0; i < values.length; i++ )
+			{
+				final long value = i < 4 ? new long[]{ 0, -1, Long.MIN_VALUE, Long.MAX_VALUE }[i] : random.nextLong();
+
+				values[i] = value;
+
+				writer.writeByte((int) value).writeBoolean((value & 1) != 0).writeShort((int) value).writeInt((int) value)
+					.writeUnsignedInt(value >>> 32).writeLong(value).writeFloat(Float.intBitsToFloat((int) value)).writeDouble(Double.longBitsToDouble(value));
+
+				expected.put((byte) value).put((byte) ((value & 1) != 0 ? 1 : 0)).putShort((short) value).putInt((int) value)
+					.putInt((int) (value >>> 32)).putLong(value).putInt((int) value).putLong(value);
+			}
+
+			assertEquals(buffer.length, writer.length());
+			assertEquals(0, writer.remaining());
+			assertArrayEquals(order.toString(), expected.array(), buffer);
+
+			final ByteReader reader = new ByteReader(buffer).order(order);
+
+			for( long value : values )
+			{
+				assertEquals((byte) value, reader.readByte());
+				assertEquals((value & 1) != 0, reader.readBoolean());
+				assertEquals((short) value, reader.readShort());
+				assertEquals((int) value, reader.readInt());
+				assertEquals(value >>> 32, reader.readUnsignedInt());
+				assertEquals(value, reader.readLong());
+				assertEquals(Float.floatToRawIntBits(Float.intBitsToFloat((int) value)), Float.floatToRawIntBits(reader.readFloat()));
+				assertEquals(value, Double.doubleToRawLongBits(reader.readDouble()));
+			}
+
+			assertEquals(0, reader.remaining());
+		}
+	}
+
+	@Test public void unsignedReads()
+	{
+		final byte[] buffer = { (byte) 0xFF, (byte) 0xFE, (byte) 0xFD, (byte) 0xFC, (byte) 0xFB, (byte) 0xFA, (byte) 0xF9 };
+
+		final ByteReader reader = new ByteReader(buffer);
+
+		assertEquals(0xFF, reader.readUnsignedByte());
+		assertEquals(0xFEFD, reader.readUnsignedShort());
+		assertEquals(0xFCFBFAF9L, reader.readUnsignedInt());
+
+		reader.rewind().order(ByteOrder.LITTLE_ENDIAN).skip(1);
+
+		assertEquals(0xFDFE, reader.readUnsignedShort());
+		assertEquals(0xF9FAFBFCL, reader.readUnsignedInt());
+
+		assertEquals(0xFE, ByteReader.getUnsignedByte(buffer, 1));
+		assertEquals(0xFDFE, ByteReader.getUnsignedShort(buffer, 1, ByteOrder.LITTLE_ENDIAN));
+		assertEquals(0xFCFBFAF9L, ByteReader.getUnsignedInt(buffer, 3, ByteOrder.BIG_ENDIAN));
+	}
+
+	@Test public void staticHelpersRoundTrip()
+	{
+		final byte[] buffer = new byte[8];
+
+		for( ByteOrder order : ORDERS )
+		{
+			ByteWriter.putShort(buffer, 6, 0xBEEF, order);
+			assertEquals((short) 0xBEEF, ByteReader.getShort(buffer, 6, order));
+
+			ByteWriter.putInt(buffer, 4, 0xCAFEBABE, order);
+			assertEquals(0xCAFEBABE, ByteReader.getInt(buffer, 4, order));
+
+			ByteWriter.putLong(buffer, 0, 0x0123456789ABCDEFL, order);
+			assertEquals(0x0123456789ABCDEFL, ByteReader.getLong(buffer, 0, order));
+
+			ByteWriter.putFloat(buffer, 4, 1.5f, order);
+			assertEquals(1.5f, ByteReader.getFloat(buffer, 4, order), 0f);
+
+			ByteWriter.putDouble(buffer, 0, -2.25, order);
+			assertEquals(-2.25, ByteReader.getDouble(buffer, 0, order), 0.0);
+		}
+	}
+
+	@Test public void windowsKeepArrayPositions()
+	{
+		final byte[] buffer = { 0x00, 0x11, 0x22, 0x33, 0x44, 0x55 };
+		final ByteReader reader = new ByteReader(buffer, 2, 3);
+
+		assertEquals(2, reader.position());
+		assertEquals(3, reader.remaining());
+		assertEquals(0x2233, reader.readShort());
+		assertEquals(0x44, reader.readByte());
+		assertFalse(reader.hasRemaining(1));
+
+		reader.position(3);
+
+		assertEquals(0x33, reader.readByte());
+
+		final byte[] out = new byte[4];
+		final ByteWriter writer = new ByteWriter(out, 1, 2);
+
+		writer.writeShort(0xABCD);
+
+		assertEquals(2, writer.length());
+		assertArrayEquals(new byte[]{ 0x00, (byte) 0xAB, (byte) 0xCD, 0x00 }, out);
+
+		final byte[] copy = new byte[3];
+
+		reader.rewind().readBytes(copy, 0, 3);
+
+		assertArrayEquals(new byte[]{ 0x22, 0x33, 0x44 }, copy);
+	}
+
+	@Test public void readPastLimitThrowsAndKeepsPosition()
+	{
+		final ByteReader reader = new ByteReader(new byte[]{ 0x01, 0x02, 0x03, 0x04, 0x05 }, 0, 3);
+
+		reader.readByte();
+
+		try
+		{
+			reader.readInt();
+
+			fail();
+		}
+		catch(IndexOutOfBoundsException e)
+		{
+			assertEquals(1, reader.position());
+		}
+
+		assertEquals(0x0203, reader.readShort());
+
+		try
+		{
+			reader.readByte();
+
+			fail();
+		}
+		catch(IndexOutOfBoundsException e)
+		{
+			assertEquals(3, reader.position());
+		}
+
+		assertEquals(0, new ByteReader(null).remaining());
+		assertFalse(ByteReader.isInRange(null, 0, 0));
+		assertTrue(ByteReader.isInRange(new byte[2], 2, 0));
+		assertFalse(ByteReader.isInRange(new byte[2], 1, 2));
+		assertFalse(ByteReader.isInRange(new byte[2], -1, 1));
+	}
+
+	@Test public void writePastLimitThrowsAndLeavesArray()
+	{
+		final byte[] buffer = new byte[6];
+		final ByteWriter writer = new ByteWriter(buffer, 0, 5);
+
+		writer.writeShort(0x0102);
+
+		try
+		{
+			writer.writeInt(-1);
+
+			fail();
+		}
+		catch(IndexOutOfBoundsException e)
+		{
+			assertEquals(2, writer.position());
+		}
+
+		assertArrayEquals(new byte[]{ 0x01, 0x02, 0x00, 0x00, 0x00, 0x00 }, buffer);
+
+		try
+		{
+			writer.writeLong(-1);
+
+			fail();
+		}
+		catch(IndexOutOfBoundsException e)
+		{
+			assertEquals(3, writer.remaining());
+		}
+
+		assertArrayEquals(new byte[]{ 0x01, 0x02, 0x00, 0x00, 0x00, 0x00 }, buffer);
+	}
+
+	@Test public void staticHelpersRejectOutOfBounds()
+	{
+		final byte[] buffer = new byte[4];
+
+		final Runnable[] calls =
+		{
+			new Runnable(){ @Override public void run(){ ByteReader.getInt(buffer, 1, ByteOrder.BIG_ENDIAN); } },
+			new Runnable(){ @Override public void run(){ ByteReader.getLong(buffer, 0, ByteOrder.LITTLE_ENDIAN); } },
+			new Runnable(){ @Override public void run(){ ByteReader.getUnsignedByte(buffer, 4); } },
+			new Runnable(){ @Override public void run(){ ByteReader.getShort(null, 0, ByteOrder.BIG_ENDIAN); } },
+			new Runnable(){ @Override public void run(){ ByteWriter.putShort(buffer, 3, 0xFFFF, ByteOrder.BIG_ENDIAN); } },
+			new Runnable(){ @Override public void run(){ ByteWriter.putInt(buffer, -1, -1, ByteOrder.LITTLE_ENDIAN); } },
+			new Runnable(){ @Override public void run(){ ByteWriter.putDouble(buffer, 0, 1.0, ByteOrder.BIG_ENDIAN); } },
+			new Runnable(){ @Override public void run(){ new ByteReader(buffer, 2, 3); } },
+			new Runnable(){ @Override public void run(){ new ByteWriter(buffer, 0, 2).position(3); } },
+		};
+
+		for( int i = 0; i < calls.length; i++ )
+		{
+			try
+			{
+				calls[i].run();
+
+				fail("call " + i);
+			}
+			catch(IndexOutOfBoundsException e)
+			{
+			}
+		}
+
+		assertArrayEquals(new byte[4], buffer);
+	}
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright (C) 2016 - Florent Revest <revestflo@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.asteroidos.sync.dataobjects;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class NotificationTest {
+    private final CharsetEncoder mEncoder = StandardCharsets.UTF_8.newEncoder();
+
+    private static String repeat(String s, int count) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < count; i++)
+            sb.append(s);
+        return sb.toString();
+    }
+
+    /**
+     * @return the UTF-8 value of the field with the given tag, or null if it isn't there
+     */
+    private static String readField(ByteBuffer in, byte tag) {
+        in.order(ByteOrder.LITTLE_ENDIAN);
+        in.position(5);
+        while (in.hasRemaining()) {
+            byte fieldTag = in.get();
+            int length = in.getShort() & 0xFFFF;
+            byte[] value = new byte[length];
+            in.get(value);
+            if (fieldTag == tag)
+                return new String(value, StandardCharsets.UTF_8);
+        }
+        return null;
+    }
+
+    @Test
+    public void writesHeaderAndFields() {
+        Notification notification = new Notification(Notification.MsgType.POSTED, "pkg", 42, "App", "", "Hi", "Body", "normal");
+        ByteBuffer out = ByteBuffer.allocate(256);
+
+        assertTrue(notification.toBinary(out, mEncoder));
+        out.flip();
+
+        assertEquals(Notification.BINARY_POSTED, out.get(0));
+        assertEquals(42, out.order(ByteOrder.LITTLE_ENDIAN).getInt(1));
+        assertEquals("pkg", readField(out, Notification.TAG_PACKAGE_NAME));
+        assertEquals("Body", readField(out, Notification.TAG_BODY));
+        // Empty fields are left out
+        assertEquals(null, readField(out, Notification.TAG_APP_ICON));
+    }
+
+    @Test
+    public void tooLongFieldIsTruncatedAtCharacterBoundary() {
+        // Three bytes per character, 0xFFFF is a multiple of three so shift it with one ASCII character
+        String body = "x" + repeat("€", 30000);
+        Notification notification = new Notification(Notification.MsgType.POSTED, "pkg", 1, "App", null, "Hi", body, "normal");
+        ByteBuffer out = ByteBuffer.allocate(Notification.MAX_BINARY_LENGTH);
+
+        assertTrue(notification.toBinary(out, mEncoder));
+        out.flip();
+
+        String truncated = readField(out, Notification.TAG_BODY);
+        assertEquals(1 + (0xFFFF - 1) / 3 * 3, truncated.getBytes(StandardCharsets.UTF_8).length);
+        assertTrue(body.startsWith(truncated));
+        assertFalse(out.hasRemaining());
+    }
+
+    @Test
+    public void fullBufferIsReported() {
+        Notification notification = new Notification(Notification.MsgType.POSTED, "pkg", 1, "App", null, "Hi", repeat("body ", 100), "normal");
+        ByteBuffer small = ByteBuffer.allocate(64);
+
+        assertFalse(notification.toBinary(small, mEncoder));
+        // The encoder is reused as is for the next notification
+        ByteBuffer out = ByteBuffer.allocate(1024);
+        assertTrue(notification.toBinary(out, mEncoder));
+    }
+
+    @Test
+    public void removedCarriesOnlyTheId() {
+        ByteBuffer out = ByteBuffer.allocate(16);
+
+        assertTrue(new Notification(Notification.MsgType.REMOVED, 7).toBinary(out, mEncoder));
+        assertEquals(Arrays.toString(new byte[] {Notification.BINARY_REMOVED, 7, 0, 0, 0}),
+                Arrays.toString(Arrays.copyOf(out.array(), out.position())));
+    }
+}
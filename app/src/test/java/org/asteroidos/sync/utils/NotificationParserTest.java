@@ -0,0 +1,129 @@
+/*
+ * Copyright (C) 2016 - Florent Revest <revestflo@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.asteroidos.sync.utils;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class NotificationParserTest {
+    /**
+     * Very long text which counts how many of its characters were read.
+     */
+    private static class CountingText implements CharSequence {
+        private final int mLength;
+        int reads = 0;
+
+        CountingText(int length) {
+            mLength = length;
+        }
+
+        @Override
+        public int length() {
+            return mLength;
+        }
+
+        @Override
+        public char charAt(int index) {
+            reads++;
+            return (char) ('a' + index % 26);
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public String toString() {
+            throw new UnsupportedOperationException("the whole text must not be built");
+        }
+    }
+
+    private static int utf8Length(String text) {
+        return text.getBytes(StandardCharsets.UTF_8).length;
+    }
+
+    @Test
+    public void bigTextIsOnlyReadAsFarAsItFits() {
+        CountingText text = new CountingText(10 * 1024 * 1024);
+        BoundedTextBuilder sb = new BoundedTextBuilder(NotificationParser.DEFAULT_MAX_BODY_BYTES);
+
+        NotificationParser.appendFormatted(sb, text);
+
+        assertTrue(sb.isFull());
+        assertEquals(NotificationParser.DEFAULT_MAX_BODY_BYTES, utf8Length(sb.toString()));
+        assertTrue(sb.toString().endsWith("…"));
+        // Each kept character is read to measure it and once more to copy it
+        assertTrue("read " + text.reads + " characters", text.reads <= 3 * NotificationParser.DEFAULT_MAX_BODY_BYTES);
+    }
+
+    @Test
+    public void inboxKeepsTheNewestLines() {
+        CharSequence[] lines = new CharSequence[100];
+        for (int i = 0; i < lines.length; i++)
+            lines[i] = "message " + i;
+        BoundedTextBuilder sb = new BoundedTextBuilder(64);
+
+        NotificationParser.appendLinesNewestFirst(sb, lines);
+
+        String body = sb.toString();
+        assertTrue(body, body.startsWith("message 99\n\nmessage 98\n\n"));
+        assertFalse(body, body.contains("message 0\n"));
+        assertTrue(utf8Length(body) <= 64);
+    }
+
+    @Test
+    public void shortInboxIsKeptWhole() {
+        BoundedTextBuilder sb = new BoundedTextBuilder(NotificationParser.DEFAULT_MAX_BODY_BYTES);
+
+        NotificationParser.appendLinesNewestFirst(sb, new CharSequence[] {"first", "second"});
+
+        assertFalse(sb.isFull());
+        assertEquals("second\n\nfirst", sb.toString().trim());
+    }
+
+    @Test
+    public void cutNeverSplitsASurrogatePair() {
+        // Four bytes per emoji, the ellipsis takes three, so only one emoji fits in 8 bytes
+        BoundedTextBuilder sb = new BoundedTextBuilder(8);
+
+        sb.append("😀😀😀");
+
+        assertEquals("😀…", sb.toString());
+        assertEquals(7, sb.getByteLength());
+    }
+
+    @Test
+    public void appendsAfterTheCutAreIgnored() {
+        BoundedTextBuilder sb = new BoundedTextBuilder(10);
+
+        sb.append("0123456789");
+        assertFalse(sb.isFull());
+        sb.append("x");
+        sb.append("more");
+
+        assertTrue(sb.isFull());
+        assertEquals("0123456…", sb.toString());
+        assertEquals(10, sb.getByteLength());
+    }
+}
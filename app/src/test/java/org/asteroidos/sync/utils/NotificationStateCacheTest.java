@@ -0,0 +1,86 @@
+/*
+ * Copyright (C) 2016 - Florent Revest <revestflo@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.asteroidos.sync.utils;
+
+import org.junit.Test;
+
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class NotificationStateCacheTest {
+    private static final long HASH = NotificationStateCache.hash("pkg", "App", "icon", "summary", "body", "normal");
+
+    private static NotificationStateCache deliveredOnBoot(long bootId) {
+        NotificationStateCache cache = new NotificationStateCache();
+        cache.onConnected(bootId);
+        cache.beginRefresh();
+        assertTrue(cache.onPosted("pkg", 1, HASH));
+        cache.onDelivered("pkg", 1, HASH);
+        cache.endRefresh();
+        return cache;
+    }
+
+    @Test
+    public void reconnectingToTheSameBootOnlySendsChanges() {
+        NotificationStateCache cache = deliveredOnBoot(7);
+
+        cache.onConnected(7);
+        cache.beginRefresh();
+        assertFalse(cache.onPosted("pkg", 1, HASH));
+        assertEquals(Collections.<Integer>emptyList(), cache.endRefresh());
+        assertEquals(1, cache.getSuppressedCount());
+    }
+
+    @Test
+    public void restartedWatchGetsEverythingAgain() {
+        NotificationStateCache cache = deliveredOnBoot(7);
+
+        cache.onConnected(8);
+        assertTrue(cache.onPosted("pkg", 1, HASH));
+    }
+
+    @Test
+    public void watchWithoutBootIdGetsEverythingAgain() {
+        NotificationStateCache cache = deliveredOnBoot(NotificationStateCache.UNKNOWN_BOOT_ID);
+
+        cache.onConnected(NotificationStateCache.UNKNOWN_BOOT_ID);
+        assertTrue(cache.onPosted("pkg", 1, HASH));
+    }
+
+    @Test
+    public void refreshRemovesWhatWentAway() {
+        NotificationStateCache cache = deliveredOnBoot(7);
+
+        cache.onConnected(7);
+        cache.beginRefresh();
+        assertEquals(Collections.singletonList(1), cache.endRefresh());
+    }
+
+    @Test
+    public void failedWriteIsSentAgain() {
+        NotificationStateCache cache = new NotificationStateCache();
+
+        assertTrue(cache.onPosted("pkg", 1, HASH));
+        assertFalse(cache.onPosted("pkg", 1, HASH));
+        cache.onFailed("pkg", 1, HASH);
+        assertTrue(cache.onPosted("pkg", 1, HASH));
+    }
+}